@@ -19,6 +19,7 @@ import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -561,6 +562,34 @@ public abstract class AbstractKVEngine<K extends AbstractKeyRange, B extends Abs
 
     protected abstract void doPut(K range, ByteString key, ByteString value);
 
+    @Override
+    public final IKVEngineBulkLoad startBulkLoad(String namespace) {
+        checkState();
+        checkNS(namespace);
+        return doStartBulkLoad(defaultRanges.get(namespace));
+    }
+
+    protected abstract IKVEngineBulkLoad doStartBulkLoad(K range);
+
+    @Override
+    public boolean exportable() {
+        return false;
+    }
+
+    @Override
+    public final Optional<Path> export(String checkpointId, String namespace, ByteString start, ByteString end) {
+        checkState();
+        checkNS(namespace);
+        if (!exportable()) {
+            return Optional.empty();
+        }
+        return doExport(checkpointId, namespace, start, end);
+    }
+
+    protected Optional<Path> doExport(String checkpointId, String namespace, ByteString start, ByteString end) {
+        return Optional.empty();
+    }
+
     @Override
     public final void flush() {
         checkState();
@@ -14,6 +14,7 @@
 package com.baidu.bifromq.basekv.localengine;
 
 import com.google.protobuf.ByteString;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -226,6 +227,35 @@ public interface IKVEngine {
 
     void put(String namespace, ByteString key, ByteString value);
 
+    /**
+     * Start a bulk load into the namespace. Since the loaded key-values shadow the existing ones in the same key range,
+     * clear the key range beforehand if needed.
+     *
+     * @param namespace
+     * @return
+     */
+    IKVEngineBulkLoad startBulkLoad(String namespace);
+
+    /**
+     * If the checkpoint data could be exported as files
+     *
+     * @return
+     */
+    boolean exportable();
+
+    /**
+     * Export the key-values of the checkpoint within the range as a data file in engine specific format, which could be
+     * added to the bulk load of the same kind of engine. The caller takes the ownership of the file and is responsible
+     * for deleting it.
+     *
+     * @param checkpointId
+     * @param namespace
+     * @param start        the left end of the range, null for left open end
+     * @param end          the right end of the range, null for right open end
+     * @return the exported file, empty if there is no key-value in the range or the engine is not exportable
+     */
+    Optional<Path> export(String checkpointId, String namespace, ByteString start, ByteString end);
+
     void flush();
 
     void start(ScheduledExecutorService bgTaskExecutor, String... metricTags);
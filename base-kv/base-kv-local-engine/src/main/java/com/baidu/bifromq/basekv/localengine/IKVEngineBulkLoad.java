@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.localengine;
+
+import com.google.protobuf.ByteString;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A bulk load of key-values into a namespace. The key-values are written aside, bypassing the regular write path, and
+ * become visible all at once when ingested. Ingested key-values take precedence over the existing ones.
+ */
+public interface IKVEngineBulkLoad {
+    interface Writer {
+        /**
+         * Add a key-value, the keys must be added in strictly ascending order
+         *
+         * @param key
+         * @param value
+         */
+        void add(ByteString key, ByteString value);
+    }
+
+    /**
+     * Open a writer, the keys added via different writers of the same bulk load must not overlap
+     *
+     * @return
+     */
+    Writer newWriter();
+
+    /**
+     * Allocate a path for the data file exported by the same kind of engine, the file must be written completely before
+     * ingesting. The key range of the file must not overlap with others of the same bulk load either.
+     *
+     * @return the allocated path, empty if the engine could not ingest data files
+     */
+    Optional<Path> newFile();
+
+    /**
+     * Make all added key-values visible
+     */
+    void ingest();
+
+    /**
+     * Discard all added key-values
+     */
+    void abort();
+}
@@ -18,6 +18,7 @@ import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ByteString;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -316,6 +317,35 @@ public class InMemoryKVEngine extends AbstractKVEngine<InMemoryKVEngine.KeyRange
         getBatch(batchId).put(range, key, value);
     }
 
+    @Override
+    protected IKVEngineBulkLoad doStartBulkLoad(KeyRange range) {
+        ConcurrentSkipListMap<ByteString, ByteString> loaded = new ConcurrentSkipListMap<>(comparator);
+        return new IKVEngineBulkLoad() {
+            @Override
+            public Writer newWriter() {
+                return loaded::put;
+            }
+
+            @Override
+            public Optional<Path> newFile() {
+                return Optional.empty();
+            }
+
+            @Override
+            public void ingest() {
+                int batchId = startBatch();
+                loaded.forEach((key, value) -> put(batchId, range, key, value));
+                endBatch(batchId);
+                loaded.clear();
+            }
+
+            @Override
+            public void abort() {
+                loaded.clear();
+            }
+        };
+    }
+
     protected void doPut(KeyRange range, ByteString key, ByteString value) {
         String namespace = range.ns;
         ByteString oldValue = nsData.get(namespace).put(key, value);
@@ -53,6 +53,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -74,14 +75,18 @@ import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.CompactRangeOptions;
 import org.rocksdb.DBOptions;
+import org.rocksdb.EnvOptions;
 import org.rocksdb.FlushOptions;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.OptimisticTransactionDB;
+import org.rocksdb.Options;
 import org.rocksdb.Range;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.Slice;
+import org.rocksdb.SstFileWriter;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 
@@ -105,6 +110,7 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
     private String identity;
     private final File dbRootDir;
     private final File dbCheckPointRootDir;
+    private final File dbIngestRootDir;
     private Checkpoint checkpoint;
     private ScheduledFuture<?> gcTask;
     private ScheduledExecutorService bgTaskExecutor;
@@ -147,9 +153,13 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
         writeOptions = new WriteOptions().setDisableWAL(configurator.isDisableWAL());
         dbRootDir = new File(configurator.getDbRootDir());
         dbCheckPointRootDir = new File(configurator.getDbCheckpointRootDir());
+        dbIngestRootDir = new File(dbRootDir.getAbsolutePath() + "_ingest");
         try {
             Files.createDirectories(dbRootDir.getAbsoluteFile().toPath());
             Files.createDirectories(dbCheckPointRootDir.getAbsoluteFile().toPath());
+            // files left by unfinished bulk loads are useless
+            deleteDir(dbIngestRootDir);
+            Files.createDirectories(dbIngestRootDir.toPath());
             boolean isCreation = isEmpty(dbRootDir.toPath());
             openRocksDB(isCreation);
             log.info("RocksDBKVEngine[{}] initialized at path[{}]", identity, instance.getName());
@@ -364,6 +374,47 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
         endBatch(batchId);
     }
 
+    @Override
+    protected IKVEngineBulkLoad doStartBulkLoad(KeyRange range) {
+        return new SSTBulkLoad(range.ns);
+    }
+
+    @Override
+    public boolean exportable() {
+        return true;
+    }
+
+    @Override
+    protected Optional<Path> doExport(String checkpointId, String namespace, ByteString start, ByteString end) {
+        File cpPath = toCheckpointPath(checkpointId);
+        if (!cpPath.exists()) {
+            throw new KVEngineException("Checkpoint[" + checkpointId + "] not found");
+        }
+        OpenedCheckpoint openedCheckpoint = openedCheckpoints.get(checkpointId);
+        File sstFile = new File(dbIngestRootDir, UUID.randomUUID() + ".sst");
+        long count = 0;
+        try (EnvOptions envOptions = new EnvOptions();
+             Options options = new Options(dbOptions, cfDescs.get(namespace).getOptions());
+             SstFileWriter writer = new SstFileWriter(envOptions, options);
+             IKVEngineIterator itr = new RocksDBKVEngineIterator(openedCheckpoint.instance(),
+                 openedCheckpoint.cfHandle(namespace), start, end)) {
+            for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+                if (count++ == 0) {
+                    writer.open(sstFile.getAbsolutePath());
+                }
+                writer.put(itr.key().toByteArray(), itr.value().toByteArray());
+            }
+            if (count > 0) {
+                writer.finish();
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to export checkpoint[{}]", checkpointId, e);
+            sstFile.delete();
+            throw new KVEngineException("Failed to export checkpoint", e);
+        }
+        return count > 0 ? Optional.of(sstFile.toPath()) : Optional.empty();
+    }
+
     protected void doFlush() {
         checkState();
         try {
@@ -431,12 +482,7 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
                 if (!inUse(checkpointId)) {
                     log.debug("Deleting checkpoint[{}]", checkpointId);
                     openedCheckpoints.invalidate(checkpointId);
-                    File cpPath = toCheckpointPath(checkpointId);
-                    Files.walk(cpPath.toPath())
-                        .sorted(Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(File::delete);
-                    cpPath.delete();
+                    deleteDir(toCheckpointPath(checkpointId));
                 }
             }
         } catch (Throwable e) {
@@ -529,6 +575,16 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
         return EMPTY;
     }
 
+    private void deleteDir(File dir) throws IOException {
+        if (dir.exists()) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+            }
+        }
+    }
+
     private boolean isEmpty(Path path) throws IOException {
         if (Files.isDirectory(path)) {
             try (Stream<Path> entries = Files.list(path)) {
@@ -772,6 +828,135 @@ public class RocksDBKVEngine extends AbstractKVEngine<RocksDBKVEngine.KeyRange,
         }
     }
 
+    /**
+     * Each writer builds a sst file, and all the files including the external ones are ingested into the column family
+     * in one go.
+     */
+    private class SSTBulkLoad implements IKVEngineBulkLoad {
+        private final String namespace;
+        private final File loadDir;
+        private final EnvOptions envOptions = new EnvOptions();
+        private final Options options;
+        private final List<SSTWriter> writers = new ArrayList<>();
+        private final List<File> externalFiles = new ArrayList<>();
+
+        private SSTBulkLoad(String namespace) {
+            this.namespace = namespace;
+            this.loadDir = new File(dbIngestRootDir, UUID.randomUUID().toString());
+            this.options = new Options(dbOptions, cfDescs.get(namespace).getOptions());
+            try {
+                Files.createDirectories(loadDir.toPath());
+            } catch (IOException e) {
+                release();
+                throw new KVEngineException("Failed to create bulk load dir", e);
+            }
+        }
+
+        @Override
+        public synchronized Writer newWriter() {
+            SSTWriter writer = new SSTWriter(new File(loadDir, writers.size() + ".sst"));
+            writers.add(writer);
+            return writer;
+        }
+
+        @Override
+        public synchronized Optional<Path> newFile() {
+            File file = new File(loadDir, "ext-" + externalFiles.size() + ".sst");
+            externalFiles.add(file);
+            return Optional.of(file.toPath());
+        }
+
+        @Override
+        public synchronized void ingest() {
+            try {
+                List<String> files = new ArrayList<>();
+                for (SSTWriter writer : writers) {
+                    if (writer.finish()) {
+                        files.add(writer.file.getAbsolutePath());
+                    }
+                }
+                for (File file : externalFiles) {
+                    if (file.length() > 0) {
+                        files.add(file.getAbsolutePath());
+                    }
+                }
+                if (!files.isEmpty()) {
+                    try (IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+                        ingestOptions.setMoveFiles(true);
+                        instance.getBaseDB().ingestExternalFile(cfHandles.get(namespace), files, ingestOptions);
+                    }
+                }
+            } catch (RocksDBException e) {
+                log.error("Bulk load ingestion failed: namespace={}", namespace, e);
+                throw new KVEngineException("Bulk load ingestion failed", e);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public synchronized void abort() {
+            release();
+        }
+
+        private void release() {
+            writers.forEach(SSTWriter::close);
+            writers.clear();
+            externalFiles.clear();
+            options.close();
+            envOptions.close();
+            try {
+                deleteDir(loadDir);
+            } catch (IOException e) {
+                log.warn("Failed to delete bulk load dir[{}]", loadDir, e);
+            }
+        }
+
+        private class SSTWriter implements Writer {
+            private final File file;
+            private final SstFileWriter writer;
+            private long count;
+
+            private SSTWriter(File file) {
+                this.file = file;
+                this.writer = new SstFileWriter(envOptions, options);
+                try {
+                    writer.open(file.getAbsolutePath());
+                } catch (RocksDBException e) {
+                    writer.close();
+                    throw new KVEngineException("Failed to open sst file", e);
+                }
+            }
+
+            @Override
+            public void add(ByteString key, ByteString value) {
+                try {
+                    writer.put(key.toByteArray(), value.toByteArray());
+                    count++;
+                } catch (RocksDBException e) {
+                    throw new KVEngineException("Failed to write sst file", e);
+                }
+            }
+
+            private boolean finish() throws RocksDBException {
+                try {
+                    // empty sst file is not allowed
+                    if (count > 0) {
+                        writer.finish();
+                        return true;
+                    }
+                    return false;
+                } finally {
+                    writer.close();
+                }
+            }
+
+            private void close() {
+                writer.close();
+            }
+        }
+    }
+
     private class LatencyAwareIterator implements IKVEngineIterator {
         private final RocksDBKVEngineIterator delegate;
         private final long[] window;
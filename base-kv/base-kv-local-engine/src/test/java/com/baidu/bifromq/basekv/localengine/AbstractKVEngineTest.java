@@ -388,6 +388,32 @@ public abstract class AbstractKVEngineTest {
         assertTrue(kvEngine.exist(rangeId, key1));
     }
 
+    @Test
+    public void testBulkLoad() {
+        int rangeId = kvEngine.registerKeyRange(NS, null, null);
+        kvEngine.put(rangeId, copyFromUtf8("key1"), copyFromUtf8("old"));
+
+        IKVEngineBulkLoad bulkLoad = kvEngine.startBulkLoad(NS);
+        IKVEngineBulkLoad.Writer writer1 = bulkLoad.newWriter();
+        IKVEngineBulkLoad.Writer writer2 = bulkLoad.newWriter();
+        // empty writer is allowed
+        bulkLoad.newWriter();
+        writer2.add(copyFromUtf8("key3"), copyFromUtf8("value3"));
+        writer1.add(copyFromUtf8("key1"), copyFromUtf8("value1"));
+        writer1.add(copyFromUtf8("key2"), copyFromUtf8("value2"));
+        assertFalse(kvEngine.exist(rangeId, copyFromUtf8("key2")));
+        bulkLoad.ingest();
+
+        assertEquals(kvEngine.get(rangeId, copyFromUtf8("key1")).get(), copyFromUtf8("value1"));
+        assertEquals(kvEngine.get(rangeId, copyFromUtf8("key2")).get(), copyFromUtf8("value2"));
+        assertEquals(kvEngine.get(rangeId, copyFromUtf8("key3")).get(), copyFromUtf8("value3"));
+
+        bulkLoad = kvEngine.startBulkLoad(NS);
+        bulkLoad.newWriter().add(copyFromUtf8("key4"), copyFromUtf8("value4"));
+        bulkLoad.abort();
+        assertFalse(kvEngine.exist(rangeId, copyFromUtf8("key4")));
+    }
+
     protected boolean isUsed(String checkpointId) {
         return checkpointId.equals(cp.get());
     }
@@ -13,8 +13,10 @@
 
 package com.baidu.bifromq.basekv.localengine;
 
+import static com.google.protobuf.ByteString.copyFromUtf8;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.testng.Assert.assertFalse;
 
 import com.baidu.bifromq.baseenv.EnvProvider;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -24,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
 
 @Slf4j
 public class InMemoryKVEngineTest extends AbstractKVEngineTest {
@@ -44,4 +47,15 @@ public class InMemoryKVEngineTest extends AbstractKVEngineTest {
         kvEngine.stop();
         MoreExecutors.shutdownAndAwaitTermination(maintenanceTaskExecutor, 5, TimeUnit.SECONDS);
     }
+
+    @Test
+    public void notExportable() {
+        kvEngine.put(NS, copyFromUtf8("key1"), copyFromUtf8("value1"));
+        String cpId = kvEngine.checkpoint();
+        assertFalse(kvEngine.exportable());
+        assertFalse(kvEngine.export(cpId, NS, null, null).isPresent());
+        IKVEngineBulkLoad bulkLoad = kvEngine.startBulkLoad(NS);
+        assertFalse(bulkLoad.newFile().isPresent());
+        bulkLoad.abort();
+    }
 }
@@ -274,6 +274,29 @@ public class RocksDBKVEngineTest extends AbstractKVEngineTest {
         kvEngine.clearRange(IKVEngine.DEFAULT_NS);
     }
 
+    @Test
+    public void testExportAndIngest() throws IOException {
+        kvEngine.put(NS, copyFromUtf8("key1"), copyFromUtf8("value1"));
+        kvEngine.put(NS, copyFromUtf8("key2"), copyFromUtf8("value2"));
+        kvEngine.put(NS, copyFromUtf8("key3"), copyFromUtf8("value3"));
+        String cpId = kvEngine.checkpoint();
+        cp.set(cpId);
+
+        assertTrue(kvEngine.exportable());
+        assertFalse(kvEngine.export(cpId, NS, copyFromUtf8("x"), copyFromUtf8("y")).isPresent());
+        Path exported = kvEngine.export(cpId, NS, copyFromUtf8("key1"), copyFromUtf8("key3")).get();
+
+        kvEngine.clearRange(NS);
+        kvEngine.put(NS, copyFromUtf8("key1"), copyFromUtf8("new"));
+        IKVEngineBulkLoad bulkLoad = kvEngine.startBulkLoad(NS);
+        Files.move(exported, bulkLoad.newFile().get());
+        bulkLoad.ingest();
+
+        assertEquals(kvEngine.get(NS, copyFromUtf8("key1")).get(), copyFromUtf8("value1"));
+        assertEquals(kvEngine.get(NS, copyFromUtf8("key2")).get(), copyFromUtf8("value2"));
+        assertFalse(kvEngine.exist(NS, copyFromUtf8("key3")));
+    }
+
     private byte[] toBytesNativeOrder(long l) {
         return ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder()).putLong(l).array();
     }
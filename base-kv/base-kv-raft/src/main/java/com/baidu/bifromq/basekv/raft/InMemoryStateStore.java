@@ -37,7 +37,8 @@ public final class InMemoryStateStore implements IRaftStateStore {
     private final String id;
     private final LinkedList<Long> configEntryIndexes = new LinkedList<>();
     private final long flushDelayInMS;
-    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService flusher;
+    private final boolean ownFlusher;
     private volatile long stabilizingIndex;
     private final AtomicBoolean flushTaskScheduled = new AtomicBoolean(false);
     private final LinkedList<LogEntry> logEntries = new LinkedList<>(); // log entry start from 1
@@ -50,9 +51,29 @@ public final class InMemoryStateStore implements IRaftStateStore {
     private StableListener stableListener = DEFAULT_STABLE_LISTENER;
 
     public InMemoryStateStore(String id, Snapshot latestSnapshot, long flushDelayInMS) {
+        this(id, latestSnapshot, flushDelayInMS, Executors.newSingleThreadScheduledExecutor(), true);
+    }
+
+    /**
+     * Create a state store flushing in the given executor, which is not shutdown when the store stops.
+     *
+     * @param id             the local id
+     * @param latestSnapshot the latest snapshot
+     * @param flushDelayInMS the delay of flushing appended entries
+     * @param flusher        the shared flusher
+     */
+    public InMemoryStateStore(String id, Snapshot latestSnapshot, long flushDelayInMS,
+                              ScheduledExecutorService flusher) {
+        this(id, latestSnapshot, flushDelayInMS, flusher, false);
+    }
+
+    private InMemoryStateStore(String id, Snapshot latestSnapshot, long flushDelayInMS,
+                               ScheduledExecutorService flusher, boolean ownFlusher) {
         this.id = id;
         this.latestSnapshot = latestSnapshot;
         this.flushDelayInMS = flushDelayInMS;
+        this.flusher = flusher;
+        this.ownFlusher = ownFlusher;
         // offset 0 is always a dummy entry pointing to last entry in snapshot
         logEntries.add(LogEntry.newBuilder()
             .setTerm(latestSnapshot.getTerm())
@@ -231,6 +252,10 @@ public final class InMemoryStateStore implements IRaftStateStore {
     }
 
     public CompletableFuture<Void> stop() {
+        if (!ownFlusher) {
+            stableListener = DEFAULT_STABLE_LISTENER;
+            return CompletableFuture.completedFuture(null);
+        }
         flusher.shutdown();
         try {
             flusher.awaitTermination(5, TimeUnit.SECONDS);
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.raft;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Scheduler running many raft nodes on a fixed number of worker threads. Every node owns a mailbox whose tasks are
+ * executed one at a time in submission order, so each node keeps the single-threaded execution it gets from a
+ * dedicated thread. A mailbox yields its worker after a bounded number of tasks to keep busy nodes from starving
+ * others.
+ */
+public final class MultiRaftScheduler {
+    private static final int MAX_TASKS_PER_RUN = 64;
+    private final ExecutorService workers;
+
+    public MultiRaftScheduler(int workerThreads, ThreadFactory threadFactory) {
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("worker threads must be positive");
+        }
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedTransferQueue<>(), threadFactory);
+    }
+
+    /**
+     * Create a new mailbox, the returned executor runs submitted tasks serially.
+     *
+     * @return the mailbox executor
+     */
+    Executor newMailbox() {
+        return new Mailbox();
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private class Mailbox implements Executor, Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.offer(task);
+            try {
+                trySchedule();
+            } catch (RejectedExecutionException e) {
+                tasks.remove(task);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                if (!tasks.isEmpty()) {
+                    try {
+                        trySchedule();
+                    } catch (RejectedExecutionException e) {
+                        // scheduler has been shutdown
+                        tasks.clear();
+                    }
+                }
+            }
+        }
+
+        private void trySchedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+    }
+}
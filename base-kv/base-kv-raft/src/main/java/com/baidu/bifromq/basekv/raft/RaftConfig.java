@@ -36,6 +36,8 @@ public final class RaftConfig {
     private int maxInflightAppends = 1024;
     // the max number of uncommitted proposals before rejection
     private int maxUncommittedProposals = 1024;
+    // the max number of queued proposals coalesced into one log append, 0 for no limit
+    private int maxProposalsPerAppend = 128;
     private boolean preVote = true;
     private boolean readOnlyLeaderLeaseMode = true;
     private int readOnlyBatch = 10;
@@ -25,14 +25,18 @@ import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.RejectedExecutionException;
@@ -232,19 +236,47 @@ public final class RaftNode implements IRaftNode {
         }
     }
 
+    private record PendingProposal(ByteString cmd, CompletableFuture<Void> onDone) {
+    }
+
     private final String id;
     private final IRaftStateStore stateStorage;
     private final RaftConfig config;
     private final Logger log;
-    private final ExecutorService raftExecutor;
+    private final Executor raftExecutor;
     private final AtomicReference<RaftNodeState> stateRef = new AtomicReference<>();
     private final AtomicReference<Status> status = new AtomicReference<>(Status.INIT);
     private final AtomicReference<CompletableFuture<Void>> stopFuture = new AtomicReference<>();
+    // the proposals submitted but not yet appended, every proposal submits a task to drain them in batch
+    private final Queue<PendingProposal> pendingProposals = new ConcurrentLinkedQueue<>();
+    // the proposals to be appended in one batch, only accessed in raft executor
+    private final List<ByteString> batchedCmds = new ArrayList<>();
+    private final List<CompletableFuture<Void>> batchedOnDones = new ArrayList<>();
     private final Tags metricTags;
     private MetricManager metricMgr;
 
     public RaftNode(RaftConfig config, IRaftStateStore stateStore, Logger logger, ThreadFactory threadFactory,
                     String... metricTags) {
+        this(config, stateStore, logger, new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedTransferQueue<>(), threadFactory), metricTags);
+    }
+
+    /**
+     * Create a raft node whose events are executed by the shared worker threads of the scheduler.
+     *
+     * @param config     the raft config
+     * @param stateStore the raft state store
+     * @param logger     the logger
+     * @param scheduler  the multi-raft scheduler
+     * @param metricTags the metric tags
+     */
+    public RaftNode(RaftConfig config, IRaftStateStore stateStore, Logger logger, MultiRaftScheduler scheduler,
+                    String... metricTags) {
+        this(config, stateStore, logger, scheduler.newMailbox(), metricTags);
+    }
+
+    private RaftNode(RaftConfig config, IRaftStateStore stateStore, Logger logger, Executor raftExecutor,
+                     String... metricTags) {
         verifyTags(metricTags);
         verifyConfig(config);
         verifyStateStore(stateStore);
@@ -253,8 +285,7 @@ public final class RaftNode implements IRaftNode {
         this.stateStorage = new MetricMonitoredStateStore(stateStore, this.metricTags);
         this.id = stateStorage.local();
         this.config = config.toBuilder().build();
-        this.raftExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
-            new LinkedTransferQueue<>(), threadFactory);
+        this.raftExecutor = raftExecutor;
         stateStore.addStableListener(this::onStabilized);
     }
 
@@ -295,7 +326,49 @@ public final class RaftNode implements IRaftNode {
 
     @Override
     public CompletableFuture<Void> propose(ByteString appCommand) {
-        return submit(onDone -> stateRef.get().propose(appCommand, sampleLatency(onDone, metricMgr.proposeTimer)));
+        CompletableFuture<Void> onDone = new CompletableFuture<>();
+        pendingProposals.offer(new PendingProposal(appCommand, onDone));
+        try {
+            raftExecutor.execute(this::flushProposals);
+        } catch (RejectedExecutionException e) {
+            // no more task will drain the pending proposals
+            failPendingProposals(new IllegalStateException(e));
+        }
+        return onDone;
+    }
+
+    private void flushProposals() {
+        if (status.get() != Status.STARTED) {
+            failPendingProposals(new IllegalStateException(status.get() == Status.INIT
+                || status.get() == Status.STARTING ? "Raft node not started" : "Raft node has stopped"));
+            return;
+        }
+        // the proposals submitted meanwhile join the batch, so the tasks behind may find nothing left to append
+        int maxBatchSize = config.getMaxProposalsPerAppend();
+        PendingProposal proposal;
+        while ((maxBatchSize <= 0 || batchedCmds.size() < maxBatchSize)
+            && (proposal = pendingProposals.poll()) != null) {
+            batchedCmds.add(proposal.cmd());
+            batchedOnDones.add(sampleLatency(proposal.onDone(), metricMgr.proposeTimer));
+        }
+        if (batchedCmds.isEmpty()) {
+            return;
+        }
+        try {
+            stateRef.get().propose(batchedCmds, batchedOnDones);
+        } catch (Throwable e) {
+            batchedOnDones.forEach(f -> f.completeExceptionally(new InternalError(e)));
+        } finally {
+            batchedCmds.clear();
+            batchedOnDones.clear();
+        }
+    }
+
+    private void failPendingProposals(Throwable e) {
+        PendingProposal proposal;
+        while ((proposal = pendingProposals.poll()) != null) {
+            proposal.onDone().completeExceptionally(e);
+        }
     }
 
     private void onStabilized(long stableIndex) {
@@ -437,12 +510,16 @@ public final class RaftNode implements IRaftNode {
                     log.debug("Stopping raft node[{}]", id());
                     CompletableFuture<Void> lastTask = new CompletableFuture<>();
                     lastTask.whenComplete((v, e) -> {
-                        raftExecutor.shutdown();
+                        if (raftExecutor instanceof ExecutorService) {
+                            // the mailbox of shared scheduler needs no shutdown
+                            ((ExecutorService) raftExecutor).shutdown();
+                        }
                         stopFuture.get().complete(null);
                     });
                     Runnable stop = () -> {
                         assert status.get() == Status.STARTED;
                         status.set(Status.STOPPING);
+                        failPendingProposals(new IllegalStateException("Raft node has stopped"));
                         stateStorage.stop().whenComplete((v, e) -> {
                             metricMgr.close();
                             status.set(Status.STOPPED);
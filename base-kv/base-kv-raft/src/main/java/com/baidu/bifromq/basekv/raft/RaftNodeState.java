@@ -115,6 +115,18 @@ abstract class RaftNodeState implements IRaftNodeLogger {
 
     abstract void propose(ByteString fsmCmd, CompletableFuture<Void> onDone);
 
+    /**
+     * Propose a batch of commands, the commands are proposed one by one by default.
+     *
+     * @param fsmCmds the commands
+     * @param onDones the futures of the commands respectively
+     */
+    void propose(List<ByteString> fsmCmds, List<CompletableFuture<Void>> onDones) {
+        for (int i = 0; i < fsmCmds.size(); i++) {
+            propose(fsmCmds.get(i), onDones.get(i));
+        }
+    }
+
     abstract RaftNodeState stableTo(long stabledIndex);
 
     abstract RaftNodeState receive(String fromPeer, RaftMessage message);
@@ -298,7 +310,11 @@ abstract class RaftNodeState implements IRaftNodeLogger {
     }
 
     protected boolean isProposeThrottled() {
-        return uncommittedProposals.size() > maxUncommittedProposals;
+        return isProposeThrottled(0);
+    }
+
+    protected boolean isProposeThrottled(int pendingProposals) {
+        return uncommittedProposals.size() + pendingProposals > maxUncommittedProposals;
     }
 
     protected void handlePreVote(String fromPeer, long askedTerm, RequestPreVote request) {
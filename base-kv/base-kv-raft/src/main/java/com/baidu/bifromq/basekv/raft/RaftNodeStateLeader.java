@@ -37,6 +37,7 @@ import com.baidu.bifromq.basekv.raft.proto.Snapshot;
 import com.baidu.bifromq.basekv.raft.proto.TimeoutNow;
 import com.google.protobuf.ByteString;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -73,6 +74,10 @@ class RaftNodeStateLeader extends RaftNodeState {
     private final PeerLogTracker peerLogTracker;
     private final RaftConfigChanger configChanger;
     private final ReadProgressTracker readProgressTracker;
+    // the index of the first log entry appended in current term
+    private final long termStartIndex;
+    // reused for calculating commit index
+    private long[] matchIndexes = new long[0];
     private LeaderTransferTask leaderTransferTask;
     private int electionElapsedTick;
 
@@ -96,6 +101,7 @@ class RaftNodeStateLeader extends RaftNodeState {
             listener,
             installer,
             onSnapshotInstalled);
+        termStartIndex = stateStorage.lastIndex() + 1;
         peerLogTracker = new PeerLogTracker(id(), config, stateStorage, listener, this);
         configChanger = new RaftConfigChanger(config, stateStorage, peerLogTracker, this);
         ClusterConfig clusterConfig = stateStorage.latestClusterConfig();
@@ -232,29 +238,49 @@ class RaftNodeStateLeader extends RaftNodeState {
 
     @Override
     void propose(ByteString fsmCmd, CompletableFuture<Void> onDone) {
-        if (leaderTransferTask != null) {
-            logDebug("Dropped proposal due to transferring leadership");
-            onDone.completeExceptionally(DropProposalException.TRANSFERRING_LEADER);
-            return;
-        }
-        if (isProposeThrottled()) {
-            logDebug("Dropped proposal due to log growing[uncommittedProposals:{}] "
-                    + "exceeds threshold[maxUncommittedProposals:{}]",
-                uncommittedProposals.size(), maxUncommittedProposals);
-            onDone.completeExceptionally(DropProposalException.THROTTLED_BY_THRESHOLD);
+        propose(Collections.singletonList(fsmCmd), Collections.singletonList(onDone));
+    }
+
+    @Override
+    void propose(List<ByteString> fsmCmds, List<CompletableFuture<Void>> onDones) {
+        List<LogEntry> entries = new ArrayList<>(fsmCmds.size());
+        List<CompletableFuture<Void>> accepted = new ArrayList<>(fsmCmds.size());
+        long nextIndex = stateStorage.lastIndex() + 1;
+        for (int i = 0; i < fsmCmds.size(); i++) {
+            CompletableFuture<Void> onDone = onDones.get(i);
+            if (leaderTransferTask != null) {
+                logDebug("Dropped proposal due to transferring leadership");
+                onDone.completeExceptionally(DropProposalException.TRANSFERRING_LEADER);
+                continue;
+            }
+            // the entries accepted in this batch are not yet tracked as uncommitted proposals
+            if (isProposeThrottled(entries.size())) {
+                logDebug("Dropped proposal due to log growing[uncommittedProposals:{}] "
+                        + "exceeds threshold[maxUncommittedProposals:{}]",
+                    uncommittedProposals.size() + entries.size(), maxUncommittedProposals);
+                onDone.completeExceptionally(DropProposalException.THROTTLED_BY_THRESHOLD);
+                continue;
+            }
+            entries.add(LogEntry.newBuilder()
+                .setTerm(currentTerm())
+                .setIndex(nextIndex++)
+                .setData(fsmCmds.get(i))
+                .build());
+            accepted.add(onDone);
+        }
+        if (entries.isEmpty()) {
             return;
         }
-        LogEntry entry = LogEntry.newBuilder()
-            .setTerm(currentTerm())
-            .setIndex(stateStorage.lastIndex() + 1)
-            .setData(fsmCmd)
-            .build();
-        stateStorage.append(Collections.singletonList(entry), !config.isAsyncAppend());
+        // the whole batch is appended in one go
+        stateStorage.append(entries, !config.isAsyncAppend());
         // update self progress
         peerLogTracker.replicateBy(stateStorage.local(), stateStorage.lastIndex());
 
-        ProposeTask prev = uncommittedProposals.put(entry.getIndex(), new ProposeTask(entry.getTerm(), onDone));
-        assert prev == null;
+        for (int i = 0; i < entries.size(); i++) {
+            ProposeTask prev = uncommittedProposals.put(entries.get(i).getIndex(),
+                new ProposeTask(currentTerm(), accepted.get(i)));
+            assert prev == null;
+        }
 
         Map<String, List<RaftMessage>> appendEntriesToSend = prepareAppendEntriesIfAbsent(false);
         if (!appendEntriesToSend.isEmpty()) {
@@ -617,26 +643,30 @@ class RaftNodeStateLeader extends RaftNodeState {
         return messages;
     }
 
+    private long quorumMatchIndex(List<String> voters) {
+        int size = voters.size();
+        if (matchIndexes.length < size) {
+            matchIndexes = new long[size];
+        }
+        for (int i = 0; i < size; i++) {
+            matchIndexes[i] = peerLogTracker.matchIndex(voters.get(i));
+        }
+        Arrays.sort(matchIndexes, 0, size);
+        return matchIndexes[size - ((size >> 1) + 1)];
+    }
+
     private RaftNodeState commit() {
-        List<String> voters = stateStorage.latestClusterConfig().getVotersList();
-        List<String> nextVoters = stateStorage.latestClusterConfig().getNextVotersList();
-
-        List<Long> mIdx = voters.stream()
-            .map(peerLogTracker::matchIndex)
-            .sorted(Long::compareTo)
-            .collect(Collectors.toList());
-        long newCommitIndex = mIdx.get(mIdx.size() - ((mIdx.size() >> 1) + 1));
+        ClusterConfig clusterConfig = stateStorage.latestClusterConfig();
+        List<String> nextVoters = clusterConfig.getNextVotersList();
+        long newCommitIndex = quorumMatchIndex(clusterConfig.getVotersList());
         if (!nextVoters.isEmpty()) {
             // in joint-consensus, take the lease commitIndex of two voter groups
-            mIdx = nextVoters.stream().map(peerLogTracker::matchIndex)
-                .collect(Collectors.toList());
-            mIdx.sort(Long::compareTo);
-            newCommitIndex = Math.min(newCommitIndex, mIdx.get(mIdx.size() - ((mIdx.size() >> 1) + 1)));
+            newCommitIndex = Math.min(newCommitIndex, quorumMatchIndex(nextVoters));
         }
 
-        // only commit in leader's term according to $3.6
-        Optional<LogEntry> committed = stateStorage.entryAt(newCommitIndex);
-        if (committed.isPresent() && committed.get().getTerm() != currentTerm()) {
+        // only commit in leader's term according to $3.6, the entries of leader's term start from termStartIndex, so
+        // there is no need to read the entry back from the log
+        if (newCommitIndex < termStartIndex) {
             return this;
         }
         // we may draw conclusion about same commitIndex multiple times
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.raft;
+
+import static org.awaitility.Awaitility.await;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Slf4j
+public class MultiRaftSchedulerTest {
+    @Mock
+    private IRaftNode.IRaftMessageSender messageSender;
+    @Mock
+    private IRaftNode.IRaftEventListener eventListener;
+    @Mock
+    private IRaftNode.ISnapshotInstaller snapshotInstaller;
+    private MultiRaftScheduler scheduler;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        scheduler = new MultiRaftScheduler(2, Executors.defaultThreadFactory());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+        closeable.close();
+    }
+
+    @SneakyThrows
+    @Test
+    public void serialExecutionInMailbox() {
+        int mailboxes = 8;
+        int tasksPerMailbox = 10000;
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch latch = new CountDownLatch(mailboxes * tasksPerMailbox);
+        List<List<Integer>> executed = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int m = 0; m < mailboxes; m++) {
+            Executor mailbox = scheduler.newMailbox();
+            AtomicInteger running = new AtomicInteger();
+            List<Integer> executedSeq = new ArrayList<>();
+            executed.add(executedSeq);
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < tasksPerMailbox; i++) {
+                    int seq = i;
+                    mailbox.execute(() -> {
+                        if (running.incrementAndGet() > 1) {
+                            overlapped.set(true);
+                        }
+                        executedSeq.add(seq);
+                        running.decrementAndGet();
+                        latch.countDown();
+                    });
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(latch.getCount(), 0);
+        assertFalse(overlapped.get());
+        for (List<Integer> executedSeq : executed) {
+            for (int i = 0; i < tasksPerMailbox; i++) {
+                assertEquals(executedSeq.get(i).intValue(), i);
+            }
+        }
+    }
+
+    @SneakyThrows
+    @Test
+    public void busyMailboxNotStarveOthers() {
+        MultiRaftScheduler singleWorker = new MultiRaftScheduler(1, Executors.defaultThreadFactory());
+        Executor busy = singleWorker.newMailbox();
+        Executor idle = singleWorker.newMailbox();
+        AtomicBoolean stop = new AtomicBoolean();
+        busy.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!stop.get()) {
+                    busy.execute(this);
+                }
+            }
+        });
+        CountDownLatch latch = new CountDownLatch(1);
+        idle.execute(latch::countDown);
+        latch.await(5, TimeUnit.SECONDS);
+        stop.set(true);
+        singleWorker.shutdown();
+        assertEquals(latch.getCount(), 0);
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void executeAfterShutdown() {
+        Executor mailbox = scheduler.newMailbox();
+        scheduler.shutdown();
+        mailbox.execute(() -> {
+        });
+    }
+
+    @Test
+    public void raftNodeOnSharedScheduler() {
+        List<RaftNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String id = "V" + i;
+            Snapshot snapshot = Snapshot.newBuilder()
+                .setClusterConfig(ClusterConfig.newBuilder().addVoters(id).build())
+                .build();
+            RaftNode node = new RaftNode(new RaftConfig(), new InMemoryStateStore(id, snapshot), log, scheduler);
+            node.start(messageSender, eventListener, snapshotInstaller);
+            nodes.add(node);
+        }
+        for (RaftNode node : nodes) {
+            await().until(() -> {
+                node.tick();
+                return node.status() == RaftNodeStatus.Leader;
+            });
+            node.propose(ByteString.copyFromUtf8("hello")).join();
+        }
+        nodes.forEach(node -> node.stop().join());
+    }
+}
@@ -170,6 +170,30 @@ public class RaftNodeStateLeaderTest extends RaftNodeStateTest {
         assertTrue(onDone.isCompletedExceptionally());
     }
 
+    @Test
+    public void testProposeInBatch() {
+        IRaftStateStore stateStorage = new InMemoryStateStore("testLocal", Snapshot.newBuilder()
+            .setClusterConfig(clusterConfig).build());
+        RaftNodeStateLeader leader = startUpLeader(stateStorage, null);
+        long lastIndex = stateStorage.lastIndex();
+        List<ByteString> cmds = new ArrayList<>();
+        List<CompletableFuture<Void>> onDones = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            cmds.add(ByteString.copyFromUtf8("command" + i));
+            onDones.add(new CompletableFuture<>());
+        }
+        leader.propose(cmds, onDones);
+
+        // maxUncommittedProposals is 4, so the last two proposals are throttled
+        assertEquals(stateStorage.lastIndex(), lastIndex + 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(stateStorage.entryAt(lastIndex + 1 + i).get().getData(), cmds.get(i));
+            assertFalse(onDones.get(i).isDone());
+        }
+        assertTrue(onDones.get(5).isCompletedExceptionally());
+        assertTrue(onDones.get(6).isCompletedExceptionally());
+    }
+
     @Test
     public void testReceiveAppendEntriesReplyRejected() {
         IRaftStateStore stateStorage = new InMemoryStateStore("testLocal", Snapshot.newBuilder()
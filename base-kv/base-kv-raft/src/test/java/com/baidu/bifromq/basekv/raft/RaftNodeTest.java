@@ -46,14 +46,7 @@ public class RaftNodeTest {
     @BeforeMethod
     public void setup() {
         closeable = MockitoAnnotations.openMocks(this);
-        Snapshot snapshot = Snapshot.newBuilder()
-            .setIndex(0)
-            .setTerm(0)
-            .setClusterConfig(ClusterConfig.newBuilder()
-                .addVoters("V1")
-                .build()).build();
-        IRaftStateStore stateStorage = new InMemoryStateStore("V1", snapshot);
-        testNode = new RaftNode(new RaftConfig(), stateStorage, log, Executors.defaultThreadFactory());
+        testNode = new RaftNode(new RaftConfig(), stateStore(), log, Executors.defaultThreadFactory());
     }
 
     @AfterMethod
@@ -182,6 +175,45 @@ public class RaftNodeTest {
         await().until(() -> !testNode.isStarted());
     }
 
+    @Test
+    public void proposeRejected() {
+        MultiRaftScheduler scheduler = new MultiRaftScheduler(1, Executors.defaultThreadFactory());
+        RaftNode node = new RaftNode(new RaftConfig(), stateStore(), log, scheduler);
+        node.start(messageSender, eventListener, snapshotInstaller);
+        scheduler.shutdown();
+        // the proposal is failed instead of waiting for a task never run
+        CompletableFuture<Void> onDone = node.propose(ByteString.copyFromUtf8("hello"));
+        assertTrue(onDone.isCompletedExceptionally());
+        throwIllegalState(() -> onDone);
+    }
+
+    @Test
+    public void proposeWhileStopping() {
+        MultiRaftScheduler scheduler = new MultiRaftScheduler(1, Executors.defaultThreadFactory());
+        CompletableFuture<Void> blocker = new CompletableFuture<>();
+        scheduler.newMailbox().execute(blocker::join);
+        RaftNode node = new RaftNode(new RaftConfig(), stateStore(), log, scheduler);
+        node.start(messageSender, eventListener, snapshotInstaller);
+        CompletableFuture<Void> stopFuture = node.stop();
+        // the pending proposal is failed when stopping
+        CompletableFuture<Void> onDone = node.propose(ByteString.copyFromUtf8("hello"));
+        blocker.complete(null);
+        stopFuture.join();
+        assertTrue(onDone.isCompletedExceptionally());
+        throwIllegalState(() -> onDone);
+        scheduler.shutdown();
+    }
+
+    private IRaftStateStore stateStore() {
+        Snapshot snapshot = Snapshot.newBuilder()
+            .setIndex(0)
+            .setTerm(0)
+            .setClusterConfig(ClusterConfig.newBuilder()
+                .addVoters("V1")
+                .build()).build();
+        return new InMemoryStateStore("V1", snapshot);
+    }
+
     private <T> void illegalStateAfterStop(Supplier<CompletableFuture<T>> test) {
         testNode.start(messageSender, eventListener, snapshotInstaller);
         testNode.stop();
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.raft.benchmark;
+
+import com.baidu.bifromq.basekv.raft.IRaftNode;
+import com.baidu.bifromq.basekv.raft.InMemoryStateStore;
+import com.baidu.bifromq.basekv.raft.MultiRaftScheduler;
+import com.baidu.bifromq.basekv.raft.RaftConfig;
+import com.baidu.bifromq.basekv.raft.RaftNode;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.google.protobuf.ByteString;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare propose throughput of raft nodes hosted by one store, when every node owns a dedicated thread and when all
+ * nodes share the worker threads of MultiRaftScheduler. All nodes are ticked periodically like what a store does, and
+ * their in-memory state stores share one flusher, so the raft threads are the only per-node threads.
+ */
+@Slf4j
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiRaftBenchmark {
+    private static final ByteString COMMAND = ByteString.copyFromUtf8("command");
+
+    @Param({"1000", "5000", "10000"})
+    private int rangeCount;
+
+    @Param({"dedicated", "shared"})
+    private String mode;
+
+    private final IRaftNode.IRaftMessageSender messageSender = messages -> {
+    };
+    private final IRaftNode.IRaftEventListener eventListener = event -> {
+    };
+    private final IRaftNode.ISnapshotInstaller snapshotInstaller = fsmSnapshot ->
+        CompletableFuture.completedFuture(null);
+    private MultiRaftScheduler scheduler;
+    private ScheduledExecutorService ticker;
+    private ScheduledExecutorService flusher;
+    private RaftNode[] nodes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (mode.equals("shared")) {
+            scheduler = new MultiRaftScheduler(Runtime.getRuntime().availableProcessors(),
+                Executors.defaultThreadFactory());
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        nodes = new RaftNode[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            String id = "V" + i;
+            Snapshot snapshot = Snapshot.newBuilder()
+                .setClusterConfig(ClusterConfig.newBuilder().addVoters(id).build())
+                .build();
+            InMemoryStateStore stateStore = new InMemoryStateStore(id, snapshot, 5L, flusher);
+            nodes[i] = scheduler != null
+                ? new RaftNode(new RaftConfig(), stateStore, log, scheduler)
+                : new RaftNode(new RaftConfig(), stateStore, log, Executors.defaultThreadFactory());
+            nodes[i].start(messageSender, eventListener, snapshotInstaller);
+        }
+        for (RaftNode node : nodes) {
+            while (node.status() != RaftNodeStatus.Leader) {
+                node.tick();
+            }
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(() -> {
+            for (RaftNode node : nodes) {
+                node.tick();
+            }
+        }, 100, 100, TimeUnit.MILLISECONDS);
+        log.info("Setup finished: rangeCount={}, mode={}", rangeCount, mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ticker.shutdownNow();
+        CompletableFuture.allOf(Arrays.stream(nodes)
+            .map(RaftNode::stop)
+            .toArray(CompletableFuture[]::new)).join();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        flusher.shutdown();
+    }
+
+    @Benchmark
+    public void propose() {
+        nodes[ThreadLocalRandom.current().nextInt(rangeCount)].propose(COMMAND).join();
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(MultiRaftBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
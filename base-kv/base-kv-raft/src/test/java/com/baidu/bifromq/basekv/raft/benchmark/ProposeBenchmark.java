@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.raft.benchmark;
+
+import com.baidu.bifromq.basekv.raft.IRaftNode;
+import com.baidu.bifromq.basekv.raft.InMemoryStateStore;
+import com.baidu.bifromq.basekv.raft.RaftConfig;
+import com.baidu.bifromq.basekv.raft.RaftNode;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.google.protobuf.ByteString;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the proposals per second of a single-voter leader on in-memory state store, with the concurrent proposals
+ * appended one by one(maxProposalsPerAppend=1) or coalesced into batches.
+ */
+@Slf4j
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProposeBenchmark {
+    private static final ByteString COMMAND = ByteString.copyFromUtf8("command");
+
+    @Param({"1", "128"})
+    private int maxProposalsPerAppend;
+
+    private ScheduledExecutorService flusher;
+    private RaftNode node;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        Snapshot snapshot = Snapshot.newBuilder()
+            .setClusterConfig(ClusterConfig.newBuilder().addVoters("V1").build())
+            .build();
+        InMemoryStateStore stateStore = new InMemoryStateStore("V1", snapshot, 0L, flusher);
+        RaftConfig config = new RaftConfig()
+            .setMaxUncommittedProposals(0)
+            .setMaxProposalsPerAppend(maxProposalsPerAppend);
+        node = new RaftNode(config, stateStore, log, Executors.defaultThreadFactory());
+        IRaftNode.IRaftMessageSender messageSender = messages -> {
+        };
+        IRaftNode.IRaftEventListener eventListener = event -> {
+        };
+        node.start(messageSender, eventListener, fsmSnapshot -> CompletableFuture.completedFuture(null));
+        while (node.status() != RaftNodeStatus.Leader) {
+            node.tick();
+        }
+        log.info("Setup finished: maxProposalsPerAppend={}", maxProposalsPerAppend);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        node.stop().join();
+        flusher.shutdown();
+    }
+
+    @Benchmark
+    public void propose() {
+        node.propose(COMMAND).join();
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(ProposeBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
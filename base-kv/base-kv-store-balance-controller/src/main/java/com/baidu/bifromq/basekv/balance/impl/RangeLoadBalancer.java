@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.balance.impl;
+
+import com.baidu.bifromq.basekv.balance.StoreBalancer;
+import com.baidu.bifromq.basekv.balance.command.BalanceCommand;
+import com.baidu.bifromq.basekv.balance.command.MergeCommand;
+import com.baidu.bifromq.basekv.balance.command.SplitCommand;
+import com.baidu.bifromq.basekv.balance.command.TransferLeadershipCommand;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
+import com.baidu.bifromq.basekv.proto.State.StateType;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Sets;
+import com.google.protobuf.ByteString;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Balancer acting on the load hints reported by ranges and the distribution of range leaders:
+ * <ul>
+ *     <li>split the local leader range whose load stays at or above splitLoadThreshold for stableMillis, at the
+ *     split key suggested by its load hint</li>
+ *     <li>merge the local leader range with its right adjacent range if both loads stay below mergeLoadThreshold for
+ *     stableMillis, and they are replicated by the same set of stores</li>
+ *     <li>transfer leadership of local leader range to another voter which leads at least two fewer ranges</li>
+ * </ul>
+ * Splitting is disabled by a splitLoadThreshold of 1.0 or above, and merging by a mergeLoadThreshold of 0.0. At most
+ * one command is generated until next descriptors update, so the balancer never acts twice on a stale view.
+ */
+@Slf4j
+public class RangeLoadBalancer extends StoreBalancer {
+    private final double splitLoadThreshold;
+    private final double mergeLoadThreshold;
+    private final long stableMillis;
+    private final Supplier<Long> millisSource;
+    private final Map<KVRangeId, Long> hotSince = new HashMap<>();
+    private final Map<KVRangeId, Long> coldSince = new HashMap<>();
+    private Set<KVRangeStoreDescriptor> latestStoreDescriptors = new HashSet<>();
+    private boolean commandIssued;
+
+    public RangeLoadBalancer(String localStoreId,
+                             double splitLoadThreshold,
+                             double mergeLoadThreshold,
+                             long stableMillis) {
+        this(localStoreId, splitLoadThreshold, mergeLoadThreshold, stableMillis, System::currentTimeMillis);
+    }
+
+    @VisibleForTesting
+    RangeLoadBalancer(String localStoreId,
+                      double splitLoadThreshold,
+                      double mergeLoadThreshold,
+                      long stableMillis,
+                      Supplier<Long> millisSource) {
+        super(localStoreId);
+        this.splitLoadThreshold = splitLoadThreshold;
+        this.mergeLoadThreshold = mergeLoadThreshold;
+        this.stableMillis = stableMillis;
+        this.millisSource = millisSource;
+    }
+
+    @Override
+    public void update(Set<KVRangeStoreDescriptor> storeDescriptors) {
+        long now = millisSource.get();
+        Set<KVRangeId> leaderRanges = new HashSet<>();
+        for (KVRangeStoreDescriptor sd : storeDescriptors) {
+            for (KVRangeDescriptor rd : sd.getRangesList()) {
+                if (rd.getRole() != RaftNodeStatus.Leader) {
+                    continue;
+                }
+                leaderRanges.add(rd.getId());
+                double load = rd.getLoadHint().getLoad();
+                // the load never exceeds 1.0, so a threshold of 1.0 disables splitting even for a saturated range
+                if (splitLoadThreshold < 1.0 && load >= splitLoadThreshold) {
+                    hotSince.putIfAbsent(rd.getId(), now);
+                } else {
+                    hotSince.remove(rd.getId());
+                }
+                if (load < mergeLoadThreshold) {
+                    coldSince.putIfAbsent(rd.getId(), now);
+                } else {
+                    coldSince.remove(rd.getId());
+                }
+            }
+        }
+        hotSince.keySet().retainAll(leaderRanges);
+        coldSince.keySet().retainAll(leaderRanges);
+        latestStoreDescriptors = storeDescriptors;
+        commandIssued = false;
+    }
+
+    @Override
+    public Optional<BalanceCommand> balance() {
+        if (commandIssued) {
+            return Optional.empty();
+        }
+        KVRangeStoreDescriptor localStoreDesc = null;
+        for (KVRangeStoreDescriptor d : latestStoreDescriptors) {
+            if (d.getId().equals(localStoreId)) {
+                localStoreDesc = d;
+                break;
+            }
+        }
+        if (localStoreDesc == null) {
+            log.warn("There is no storeDescriptor for local store: {}", localStoreId);
+            return Optional.empty();
+        }
+        List<KVRangeDescriptor> localLeaderRangeDescriptors = localStoreDesc.getRangesList()
+            .stream()
+            .filter(d -> d.getRole() == RaftNodeStatus.Leader)
+            .filter(d -> d.getState() == StateType.Normal)
+            .collect(Collectors.toList());
+        // No leader range in localStore
+        if (localLeaderRangeDescriptors.isEmpty()) {
+            return Optional.empty();
+        }
+        long now = millisSource.get();
+        Optional<BalanceCommand> commandOpt = split(localLeaderRangeDescriptors, now)
+            .or(() -> merge(localLeaderRangeDescriptors, now))
+            .or(() -> transferLeadership(localLeaderRangeDescriptors));
+        commandIssued = commandOpt.isPresent();
+        return commandOpt;
+    }
+
+    private Optional<BalanceCommand> split(List<KVRangeDescriptor> localLeaderRangeDescriptors, long now) {
+        return localLeaderRangeDescriptors.stream()
+            .filter(rd -> rd.getLoadHint().hasSplitKey())
+            .filter(rd -> isStable(hotSince, rd.getId(), now))
+            .max(Comparator.comparingDouble(rd -> rd.getLoadHint().getLoad()))
+            .map(rd -> SplitCommand.builder()
+                .toStore(localStoreId)
+                .kvRangeId(rd.getId())
+                .expectedVer(rd.getVer())
+                .splitKey(rd.getLoadHint().getSplitKey())
+                .build());
+    }
+
+    private Optional<BalanceCommand> merge(List<KVRangeDescriptor> localLeaderRangeDescriptors, long now) {
+        // leader ranges in the cluster indexed by their start keys
+        Map<ByteString, KVRangeDescriptor> leaderRangesByStartKey = new HashMap<>();
+        for (KVRangeStoreDescriptor sd : latestStoreDescriptors) {
+            for (KVRangeDescriptor rd : sd.getRangesList()) {
+                if (rd.getRole() == RaftNodeStatus.Leader
+                    && rd.getState() == StateType.Normal
+                    && rd.getRange().hasStartKey()) {
+                    leaderRangesByStartKey.put(rd.getRange().getStartKey(), rd);
+                }
+            }
+        }
+        for (KVRangeDescriptor merger : localLeaderRangeDescriptors) {
+            if (!merger.getRange().hasEndKey() || !isStable(coldSince, merger.getId(), now)) {
+                continue;
+            }
+            KVRangeDescriptor mergee = leaderRangesByStartKey.get(merger.getRange().getEndKey());
+            if (mergee == null
+                || !isStable(coldSince, mergee.getId(), now)
+                || !isSameReplicaSet(merger.getConfig(), mergee.getConfig())) {
+                continue;
+            }
+            return Optional.of(MergeCommand.builder()
+                .toStore(localStoreId)
+                .kvRangeId(merger.getId())
+                .expectedVer(merger.getVer())
+                .mergeeId(mergee.getId())
+                .build());
+        }
+        return Optional.empty();
+    }
+
+    private Optional<BalanceCommand> transferLeadership(List<KVRangeDescriptor> localLeaderRangeDescriptors) {
+        Map<String, Integer> leaderCounts = new HashMap<>();
+        for (KVRangeStoreDescriptor sd : latestStoreDescriptors) {
+            leaderCounts.put(sd.getId(), (int) sd.getRangesList().stream()
+                .filter(rd -> rd.getRole() == RaftNodeStatus.Leader)
+                .count());
+        }
+        int localLeaderCount = leaderCounts.get(localStoreId);
+        Collections.shuffle(localLeaderRangeDescriptors);
+        for (KVRangeDescriptor rd : localLeaderRangeDescriptors) {
+            Optional<String> newLeader = rd.getConfig().getVotersList().stream()
+                .filter(voter -> !voter.equals(localStoreId))
+                .filter(leaderCounts::containsKey)
+                .min(Comparator.comparingInt(leaderCounts::get));
+            if (newLeader.isPresent() && localLeaderCount - leaderCounts.get(newLeader.get()) > 1) {
+                return Optional.of(TransferLeadershipCommand.builder()
+                    .toStore(localStoreId)
+                    .kvRangeId(rd.getId())
+                    .expectedVer(rd.getVer())
+                    .newLeaderStore(newLeader.get())
+                    .build());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean isStable(Map<KVRangeId, Long> since, KVRangeId rangeId, long now) {
+        Long sinceMillis = since.get(rangeId);
+        return sinceMillis != null && now - sinceMillis >= stableMillis;
+    }
+
+    private boolean isSameReplicaSet(ClusterConfig config1, ClusterConfig config2) {
+        return Sets.newHashSet(config1.getVotersList()).equals(Sets.newHashSet(config2.getVotersList()))
+            && Sets.newHashSet(config1.getLearnersList()).equals(Sets.newHashSet(config2.getLearnersList()));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.balance.impl;
+
+import static com.google.protobuf.ByteString.copyFromUtf8;
+
+import com.baidu.bifromq.basekv.balance.command.BalanceCommand;
+import com.baidu.bifromq.basekv.balance.command.MergeCommand;
+import com.baidu.bifromq.basekv.balance.command.SplitCommand;
+import com.baidu.bifromq.basekv.balance.command.TransferLeadershipCommand;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
+import com.baidu.bifromq.basekv.proto.LoadHint;
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.proto.State.StateType;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Optional;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RangeLoadBalancerTest {
+    private static final String LOCAL_STORE_ID = "localStoreId";
+    private static final long STABLE_MILLIS = 1000;
+
+    private long nowMillis;
+    private RangeLoadBalancer balancer;
+
+    @BeforeMethod
+    public void setup() {
+        nowMillis = 0;
+        balancer = new RangeLoadBalancer(LOCAL_STORE_ID, 0.8, 0.1, STABLE_MILLIS, () -> nowMillis);
+    }
+
+    @Test
+    public void balanceWithoutUpdate() {
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void splitHotRange() {
+        KVRangeId id = KVRangeIdUtil.generate();
+        KVRangeDescriptor hotRange = rangeDesc(id, Range.getDefaultInstance(), RaftNodeStatus.Leader,
+            LoadHint.newBuilder().setLoad(0.9).setSplitKey(copyFromUtf8("m")).build(), LOCAL_STORE_ID);
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, hotRange)));
+        // not hot long enough
+        Assert.assertTrue(balancer.balance().isEmpty());
+
+        nowMillis += STABLE_MILLIS;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, hotRange)));
+        Optional<BalanceCommand> commandOptional = balancer.balance();
+        Assert.assertTrue(commandOptional.isPresent());
+        SplitCommand splitCommand = (SplitCommand) commandOptional.get();
+        Assert.assertEquals(splitCommand.getToStore(), LOCAL_STORE_ID);
+        Assert.assertEquals(splitCommand.getKvRangeId(), id);
+        Assert.assertEquals(splitCommand.getExpectedVer(), 1L);
+        Assert.assertEquals(splitCommand.getSplitKey(), copyFromUtf8("m"));
+        // only one command until next update
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void hotRangeCooledDown() {
+        KVRangeId id = KVRangeIdUtil.generate();
+        LoadHint hot = LoadHint.newBuilder().setLoad(0.9).setSplitKey(copyFromUtf8("m")).build();
+        LoadHint normal = LoadHint.newBuilder().setLoad(0.5).build();
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID,
+            rangeDesc(id, Range.getDefaultInstance(), RaftNodeStatus.Leader, hot, LOCAL_STORE_ID))));
+        nowMillis += STABLE_MILLIS / 2;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID,
+            rangeDesc(id, Range.getDefaultInstance(), RaftNodeStatus.Leader, normal, LOCAL_STORE_ID))));
+        nowMillis += STABLE_MILLIS / 2;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID,
+            rangeDesc(id, Range.getDefaultInstance(), RaftNodeStatus.Leader, hot, LOCAL_STORE_ID))));
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void splitDisabled() {
+        balancer = new RangeLoadBalancer(LOCAL_STORE_ID, 1.0, 0.0, STABLE_MILLIS, () -> nowMillis);
+        // even a saturated range is not split
+        KVRangeDescriptor saturatedRange = rangeDesc(KVRangeIdUtil.generate(), Range.getDefaultInstance(),
+            RaftNodeStatus.Leader, LoadHint.newBuilder().setLoad(1.0).setSplitKey(copyFromUtf8("m")).build(),
+            LOCAL_STORE_ID);
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, saturatedRange)));
+        nowMillis += STABLE_MILLIS;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, saturatedRange)));
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void mergeColdAdjacentRanges() {
+        KVRangeId leftId = KVRangeIdUtil.generate();
+        KVRangeId rightId = KVRangeIdUtil.next(leftId);
+        LoadHint cold = LoadHint.newBuilder().setLoad(0.01).build();
+        KVRangeDescriptor left = rangeDesc(leftId, Range.newBuilder().setEndKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, cold, LOCAL_STORE_ID, "store1");
+        KVRangeDescriptor leftFollower = left.toBuilder().setRole(RaftNodeStatus.Follower).build();
+        KVRangeDescriptor right = rangeDesc(rightId, Range.newBuilder().setStartKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, cold, LOCAL_STORE_ID, "store1");
+        KVRangeDescriptor rightFollower = right.toBuilder().setRole(RaftNodeStatus.Follower).build();
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left, rightFollower),
+            storeDesc("store1", leftFollower, right)));
+        nowMillis += STABLE_MILLIS;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left, rightFollower),
+            storeDesc("store1", leftFollower, right)));
+        Optional<BalanceCommand> commandOptional = balancer.balance();
+        Assert.assertTrue(commandOptional.isPresent());
+        MergeCommand mergeCommand = (MergeCommand) commandOptional.get();
+        Assert.assertEquals(mergeCommand.getToStore(), LOCAL_STORE_ID);
+        Assert.assertEquals(mergeCommand.getKvRangeId(), leftId);
+        Assert.assertEquals(mergeCommand.getMergeeId(), rightId);
+    }
+
+    @Test
+    public void noMergeForDifferentReplicaSet() {
+        KVRangeId leftId = KVRangeIdUtil.generate();
+        KVRangeId rightId = KVRangeIdUtil.next(leftId);
+        LoadHint cold = LoadHint.newBuilder().setLoad(0.01).build();
+        KVRangeDescriptor left = rangeDesc(leftId, Range.newBuilder().setEndKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, cold, LOCAL_STORE_ID);
+        KVRangeDescriptor right = rangeDesc(rightId, Range.newBuilder().setStartKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, cold, "store1");
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left), storeDesc("store1", right)));
+        nowMillis += STABLE_MILLIS;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left), storeDesc("store1", right)));
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void mergeDisabled() {
+        balancer = new RangeLoadBalancer(LOCAL_STORE_ID, 1.0, 0.0, STABLE_MILLIS, () -> nowMillis);
+        KVRangeId leftId = KVRangeIdUtil.generate();
+        KVRangeId rightId = KVRangeIdUtil.next(leftId);
+        LoadHint idle = LoadHint.newBuilder().setLoad(0.0).build();
+        KVRangeDescriptor left = rangeDesc(leftId, Range.newBuilder().setEndKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, idle, LOCAL_STORE_ID);
+        KVRangeDescriptor right = rangeDesc(rightId, Range.newBuilder().setStartKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, idle, LOCAL_STORE_ID);
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left, right)));
+        nowMillis += STABLE_MILLIS;
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, left, right)));
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    @Test
+    public void transferLeadership() {
+        LoadHint normal = LoadHint.newBuilder().setLoad(0.5).build();
+        KVRangeId id1 = KVRangeIdUtil.generate();
+        KVRangeId id2 = KVRangeIdUtil.next(id1);
+        KVRangeDescriptor range1 = rangeDesc(id1, Range.newBuilder().setEndKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, normal, LOCAL_STORE_ID, "store1");
+        KVRangeDescriptor range2 = rangeDesc(id2, Range.newBuilder().setStartKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, normal, LOCAL_STORE_ID, "store1");
+        balancer.update(Sets.newHashSet(storeDesc(LOCAL_STORE_ID, range1, range2),
+            storeDesc("store1", range1.toBuilder().setRole(RaftNodeStatus.Follower).build(),
+                range2.toBuilder().setRole(RaftNodeStatus.Follower).build())));
+        Optional<BalanceCommand> commandOptional = balancer.balance();
+        Assert.assertTrue(commandOptional.isPresent());
+        TransferLeadershipCommand command = (TransferLeadershipCommand) commandOptional.get();
+        Assert.assertEquals(command.getToStore(), LOCAL_STORE_ID);
+        Assert.assertEquals(command.getNewLeaderStore(), "store1");
+        Assert.assertTrue(Sets.newHashSet(id1, id2).contains(command.getKvRangeId()));
+    }
+
+    @Test
+    public void leadershipBalanced() {
+        LoadHint normal = LoadHint.newBuilder().setLoad(0.5).build();
+        KVRangeId id1 = KVRangeIdUtil.generate();
+        KVRangeId id2 = KVRangeIdUtil.next(id1);
+        KVRangeDescriptor range1 = rangeDesc(id1, Range.newBuilder().setEndKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, normal, LOCAL_STORE_ID, "store1");
+        KVRangeDescriptor range2 = rangeDesc(id2, Range.newBuilder().setStartKey(copyFromUtf8("m")).build(),
+            RaftNodeStatus.Leader, normal, LOCAL_STORE_ID, "store1");
+        balancer.update(Sets.newHashSet(
+            storeDesc(LOCAL_STORE_ID, range1, range2.toBuilder().setRole(RaftNodeStatus.Follower).build()),
+            storeDesc("store1", range1.toBuilder().setRole(RaftNodeStatus.Follower).build(), range2)));
+        Assert.assertTrue(balancer.balance().isEmpty());
+    }
+
+    private KVRangeStoreDescriptor storeDesc(String storeId, KVRangeDescriptor... ranges) {
+        return KVRangeStoreDescriptor.newBuilder()
+            .setId(storeId)
+            .addAllRanges(List.of(ranges))
+            .build();
+    }
+
+    private KVRangeDescriptor rangeDesc(KVRangeId id, Range range, RaftNodeStatus role, LoadHint loadHint,
+                                        String... voters) {
+        return KVRangeDescriptor.newBuilder()
+            .setId(id)
+            .setVer(1)
+            .setRange(range)
+            .setState(StateType.Normal)
+            .setRole(role)
+            .setLoadHint(loadHint)
+            .setConfig(ClusterConfig.newBuilder()
+                .addAllVoters(List.of(voters))
+                .build())
+            .build();
+    }
+}
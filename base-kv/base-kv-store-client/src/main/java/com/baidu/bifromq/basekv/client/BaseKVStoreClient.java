@@ -43,6 +43,7 @@ import com.baidu.bifromq.basekv.store.proto.ReplyCode;
 import com.baidu.bifromq.basekv.store.proto.TransferLeadershipReply;
 import com.baidu.bifromq.basekv.store.proto.TransferLeadershipRequest;
 import com.baidu.bifromq.baserpc.IRPCClient;
+import com.google.common.base.Strings;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -71,6 +72,7 @@ class BaseKVStoreClient implements IBaseKVStoreClient {
     private final KVRangeRouter router = new KVRangeRouter();
     private final int execPipelinesPerServer;
     private final int queryPipelinesPerServer;
+    private final ReplicaSelector replicaSelector;
     private final IORMap storeDescriptorCRDT;
     private volatile Map<String, List<IExecutionPipeline>> execPplns = Maps.newHashMap();
     private volatile Map<String, List<IQueryPipeline>> queryPplns = Maps.newHashMap();
@@ -80,12 +82,14 @@ class BaseKVStoreClient implements IBaseKVStoreClient {
                       @lombok.NonNull ICRDTService crdtService,
                       @lombok.NonNull IRPCClient rpcClient,
                       int execPipelinesPerServer,
-                      int queryPipelinesPerServer) {
+                      int queryPipelinesPerServer,
+                      String zone) {
         this.clusterId = clusterId;
         this.crdtService = crdtService;
         this.execPipelinesPerServer = execPipelinesPerServer <= 0 ? 5 : execPipelinesPerServer;
         this.queryPipelinesPerServer = queryPipelinesPerServer <= 0 ? 5 : queryPipelinesPerServer;
         this.rpcClient = rpcClient;
+        this.replicaSelector = new ReplicaSelector(Strings.nullToEmpty(zone));
         crdtService.host(storeDescriptorMapCRDTURI(clusterId));
         storeDescriptorCRDT = (IORMap) crdtService.get(storeDescriptorMapCRDTURI(clusterId)).get();
 
@@ -210,8 +214,34 @@ class BaseKVStoreClient implements IBaseKVStoreClient {
         if (pipelines == null) {
             return CompletableFuture.failedFuture(BaseKVException.SERVER_NOT_FOUND);
         }
+        long start = System.nanoTime();
+        replicaSelector.onStart(storeId);
         return pipelines.get((orderKey.hashCode() % pipelines.size() + pipelines.size()) % pipelines.size())
-            .query(request);
+            .query(request)
+            .whenComplete((v, e) -> replicaSelector.onDone(storeId, System.nanoTime() - start,
+                e == null && v.getCode() == ReplyCode.Ok));
+    }
+
+    @Override
+    public CompletableFuture<KVRangeROReply> query(KVRangeSetting setting, KVRangeRORequest request) {
+        return query(setting, request, String.valueOf(Thread.currentThread().getId()));
+    }
+
+    @Override
+    public CompletableFuture<KVRangeROReply> query(KVRangeSetting setting, KVRangeRORequest request,
+                                                   String orderKey) {
+        String storeId = replicaSelector.select(setting);
+        if (storeId.equals(setting.leader)) {
+            return query(storeId, request, orderKey);
+        }
+        return query(storeId, request, orderKey)
+            .thenCompose(reply -> {
+                if (reply.getCode() == ReplyCode.TryLater) {
+                    // the replica lags behind, turn to the leader
+                    return query(setting.leader, request, orderKey);
+                }
+                return CompletableFuture.completedFuture(reply);
+            });
     }
 
     @Override
@@ -283,14 +313,17 @@ class BaseKVStoreClient implements IBaseKVStoreClient {
     }
 
     private void updateRouter(long ts) {
+        Map<String, String> storeZones = Maps.newHashMap();
         Iterator<ByteString> keyItr = Iterators.transform(storeDescriptorCRDT.keys(), k -> k.key());
         while (keyItr.hasNext()) {
             Optional<KVRangeStoreDescriptor> storeDescOpt = getDescriptorFromCRDT(storeDescriptorCRDT, keyItr.next());
             if (storeDescOpt.isPresent()) {
                 KVRangeStoreDescriptor storeDesc = storeDescOpt.get();
+                storeZones.put(storeDesc.getId(), storeDesc.getZone());
                 updateRouter(storeDesc);
             }
         }
+        replicaSelector.updateZones(storeZones);
     }
 
     private void updateRouter(KVRangeStoreDescriptor storeDescriptor) {
@@ -336,6 +369,7 @@ class BaseKVStoreClient implements IBaseKVStoreClient {
 
         execPplns = nextExecPplns;
         queryPplns = nextQueryPplns;
+        replicaSelector.retain(serverIds);
         lnrQueryPplns = nextLnrQueryPplns;
     }
 
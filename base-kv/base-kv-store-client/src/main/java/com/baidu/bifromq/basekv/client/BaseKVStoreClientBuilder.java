@@ -14,6 +14,7 @@
 package com.baidu.bifromq.basekv.client;
 
 import com.baidu.bifromq.basecrdt.service.ICRDTService;
+import com.baidu.bifromq.basekv.Constants;
 import com.baidu.bifromq.basekv.RPCBluePrint;
 import com.baidu.bifromq.baserpc.IRPCClient;
 import io.netty.channel.EventLoopGroup;
@@ -29,6 +30,7 @@ public abstract class BaseKVStoreClientBuilder<T extends BaseKVStoreClientBuilde
     protected Executor executor;
     protected int execPipelinesPerServer;
     protected int queryPipelinesPerServer;
+    protected String zone = Constants.localZone();
 
     public T clusterId(@NonNull String clusterId) {
         this.clusterId = clusterId;
@@ -55,6 +57,18 @@ public abstract class BaseKVStoreClientBuilder<T extends BaseKVStoreClientBuilde
         return (T) this;
     }
 
+    /**
+     * The zone where the client is deployed, the replicas in the same zone are preferred for non-linearized queries.
+     * It defaults to the value of system property 'basekv_zone'.
+     *
+     * @param zone
+     * @return
+     */
+    public T zone(String zone) {
+        this.zone = zone;
+        return (T) this;
+    }
+
     public abstract IBaseKVStoreClient build();
 
     public static final class InProcClientBuilder extends BaseKVStoreClientBuilder<InProcClientBuilder> {
@@ -69,7 +83,7 @@ public abstract class BaseKVStoreClientBuilder<T extends BaseKVStoreClientBuilde
                 .build();
 
             return new BaseKVStoreClient(clusterId, crdtService, rpcClient,
-                execPipelinesPerServer, queryPipelinesPerServer);
+                execPipelinesPerServer, queryPipelinesPerServer, zone);
         }
     }
 
@@ -112,7 +126,7 @@ public abstract class BaseKVStoreClientBuilder<T extends BaseKVStoreClientBuilde
                 .build();
 
             return new BaseKVStoreClient(clusterId, crdtService, rpcClient,
-                execPipelinesPerServer, queryPipelinesPerServer) {
+                execPipelinesPerServer, queryPipelinesPerServer, zone) {
             };
         }
     }
@@ -156,7 +170,7 @@ public abstract class BaseKVStoreClientBuilder<T extends BaseKVStoreClientBuilde
 
 
             return new BaseKVStoreClient(clusterId, crdtService, rpcClient,
-                execPipelinesPerServer, queryPipelinesPerServer) {
+                execPipelinesPerServer, queryPipelinesPerServer, zone) {
             };
         }
     }
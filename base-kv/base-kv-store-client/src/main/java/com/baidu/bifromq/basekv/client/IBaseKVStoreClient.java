@@ -14,6 +14,7 @@
 package com.baidu.bifromq.basekv.client;
 
 import com.baidu.bifromq.basekv.IKVRangeRouter;
+import com.baidu.bifromq.basekv.KVRangeSetting;
 import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
 import com.baidu.bifromq.basekv.store.proto.BootstrapReply;
 import com.baidu.bifromq.basekv.store.proto.ChangeReplicaConfigReply;
@@ -113,6 +114,27 @@ public interface IBaseKVStoreClient extends IKVRangeRouter {
      */
     CompletableFuture<KVRangeROReply> query(String storeId, KVRangeRORequest request, String orderKey);
 
+    /**
+     * Execute a read-only query on one of the in-sync replicas of the range, which is selected by observed latency,
+     * in-flight queries and zone. The query turns to the leader if the selected replica lags too far behind.
+     *
+     * @param setting
+     * @param request
+     * @return
+     */
+    CompletableFuture<KVRangeROReply> query(KVRangeSetting setting, KVRangeRORequest request);
+
+    /**
+     * Same as {@link #query(KVRangeSetting, KVRangeRORequest)}, the requests with same orderKey routed to the same
+     * replica will be processed orderly
+     *
+     * @param setting
+     * @param request
+     * @param orderKey
+     * @return
+     */
+    CompletableFuture<KVRangeROReply> query(KVRangeSetting setting, KVRangeRORequest request, String orderKey);
+
     /**
      * Execute a read-only linearized query, the requests from same calling thread will be processed orderly
      *
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.client;
+
+import com.baidu.bifromq.basekv.KVRangeSetting;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * Replica selection policy for non-linearized queries. The candidates are the replicas in sync with the leader, and
+ * those in the same zone as the client are preferred if any. Two of the candidates are picked randomly, the one with
+ * lower cost wins, where the cost is the decayed EWMA of observed latency weighted by the number of in-flight queries.
+ */
+class ReplicaSelector {
+    private static final double ALPHA = 0.2;
+    private static final long DECAY_NANOS = 10_000_000_000L;
+    private static final long FAILURE_PENALTY_NANOS = 1_000_000_000L;
+    private final String zone;
+    private final Map<String, ReplicaStats> replicaStats = new ConcurrentHashMap<>();
+    private volatile Map<String, String> storeZones = Collections.emptyMap();
+
+    ReplicaSelector(@NonNull String zone) {
+        this.zone = zone;
+    }
+
+    void updateZones(Map<String, String> storeZones) {
+        this.storeZones = storeZones;
+    }
+
+    void retain(Set<String> storeIds) {
+        replicaStats.keySet().retainAll(storeIds);
+    }
+
+    String select(KVRangeSetting setting) {
+        List<String> replicas = setting.allReplicas;
+        if (replicas.isEmpty()) {
+            return setting.leader;
+        }
+        int localCount = 0;
+        if (!zone.isEmpty()) {
+            for (String replica : replicas) {
+                if (isLocal(replica)) {
+                    localCount++;
+                }
+            }
+        }
+        boolean localOnly = localCount > 0;
+        int candidates = localOnly ? localCount : replicas.size();
+        if (candidates == 1) {
+            return localOnly ? nthLocal(replicas, 0) : replicas.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(candidates);
+        int j = random.nextInt(candidates - 1);
+        if (j >= i) {
+            j++;
+        }
+        String first = localOnly ? nthLocal(replicas, i) : replicas.get(i);
+        String second = localOnly ? nthLocal(replicas, j) : replicas.get(j);
+        long now = System.nanoTime();
+        return cost(first, now) <= cost(second, now) ? first : second;
+    }
+
+    void onStart(String storeId) {
+        stats(storeId).inflight.incrementAndGet();
+    }
+
+    void onDone(String storeId, long latencyNanos, boolean success) {
+        ReplicaStats stats = stats(storeId);
+        // the stats may be recreated after the store is gone and back
+        stats.inflight.updateAndGet(v -> v > 0 ? v - 1 : 0);
+        stats.observe(success ? latencyNanos : Math.max(latencyNanos, FAILURE_PENALTY_NANOS));
+    }
+
+    private boolean isLocal(String storeId) {
+        return zone.equals(storeZones.get(storeId));
+    }
+
+    private String nthLocal(List<String> replicas, int n) {
+        for (String replica : replicas) {
+            if (isLocal(replica) && n-- == 0) {
+                return replica;
+            }
+        }
+        throw new IllegalStateException("Never happen");
+    }
+
+    private double cost(String storeId, long now) {
+        ReplicaStats stats = replicaStats.get(storeId);
+        if (stats == null) {
+            // never queried, give it a try
+            return 0;
+        }
+        return stats.latency(now) * (stats.inflight.get() + 1);
+    }
+
+    private ReplicaStats stats(String storeId) {
+        return replicaStats.computeIfAbsent(storeId, k -> new ReplicaStats());
+    }
+
+    private static class ReplicaStats {
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private volatile long lastObservedAt = System.nanoTime();
+
+        void observe(long latencyNanos) {
+            long prev;
+            long next;
+            do {
+                prev = ewmaBits.get();
+                double ewma = Double.longBitsToDouble(prev);
+                next = Double.doubleToRawLongBits(ewma == 0 ? latencyNanos : ewma + ALPHA * (latencyNanos - ewma));
+            } while (!ewmaBits.compareAndSet(prev, next));
+            lastObservedAt = System.nanoTime();
+        }
+
+        double latency(long now) {
+            // the observation fades out over time, so that the replica once slow gets the chance to be picked again
+            double ewma = Double.longBitsToDouble(ewmaBits.get());
+            return ewma * Math.exp(-(double) Math.max(0, now - lastObservedAt) / DECAY_NANOS);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.client;
+
+import static com.baidu.bifromq.basekv.store.CRDTUtil.storeDescriptorMapCRDTURI;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.basecrdt.core.api.IORMap;
+import com.baidu.bifromq.basecrdt.service.ICRDTService;
+import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeSyncState;
+import com.baidu.bifromq.basekv.store.proto.BaseKVStoreServiceGrpc;
+import com.baidu.bifromq.basekv.store.proto.KVRangeROReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
+import com.baidu.bifromq.basekv.store.proto.ReplyCode;
+import com.baidu.bifromq.baserpc.IRPCClient;
+import io.grpc.MethodDescriptor;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BaseKVStoreClientTest {
+    private final String clusterId = "testCluster";
+    private final String leader = "leader";
+    private final String follower = "follower";
+    // the leader is not in sync, so the follower is the only candidate for non-linearized query
+    private final KVRangeSetting setting = new KVRangeSetting(leader, KVRangeDescriptor.newBuilder()
+        .setConfig(ClusterConfig.newBuilder()
+            .addVoters(leader)
+            .addVoters(follower)
+            .build())
+        .putSyncState(leader, RaftNodeSyncState.Probing)
+        .putSyncState(follower, RaftNodeSyncState.Replicating)
+        .build());
+    private final KVRangeRORequest request = KVRangeRORequest.newBuilder().setReqId(1).build();
+    @Mock
+    private ICRDTService crdtService;
+    @Mock
+    private IORMap storeDescriptorCRDT;
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private IRPCClient.IRequestPipeline<Object, Object> otherPipeline;
+    @Mock
+    private IRPCClient.IRequestPipeline<KVRangeRORequest, KVRangeROReply> leaderQueryPipeline;
+    @Mock
+    private IRPCClient.IRequestPipeline<KVRangeRORequest, KVRangeROReply> followerQueryPipeline;
+    private AutoCloseable closeable;
+    private BaseKVStoreClient client;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(crdtService.get(storeDescriptorMapCRDTURI(clusterId))).thenReturn(Optional.of(storeDescriptorCRDT));
+        when(storeDescriptorCRDT.inflation()).thenReturn(Observable.never());
+        when(storeDescriptorCRDT.keys()).thenReturn(Collections.emptyIterator());
+        when(rpcClient.serverList()).thenReturn(BehaviorSubject.createDefault(Set.of(leader, follower)));
+        doReturn(otherPipeline).when(rpcClient)
+            .createRequestPipeline(anyString(), anyString(), isNull(), anyMap(), any(MethodDescriptor.class));
+        doReturn(leaderQueryPipeline).when(rpcClient)
+            .createRequestPipeline(eq(""), eq(leader), isNull(), anyMap(),
+                eq(BaseKVStoreServiceGrpc.getQueryMethod()));
+        doReturn(followerQueryPipeline).when(rpcClient)
+            .createRequestPipeline(eq(""), eq(follower), isNull(), anyMap(),
+                eq(BaseKVStoreServiceGrpc.getQueryMethod()));
+        client = new BaseKVStoreClient(clusterId, crdtService, rpcClient, 1, 1, "");
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void queryFollower() {
+        KVRangeROReply reply = KVRangeROReply.newBuilder().setReqId(1).setCode(ReplyCode.Ok).build();
+        when(followerQueryPipeline.invoke(request)).thenReturn(CompletableFuture.completedFuture(reply));
+        assertEquals(client.query(setting, request).join(), reply);
+        verify(leaderQueryPipeline, never()).invoke(any());
+    }
+
+    @Test
+    public void retryLeaderWhenFollowerLagging() {
+        KVRangeROReply tryLater = KVRangeROReply.newBuilder().setReqId(1).setCode(ReplyCode.TryLater).build();
+        KVRangeROReply reply = KVRangeROReply.newBuilder().setReqId(1).setCode(ReplyCode.Ok).build();
+        when(followerQueryPipeline.invoke(request)).thenReturn(CompletableFuture.completedFuture(tryLater));
+        when(leaderQueryPipeline.invoke(request)).thenReturn(CompletableFuture.completedFuture(reply));
+        assertEquals(client.query(setting, request).join(), reply);
+        verify(followerQueryPipeline).invoke(request);
+        verify(leaderQueryPipeline).invoke(request);
+    }
+
+    @Test
+    public void noRetryOnOtherError() {
+        KVRangeROReply badVersion = KVRangeROReply.newBuilder().setReqId(1).setCode(ReplyCode.BadVersion).build();
+        when(followerQueryPipeline.invoke(request)).thenReturn(CompletableFuture.completedFuture(badVersion));
+        assertEquals(client.query(setting, request).join(), badVersion);
+        verify(leaderQueryPipeline, never()).invoke(any());
+    }
+}
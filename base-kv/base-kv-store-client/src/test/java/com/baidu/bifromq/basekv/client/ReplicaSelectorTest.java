@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeSyncState;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+public class ReplicaSelectorTest {
+    private final KVRangeSetting setting = new KVRangeSetting("s1", KVRangeDescriptor.newBuilder()
+        .setConfig(ClusterConfig.newBuilder()
+            .addVoters("s1")
+            .addVoters("s2")
+            .addVoters("s3")
+            .addLearners("s4")
+            .build())
+        .putSyncState("s1", RaftNodeSyncState.Replicating)
+        .putSyncState("s2", RaftNodeSyncState.Replicating)
+        .putSyncState("s3", RaftNodeSyncState.Probing)
+        .putSyncState("s4", RaftNodeSyncState.Replicating)
+        .build());
+
+    @Test
+    public void selectInSyncReplicas() {
+        ReplicaSelector selector = new ReplicaSelector("");
+        Set<String> selected = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            selected.add(selector.select(setting));
+        }
+        assertEquals(selected, Set.of("s1", "s2", "s4"));
+    }
+
+    @Test
+    public void preferSameZone() {
+        ReplicaSelector selector = new ReplicaSelector("zoneA");
+        Map<String, String> zones = new HashMap<>();
+        zones.put("s1", "zoneB");
+        zones.put("s2", "zoneA");
+        zones.put("s3", "zoneA");
+        zones.put("s4", "zoneB");
+        selector.updateZones(zones);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(selector.select(setting), "s2");
+        }
+    }
+
+    @Test
+    public void avoidSlowReplica() {
+        ReplicaSelector selector = new ReplicaSelector("");
+        for (String storeId : setting.allReplicas) {
+            selector.onStart(storeId);
+            selector.onDone(storeId, storeId.equals("s2") ? 100_000_000L : 1_000_000L, true);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(selector.select(setting), "s2");
+        }
+    }
+
+    @Test
+    public void avoidBusyReplica() {
+        ReplicaSelector selector = new ReplicaSelector("");
+        for (String storeId : setting.allReplicas) {
+            selector.onStart(storeId);
+            selector.onDone(storeId, 1_000_000L, true);
+        }
+        for (int i = 0; i < 10; i++) {
+            selector.onStart("s4");
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(selector.select(setting), "s4");
+        }
+    }
+
+    @Test
+    public void avoidFailedReplica() {
+        ReplicaSelector selector = new ReplicaSelector("");
+        for (String storeId : setting.allReplicas) {
+            selector.onStart(storeId);
+            selector.onDone(storeId, 1_000_000L, !storeId.equals("s1"));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(selector.select(setting), "s1");
+        }
+    }
+}
@@ -22,4 +22,11 @@ public class Constants {
 
     public static final Range EMPTY_RANGE = Range.newBuilder().setEndKey(MIN_KEY).build();
     public static final Range FULL_RANGE = Range.getDefaultInstance();
+
+    // the system property specifying the zone where the process is deployed, used by both stores and clients
+    public static final String ZONE_PROP_KEY = "basekv_zone";
+
+    public static String localZone() {
+        return System.getProperty(ZONE_PROP_KEY, "");
+    }
 }
@@ -11,6 +11,7 @@
  * See the License for the specific language governing permissions and limitations under the License.
  */
 
+
 package com.baidu.bifromq.basekv;
 
 import static com.google.protobuf.ByteString.unsignedLexicographicalComparator;
@@ -23,6 +24,8 @@ import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
 import com.baidu.bifromq.basekv.utils.KeyRangeUtil;
 import com.google.protobuf.ByteString;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -30,96 +33,51 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Optional;
 import java.util.TreeMap;
-import java.util.concurrent.locks.StampedLock;
 
+/**
+ * The router keeps the mutable range table for updating only, and publishes an immutable snapshot of it after each
+ * change. Lookups are served by the latest published snapshot without locking, while updates are serialized.
+ */
 public final class KVRangeRouter implements IKVRangeRouter {
-    private final StampedLock stampedLock = new StampedLock();
-    private final Comparator<ByteString> comparator = unsignedLexicographicalComparator();
-    private final NavigableMap<ByteString, KVRangeSetting> rangeTable = new TreeMap<>(comparator);
+    private static final Comparator<ByteString> COMPARATOR = unsignedLexicographicalComparator();
+    private final NavigableMap<ByteString, KVRangeSetting> rangeTable = new TreeMap<>(COMPARATOR);
     private final Map<KVRangeId, KVRangeSetting> rangeMap = new HashMap<>();
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
 
-    public void reset(KVRangeStoreDescriptor storeDescriptor) {
-        final long stamp = stampedLock.writeLock();
-        try {
-            rangeTable.clear();
-            rangeMap.clear();
-            storeDescriptor.getRangesList()
-                .forEach(rangeDesc -> this.upsertWithoutLock(storeDescriptor.getId(), rangeDesc));
-        } finally {
-            stampedLock.unlockWrite(stamp);
-        }
+    public synchronized void reset(KVRangeStoreDescriptor storeDescriptor) {
+        rangeTable.clear();
+        rangeMap.clear();
+        storeDescriptor.getRangesList().forEach(rangeDesc -> upsert(storeDescriptor.getId(), rangeDesc));
+        routingTable = new RoutingTable(rangeTable, rangeMap);
     }
 
-    public void upsert(KVRangeStoreDescriptor storeDescriptor) {
-        final long stamp = stampedLock.writeLock();
-        try {
-            storeDescriptor.getRangesList()
-                .forEach(rangeDesc -> this.upsertWithoutLock(storeDescriptor.getId(), rangeDesc));
-        } finally {
-            stampedLock.unlockWrite(stamp);
+    public synchronized void upsert(KVRangeStoreDescriptor storeDescriptor) {
+        boolean changed = false;
+        for (KVRangeDescriptor rangeDesc : storeDescriptor.getRangesList()) {
+            changed |= upsert(storeDescriptor.getId(), rangeDesc);
+        }
+        if (changed) {
+            routingTable = new RoutingTable(rangeTable, rangeMap);
         }
     }
 
     public boolean isFullRangeCovered() {
-        final long stamp = stampedLock.readLock();
-        try {
-            if (rangeTable.isEmpty()) {
-                return false;
-            }
-            ByteString firstKey = rangeTable.firstKey();
-            if (!firstKey.equals(Constants.MIN_KEY) || rangeTable.firstEntry().getValue().range.hasStartKey()) {
-                // the lower bound of the first range is explicitly set to empty byte string.
-                return false;
-            }
-            ByteString endKey = Constants.MIN_KEY;
-            for (Map.Entry<ByteString, KVRangeSetting> entry : rangeTable.entrySet()) {
-                Range range = entry.getValue().range;
-                if (!endKey.equals(range.getStartKey())) {
-                    return false;
-                } else {
-                    endKey = range.getEndKey();
-                }
-            }
-            // the upper bound of the last range is open
-            return !rangeTable.lastEntry().getValue().range.hasEndKey();
-        } finally {
-            stampedLock.unlockRead(stamp);
-        }
+        return routingTable.fullRangeCovered;
     }
 
     public Optional<KVRangeSetting> findByKey(ByteString key) {
-        final long stamp = stampedLock.readLock();
-        try {
-            Map.Entry<ByteString, KVRangeSetting> entry = rangeTable.floorEntry(key);
-            if (entry != null) {
-                KVRangeSetting setting = entry.getValue();
-                if (KeyRangeUtil.inRange(key, setting.range)) {
-                    return Optional.of(setting);
-                } else {
-                    return Optional.empty();
-                }
-            } else {
-                return Optional.empty();
-            }
-        } finally {
-            stampedLock.unlockRead(stamp);
-        }
+        return routingTable.findByKey(key);
     }
 
     public List<KVRangeSetting> findByRange(Range range) {
-        final long stamp = stampedLock.readLock();
-        try {
-            return findByRangeWithoutLock(range);
-        } finally {
-            stampedLock.unlockRead(stamp);
-        }
+        return routingTable.findByRange(range);
     }
 
     public Optional<KVRangeSetting> findById(KVRangeId id) {
-        return Optional.ofNullable(rangeMap.get(id));
+        return Optional.ofNullable(routingTable.rangeMap.get(id));
     }
 
-    private List<KVRangeSetting> findByRangeWithoutLock(Range range) {
+    private List<KVRangeSetting> findOverlapped(Range range) {
         List<KVRangeSetting> ranges = new ArrayList<>();
         // range before range.start
         Map.Entry<ByteString, KVRangeSetting> before = rangeTable.lowerEntry(range.getStartKey());
@@ -138,7 +96,7 @@ public final class KVRangeRouter implements IKVRangeRouter {
         return ranges;
     }
 
-    private boolean upsertWithoutLock(String storeId, KVRangeDescriptor descriptor) {
+    private boolean upsert(String storeId, KVRangeDescriptor descriptor) {
         if (descriptor.getRole() != RaftNodeStatus.Leader) {
             return false;
         }
@@ -154,13 +112,17 @@ public final class KVRangeRouter implements IKVRangeRouter {
         }
         KVRangeSetting setting = new KVRangeSetting(storeId, descriptor);
 
-        List<KVRangeSetting> overlapped = findByRangeWithoutLock(setting.range);
+        List<KVRangeSetting> overlapped = findOverlapped(setting.range);
         if (overlapped.isEmpty()) {
             rangeTable.put(setting.range.getStartKey(), setting);
             rangeMap.put(setting.id, setting);
             return true;
         } else {
             if (overlapped.stream().allMatch(o -> o.ver <= setting.ver)) {
+                if (overlapped.size() == 1 && overlapped.get(0).equals(setting)) {
+                    // nothing changed
+                    return false;
+                }
                 overlapped.forEach(o -> {
                     rangeTable.remove(o.range.getStartKey());
                     rangeMap.remove(o.id);
@@ -172,4 +134,74 @@ public final class KVRangeRouter implements IKVRangeRouter {
             return false;
         }
     }
+
+    /**
+     * Immutable snapshot of the range table, the ranges are sorted by their start keys and never overlap.
+     */
+    private static final class RoutingTable {
+        static final RoutingTable EMPTY = new RoutingTable(Collections.emptyNavigableMap(), Collections.emptyMap());
+        final ByteString[] startKeys;
+        final List<KVRangeSetting> settings;
+        // the lookup results are prepared in advance to save allocation in findByKey
+        final List<Optional<KVRangeSetting>> found;
+        final Map<KVRangeId, KVRangeSetting> rangeMap;
+        final boolean fullRangeCovered;
+
+        RoutingTable(NavigableMap<ByteString, KVRangeSetting> rangeTable, Map<KVRangeId, KVRangeSetting> rangeMap) {
+            this.startKeys = rangeTable.keySet().toArray(new ByteString[0]);
+            this.settings = List.copyOf(rangeTable.values());
+            this.found = settings.stream().map(Optional::of).toList();
+            this.rangeMap = Map.copyOf(rangeMap);
+            this.fullRangeCovered = isFullRangeCovered(settings);
+        }
+
+        Optional<KVRangeSetting> findByKey(ByteString key) {
+            int i = Arrays.binarySearch(startKeys, key, COMPARATOR);
+            // the range with greatest start key less than or equal to the key
+            int floor = i >= 0 ? i : -i - 2;
+            if (floor >= 0) {
+                if (KeyRangeUtil.inRange(key, settings.get(floor).range)) {
+                    return found.get(floor);
+                }
+            }
+            return Optional.empty();
+        }
+
+        List<KVRangeSetting> findByRange(Range range) {
+            int i = Arrays.binarySearch(startKeys, range.getStartKey(), COMPARATOR);
+            // the first range whose start key is greater than or equal to range.start
+            int ceiling = i >= 0 ? i : -i - 1;
+            int from = ceiling;
+            // range before range.start
+            if (ceiling > 0 && KeyRangeUtil.inRange(range.getStartKey(), settings.get(ceiling - 1).range)) {
+                from = ceiling - 1;
+            }
+            // ranges after range.start
+            int to = ceiling;
+            while (to < startKeys.length && KeyRangeUtil.isOverlap(settings.get(to).range, range)) {
+                to++;
+            }
+            return from == to ? Collections.emptyList() : settings.subList(from, to);
+        }
+
+        private static boolean isFullRangeCovered(List<KVRangeSetting> settings) {
+            if (settings.isEmpty()) {
+                return false;
+            }
+            if (settings.get(0).range.hasStartKey()) {
+                // the lower bound of the first range is explicitly set to empty byte string.
+                return false;
+            }
+            ByteString endKey = Constants.MIN_KEY;
+            for (KVRangeSetting setting : settings) {
+                if (!endKey.equals(setting.range.getStartKey())) {
+                    return false;
+                } else {
+                    endKey = setting.range.getEndKey();
+                }
+            }
+            // the upper bound of the last range is open
+            return !settings.get(settings.size() - 1).range.hasEndKey();
+        }
+    }
 }
@@ -20,6 +20,8 @@ import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
 import com.baidu.bifromq.basekv.proto.Range;
 import com.google.common.io.BaseEncoding;
 import com.google.protobuf.ByteString;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Optional;
 
 public class KeyRangeUtil {
@@ -106,6 +108,40 @@ public class KeyRangeUtil {
         }
     }
 
+    /**
+     * Find the key in the middle of the range by treating the boundaries as zero-padded unsigned integers of the same
+     * length, the open end is treated as all 0xFF bytes.
+     *
+     * @param range the range to bisect
+     * @return the key which is strictly greater than the start key and less than the end key
+     */
+    public static Optional<ByteString> midKey(Range range) {
+        if (isEmptyRange(range)) {
+            return Optional.empty();
+        }
+        byte[] start = range.getStartKey().toByteArray();
+        byte[] end;
+        int len;
+        if (range.hasEndKey()) {
+            end = range.getEndKey().toByteArray();
+            len = Math.max(start.length, end.length) + 1;
+        } else {
+            len = start.length + 1;
+            end = new byte[len];
+            Arrays.fill(end, (byte) 0xFF);
+        }
+        BigInteger sum = new BigInteger(1, Arrays.copyOf(start, len)).add(new BigInteger(1, Arrays.copyOf(end, len)));
+        byte[] mid = sum.shiftRight(1).toByteArray();
+        byte[] midKey = new byte[len];
+        int copyLen = Math.min(mid.length, len);
+        System.arraycopy(mid, mid.length - copyLen, midKey, len - copyLen, copyLen);
+        ByteString key = unsafeWrap(midKey);
+        if (compare(range.getStartKey(), key) < 0 && (!range.hasEndKey() || compare(key, range.getEndKey()) < 0)) {
+            return Optional.of(key);
+        }
+        return Optional.empty();
+    }
+
     public static Range combine(Range... ranges) {
         assert ranges.length >= 2;
         Range range = ranges[0];
@@ -228,6 +228,32 @@ public class KVRangeRouterTest {
         assertTrue(router.isFullRangeCovered());
     }
 
+    @Test
+    public void testFindById() {
+        KVRangeRouter router = new KVRangeRouter();
+        router.upsert(bucket__a);
+        router.upsert(bucket_a_c);
+        assertEquals(router.findById(bucket__a.getRanges(0).getId()).get(), convert(bucket__a));
+        assertEquals(router.findById(bucket_a_c.getRanges(0).getId()).get(), convert(bucket_a_c));
+        router.upsert(bucket_full_range);
+        assertFalse(router.findById(bucket__a.getRanges(0).getId()).isPresent());
+        assertEquals(router.findById(bucket_full_range.getRanges(0).getId()).get(), convert(bucket_full_range));
+    }
+
+    @Test
+    public void testLookupResultUnaffectedByUpdate() {
+        KVRangeRouter router = new KVRangeRouter();
+        router.upsert(bucket__a);
+        router.upsert(bucket_a_c);
+        router.upsert(bucket_c_e);
+        router.upsert(bucket_e_);
+        List<KVRangeSetting> found = router.findByRange(FULL_RANGE);
+        router.upsert(bucket_full_range);
+        assertEquals(found, Arrays.asList(convert(bucket__a), convert(bucket_a_c), convert(bucket_c_e),
+            convert(bucket_e_)));
+        assertEquals(router.findByRange(FULL_RANGE), List.of(convert(bucket_full_range)));
+    }
+
     private KVRangeSetting convert(KVRangeStoreDescriptor storeDescriptor) {
         return new KVRangeSetting(storeDescriptor.getId(), storeDescriptor.getRanges(0));
     }
@@ -23,6 +23,7 @@ import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.inRange;
 import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.intersect;
 import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.isOverlap;
 import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.leastUpperBound;
+import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.midKey;
 import static com.google.protobuf.ByteString.EMPTY;
 import static com.google.protobuf.ByteString.copyFrom;
 import static com.google.protobuf.ByteString.copyFromUtf8;
@@ -31,6 +32,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basekv.proto.Range;
+import com.google.protobuf.ByteString;
 import org.testng.annotations.Test;
 
 public class KeyRangeUtilTest {
@@ -44,6 +46,19 @@ public class KeyRangeUtilTest {
         assertEquals(leastUpperBound(range("a", "b"), range("a", "b1")).get(), copyFromUtf8("b"));
     }
 
+    @Test
+    public void testMidKey() {
+        assertFalse(midKey(EMPTY_RANGE).isPresent());
+        assertEquals(midKey(FULL_RANGE).get(), copyFrom(new byte[] {0x7F}));
+        assertEquals(midKey(range("a", "b")).get(), copyFrom(new byte[] {'a', (byte) 0x80}));
+        assertEquals(midKey(range("a", null)).get(), copyFrom(new byte[] {(byte) 0xB0, 0x7F}));
+        assertEquals(midKey(range(null, "b")).get(), copyFrom(new byte[] {0x31, 0x00}));
+        assertFalse(midKey(range("a", "a\u0000")).isPresent());
+        Range range = range("abc", "abd");
+        ByteString key = midKey(range).get();
+        assertTrue(inRange(key, range) && !key.equals(range.getStartKey()));
+    }
+
     @Test
     public void testGreaterLowerBound() {
         assertFalse(greaterLowerBound(FULL_RANGE, FULL_RANGE).isPresent());
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.benchmark;
+
+import com.baidu.bifromq.basekv.KVRangeRouter;
+import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.raft.proto.RaftNodeStatus;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.protobuf.ByteString;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the lookups per second of the router while the range descriptors are being updated concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Group)
+public class KVRangeRouterBenchmark {
+    @Param({"16", "1024"})
+    private int rangeCount;
+
+    private KVRangeRouter router;
+    private ByteString[] keys;
+    private KVRangeId[] rangeIds;
+    private Range[] ranges;
+    private long[] vers;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        router = new KVRangeRouter();
+        keys = new ByteString[rangeCount];
+        rangeIds = new KVRangeId[rangeCount];
+        ranges = new Range[rangeCount];
+        vers = new long[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            Range.Builder rangeBuilder = Range.newBuilder();
+            if (i > 0) {
+                rangeBuilder.setStartKey(boundary(i));
+            }
+            if (i < rangeCount - 1) {
+                rangeBuilder.setEndKey(boundary(i + 1));
+            }
+            keys[i] = boundary(i).concat(ByteString.copyFromUtf8("key"));
+            rangeIds[i] = KVRangeIdUtil.generate();
+            ranges[i] = rangeBuilder.build();
+            router.upsert(descriptor(i));
+        }
+    }
+
+    @Benchmark
+    @Group("routing")
+    @GroupThreads(8)
+    public void findByKey(Blackhole blackhole) {
+        blackhole.consume(router.findByKey(keys[ThreadLocalRandom.current().nextInt(rangeCount)]));
+    }
+
+    @Benchmark
+    @Group("routing")
+    @GroupThreads(1)
+    public void upsert() {
+        router.upsert(descriptor(ThreadLocalRandom.current().nextInt(rangeCount)));
+    }
+
+    private KVRangeStoreDescriptor descriptor(int i) {
+        // bump the version so that the upsert takes effect
+        return KVRangeStoreDescriptor.newBuilder()
+            .setId("store")
+            .addRanges(KVRangeDescriptor.newBuilder()
+                .setId(rangeIds[i])
+                .setVer(vers[i]++)
+                .setRole(RaftNodeStatus.Leader)
+                .setRange(ranges[i])
+                .build())
+            .build();
+    }
+
+    private static ByteString boundary(int i) {
+        return ByteString.copyFromUtf8(String.format("%08d", i));
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(KVRangeRouterBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
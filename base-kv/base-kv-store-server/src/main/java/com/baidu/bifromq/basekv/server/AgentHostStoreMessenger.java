@@ -13,18 +13,44 @@
 
 package com.baidu.bifromq.basekv.server;
 
+import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basecluster.IAgentHost;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgent;
 import com.baidu.bifromq.basecluster.memberlist.agent.IAgentMember;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
 import com.baidu.bifromq.basekv.store.IStoreMessenger;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import io.reactivex.rxjava3.core.Observable;
-import java.util.Optional;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The messenger exchanging store messages via agent host. When batching is enabled, messages of all ranges targeting
+ * the same store are buffered for a short window, or until the byte budget is reached, and sent as one
+ * StoreMessageBatch frame. Broadcast messages are always sent immediately. The receiver accepts both single message
+ * and batch frame, telling them apart by the first field number. Flushes run on a scheduler owned by the messenger,
+ * so they never queue behind other background tasks.
+ */
 @Slf4j
 class AgentHostStoreMessenger implements IStoreMessenger {
     static String agentId(String clusterId) {
@@ -37,19 +63,65 @@ class AgentHostStoreMessenger implements IStoreMessenger {
     private final IAgentMember agentMember;
     private final String clusterId;
     private final String storeId;
+    private final ScheduledExecutorService flushScheduler;
+    private final boolean ownFlushScheduler;
+    private final long batchWindowMicros;
+    private final int maxBatchBytes;
+    private final Map<String, Batcher> batchers = new ConcurrentHashMap<>();
+    private final MetricManager metricMgr;
 
     AgentHostStoreMessenger(IAgentHost agentHost, String clusterId, String storeId) {
+        this(agentHost, clusterId, storeId, null, 0, 0);
+    }
+
+    AgentHostStoreMessenger(IAgentHost agentHost,
+                            String clusterId,
+                            String storeId,
+                            long batchWindowMicros,
+                            int maxBatchBytes) {
+        this(agentHost, clusterId, storeId, batchWindowMicros > 0
+                ? Executors.newSingleThreadScheduledExecutor(
+                EnvProvider.INSTANCE.newThreadFactory("store-msg-flusher-" + storeId)) : null,
+            true, batchWindowMicros, maxBatchBytes);
+    }
+
+    AgentHostStoreMessenger(IAgentHost agentHost,
+                            String clusterId,
+                            String storeId,
+                            ScheduledExecutorService flushScheduler,
+                            long batchWindowMicros,
+                            int maxBatchBytes) {
+        this(agentHost, clusterId, storeId, flushScheduler, false, batchWindowMicros, maxBatchBytes);
+    }
+
+    private AgentHostStoreMessenger(IAgentHost agentHost,
+                                    String clusterId,
+                                    String storeId,
+                                    ScheduledExecutorService flushScheduler,
+                                    boolean ownFlushScheduler,
+                                    long batchWindowMicros,
+                                    int maxBatchBytes) {
         this.agentHost = agentHost;
         this.clusterId = clusterId;
         this.storeId = storeId;
+        this.flushScheduler = flushScheduler;
+        this.ownFlushScheduler = ownFlushScheduler;
+        this.batchWindowMicros = flushScheduler != null ? batchWindowMicros : 0;
+        this.maxBatchBytes = maxBatchBytes;
         this.agent = agentHost.host(agentId(clusterId));
         this.agentMember = agent.register(storeId);
+        this.metricMgr = new MetricManager();
     }
 
     @Override
     public void send(StoreMessage message) {
         if (message.getPayload().hasHostStoreId()) {
-            agentMember.multicast(message.getPayload().getHostStoreId(), message.toByteString(), true);
+            String targetStoreId = message.getPayload().getHostStoreId();
+            if (batchWindowMicros > 0) {
+                batchers.computeIfAbsent(targetStoreId, Batcher::new).add(message);
+            } else {
+                agentMember.multicast(targetStoreId, message.toByteString(), true);
+            }
         } else {
             agentMember.broadcast(message.toByteString(), true);
         }
@@ -58,28 +130,135 @@ class AgentHostStoreMessenger implements IStoreMessenger {
     @Override
     public Observable<StoreMessage> receive() {
         return agentMember.receive()
-            .mapOptional(agentMessage -> {
+            .flatMapIterable(agentMessage -> {
                 try {
-                    StoreMessage message = StoreMessage.parseFrom(agentMessage.getPayload());
-                    KVRangeMessage payload = message.getPayload();
-                    if (!payload.hasHostStoreId()) {
-                        // this is a broadcast message
-                        message = message.toBuilder().setPayload(payload.toBuilder()
-                            .setHostStoreId(storeId)
-                            .build()).build();
+                    List<StoreMessage> messages = parseFrame(agentMessage.getPayload());
+                    List<StoreMessage> received = new ArrayList<>(messages.size());
+                    for (StoreMessage message : messages) {
+                        KVRangeMessage payload = message.getPayload();
+                        if (!payload.hasHostStoreId()) {
+                            // this is a broadcast message
+                            message = message.toBuilder().setPayload(payload.toBuilder()
+                                .setHostStoreId(storeId)
+                                .build()).build();
+                        }
+                        received.add(message);
                     }
-                    return Optional.of(message);
+                    return received;
                 } catch (InvalidProtocolBufferException e) {
                     log.warn("Unable to parse store message", e);
-                    return Optional.empty();
+                    return Collections.emptyList();
                 }
             });
     }
 
+    /**
+     * Parse a received frame which is either a standalone StoreMessage or a StoreMessageBatch. The kind is told by the
+     * field number of the first tag, so the frame is parsed only once.
+     */
+    static List<StoreMessage> parseFrame(ByteString frame) throws InvalidProtocolBufferException {
+        try {
+            int firstTag = frame.newCodedInput().readTag();
+            if (WireFormat.getTagFieldNumber(firstTag) == StoreMessageBatch.MESSAGE_FIELD_NUMBER) {
+                return StoreMessageBatch.parseFrom(frame).getMessageList();
+            }
+            return Collections.singletonList(StoreMessage.parseFrom(frame));
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+    }
+
     @Override
     public void close() {
         if (stopped.compareAndSet(false, true)) {
+            batchers.values().forEach(Batcher::flush);
+            if (ownFlushScheduler && flushScheduler != null) {
+                flushScheduler.shutdownNow();
+            }
             agent.deregister(agentMember).join();
+            metricMgr.close();
+        }
+    }
+
+    private class Batcher {
+        private final String targetStoreId;
+        private final Queue<StoreMessage> buffered = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger bufferedBytes = new AtomicInteger();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private volatile long windowStartNanos;
+
+        Batcher(String targetStoreId) {
+            this.targetStoreId = targetStoreId;
+        }
+
+        void add(StoreMessage message) {
+            buffered.offer(message);
+            if (bufferedBytes.addAndGet(message.getSerializedSize()) >= maxBatchBytes) {
+                flush();
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                windowStartNanos = System.nanoTime();
+                flushScheduler.schedule(this::flushOnWindowClosed, batchWindowMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        private void flushOnWindowClosed() {
+            // reset the flag before draining, so that messages arriving afterward will schedule another flush
+            flushScheduled.set(false);
+            if (stopped.get()) {
+                // pending messages have been flushed during closing
+                return;
+            }
+            metricMgr.batchDelayTimer.record(System.nanoTime() - windowStartNanos, TimeUnit.NANOSECONDS);
+            flush();
+        }
+
+        // synchronized to keep the order of messages to the same store across concurrent flushes
+        synchronized void flush() {
+            StoreMessageBatch.Builder batchBuilder = StoreMessageBatch.newBuilder();
+            StoreMessage message;
+            while ((message = buffered.poll()) != null) {
+                bufferedBytes.addAndGet(-message.getSerializedSize());
+                batchBuilder.addMessage(message);
+            }
+            int count = batchBuilder.getMessageCount();
+            if (count == 0) {
+                return;
+            }
+            // single message is sent as is, no need to wrap it
+            ByteString frame = count == 1
+                ? batchBuilder.getMessage(0).toByteString() : batchBuilder.build().toByteString();
+            agentMember.multicast(targetStoreId, frame, true);
+            metricMgr.batchSizeSummary.record(count);
+            metricMgr.batchBytesSummary.record(frame.size());
+        }
+    }
+
+    private class MetricManager {
+        private final DistributionSummary batchSizeSummary;
+        private final DistributionSummary batchBytesSummary;
+        private final Timer batchDelayTimer;
+
+        MetricManager() {
+            Tags tags = Tags.of("clusterId", clusterId).and("storeId", storeId);
+            batchSizeSummary = DistributionSummary.builder("basekv.store.msg.batch.size")
+                .tags(tags)
+                .baseUnit("messages")
+                .register(Metrics.globalRegistry);
+            batchBytesSummary = DistributionSummary.builder("basekv.store.msg.batch.bytes")
+                .tags(tags)
+                .baseUnit("bytes")
+                .register(Metrics.globalRegistry);
+            batchDelayTimer = Timer.builder("basekv.store.msg.batch.delay")
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+        }
+
+        void close() {
+            Metrics.globalRegistry.remove(batchSizeSummary);
+            Metrics.globalRegistry.remove(batchBytesSummary);
+            Metrics.globalRegistry.remove(batchDelayTimer);
         }
     }
 }
@@ -60,6 +60,7 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
     private final IKVRangeStoreDescriptorReporter storeDescriptorReporter;
     private final IAgentHost agentHost;
     private final String clusterId;
+    private final KVRangeStoreOptions options;
 
     BaseKVStoreService(String clusterId,
                        IKVRangeCoProcFactory coProcFactory,
@@ -75,6 +76,7 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
                 bgTaskExecutor);
         this.clusterId = clusterId;
         this.agentHost = agentHost;
+        this.options = options;
         storeDescriptorReporter = new KVRangeStoreDescriptorReporter(clusterId, crdtService,
             Duration.ofSeconds(options.getStatsCollectIntervalSec()).toMillis() * DEAD_STORE_CLEANUP_TIME_FACTOR);
     }
@@ -84,7 +86,8 @@ class BaseKVStoreService extends BaseKVStoreServiceGrpc.BaseKVStoreServiceImplBa
     }
 
     public void start(boolean bootstrap) {
-        kvRangeStore.start(new AgentHostStoreMessenger(agentHost, clusterId, kvRangeStore.id()));
+        kvRangeStore.start(new AgentHostStoreMessenger(agentHost, clusterId, kvRangeStore.id(),
+            options.getMessageBatchWindowMicros(), options.getMessageBatchMaxBytes()));
         if (bootstrap) {
             kvRangeStore.bootstrap();
         }
@@ -20,14 +20,21 @@ import com.baidu.bifromq.basekv.store.exception.KVRangeException;
 import com.baidu.bifromq.basekv.store.range.IKVRangeMessenger;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 
+/**
+ * The messenger of a range. Inbound store messages are not filtered from the store level stream by each range, instead
+ * the store dispatches them to the messenger of the target range via {@link #deliver(StoreMessage)}.
+ */
 public class KVRangeMessenger implements IKVRangeMessenger {
     private final String id;
     private final KVRangeId rangeId;
     private final IStoreMessenger messenger;
+    private final Subject<StoreMessage> incoming = PublishSubject.<StoreMessage>create().toSerialized();
 
     public KVRangeMessenger(String id, KVRangeId rangeId, IStoreMessenger messenger) {
         this.id = id;
@@ -35,6 +42,22 @@ public class KVRangeMessenger implements IKVRangeMessenger {
         this.messenger = messenger;
     }
 
+    /**
+     * Deliver an inbound store message targeting the range.
+     *
+     * @param storeMessage the store message
+     */
+    void deliver(StoreMessage storeMessage) {
+        incoming.onNext(storeMessage);
+    }
+
+    /**
+     * Stop delivering, the pending once futures will be completed with TryLater exception.
+     */
+    void close() {
+        incoming.onComplete();
+    }
+
     @Override
     public void send(KVRangeMessage message) {
         messenger.send(StoreMessage.newBuilder()
@@ -46,7 +69,7 @@ public class KVRangeMessenger implements IKVRangeMessenger {
 
     @Override
     public Observable<KVRangeMessage> receive() {
-        return messenger.receive().mapOptional(storeMessage -> {
+        return incoming.mapOptional(storeMessage -> {
             assert storeMessage.getFrom() != null;
             assert storeMessage.hasSrcRange();
             KVRangeMessage payload = storeMessage.getPayload();
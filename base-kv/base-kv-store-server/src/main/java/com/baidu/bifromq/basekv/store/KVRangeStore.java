@@ -21,6 +21,7 @@ import static com.baidu.bifromq.basekv.store.exception.KVRangeStoreException.RAN
 import static com.baidu.bifromq.basekv.utils.KVRangeIdUtil.toShortString;
 import static java.util.Collections.emptyList;
 
+import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basehlc.HLC;
 import com.baidu.bifromq.basekv.localengine.IKVEngine;
 import com.baidu.bifromq.basekv.localengine.KVEngineFactory;
@@ -33,6 +34,7 @@ import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
 import com.baidu.bifromq.basekv.proto.KVRangeStoreDescriptor;
 import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.raft.MultiRaftScheduler;
 import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
 import com.baidu.bifromq.basekv.raft.proto.Snapshot;
 import com.baidu.bifromq.basekv.store.api.IKVRangeCoProcFactory;
@@ -42,13 +44,20 @@ import com.baidu.bifromq.basekv.store.range.IKVRange;
 import com.baidu.bifromq.basekv.store.range.KVRange;
 import com.baidu.bifromq.basekv.store.stats.IStatsCollector;
 import com.baidu.bifromq.basekv.store.util.AsyncRunner;
+import com.baidu.bifromq.basekv.store.wal.IKVRangeWALStoreEngine;
 import com.baidu.bifromq.basekv.store.wal.KVRangeWALStorageEngine;
+import com.baidu.bifromq.basekv.store.wal.SegmentedWALEngineConfigurator;
+import com.baidu.bifromq.basekv.store.wal.SegmentedWALStorageEngine;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.basekv.utils.KeyRangeUtil;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.subjects.BehaviorSubject;
@@ -62,8 +71,11 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -86,11 +98,13 @@ public class KVRangeStore implements IKVRangeStore {
     private final String id;
     private final AtomicReference<Status> status = new AtomicReference<>(Status.INIT);
     private final Map<KVRangeId, IKVRange> kvRangeMap = Maps.newConcurrentMap();
+    // dispatch table routing inbound messages to the messenger of target range
+    private final Map<KVRangeId, KVRangeMessenger> rangeMessengers = Maps.newConcurrentMap();
     private final Set<IKVRange> quitRanges = Sets.newConcurrentHashSet();
     private final Subject<List<Observable<KVRangeDescriptor>>> descriptorListSubject =
         BehaviorSubject.<List<Observable<KVRangeDescriptor>>>create().toSerialized();
     private final IKVRangeCoProcFactory coProcFactory;
-    private final KVRangeWALStorageEngine walStorageEngine;
+    private final IKVRangeWALStoreEngine walStorageEngine;
     private final IKVEngine kvRangeEngine;
     private final IStatsCollector storeStatsCollector;
     private final CompositeDisposable disposable = new CompositeDisposable();
@@ -101,6 +115,9 @@ public class KVRangeStore implements IKVRangeStore {
     private final ScheduledExecutorService bgTaskExecutor;
     private final AsyncRunner rangeMgmtTaskRunner;
     private final KVRangeStoreOptions opts;
+    private final MultiRaftScheduler raftScheduler;
+    // exporting checkpoint data is disk bound and may take long for large ranges, keep it off the mutation executor
+    private final ExecutorService snapshotExporter;
     private IStoreMessenger messenger;
 
     public KVRangeStore(KVRangeStoreOptions opts,
@@ -111,8 +128,19 @@ public class KVRangeStore implements IKVRangeStore {
                         @NonNull ScheduledExecutorService bgTaskExecutor) {
         this.coProcFactory = coProcFactory;
         this.opts = opts.toBuilder().build();
-        this.walStorageEngine = new KVRangeWALStorageEngine(
-            opts.getOverrideIdentity(), this.opts.getWalFlushBufferSize(), opts.getWalEngineConfigurator());
+        if (opts.getWalEngineConfigurator() instanceof SegmentedWALEngineConfigurator) {
+            this.walStorageEngine = new SegmentedWALStorageEngine(
+                opts.getOverrideIdentity(),
+                this.opts.getWalFlushBufferSize(),
+                this.opts.getWalLogEntryCacheSize(),
+                (SegmentedWALEngineConfigurator) opts.getWalEngineConfigurator());
+        } else {
+            this.walStorageEngine = new KVRangeWALStorageEngine(
+                opts.getOverrideIdentity(),
+                this.opts.getWalFlushBufferSize(),
+                this.opts.getWalLogEntryCacheSize(),
+                opts.getWalEngineConfigurator());
+        }
         id = walStorageEngine.id();
         if (opts.getOverrideIdentity() != null
             && !opts.getOverrideIdentity().trim().isEmpty()
@@ -127,6 +155,15 @@ public class KVRangeStore implements IKVRangeStore {
         this.tickExecutor = tickExecutor;
         this.bgTaskExecutor = bgTaskExecutor;
         this.rangeMgmtTaskRunner = new AsyncRunner(this.bgTaskExecutor);
+        this.raftScheduler = opts.getRaftWorkerThreads() > 0
+            ? new MultiRaftScheduler(opts.getRaftWorkerThreads(),
+            EnvProvider.INSTANCE.newThreadFactory("raft-worker-" + id)) : null;
+        int snapshotExportThreads = Math.max(opts.getKvRangeOptions().getSnapshotSyncParallelism(), 1);
+        this.snapshotExporter = ExecutorServiceMetrics.monitor(Metrics.globalRegistry,
+            new ThreadPoolExecutor(snapshotExportThreads, snapshotExportThreads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), EnvProvider.INSTANCE.newThreadFactory("snapshot-exporter-" + id)),
+            "basekv[" + id + "]-snapshot-exporter");
         storeStatsCollector =
             new KVRangeStoreStatsCollector(opts, Duration.ofSeconds(opts.getStatsCollectIntervalSec()),
                 this.bgTaskExecutor);
@@ -181,12 +218,19 @@ public class KVRangeStore implements IKVRangeStore {
                         .toArray(CompletableFuture[]::new))
                     .join();
                 disposable.dispose();
+                rangeMessengers.values().forEach(KVRangeMessenger::close);
+                rangeMessengers.clear();
                 storeStatsCollector.stop().toCompletableFuture().join();
                 rangeMgmtTaskRunner.awaitDone().toCompletableFuture().join();
+                // no snapshot is exported from the engines being stopped
+                MoreExecutors.shutdownAndAwaitTermination(snapshotExporter, 5, TimeUnit.SECONDS);
                 log.debug("Stopping WAL Engine");
                 walStorageEngine.stop();
                 log.debug("Stopping KVRange Engine");
                 kvRangeEngine.stop();
+                if (raftScheduler != null) {
+                    raftScheduler.shutdown();
+                }
                 descriptorListSubject.onComplete();
                 status.set(Status.CLOSED);
                 status.set(Status.TERMINATING);
@@ -253,6 +297,7 @@ public class KVRangeStore implements IKVRangeStore {
                 return Observable.combineLatest(storeStatsCollector.collect(), descListObservable,
                     (storeStats, descList) -> KVRangeStoreDescriptor.newBuilder()
                         .setId(id)
+                        .setZone(Strings.nullToEmpty(opts.getZone()))
                         .putAllStatistics(storeStats)
                         .addAllRanges(descList)
                         .setHlc(HLC.INST.get())
@@ -262,23 +307,29 @@ public class KVRangeStore implements IKVRangeStore {
     }
 
     private void receive(StoreMessage storeMessage) {
-        if (status.get() == Status.STARTED) {
-            KVRangeMessage payload = storeMessage.getPayload();
-            if (payload.hasEnsureRange()) {
-                EnsureRange request = storeMessage.getPayload().getEnsureRange();
-                ensureKVRange(payload.getRangeId(), request.getInitSnapshot())
-                    .whenComplete((v, e) -> messenger.send(StoreMessage.newBuilder()
-                        .setFrom(id)
-                        .setSrcRange(payload.getRangeId())
-                        .setPayload(KVRangeMessage.newBuilder()
-                            .setRangeId(storeMessage.getSrcRange())
-                            .setHostStoreId(storeMessage.getFrom())
-                            .setEnsureRangeReply(EnsureRangeReply.newBuilder()
-                                .setResult(EnsureRangeReply.Result.OK)
-                                .build())
+        if (status.get() != Status.STARTED) {
+            // no message is delivered to the ranges being torn down
+            return;
+        }
+        KVRangeMessage payload = storeMessage.getPayload();
+        KVRangeMessenger rangeMessenger = rangeMessengers.get(payload.getRangeId());
+        if (rangeMessenger != null) {
+            rangeMessenger.deliver(storeMessage);
+        }
+        if (payload.hasEnsureRange()) {
+            EnsureRange request = storeMessage.getPayload().getEnsureRange();
+            ensureKVRange(payload.getRangeId(), request.getInitSnapshot())
+                .whenComplete((v, e) -> messenger.send(StoreMessage.newBuilder()
+                    .setFrom(id)
+                    .setSrcRange(payload.getRangeId())
+                    .setPayload(KVRangeMessage.newBuilder()
+                        .setRangeId(storeMessage.getSrcRange())
+                        .setHostStoreId(storeMessage.getFrom())
+                        .setEnsureRangeReply(EnsureRangeReply.newBuilder()
+                            .setResult(EnsureRangeReply.Result.OK)
                             .build())
-                        .build()));
-            }
+                        .build())
+                    .build()));
         }
     }
 
@@ -397,8 +448,10 @@ public class KVRangeStore implements IKVRangeStore {
         kvRangeMap.forEach((v, r) -> {
             r.tick();
             if (r.readyToQuit()) {
+                // messenger must be picked before removal, in case a range of same id is added afterward
+                KVRangeMessenger rangeMessenger = rangeMessengers.get(v);
                 kvRangeMap.remove(v, r);
-                quitKVRange(r);
+                quitKVRange(r, rangeMessenger);
             }
         });
         quitRanges.forEach(IKVRange::tick);
@@ -418,14 +471,15 @@ public class KVRangeStore implements IKVRangeStore {
         updateDescriptorList();
     }
 
-    private void quitKVRange(IKVRange range) {
+    private void quitKVRange(IKVRange range, KVRangeMessenger rangeMessenger) {
         quitRanges.add(range);
         rangeMgmtTaskRunner.add(() -> range.quit()
             .whenCompleteAsync((v, e) -> {
                 if (e != null) {
-                    quitKVRange(range);
+                    quitKVRange(range, rangeMessenger);
                 } else {
                     quitRanges.remove(range);
+                    removeMessenger(range.id(), rangeMessenger);
                     updateDescriptorList();
                 }
             }, bgTaskExecutor));
@@ -442,13 +496,23 @@ public class KVRangeStore implements IKVRangeStore {
             queryExecutor,
             mutationExecutor,
             bgTaskExecutor,
+            snapshotExporter,
+            raftScheduler,
             opts.getKvRangeOptions(),
             initSnapshot);
         log.debug("Open range: storeId={}, rangeId={}", id, toShortString(kvRange.id()));
-        kvRange.open(new KVRangeMessenger(id, kvRange.id(), messenger));
+        KVRangeMessenger rangeMessenger = new KVRangeMessenger(id, kvRange.id(), messenger);
+        rangeMessengers.put(kvRange.id(), rangeMessenger);
+        kvRange.open(rangeMessenger);
         return kvRange;
     }
 
+    private void removeMessenger(KVRangeId rangeId, KVRangeMessenger rangeMessenger) {
+        if (rangeMessenger != null && rangeMessengers.remove(rangeId, rangeMessenger)) {
+            rangeMessenger.close();
+        }
+    }
+
     private void updateDescriptorList() {
         descriptorListSubject.onNext(kvRangeMap.values().stream().map(IKVRange::describe).collect(Collectors.toList()));
     }
@@ -471,7 +535,12 @@ public class KVRangeStore implements IKVRangeStore {
             })
             .thenCompose(overlapped -> rangeMgmtTaskRunner.add(() ->
                 CompletableFuture.allOf(overlapped.stream()
-                        .map(r -> kvRangeMap.remove(r.getId()).destroy())
+                        .map(r -> {
+                            KVRangeMessenger rangeMessenger = rangeMessengers.get(r.getId());
+                            return kvRangeMap.remove(r.getId()).destroy()
+                                .thenRun(() -> removeMessenger(r.getId(), rangeMessenger))
+                                .toCompletableFuture();
+                        })
                         .toArray(CompletableFuture[]::new))
                     .thenApply(v -> overlapped)))
             .thenCompose(overlapped -> {
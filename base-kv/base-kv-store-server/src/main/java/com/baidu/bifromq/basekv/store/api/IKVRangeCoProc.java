@@ -14,6 +14,7 @@
 package com.baidu.bifromq.basekv.store.api;
 
 import com.baidu.bifromq.basekv.proto.LoadHint;
+import com.baidu.bifromq.basekv.proto.Range;
 import com.google.protobuf.ByteString;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
@@ -48,6 +49,16 @@ public interface IKVRangeCoProc {
      */
     Supplier<ByteString> mutate(ByteString input, IKVReader reader, IKVWriter writer);
 
+    /**
+     * Reset the coproc after the boundary of the range has been changed or its data has been replaced, e.g. by split,
+     * merge or snapshot installation. The method will be called after the change is persisted, so any in-memory state
+     * derived from range data could be rebuilt from the reader.
+     *
+     * @param range the new boundary of the range
+     */
+    default void reset(Range range) {
+    }
+
     /**
      * Close the coproc instance, and release all related resources
      */
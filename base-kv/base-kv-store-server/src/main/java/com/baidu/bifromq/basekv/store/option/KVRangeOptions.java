@@ -30,11 +30,19 @@ import lombok.experimental.Accessors;
 @Builder(toBuilder = true)
 public class KVRangeOptions {
     private int snapshotSyncBytesPerSec = 1024 * 1024;
+    // the max number of streams to restore snapshot concurrently, more than one requires the dumping peer supporting it
+    private int snapshotSyncParallelism = 1;
+    private int snapshotSyncWindowSize = 4;
+    private int snapshotSyncChunkBytes = 128 * 1024; // 128KB
+    private boolean snapshotSyncByDataFile = true;
     private int compactWALThresholdBytes = 128 * 1024 * 1024; // 128MB
     private long tickUnitInMS = 100;
     private int maxWALFatchBatchSize = 64 * 1024; // 64KB
     private int snapshotSyncIdleTimeoutSec = 30;
     private int statsCollectIntervalSec = 5;
+    // the max number of committed but unapplied log entries for a follower to serve non-linearized queries,
+    // non-positive means unbounded
+    private int maxFollowerReadLag = 1000;
     private RaftConfig walRaftConfig = new RaftConfig()
         .setPreVote(true)
         .setInstallSnapshotTimeoutTick(300)
@@ -13,6 +13,7 @@
 
 package com.baidu.bifromq.basekv.store.option;
 
+import com.baidu.bifromq.basekv.Constants;
 import com.baidu.bifromq.basekv.localengine.KVEngineConfigurator;
 import com.baidu.bifromq.basekv.localengine.RocksDBKVEngineConfigurator;
 import com.baidu.bifromq.basekv.store.util.ProcessUtil;
@@ -35,9 +36,19 @@ import lombok.experimental.Accessors;
 @Builder(toBuilder = true)
 public class KVRangeStoreOptions {
     private String overrideIdentity;
+    // the zone where the store is deployed, which is advertised for zone-aware query routing
+    private String zone = Constants.localZone();
     private KVRangeOptions kvRangeOptions = new KVRangeOptions();
     private int walFlushBufferSize = 1024;
+    private long walLogEntryCacheSize = 64 * 1024 * 1024; // in bytes
     private int statsCollectIntervalSec = 5;
+    // the number of threads shared by the raft nodes of all ranges, non-positive means one thread per range
+    private int raftWorkerThreads = 0;
+    // the time window for coalescing outbound messages to the same store into one frame, non-positive means no
+    // batching. Stores of older versions can't parse the batch frame, so enable it only after all stores are upgraded
+    private long messageBatchWindowMicros = 0;
+    // the batch is sent immediately once its accumulated size reaches the budget
+    private int messageBatchMaxBytes = 64 * 1024;
 
     private KVEngineConfigurator dataEngineConfigurator = new RocksDBKVEngineConfigurator()
         .setDisableWAL(true) // data engine no need extra wal
@@ -14,7 +14,28 @@
 package com.baidu.bifromq.basekv.store.range;
 
 import com.baidu.bifromq.basekv.proto.KVPair;
+import com.google.protobuf.ByteString;
 
 public interface IKVRangeRestorer extends IKVRangeUpdater {
-    void add(KVPair kvPair);
+    default void add(KVPair kvPair) {
+        add(0, kvPair);
+    }
+
+    /**
+     * Add a key-value of the stream. The key-values of one stream must be added in ascending order, and different
+     * streams must cover disjoint key ranges.
+     *
+     * @param stream the stream id
+     * @param kvPair the key-value
+     */
+    void add(int stream, KVPair kvPair);
+
+    /**
+     * Append a chunk of the data file exported from the checkpoint to the stream. Each stream carries at most one data
+     * file, which is ingested as a whole when the restorer closes.
+     *
+     * @param stream the stream id
+     * @param data   the chunk of data file
+     */
+    void addDataFile(int stream, ByteString data);
 }
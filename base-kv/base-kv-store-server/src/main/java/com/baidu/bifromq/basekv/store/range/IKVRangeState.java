@@ -19,6 +19,8 @@ import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.store.api.IKVIterator;
 import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
 import io.reactivex.rxjava3.core.Observable;
+import java.nio.file.Path;
+import java.util.Optional;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 
@@ -57,6 +59,40 @@ public interface IKVRangeState {
      */
     IKVIterator open(KVRangeSnapshot checkpoint);
 
+    /**
+     * Open an iterator for accessing the checkpoint data within the sub-range
+     *
+     * @param checkpoint
+     * @param subRange
+     * @return
+     */
+    IKVIterator open(KVRangeSnapshot checkpoint, Range subRange);
+
+    /**
+     * Get the approximate size of the checkpoint data within the sub-range
+     *
+     * @param checkpoint
+     * @param subRange
+     * @return
+     */
+    long size(KVRangeSnapshot checkpoint, Range subRange);
+
+    /**
+     * If the checkpoint data could be exported as data files, which could also be ingested when restoring
+     *
+     * @return
+     */
+    boolean exportable();
+
+    /**
+     * Export the checkpoint data within the sub-range as a data file, the caller is responsible for deleting it
+     *
+     * @param checkpoint
+     * @param subRange
+     * @return the data file, empty if no data within the sub-range
+     */
+    Optional<Path> export(KVRangeSnapshot checkpoint, Range subRange);
+
     /**
      * Borrow a reader for query the latest data. The borrowed the reader must be released once finished use
      *
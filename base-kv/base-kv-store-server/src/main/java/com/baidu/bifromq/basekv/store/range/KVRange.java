@@ -43,7 +43,6 @@ import com.baidu.bifromq.basekv.proto.ChangeConfig;
 import com.baidu.bifromq.basekv.proto.Delete;
 import com.baidu.bifromq.basekv.proto.EnsureRange;
 import com.baidu.bifromq.basekv.proto.EnsureRangeReply;
-import com.baidu.bifromq.basekv.proto.KVPair;
 import com.baidu.bifromq.basekv.proto.KVRangeCommand;
 import com.baidu.bifromq.basekv.proto.KVRangeDescriptor;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
@@ -69,6 +68,7 @@ import com.baidu.bifromq.basekv.proto.SplitRange;
 import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.proto.TransferLeadership;
 import com.baidu.bifromq.basekv.proto.WALRaftMessages;
+import com.baidu.bifromq.basekv.raft.MultiRaftScheduler;
 import com.baidu.bifromq.basekv.raft.exception.ClusterConfigChangeException;
 import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
 import com.baidu.bifromq.basekv.raft.proto.LogEntry;
@@ -101,6 +101,7 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.BehaviorSubject;
 import io.reactivex.rxjava3.subjects.Subject;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -142,6 +143,7 @@ public class KVRange implements IKVRange {
     private final IStatsCollector statsCollector;
     private final Executor fsmExecutor;
     private final Executor bgExecutor;
+    private final Executor exportExecutor;
     private final AsyncRunner mgmtTaskRunner;
     private final IKVRangeCoProc coProc;
     private final KVRangeQueryLinearizer linearizer;
@@ -161,6 +163,8 @@ public class KVRange implements IKVRange {
     private final KVRangeMetricManager metricManager;
     private IKVRangeMessenger messenger;
     private volatile CompletableFuture<Void> checkWalSizeTask;
+    private volatile long commitIndex;
+    private volatile long lastAppliedIndex;
 
     public KVRange(KVRangeId id,
                    String hostStoreId,
@@ -171,11 +175,31 @@ public class KVRange implements IKVRange {
                    Executor queryExecutor,
                    Executor fsmExecutor,
                    Executor bgExecutor,
+                   Executor exportExecutor,
+                   @Nullable MultiRaftScheduler raftScheduler,
                    KVRangeOptions opts,
                    @Nullable Snapshot initSnapshot) {
         try {
             this.id = id;
             this.hostStoreId = hostStoreId; // keep a local copy to decouple it from store's state
+            if (initSnapshot == null && KVRangeRestorer.isInterrupted(id, rangeEngine)) {
+                // the data is partially cleared, start over as an empty replica to receive snapshot from leader again
+                log.warn("Snapshot restoring was interrupted, reset range: rangeId={}, storeId={}",
+                    toShortString(id), hostStoreId);
+                initSnapshot = Snapshot.newBuilder()
+                    .setClusterConfig(ClusterConfig.getDefaultInstance())
+                    .setTerm(0)
+                    .setIndex(0)
+                    .setData(KVRangeSnapshot.newBuilder()
+                        .setVer(0)
+                        .setId(id)
+                        .setLastAppliedIndex(0)
+                        .setRange(EMPTY_RANGE)
+                        .setState(State.newBuilder().setType(Normal).build())
+                        .build()
+                        .toByteString())
+                    .build();
+            }
             if (initSnapshot != null) {
                 walStateStorageEngine.destroy(id);
                 walStateStorageEngine.newRaftStateStorage(id, initSnapshot);
@@ -185,19 +209,21 @@ public class KVRange implements IKVRange {
             }
             this.opts = opts;
             this.snapshotChecker = snapshotChecker;
-            this.wal =
-                new KVRangeWAL(id, walStateStorageEngine, opts.getWalRaftConfig(), opts.getMaxWALFatchBatchSize());
+            this.wal = new KVRangeWAL(id, walStateStorageEngine, opts.getWalRaftConfig(),
+                opts.getMaxWALFatchBatchSize(), raftScheduler);
             this.fsmExecutor = fsmExecutor;
             this.bgExecutor = bgExecutor;
+            this.exportExecutor = exportExecutor;
             this.mgmtTaskRunner = new AsyncRunner(bgExecutor);
             this.coProc = coProcFactory.create(id, accessor::getReader);
             this.linearizer = new KVRangeQueryLinearizer(wal::readIndex, queryExecutor);
             this.queryRunner = new KVRangeQueryRunner(accessor, coProc, queryExecutor, linearizer);
-            this.commitLogSubscription = wal.subscribe(accessor.getReader().lastAppliedIndex() + 1,
+            this.lastAppliedIndex = accessor.getReader().lastAppliedIndex();
+            this.commitLogSubscription = wal.subscribe(lastAppliedIndex + 1,
                 new IKVRangeWALSubscriber() {
                     @Override
-                    public CompletableFuture<Void> apply(LogEntry log) {
-                        return KVRange.this.apply(log);
+                    public CompletableFuture<Void> apply(List<LogEntry> logs) {
+                        return KVRange.this.apply(logs);
                     }
 
                     @Override
@@ -261,6 +287,10 @@ public class KVRange implements IKVRange {
                 disposables.add(wal.snapshotRestoreEvent()
                     .subscribe(e -> clusterConfigSubject.onNext(e.snapshot.getClusterConfig())));
                 disposables.add(descriptorSubject.subscribe(metricManager::report));
+                disposables.add(wal.commitIndex().subscribe(index -> {
+                    commitIndex = index;
+                    metricManager.reportCommitIndex(index);
+                }));
                 disposables.add(Observable.combineLatest(
                         accessor.metadata().distinctUntilChanged(),
                         wal.state().distinctUntilChanged(),
@@ -437,6 +467,10 @@ public class KVRange implements IKVRange {
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
+        if (!linearized && isLagging()) {
+            return CompletableFuture.failedFuture(
+                new KVRangeException.TryLater("Replica lags behind:" + KVRangeIdUtil.toString(id)));
+        }
         return metricManager.recordExist(() -> queryRunner.exist(ver, key, linearized));
     }
 
@@ -447,6 +481,10 @@ public class KVRange implements IKVRange {
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
+        if (!linearized && isLagging()) {
+            return CompletableFuture.failedFuture(
+                new KVRangeException.TryLater("Replica lags behind:" + KVRangeIdUtil.toString(id)));
+        }
         return metricManager.recordGet(() -> queryRunner.get(ver, key, linearized));
     }
 
@@ -457,6 +495,10 @@ public class KVRange implements IKVRange {
             return CompletableFuture.failedFuture(
                 new KVRangeException.InternalException("Range not open:" + KVRangeIdUtil.toString(id)));
         }
+        if (!linearized && isLagging()) {
+            return CompletableFuture.failedFuture(
+                new KVRangeException.TryLater("Replica lags behind:" + KVRangeIdUtil.toString(id)));
+        }
         return metricManager.recordQueryCoProc(() -> queryRunner.queryCoProc(ver, query, linearized));
     }
 
@@ -556,33 +598,128 @@ public class KVRange implements IKVRange {
         }
     }
 
-    private CompletableFuture<Void> apply(LogEntry entry) {
+    private CompletableFuture<Void> apply(List<LogEntry> entries) {
+        CompletableFuture<Void> onDone = new CompletableFuture<>();
+        applyFrom(entries, 0, onDone);
+        return onDone;
+    }
+
+    private void applyFrom(List<LogEntry> entries, int from, CompletableFuture<Void> onDone) {
+        if (onDone.isCancelled()) {
+            return;
+        }
+        // skip the applied entries, in case the entries are reapplied after partial failure
+        long lastAppliedIndex = accessor.getReader().lastAppliedIndex();
+        while (from < entries.size() && entries.get(from).getIndex() <= lastAppliedIndex) {
+            from++;
+        }
+        if (from == entries.size()) {
+            onDone.complete(null);
+            return;
+        }
+        // group the consecutive data mutations into one write batch, others are applied in their own batch
+        List<KVRangeCommand> commands = new ArrayList<>();
+        int to = from;
+        do {
+            KVRangeCommand command = dataMutation(entries.get(to));
+            if (command == null && to > from) {
+                break;
+            }
+            commands.add(command);
+            to++;
+        } while (commands.get(0) != null && to < entries.size());
+        int next = to;
+        applyRun(entries.subList(from, to), commands, onDone)
+            .whenComplete((v, e) -> {
+                if (e != null) {
+                    onDone.completeExceptionally(e);
+                } else {
+                    applyFrom(entries, next, onDone);
+                }
+            });
+    }
+
+    private KVRangeCommand dataMutation(LogEntry entry) {
+        if (entry.getTypeCase() != LogEntry.TypeCase.DATA) {
+            return null;
+        }
+        try {
+            KVRangeCommand command = KVRangeCommand.parseFrom(entry.getData());
+            switch (command.getCommandTypeCase()) {
+                case PUT:
+                case DELETE:
+                case RWCOPROC:
+                    return command;
+                default:
+                    return null;
+            }
+        } catch (InvalidProtocolBufferException e) {
+            // leave it to applyLog
+            return null;
+        }
+    }
+
+    private CompletableFuture<Void> applyRun(List<LogEntry> run,
+                                             List<KVRangeCommand> commands,
+                                             CompletableFuture<Void> cancelSignal) {
         CompletableFuture<Void> onDone = new CompletableFuture<>();
         IKVRangeWriter rangeWriter = accessor.getWriter();
         IKVRangeReader rangeReader = accessor.borrow();
-        applyLog(entry, rangeReader, rangeWriter)
-            .whenComplete((callback, e) -> {
-                if (onDone.isCancelled()) {
+        IKVRangeReader reader = rangeReader;
+        IKVRangeWriter writer = rangeWriter;
+        if (run.size() > 1) {
+            // make the changes of preceding entries visible to the following ones
+            KVRangeWriteOverlay overlay = new KVRangeWriteOverlay();
+            reader = overlay.wrap(rangeReader);
+            writer = overlay.wrap(rangeWriter);
+        }
+        CompletableFuture<List<Runnable>> applyFuture = CompletableFuture.completedFuture(new ArrayList<>());
+        for (int i = 0; i < run.size(); i++) {
+            LogEntry entry = run.get(i);
+            KVRangeCommand command = commands.get(i);
+            IKVRangeReader entryReader = reader;
+            IKVRangeWriter entryWriter = writer;
+            applyFuture = applyFuture.thenCompose(callbacks -> applyLog(entry, command, entryReader, entryWriter)
+                .thenApply(callback -> {
+                    callbacks.add(callback);
+                    return callbacks;
+                }));
+        }
+        long lastIndex = run.get(run.size() - 1).getIndex();
+        applyFuture.whenComplete((callbacks, e) -> {
+            if (cancelSignal.isCancelled()) {
+                rangeWriter.abort();
+            } else {
+                if (e != null) {
                     rangeWriter.abort();
+                    onDone.completeExceptionally(e);
                 } else {
-                    if (e != null) {
-                        rangeWriter.abort();
-                        onDone.completeExceptionally(e);
-                    } else {
-                        rangeWriter.setLastAppliedIndex(entry.getIndex());
+                    rangeWriter.setLastAppliedIndex(lastIndex);
+                    try {
+                        rangeWriter.close();
+                    } catch (Throwable t) {
+                        onDone.completeExceptionally(t);
+                        accessor.returnBorrowed(rangeReader);
+                        return;
+                    }
+                    // the entries have been applied, the failure of callback should not cause reapplying
+                    for (Runnable callback : callbacks) {
                         try {
-                            rangeWriter.close();
                             callback.run();
-                            linearizer.afterLogApplied(entry.getIndex());
-                            metricManager.reportLastAppliedIndex(entry.getIndex());
-                            onDone.complete(null);
                         } catch (Throwable t) {
-                            onDone.completeExceptionally(t);
+                            log.error("Failed to run apply callback: rangeId={}, storeId={}",
+                                toShortString(id), hostStoreId, t);
                         }
                     }
+                    lastAppliedIndex = lastIndex;
+                    linearizer.afterLogApplied(lastIndex);
+                    metricManager.reportLastAppliedIndex(lastIndex);
+                    metricManager.reportApplyBatch(run.size());
+                    onDone.complete(null);
                 }
-                accessor.returnBorrowed(rangeReader);
-            });
+            }
+            accessor.returnBorrowed(rangeReader);
+        });
         return onDone;
     }
 
@@ -603,6 +740,7 @@ public class KVRange implements IKVRange {
                     return;
                 }
                 IKVRangeRestorer restorer = accessor.reset(ss);
+                KVRangeRestoreSession restoreSession = new KVRangeRestoreSession(restorer);
                 String sessionId = UUID.randomUUID().toString();
                 DisposableObserver<KVRangeMessage> observer = messenger.receive()
                     .filter(m -> m.hasSaveSnapshotDataRequest() &&
@@ -616,15 +754,12 @@ public class KVRange implements IKVRange {
                                 switch (request.getFlag()) {
                                     case More:
                                     case End:
-                                        int bytes = 0;
-                                        for (KVPair kv : request.getKvList()) {
-                                            bytes += kv.getKey().size();
-                                            bytes += kv.getValue().size();
-                                            restorer.add(kv);
-                                        }
-                                        metricManager.reportRestore(bytes);
-                                        if (request.getFlag() == SaveSnapshotDataRequest.Flag.End) {
+                                        metricManager.reportRestore(restoreSession.add(request));
+                                        if (restoreSession.isDone()) {
                                             restorer.close();
+                                            metricManager.reportRestoreThroughput(restoreSession.throughput());
+                                            coProc.reset(ss.getRange());
+                                            lastAppliedIndex = ss.getLastAppliedIndex();
                                             linearizer.afterLogApplied(ss.getLastAppliedIndex());
                                             if (ss.getState().hasTaskId()) {
                                                 finishCommand(ss.getState().getTaskId(),
@@ -687,6 +822,8 @@ public class KVRange implements IKVRange {
                         .setSnapshotSyncRequest(SnapshotSyncRequest.newBuilder()
                             .setSessionId(sessionId)
                             .setSnapshot(ss)
+                            .setAcceptDataFile(opts.isSnapshotSyncByDataFile() && accessor.exportable())
+                            .setMaxStreams(opts.getSnapshotSyncParallelism())
                             .build())
                         .build());
                 }
@@ -695,6 +832,7 @@ public class KVRange implements IKVRange {
     }
 
     private CompletableFuture<Runnable> applyLog(LogEntry logEntry,
+                                                 KVRangeCommand parsedCommand,
                                                  IKVRangeReader rangeReader,
                                                  IKVRangeWriter rangeWriter) {
         CompletableFuture<Runnable> onDone = new CompletableFuture<>();
@@ -704,7 +842,8 @@ public class KVRange implements IKVRange {
         switch (logEntry.getTypeCase()) {
             case DATA:
                 try {
-                    KVRangeCommand command = KVRangeCommand.parseFrom(logEntry.getData());
+                    KVRangeCommand command =
+                        parsedCommand != null ? parsedCommand : KVRangeCommand.parseFrom(logEntry.getData());
                     long reqVer = command.getVer();
                     String taskId = command.getTaskId();
                     log.trace(
@@ -868,11 +1007,14 @@ public class KVRange implements IKVRange {
                                     } else {
                                         log.debug("Split KVRange[{}] created: rangeId={}, storeId={}",
                                             toShortString(request.getNewId()), toShortString(id), hostStoreId);
-                                        rangeWriter.setRange(
-                                            range.toBuilder().setEndKey(request.getSplitKey()).build());
+                                        Range lhsRange = range.toBuilder().setEndKey(request.getSplitKey()).build();
+                                        rangeWriter.setRange(lhsRange);
                                         // bump to odd version to indicate there is a range change
                                         rangeWriter.bumpVer(true);
-                                        onDone.complete(() -> finishCommand(taskId));
+                                        onDone.complete(() -> {
+                                            coProc.reset(lhsRange);
+                                            finishCommand(taskId);
+                                        });
                                     }
                                 }, fsmExecutor);
                                 log.debug("Sending ensure request to create split KVRange[{}]: rangeId={}, storeId={}",
@@ -1141,7 +1283,8 @@ public class KVRange implements IKVRange {
                                                 e != null ? e : new KVRangeException.InternalException(
                                                     "Failed to send MergeDone request"));
                                         } else {
-                                            rangeWriter.setRange(KeyRangeUtil.combine(range, request.getRange()));
+                                            Range mergedRange = KeyRangeUtil.combine(range, request.getRange());
+                                            rangeWriter.setRange(mergedRange);
                                             rangeWriter.setState(State.newBuilder()
                                                 .setType(Normal)
                                                 .setTaskId(taskId)
@@ -1149,7 +1292,10 @@ public class KVRange implements IKVRange {
                                             long newVer = Math.max(ver, request.getMergeeVer()) + 2;
                                             // make sure the version is odd
                                             rangeWriter.resetVer(VerUtil.bump(newVer, true));
-                                            onDone.complete(() -> finishCommand(taskId));
+                                            onDone.complete(() -> {
+                                                coProc.reset(mergedRange);
+                                                finishCommand(taskId);
+                                            });
                                         }
                                     }, fsmExecutor);
                                 // send to local mergee
@@ -1184,7 +1330,7 @@ public class KVRange implements IKVRange {
                                     .setType(Merged)
                                     .setTaskId(taskId)
                                     .build());
-                                onDone.complete(NOOP);
+                                onDone.complete(() -> coProc.reset(EMPTY_RANGE));
                             } else {
                                 Map<String, Boolean> waitingList = Maps.newHashMap(state.getWaitingListMap());
                                 waitingList.put(request.getStoreId(), true);
@@ -1371,6 +1517,12 @@ public class KVRange implements IKVRange {
         });
     }
 
+    private boolean isLagging() {
+        // a follower lagging too far behind rejects non-linearized queries, so that the caller could turn to the leader
+        int maxLag = opts.getMaxFollowerReadLag();
+        return maxLag > 0 && !wal.isLeader() && commitIndex - lastAppliedIndex > maxLag;
+    }
+
     private boolean isWorking() {
         Lifecycle state = lifecycle.get();
         return state == Open;
@@ -1431,8 +1583,23 @@ public class KVRange implements IKVRange {
         log.debug("Init snap-dump session for follower[{}]: rangeId={}, storeId={}, sessionId={}",
             follower, toShortString(id), hostStoreId, request.getSessionId());
         KVRangeDumpSession session = new KVRangeDumpSession(follower, request, accessor, messenger, fsmExecutor,
+            exportExecutor,
             Duration.ofSeconds(opts.getSnapshotSyncIdleTimeoutSec()),
-            opts.getSnapshotSyncBytesPerSec(), metricManager::reportDump);
+            opts.getSnapshotSyncBytesPerSec(),
+            opts.getSnapshotSyncParallelism(),
+            opts.getSnapshotSyncWindowSize(),
+            opts.getSnapshotSyncChunkBytes(),
+            new KVRangeDumpSession.DumpBytesRecorder() {
+                @Override
+                public void record(int bytes) {
+                    metricManager.reportDump(bytes);
+                }
+
+                @Override
+                public void throughput(double bytesPerSec) {
+                    metricManager.reportDumpThroughput(bytesPerSec);
+                }
+            });
         dumpSessions.put(request.getSessionId(), session);
         session.awaitDone().whenComplete((v, e) -> dumpSessions.remove(request.getSessionId(), session));
     }
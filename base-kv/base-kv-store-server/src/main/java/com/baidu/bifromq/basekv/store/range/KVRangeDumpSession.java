@@ -11,44 +11,82 @@
  * See the License for the specific language governing permissions and limitations under the License.
  */
 
+
 package com.baidu.bifromq.basekv.store.range;
 
+import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.midKey;
+
 import com.baidu.bifromq.basekv.proto.KVPair;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
+import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
+import com.baidu.bifromq.basekv.proto.Range;
 import com.baidu.bifromq.basekv.proto.SaveSnapshotDataReply;
 import com.baidu.bifromq.basekv.proto.SaveSnapshotDataRequest;
 import com.baidu.bifromq.basekv.proto.SnapshotSyncRequest;
 import com.baidu.bifromq.basekv.store.api.IKVIterator;
 import com.baidu.bifromq.basekv.store.util.AsyncRunner;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.reactivex.rxjava3.disposables.Disposable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The sending end of a snapshot sync session. The checkpoint data is split into several sub-ranges which are dumped as
+ * separate streams concurrently, and each stream keeps up to windowSize chunks in flight. If the receiver accepts, the
+ * sub-ranges are dumped as exported data files instead of key-values. The exporting runs on the export executor, and
+ * empty chunks are sent periodically in the meantime to keep both ends from idle timeout.
+ */
 @Slf4j
 class KVRangeDumpSession {
     interface DumpBytesRecorder {
         void record(int bytes);
+
+        void throughput(double bytesPerSec);
     }
 
+    private static final int MAX_DATA_FILE_CHUNK_BYTES = 1024 * 1024;
     private final String peerStoreId;
     private final SnapshotSyncRequest request;
+    private final IKVRangeState accessor;
     private final IKVRangeMessenger messenger;
-    private final AsyncRunner runner;
+    private final Executor executor;
+    private final Executor exportExecutor;
     private final AtomicInteger reqId = new AtomicInteger();
     private final AtomicBoolean canceled = new AtomicBoolean();
     private final Duration maxIdleDuration;
+    private final int windowSize;
+    private final int maxChunkBytes;
     private final CompletableFuture<Void> doneSignal = new CompletableFuture<>();
     private final DumpBytesRecorder recorder;
-    private RateLimiter rateLimiter;
-    private IKVIterator snapshotItr;
-    private volatile KVRangeMessage currentRequest;
+    private final List<DumpStream> streams = new ArrayList<>();
+    private final Map<Integer, KVRangeMessage> inflightRequests = new ConcurrentHashMap<>();
+    private final LongAdder dumpedBytes = new LongAdder();
+    private final long startTS = System.nanoTime();
+    private final RateLimiter rateLimiter;
     private volatile long lastReplyTS;
 
     KVRangeDumpSession(String peerStoreId,
@@ -59,11 +97,33 @@ class KVRangeDumpSession {
                        Duration maxIdleDuration,
                        long bandwidth,
                        DumpBytesRecorder recorder) {
+        this(peerStoreId, request, accessor, messenger, executor, executor, maxIdleDuration, bandwidth, 1, 1,
+            Integer.MAX_VALUE, recorder);
+    }
+
+    KVRangeDumpSession(String peerStoreId,
+                       SnapshotSyncRequest request,
+                       IKVRangeState accessor,
+                       IKVRangeMessenger messenger,
+                       Executor executor,
+                       Executor exportExecutor,
+                       Duration maxIdleDuration,
+                       long bandwidth,
+                       int parallelism,
+                       int windowSize,
+                       int maxChunkBytes,
+                       DumpBytesRecorder recorder) {
         this.peerStoreId = peerStoreId;
         this.request = request;
+        this.accessor = accessor;
         this.messenger = messenger;
-        this.runner = new AsyncRunner(executor);
+        this.executor = executor;
+        this.exportExecutor = exportExecutor;
         this.maxIdleDuration = maxIdleDuration;
+        // the requester of older version applies the chunks in arrival order without checking seq, so it must be fed
+        // one chunk at a time, otherwise a resent chunk may arrive after the End one
+        this.windowSize = isLegacyRequester() ? 1 : Math.max(windowSize, 1);
+        this.maxChunkBytes = maxChunkBytes;
         this.recorder = recorder;
         rateLimiter = RateLimiter.create(bandwidth);
         if (!request.getSnapshot().hasCheckpointId()) {
@@ -87,8 +147,19 @@ class KVRangeDumpSession {
                 .build());
             executor.execute(() -> doneSignal.complete(null));
         } else {
-            snapshotItr = accessor.open(request.getSnapshot());
-            snapshotItr.seekToFirst();
+            // never split into more streams than the requester could restore
+            int streamCount = Math.min(parallelism, Math.max(request.getMaxStreams(), 1));
+            List<Range> subRanges = split(accessor, request.getSnapshot(), streamCount);
+            boolean dumpDataFile = request.getAcceptDataFile() && accessor.exportable();
+            for (int i = 0; i < subRanges.size(); i++) {
+                if (dumpDataFile) {
+                    streams.add(new DataFileDumpStream(i, subRanges.get(i)));
+                } else {
+                    IKVIterator snapshotItr = subRanges.size() == 1 ? accessor.open(request.getSnapshot()) :
+                        accessor.open(request.getSnapshot(), subRanges.get(i));
+                    streams.add(new KVDumpStream(i, snapshotItr));
+                }
+            }
             Disposable disposable = messenger.receive()
                 .mapOptional(m -> {
                     if (m.hasSaveSnapshotDataReply()) {
@@ -100,8 +171,12 @@ class KVRangeDumpSession {
                     return Optional.empty();
                 })
                 .subscribe(this::handleReply);
-            doneSignal.whenComplete((v, e) -> disposable.dispose());
-            nextSaveRequest();
+            doneSignal.whenComplete((v, e) -> {
+                disposable.dispose();
+                streams.forEach(DumpStream::close);
+            });
+            lastReplyTS = System.nanoTime();
+            streams.forEach(DumpStream::fill);
         }
     }
 
@@ -114,17 +189,20 @@ class KVRangeDumpSession {
         if (maxIdleDuration.toNanos() < elapseNanos) {
             cancel();
         } else if (maxIdleDuration.toNanos() / 2 < elapseNanos) {
-            runner.add(() -> {
-                if (maxIdleDuration.toNanos() / 2 < Duration.ofNanos(System.nanoTime() - lastReplyTS).toNanos()) {
-                    messenger.send(currentRequest);
-                }
-            });
+            // the requests or their replies may be lost
+            if (isLegacyRequester()) {
+                // only one request is in flight for the legacy requester
+                inflightRequests.values().stream().findFirst().ifPresent(messenger::send);
+            } else {
+                inflightRequests.values().forEach(messenger::send);
+            }
         }
+        streams.forEach(DumpStream::keepAlive);
     }
 
     void cancel() {
         if (canceled.compareAndSet(false, true)) {
-            runner.add(() -> doneSignal.complete(null));
+            doneSignal.complete(null);
         }
     }
 
@@ -132,79 +210,318 @@ class KVRangeDumpSession {
         return doneSignal;
     }
 
+    private boolean isLegacyRequester() {
+        return request.getMaxStreams() == 0;
+    }
+
     private void handleReply(SaveSnapshotDataReply reply) {
-        SaveSnapshotDataRequest req = currentRequest.getSaveSnapshotDataRequest();
         lastReplyTS = System.nanoTime();
-        if (req != null && req.getReqId() == reply.getReqId()) {
-            currentRequest = null;
-            switch (reply.getResult()) {
-                case OK:
-                    switch (req.getFlag()) {
-                        case More:
-                            nextSaveRequest();
-                            break;
-                        case End:
-                            runner.add(() -> doneSignal.complete(null));
-                            break;
-                    }
-                    break;
-                case NoSessionFound:
-                case Error:
-                    runner.add(() -> doneSignal.complete(null));
-                    break;
+        KVRangeMessage currentRequest = inflightRequests.get(reply.getReqId());
+        if (currentRequest == null || reply.getResult() == SaveSnapshotDataReply.Result.Retry) {
+            // stale reply or the request will be resent
+            return;
+        }
+        inflightRequests.remove(reply.getReqId());
+        SaveSnapshotDataRequest req = currentRequest.getSaveSnapshotDataRequest();
+        switch (reply.getResult()) {
+            case OK:
+                streams.get(req.getStreamId()).onAcked();
+                if (inflightRequests.isEmpty() && streams.stream().allMatch(s -> s.ended)) {
+                    long elapsedNanos = Math.max(System.nanoTime() - startTS, 1);
+                    double bytesPerSec = dumpedBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+                    recorder.throughput(bytesPerSec);
+                    log.debug("Snapshot dumped: sessionId={}, streams={}, bytes={}, throughput={}B/s",
+                        request.getSessionId(), streams.size(), dumpedBytes.sum(), (long) bytesPerSec);
+                    doneSignal.complete(null);
+                }
+                break;
+            case NoSessionFound:
+            case Error:
+                doneSignal.complete(null);
+                break;
+        }
+    }
+
+    /**
+     * Split the range of the snapshot into sub-ranges of similar data size. The largest piece is bisected repeatedly,
+     * and adjacent pieces are then merged into at most parallelism sub-ranges.
+     */
+    private static List<Range> split(IKVRangeState accessor, KVRangeSnapshot snapshot, int parallelism) {
+        Range range = snapshot.getRange();
+        if (parallelism <= 1) {
+            return Collections.singletonList(range);
+        }
+        PriorityQueue<Piece> largest = new PriorityQueue<>(Comparator.comparingLong((Piece p) -> p.size).reversed());
+        List<Piece> pieces = new ArrayList<>();
+        largest.add(new Piece(range, accessor.size(snapshot, range)));
+        // bisect more times than parallelism, since some pieces may turn out to be empty in sparse key space
+        int maxPieces = parallelism * 4;
+        while (!largest.isEmpty() && largest.peek().size > 0 && largest.size() + pieces.size() < maxPieces) {
+            Piece piece = largest.poll();
+            Optional<ByteString> midKey = midKey(piece.range);
+            if (midKey.isEmpty()) {
+                pieces.add(piece);
+                continue;
             }
+            Range left = piece.range.toBuilder().setEndKey(midKey.get()).build();
+            Range right = piece.range.toBuilder().setStartKey(midKey.get()).build();
+            largest.add(new Piece(left, accessor.size(snapshot, left)));
+            largest.add(new Piece(right, accessor.size(snapshot, right)));
+        }
+        pieces.addAll(largest);
+        pieces.sort((p1, p2) -> ByteString.unsignedLexicographicalComparator()
+            .compare(p1.range.getStartKey(), p2.range.getStartKey()));
+        long total = pieces.stream().mapToLong(p -> p.size).sum();
+        List<Range> subRanges = new ArrayList<>();
+        Range.Builder subRange = null;
+        long accumulated = 0;
+        for (Piece piece : pieces) {
+            if (subRange == null) {
+                subRange = piece.range.toBuilder();
+            } else if (piece.range.hasEndKey()) {
+                subRange.setEndKey(piece.range.getEndKey());
+            } else {
+                subRange.clearEndKey();
+            }
+            accumulated += piece.size;
+            if (total > 0 && subRanges.size() < parallelism - 1
+                && accumulated * parallelism >= total * (subRanges.size() + 1)) {
+                subRanges.add(subRange.build());
+                subRange = null;
+            }
+        }
+        if (subRange != null) {
+            subRanges.add(subRange.build());
         }
+        return subRanges;
     }
 
-    private void nextSaveRequest() {
-        runner.add(() -> {
+    @AllArgsConstructor
+    private static class Piece {
+        final Range range;
+        final long size;
+    }
+
+    private abstract class DumpStream {
+        protected final int id;
+        private final AsyncRunner runner;
+        private final AtomicInteger inflightChunks = new AtomicInteger();
+        private int seq;
+        private long lastSendTS = System.nanoTime();
+        protected boolean throttled;
+        private volatile boolean ended;
+
+        DumpStream(int id) {
+            this.id = id;
+            this.runner = new AsyncRunner(executor);
+        }
+
+        void fill() {
+            runner.add(() -> {
+                throttled = false;
+                while (!ended && !throttled && !doneSignal.isDone() && inflightChunks.get() < windowSize
+                    && isReady()) {
+                    nextSaveRequest(false);
+                }
+            });
+        }
+
+        void keepAlive() {
+            runner.add(() -> {
+                // only needed when nothing is in flight while the data is being prepared
+                if (!ended && !doneSignal.isDone() && inflightChunks.get() == 0 && !isReady()
+                    && System.nanoTime() - lastSendTS > maxIdleDuration.toNanos() / 4) {
+                    nextSaveRequest(true);
+                }
+            });
+        }
+
+        void onAcked() {
+            inflightChunks.decrementAndGet();
+            fill();
+        }
+
+        void close() {
+            runner.add(this::release);
+        }
+
+        /**
+         * Fill the chunk with the data and set the flag accordingly
+         */
+        protected abstract void fillChunk(SaveSnapshotDataRequest.Builder reqBuilder) throws Exception;
+
+        /**
+         * If the data is ready for filling chunks, the stream should call fill() once it becomes ready
+         */
+        protected boolean isReady() {
+            return true;
+        }
+
+        protected void release() {
+        }
+
+        private void nextSaveRequest(boolean keepAlive) {
             SaveSnapshotDataRequest.Builder reqBuilder = SaveSnapshotDataRequest.newBuilder()
                 .setSessionId(request.getSessionId())
-                .setReqId(reqId.getAndIncrement());
-            while (true) {
-                if (!canceled.get()) {
-                    try {
-                        if (snapshotItr.isValid()) {
-                            KVPair kvPair = KVPair.newBuilder()
-                                .setKey(snapshotItr.key())
-                                .setValue(snapshotItr.value())
-                                .build();
-                            reqBuilder.addKv(kvPair);
-                            int bytes = snapshotItr.key().size() + snapshotItr.value().size();
-                            snapshotItr.next();
-                            if (!rateLimiter.tryAcquire(bytes)) {
-                                if (snapshotItr.isValid()) {
-                                    reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.More);
-                                } else {
-                                    reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
-                                }
-                                break;
-                            }
-                            recorder.record(bytes);
-                        } else {
-                            // current iterator finished
-                            reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
-                            break;
-                        }
-                    } catch (Throwable e) {
-                        log.error("Dump error for session: " + request.getSessionId(), e);
-                        reqBuilder.clearKv();
-                        reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
-                        break;
-                    }
-                } else {
+                .setReqId(reqId.getAndIncrement())
+                .setStreams(streams.size())
+                .setStreamId(id)
+                .setSeq(seq++);
+            if (keepAlive) {
+                // an empty chunk restores nothing but resets the idle timer of both ends once acked
+                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.More);
+            } else if (!canceled.get()) {
+                try {
+                    fillChunk(reqBuilder);
+                } catch (Throwable e) {
+                    log.error("Dump error for session: " + request.getSessionId(), e);
                     reqBuilder.clearKv();
+                    reqBuilder.clearDataFile();
                     reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
-                    break;
                 }
+            } else {
+                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.Error);
             }
-            currentRequest = KVRangeMessage.newBuilder()
+            KVRangeMessage saveRequest = KVRangeMessage.newBuilder()
                 .setRangeId(request.getSnapshot().getId())
                 .setHostStoreId(peerStoreId)
                 .setSaveSnapshotDataRequest(reqBuilder.build())
                 .build();
-            lastReplyTS = System.nanoTime();
-            messenger.send(currentRequest);
-        });
+            inflightChunks.incrementAndGet();
+            inflightRequests.put(reqBuilder.getReqId(), saveRequest);
+            // mark ended after the last request is in flight, so that session won't be considered done prematurely
+            if (reqBuilder.getFlag() != SaveSnapshotDataRequest.Flag.More) {
+                ended = true;
+                release();
+            }
+            lastSendTS = System.nanoTime();
+            messenger.send(saveRequest);
+        }
+
+        protected void recordBytes(int bytes) {
+            recorder.record(bytes);
+            dumpedBytes.add(bytes);
+            if (!rateLimiter.tryAcquire(bytes)) {
+                // stop filling the window until next reply
+                throttled = true;
+            }
+        }
+    }
+
+    private class KVDumpStream extends DumpStream {
+        private final IKVIterator snapshotItr;
+
+        KVDumpStream(int id, IKVIterator snapshotItr) {
+            super(id);
+            this.snapshotItr = snapshotItr;
+            snapshotItr.seekToFirst();
+        }
+
+        @Override
+        protected void fillChunk(SaveSnapshotDataRequest.Builder reqBuilder) {
+            int chunkBytes = 0;
+            while (snapshotItr.isValid()) {
+                KVPair kvPair = KVPair.newBuilder()
+                    .setKey(snapshotItr.key())
+                    .setValue(snapshotItr.value())
+                    .build();
+                reqBuilder.addKv(kvPair);
+                int bytes = snapshotItr.key().size() + snapshotItr.value().size();
+                snapshotItr.next();
+                recordBytes(bytes);
+                chunkBytes += bytes;
+                if (throttled || chunkBytes >= maxChunkBytes) {
+                    break;
+                }
+            }
+            reqBuilder.setFlag(snapshotItr.isValid() ? SaveSnapshotDataRequest.Flag.More :
+                SaveSnapshotDataRequest.Flag.End);
+        }
+    }
+
+    /**
+     * Dump the data file exported from the checkpoint, which will be ingested by the receiver directly without going
+     * through the key-values one by one.
+     */
+    private class DataFileDumpStream extends DumpStream {
+        private final Range subRange;
+        private final int chunkBytes;
+        private CompletableFuture<Optional<Path>> exportTask;
+        private boolean exported;
+        private Path dataFilePath;
+        private FileChannel dataFile;
+        private long offset;
+
+        DataFileDumpStream(int id, Range subRange) {
+            super(id);
+            this.subRange = subRange;
+            this.chunkBytes = Math.min(maxChunkBytes, MAX_DATA_FILE_CHUNK_BYTES);
+        }
+
+        @Override
+        protected boolean isReady() {
+            if (exportTask == null) {
+                exportTask = CompletableFuture.supplyAsync(() -> accessor.export(request.getSnapshot(), subRange),
+                    exportExecutor);
+                exportTask.whenComplete((v, e) -> fill());
+            }
+            return exportTask.isDone();
+        }
+
+        @Override
+        protected void fillChunk(SaveSnapshotDataRequest.Builder reqBuilder) throws IOException {
+            if (!exported) {
+                exported = true;
+                Optional<Path> exportedFile = exportTask.join();
+                if (exportedFile.isPresent()) {
+                    dataFilePath = exportedFile.get();
+                    dataFile = FileChannel.open(dataFilePath, StandardOpenOption.READ);
+                }
+            }
+            if (dataFile == null) {
+                // no data in the sub-range
+                reqBuilder.setFlag(SaveSnapshotDataRequest.Flag.End);
+                return;
+            }
+            long fileSize = dataFile.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(chunkBytes, fileSize - offset));
+            while (buffer.hasRemaining()) {
+                if (dataFile.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            int bytes = buffer.remaining();
+            offset += bytes;
+            reqBuilder.setDataFile(UnsafeByteOperations.unsafeWrap(buffer));
+            recordBytes(bytes);
+            reqBuilder.setFlag(offset < fileSize ? SaveSnapshotDataRequest.Flag.More :
+                SaveSnapshotDataRequest.Flag.End);
+        }
+
+        @Override
+        protected void release() {
+            if (dataFile != null) {
+                try {
+                    dataFile.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close data file: {}", dataFilePath, e);
+                }
+                dataFile = null;
+                delete(dataFilePath);
+            } else if (exportTask != null && !exported) {
+                // the file exported after the stream is released is not needed anymore
+                exported = true;
+                exportTask.thenAccept(exportedFile -> exportedFile.ifPresent(this::delete));
+            }
+        }
+
+        private void delete(Path path) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete data file: {}", path, e);
+            }
+        }
     }
 }
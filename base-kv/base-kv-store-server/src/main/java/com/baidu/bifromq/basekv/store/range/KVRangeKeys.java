@@ -30,6 +30,7 @@ public class KVRangeKeys {
     private static final ByteString METADATA_RANGE_BOUND_BYTES = unsafeWrap(new byte[] {0x01});
     private static final ByteString METADATA_LAST_APPLIED_INDEX_BYTES = unsafeWrap(new byte[] {0x02});
     private static final ByteString METADATA_STATE_BYTES = unsafeWrap(new byte[] {0x03});
+    private static final ByteString METADATA_RESTORING_BYTES = unsafeWrap(new byte[] {0x04});
     private static final ByteString DATA_PREFIX = unsafeWrap(new byte[] {(byte) 0xFE});
     private static final ByteString DATA_SECTION_START = unsafeWrap(new byte[] {(byte) 0xFE});
     private static final ByteString DATA_SECTION_END = unsafeWrap(new byte[] {(byte) 0xFF});
@@ -66,6 +67,13 @@ public class KVRangeKeys {
                     .putLong(kvRangeId.getId())
                     .array()
             ));
+            keys.put(METADATA_RESTORING_BYTES, unsafeWrap(
+                ByteBuffer.allocate(METADATA_RESTORING_BYTES.size() + 2 * Long.BYTES)
+                    .put(METADATA_RESTORING_BYTES.toByteArray())
+                    .putLong(kvRangeId.getEpoch())
+                    .putLong(kvRangeId.getId())
+                    .array()
+            ));
             return keys;
         });
 
@@ -85,6 +93,10 @@ public class KVRangeKeys {
         return CACHED_KEYS.get(kvRangeId).get(METADATA_STATE_BYTES);
     }
 
+    public static ByteString restoringKey(KVRangeId kvRangeId) {
+        return CACHED_KEYS.get(kvRangeId).get(METADATA_RESTORING_BYTES);
+    }
+
     public static ByteString dataKey(ByteString userKey) {
         return DATA_PREFIX.concat(userKey);
     }
@@ -17,6 +17,7 @@ import static com.baidu.bifromq.basekv.Constants.EMPTY_RANGE;
 import static com.baidu.bifromq.basekv.localengine.IKVEngine.DEFAULT_NS;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.lastAppliedIndexKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.rangeKey;
+import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.restoringKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.stateKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.verKey;
 
@@ -152,6 +153,7 @@ class KVRangeMetadataAccessor implements IKVRangeMetadataAccessor {
         kvEngine.delete(batchId, DEFAULT_NS, rangeKey(rangeId));
         kvEngine.delete(batchId, DEFAULT_NS, lastAppliedIndexKey(rangeId));
         kvEngine.delete(batchId, DEFAULT_NS, stateKey(rangeId));
+        kvEngine.delete(batchId, DEFAULT_NS, restoringKey(rangeId));
         if (includeData && !range.equals(EMPTY_RANGE)) {
             try (IKVEngineIterator itr = kvEngine.newIterator(dataBoundId)) {
                 for (itr.seekToFirst(); itr.isValid(); itr.next()) {
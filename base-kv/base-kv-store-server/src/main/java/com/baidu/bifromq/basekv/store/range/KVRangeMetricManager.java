@@ -19,6 +19,7 @@ import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
@@ -32,9 +33,13 @@ import java.util.function.Supplier;
 class KVRangeMetricManager {
     private final Counter dumpBytesCounter;
     private final Counter restoreBytesCounter;
+    private final DistributionSummary dumpThroughputSummary;
+    private final DistributionSummary restoreThroughputSummary;
     private final Gauge stateGauge;
     private final Gauge verGauge;
     private final Gauge lastAppliedIndexGauge;
+    private final Gauge applyLagGauge;
+    private final DistributionSummary applyBatchSummary;
     private final Gauge dataSizeGauge;
     private final Gauge walSizeGauge;
     private final Timer configChangeTimer;
@@ -49,11 +54,20 @@ class KVRangeMetricManager {
     private final Timer queryCoProcTimer;
     private final AtomicReference<KVRangeDescriptor> currentDesc = new AtomicReference<>();
     private final AtomicLong currentLastAppliedIndex = new AtomicLong(-1);
+    private final AtomicLong currentCommitIndex = new AtomicLong(-1);
 
     KVRangeMetricManager(String storeId, KVRangeId rangeId) {
         Tags tags = Tags.of("storeId", storeId).and("rangeId", KVRangeIdUtil.toString(rangeId));
         dumpBytesCounter = Metrics.counter("basekv.snap.dump", tags);
         restoreBytesCounter = Metrics.counter("basekv.snap.restore", tags);
+        dumpThroughputSummary = DistributionSummary.builder("basekv.snap.dump.throughput")
+            .tags(tags)
+            .baseUnit("bytes/sec")
+            .register(Metrics.globalRegistry);
+        restoreThroughputSummary = DistributionSummary.builder("basekv.snap.restore.throughput")
+            .tags(tags)
+            .baseUnit("bytes/sec")
+            .register(Metrics.globalRegistry);
         stateGauge = Gauge.builder("basekv.meta.state", () -> {
                 KVRangeDescriptor desc = currentDesc.get();
                 if (desc != null) {
@@ -75,6 +89,14 @@ class KVRangeMetricManager {
         lastAppliedIndexGauge = Gauge.builder("basekv.meta.appidx", currentLastAppliedIndex::get)
             .tags(tags)
             .register(Metrics.globalRegistry);
+        applyLagGauge = Gauge.builder("basekv.meta.applag",
+                () -> Math.max(0, currentCommitIndex.get() - currentLastAppliedIndex.get()))
+            .tags(tags)
+            .register(Metrics.globalRegistry);
+        applyBatchSummary = DistributionSummary.builder("basekv.apply.batch")
+            .tags(tags)
+            .baseUnit("entries")
+            .register(Metrics.globalRegistry);
         dataSizeGauge = Gauge.builder("basekv.meta.size", () -> {
                 KVRangeDescriptor desc = currentDesc.get();
                 if (desc != null) {
@@ -137,10 +159,26 @@ class KVRangeMetricManager {
         restoreBytesCounter.increment(bytes);
     }
 
+    void reportDumpThroughput(double bytesPerSec) {
+        dumpThroughputSummary.record(bytesPerSec);
+    }
+
+    void reportRestoreThroughput(double bytesPerSec) {
+        restoreThroughputSummary.record(bytesPerSec);
+    }
+
     void reportLastAppliedIndex(long index) {
         currentLastAppliedIndex.set(index);
     }
 
+    void reportCommitIndex(long index) {
+        currentCommitIndex.set(index);
+    }
+
+    void reportApplyBatch(int entries) {
+        applyBatchSummary.record(entries);
+    }
+
     private <T> CompletionStage<T> recordDuration(Supplier<CompletionStage<T>> supplier, Timer timer) {
         Timer.Sample sample = Timer.start();
         return supplier.get().whenComplete((v, e) -> sample.stop(timer));
@@ -189,8 +227,12 @@ class KVRangeMetricManager {
     void close() {
         Metrics.globalRegistry.removeByPreFilterId(dumpBytesCounter.getId());
         Metrics.globalRegistry.removeByPreFilterId(restoreBytesCounter.getId());
+        Metrics.globalRegistry.removeByPreFilterId(dumpThroughputSummary.getId());
+        Metrics.globalRegistry.removeByPreFilterId(restoreThroughputSummary.getId());
         Metrics.globalRegistry.removeByPreFilterId(stateGauge.getId());
         Metrics.globalRegistry.removeByPreFilterId(lastAppliedIndexGauge.getId());
+        Metrics.globalRegistry.removeByPreFilterId(applyLagGauge.getId());
+        Metrics.globalRegistry.removeByPreFilterId(applyBatchSummary.getId());
         Metrics.globalRegistry.removeByPreFilterId(verGauge.getId());
         Metrics.globalRegistry.removeByPreFilterId(dataSizeGauge.getId());
         Metrics.globalRegistry.removeByPreFilterId(walSizeGauge.getId());
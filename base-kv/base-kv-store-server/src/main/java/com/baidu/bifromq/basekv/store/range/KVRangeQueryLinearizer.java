@@ -13,21 +13,29 @@
 
 package com.baidu.bifromq.basekv.store.range;
 
-import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import lombok.AllArgsConstructor;
 
+/**
+ * Linearizer sharing read index among concurrent queries. At most one read index is in-flight at a time, queries
+ * arriving while it's pending join the next round, which acquires a fresh read index once the pending one is returned.
+ * A query never reuses the read index acquired before its arrival, so linearizability is preserved.
+ */
 class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
-    private final ConcurrentMap<CompletableFuture<Long>, CompletableFuture<Void>> readIndexes = Maps.newConcurrentMap();
-    private final ConcurrentLinkedDeque<ToLinearize> toBeLinearized = new ConcurrentLinkedDeque();
+    private final Queue<CompletableFuture<Void>> nextRound = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedDeque<ToLinearize> toBeLinearized = new ConcurrentLinkedDeque<>();
     private final Supplier<CompletableFuture<Long>> readIndexProvider;
     private final Executor executor;
+    private final AtomicBoolean acquiring = new AtomicBoolean();
     private final AtomicBoolean linearizing = new AtomicBoolean();
     private volatile long lastAppliedIndex = 0;
 
@@ -39,19 +47,8 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
     @Override
     public CompletionStage<Void> linearize() {
         CompletableFuture<Void> onDone = new CompletableFuture<>();
-        CompletableFuture<Long> readIndex = readIndexProvider.get();
-        readIndexes.put(readIndex, onDone);
-        readIndex.whenCompleteAsync((ri, e) -> {
-            if (ri <= lastAppliedIndex) {
-                readIndexes.remove(readIndex).complete(null);
-            } else {
-                readIndexes.remove(readIndex, onDone);
-                if (!onDone.isDone()) {
-                    toBeLinearized.add(new ToLinearize(ri, onDone));
-                    schedule();
-                }
-            }
-        }, executor);
+        nextRound.add(onDone);
+        acquireReadIndex();
         return onDone;
     }
 
@@ -61,6 +58,45 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
         schedule();
     }
 
+    private void acquireReadIndex() {
+        if (!acquiring.compareAndSet(false, true)) {
+            return;
+        }
+        List<CompletableFuture<Void>> round = new ArrayList<>();
+        CompletableFuture<Void> waiter;
+        while ((waiter = nextRound.poll()) != null) {
+            round.add(waiter);
+        }
+        if (round.isEmpty()) {
+            acquiring.set(false);
+            if (!nextRound.isEmpty()) {
+                acquireReadIndex();
+            }
+            return;
+        }
+        CompletableFuture<Long> readIndexFuture;
+        try {
+            readIndexFuture = readIndexProvider.get();
+        } catch (Throwable e) {
+            // fail the round and release the acquiring flag in the same way as an asynchronous failure
+            readIndexFuture = CompletableFuture.failedFuture(e);
+        }
+        readIndexFuture.whenCompleteAsync((ri, e) -> {
+            if (e != null) {
+                round.forEach(onDone -> onDone.completeExceptionally(e));
+            } else if (ri <= lastAppliedIndex) {
+                round.forEach(onDone -> onDone.complete(null));
+            } else {
+                toBeLinearized.add(new ToLinearize(ri, round));
+                schedule();
+            }
+            acquiring.set(false);
+            if (!nextRound.isEmpty()) {
+                acquireReadIndex();
+            }
+        }, executor);
+    }
+
     private void schedule() {
         if (linearizing.compareAndSet(false, true)) {
             executor.execute(this::doLinearize);
@@ -71,7 +107,7 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
         ToLinearize toLinearize;
         while ((toLinearize = toBeLinearized.poll()) != null) {
             if (toLinearize.readIndex <= lastAppliedIndex) {
-                toLinearize.onDone.complete(null);
+                toLinearize.waiters.forEach(onDone -> onDone.complete(null));
             } else {
                 // put it back
                 toBeLinearized.addFirst(toLinearize);
@@ -87,6 +123,6 @@ class KVRangeQueryLinearizer implements IKVRangeQueryLinearizer {
     @AllArgsConstructor
     private static class ToLinearize {
         final long readIndex;
-        final CompletableFuture<Void> onDone;
+        final List<CompletableFuture<Void>> waiters;
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.range;
+
+import com.baidu.bifromq.basekv.proto.KVPair;
+import com.baidu.bifromq.basekv.proto.SaveSnapshotDataRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The receiving end of a snapshot sync session. The chunks of a stream may arrive out of order or more than once, they
+ * are reordered by their sequence before being added to the restorer, and the session is done once every stream
+ * reaches its end.
+ */
+class KVRangeRestoreSession {
+    private final IKVRangeRestorer restorer;
+    private final Map<Integer, RestoreStream> streams = new HashMap<>();
+    private final long startTS = System.nanoTime();
+    private int totalStreams = 1;
+    private int endedStreams;
+    private long restoredBytes;
+
+    KVRangeRestoreSession(IKVRangeRestorer restorer) {
+        this.restorer = restorer;
+    }
+
+    /**
+     * Add a chunk of snapshot data
+     *
+     * @param request the chunk
+     * @return the bytes of the data restored
+     */
+    int add(SaveSnapshotDataRequest request) {
+        int streamId = 0;
+        int seq = request.getReqId();
+        if (request.getStreams() > 0) {
+            totalStreams = request.getStreams();
+            streamId = request.getStreamId();
+            seq = request.getSeq();
+        }
+        return streams.computeIfAbsent(streamId, RestoreStream::new).add(seq, request);
+    }
+
+    boolean isDone() {
+        return endedStreams == totalStreams;
+    }
+
+    double throughput() {
+        long elapsedNanos = Math.max(System.nanoTime() - startTS, 1);
+        return restoredBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    private class RestoreStream {
+        private final int id;
+        private final TreeMap<Integer, SaveSnapshotDataRequest> pending = new TreeMap<>();
+        private int nextSeq;
+        private boolean ended;
+
+        RestoreStream(int id) {
+            this.id = id;
+        }
+
+        int add(int seq, SaveSnapshotDataRequest request) {
+            if (ended || seq < nextSeq) {
+                // duplicated chunk
+                return 0;
+            }
+            pending.put(seq, request);
+            int bytes = 0;
+            while (!pending.isEmpty() && pending.firstKey() == nextSeq) {
+                SaveSnapshotDataRequest chunk = pending.pollFirstEntry().getValue();
+                for (KVPair kv : chunk.getKvList()) {
+                    bytes += kv.getKey().size();
+                    bytes += kv.getValue().size();
+                    restorer.add(id, kv);
+                }
+                if (!chunk.getDataFile().isEmpty()) {
+                    bytes += chunk.getDataFile().size();
+                    restorer.addDataFile(id, chunk.getDataFile());
+                }
+                nextSeq++;
+                if (chunk.getFlag() == SaveSnapshotDataRequest.Flag.End) {
+                    ended = true;
+                    endedStreams++;
+                    pending.clear();
+                    break;
+                }
+            }
+            restoredBytes += bytes;
+            return bytes;
+        }
+    }
+}
@@ -17,62 +17,143 @@ import static com.baidu.bifromq.basekv.localengine.IKVEngine.DEFAULT_NS;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.dataKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.lastAppliedIndexKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.rangeKey;
+import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.restoringKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.stateKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.verKey;
 import static com.baidu.bifromq.basekv.store.util.KVUtil.toByteString;
 
 import com.baidu.bifromq.basekv.localengine.IKVEngine;
+import com.baidu.bifromq.basekv.localengine.IKVEngineBulkLoad;
 import com.baidu.bifromq.basekv.proto.KVPair;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
 import com.baidu.bifromq.basekv.store.util.KVUtil;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * The restorer writes the data of snapshot via bulk load, and ingests the metadata of the snapshot in the same
+ * ingestion which is the commit point of restoring. Before clearing the stale data, a restoring marker is written, it's
+ * only overwritten as done by the ingestion. So a range found with pending marker has been interrupted while restoring,
+ * and its data can't be trusted.
+ */
+@Slf4j
 public class KVRangeRestorer implements IKVRangeRestorer {
+    private final KVRangeSnapshot checkpoint;
     private final IKVEngine kvEngine;
     private final IKVRangeMetadataAccessor metadata;
     private final KVRangeStateAccessor.KVRangeWriterMutator mutator;
-    private final int batchId;
+    private final int dataBoundId;
+    private final Range dataBound;
+    private final IKVEngineBulkLoad bulkLoad;
+    private final Map<Integer, IKVEngineBulkLoad.Writer> writers = new HashMap<>();
+    private final Map<Integer, FileChannel> dataFiles = new HashMap<>();
+    private int size;
 
     public KVRangeRestorer(KVRangeSnapshot checkpoint,
                            IKVRangeMetadataAccessor metadata,
                            IKVEngine kvEngine,
                            KVRangeStateAccessor.KVRangeWriterMutator mutator) {
+        this.checkpoint = checkpoint;
         this.kvEngine = kvEngine;
         this.metadata = metadata;
         this.mutator = mutator;
         metadata.refresh();
-        this.batchId = kvEngine.startBatch();
-        KVRangeId rangeId = checkpoint.getId();
-        kvEngine.put(batchId, DEFAULT_NS, verKey(rangeId),
-            KVUtil.toByteStringNativeOrder(checkpoint.getVer()));
-        kvEngine.put(batchId, DEFAULT_NS, lastAppliedIndexKey(rangeId), toByteString(checkpoint.getLastAppliedIndex()));
-        kvEngine.put(batchId, DEFAULT_NS, rangeKey(rangeId), checkpoint.getRange().toByteString());
-        kvEngine.put(batchId, DEFAULT_NS, stateKey(rangeId), checkpoint.getState().toByteString());
-        kvEngine.clearSubRange(batchId, metadata.dataBoundId(),
-            metadata.dataBound().getStartKey(),
-            metadata.dataBound().getEndKey());
+        this.dataBoundId = metadata.dataBoundId();
+        this.dataBound = metadata.dataBound();
+        this.bulkLoad = kvEngine.startBulkLoad(DEFAULT_NS);
+    }
+
+    /**
+     * Check if the restoring of given range was interrupted, which leaves the range partially cleared.
+     *
+     * @param rangeId  the range id
+     * @param kvEngine the kv engine of the range
+     * @return true if interrupted
+     */
+    static boolean isInterrupted(KVRangeId rangeId, IKVEngine kvEngine) {
+        return kvEngine.get(DEFAULT_NS, restoringKey(rangeId)).map(marker -> !marker.isEmpty()).orElse(false);
+    }
+
+    @Override
+    public void add(int stream, KVPair kvPair) {
+        writers.computeIfAbsent(stream, k -> bulkLoad.newWriter()).add(dataKey(kvPair.getKey()), kvPair.getValue());
+        size++;
     }
 
     @Override
-    public void add(KVPair kvPair) {
-        kvEngine.put(batchId, DEFAULT_NS, dataKey(kvPair.getKey()), kvPair.getValue());
+    public void addDataFile(int stream, ByteString data) {
+        try {
+            FileChannel dataFile = dataFiles.get(stream);
+            if (dataFile == null) {
+                Path dataFilePath = bulkLoad.newFile()
+                    .orElseThrow(() -> new KVRangeStoreException("Data file is not supported by the engine"));
+                dataFile = FileChannel.open(dataFilePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                dataFiles.put(stream, dataFile);
+            }
+            ByteBuffer buffer = data.asReadOnlyByteBuffer();
+            while (buffer.hasRemaining()) {
+                dataFile.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to write data file", e);
+        }
     }
 
     @Override
     public void abort() {
-        kvEngine.abortBatch(batchId);
+        closeDataFiles();
+        bulkLoad.abort();
     }
 
     @Override
     public int size() {
-        return kvEngine.batchSize(batchId);
+        return size;
     }
 
     @Override
     public void close() {
+        KVRangeId rangeId = checkpoint.getId();
         mutator.run(() -> {
+            // the stale data is cleared ahead of ingesting, since a deletion committed afterwards removes the ingested
+            // data as well. The marker is written before clearing, so the clearance never survives without it
+            int batchId = kvEngine.startBatch();
+            kvEngine.put(batchId, DEFAULT_NS, restoringKey(rangeId), checkpoint.toByteString());
+            kvEngine.endBatch(batchId);
+            kvEngine.clearSubRange(dataBoundId, dataBound.getStartKey(), dataBound.getEndKey());
+            closeDataFiles();
+            // the metadata and the done marker are ingested together with the data, the keys are in ascending order
+            IKVEngineBulkLoad.Writer metaWriter = bulkLoad.newWriter();
+            metaWriter.add(verKey(rangeId), KVUtil.toByteStringNativeOrder(checkpoint.getVer()));
+            metaWriter.add(rangeKey(rangeId), checkpoint.getRange().toByteString());
+            metaWriter.add(lastAppliedIndexKey(rangeId), toByteString(checkpoint.getLastAppliedIndex()));
+            metaWriter.add(stateKey(rangeId), checkpoint.getState().toByteString());
+            metaWriter.add(restoringKey(rangeId), ByteString.EMPTY);
+            bulkLoad.ingest();
+            batchId = kvEngine.startBatch();
+            kvEngine.delete(batchId, DEFAULT_NS, restoringKey(rangeId));
             kvEngine.endBatch(batchId);
             metadata.refresh();
         });
     }
+
+    private void closeDataFiles() {
+        dataFiles.values().forEach(dataFile -> {
+            try {
+                dataFile.close();
+            } catch (IOException e) {
+                log.warn("Failed to close data file", e);
+            }
+        });
+        dataFiles.clear();
+    }
 }
@@ -21,6 +21,8 @@ import com.baidu.bifromq.basekv.proto.Range;
 import com.baidu.bifromq.basekv.store.api.IKVIterator;
 import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
 import io.reactivex.rxjava3.core.Observable;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -77,6 +79,38 @@ class KVRangeState implements IKVRangeState {
         return new KVRangeIterator(() -> dataIterator);
     }
 
+    @Override
+    public IKVIterator open(KVRangeSnapshot checkpoint, Range subRange) {
+        assert hasCheckpoint(checkpoint);
+        KVRangeMetadataAccessor metadata =
+            new KVRangeMetadataAccessor(checkpoint.getId(), kvEngine, checkpoint.getCheckpointId());
+        Range dataBound = KVRangeKeys.dataBound(subRange);
+        IKVEngineIterator dataIterator = kvEngine.newIterator(checkpoint.getCheckpointId(),
+            metadata.dataBoundId(), dataBound.getStartKey(), dataBound.getEndKey());
+        return new KVRangeIterator(() -> dataIterator);
+    }
+
+    @Override
+    public long size(KVRangeSnapshot checkpoint, Range subRange) {
+        assert hasCheckpoint(checkpoint);
+        Range dataBound = KVRangeKeys.dataBound(subRange);
+        return kvEngine.size(checkpoint.getCheckpointId(), IKVEngine.DEFAULT_NS,
+            dataBound.getStartKey(), dataBound.getEndKey());
+    }
+
+    @Override
+    public boolean exportable() {
+        return kvEngine.exportable();
+    }
+
+    @Override
+    public Optional<Path> export(KVRangeSnapshot checkpoint, Range subRange) {
+        assert hasCheckpoint(checkpoint);
+        Range dataBound = KVRangeKeys.dataBound(subRange);
+        return kvEngine.export(checkpoint.getCheckpointId(), IKVEngine.DEFAULT_NS,
+            dataBound.getStartKey(), dataBound.getEndKey());
+    }
+
     @SneakyThrows
     @Override
     public IKVRangeReader borrow() {
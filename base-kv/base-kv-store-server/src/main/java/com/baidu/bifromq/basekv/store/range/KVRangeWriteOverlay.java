@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.range;
+
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.proto.State;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
+import com.baidu.bifromq.basekv.utils.KeyRangeUtil;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The data changes made by the log entries applied so far in one write batch. Since the engine batch is not readable
+ * until it's closed, the reader used by subsequent entries in the same batch is overlaid with the changes, so that
+ * every entry observes the effects of the entries before it, as if they were applied in separate batches.
+ * Only the data is overlaid, the metadata(ver, state, range) changing entries must be applied in their own batch.
+ */
+class KVRangeWriteOverlay {
+    // empty value is the tombstone of deleted key
+    private final NavigableMap<ByteString, Optional<ByteString>> updates =
+        new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+    private final List<Range> deletedRanges = new ArrayList<>();
+
+    IKVRangeReader wrap(IKVRangeReader rangeReader) {
+        return new IKVRangeReader() {
+            @Override
+            public long ver() {
+                return rangeReader.ver();
+            }
+
+            @Override
+            public State state() {
+                return rangeReader.state();
+            }
+
+            @Override
+            public long lastAppliedIndex() {
+                return rangeReader.lastAppliedIndex();
+            }
+
+            @Override
+            public IKVReader kvReader() {
+                return new OverlayReader(rangeReader.kvReader());
+            }
+
+            @Override
+            public void refresh() {
+                rangeReader.refresh();
+            }
+        };
+    }
+
+    IKVRangeWriter wrap(IKVRangeWriter rangeWriter) {
+        IKVWriter kvWriter = new OverlayWriter(rangeWriter.kvWriter());
+        return new IKVRangeWriter() {
+            @Override
+            public IKVRangeWriter bumpVer(boolean toOdd) {
+                rangeWriter.bumpVer(toOdd);
+                return this;
+            }
+
+            @Override
+            public IKVRangeWriter resetVer(long ver) {
+                rangeWriter.resetVer(ver);
+                return this;
+            }
+
+            @Override
+            public IKVRangeWriter setLastAppliedIndex(long lastAppliedIndex) {
+                rangeWriter.setLastAppliedIndex(lastAppliedIndex);
+                return this;
+            }
+
+            @Override
+            public IKVRangeWriter setRange(Range range) {
+                rangeWriter.setRange(range);
+                return this;
+            }
+
+            @Override
+            public IKVRangeWriter setState(State state) {
+                rangeWriter.setState(state);
+                return this;
+            }
+
+            @Override
+            public IKVWriter kvWriter() {
+                return kvWriter;
+            }
+
+            @Override
+            public void abort() {
+                rangeWriter.abort();
+            }
+
+            @Override
+            public int size() {
+                return rangeWriter.size();
+            }
+
+            @Override
+            public void close() {
+                rangeWriter.close();
+            }
+        };
+    }
+
+    private boolean isMasked(ByteString key) {
+        if (updates.containsKey(key)) {
+            return true;
+        }
+        for (Range range : deletedRanges) {
+            if (KeyRangeUtil.inRange(key, range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class OverlayWriter implements IKVWriter {
+        private final IKVWriter delegate;
+
+        OverlayWriter(IKVWriter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void delete(ByteString key) {
+            delegate.delete(key);
+            updates.put(key, Optional.empty());
+        }
+
+        @Override
+        public void deleteRange(Range range) {
+            delegate.deleteRange(range);
+            if (range.hasEndKey()) {
+                updates.subMap(range.getStartKey(), range.getEndKey()).clear();
+            } else {
+                updates.tailMap(range.getStartKey(), true).clear();
+            }
+            deletedRanges.add(range);
+        }
+
+        @Override
+        public void insert(ByteString key, ByteString value) {
+            delegate.insert(key, value);
+            updates.put(key, Optional.of(value));
+        }
+
+        @Override
+        public void put(ByteString key, ByteString value) {
+            delegate.put(key, value);
+            updates.put(key, Optional.of(value));
+        }
+    }
+
+    private class OverlayReader implements IKVReader {
+        private final IKVReader delegate;
+
+        OverlayReader(IKVReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Range range() {
+            return delegate.range();
+        }
+
+        @Override
+        public long size(Range range) {
+            // size is approximate anyway, the pending changes are ignored
+            return delegate.size(range);
+        }
+
+        @Override
+        public boolean exist(ByteString key) {
+            Optional<ByteString> updated = updates.get(key);
+            if (updated != null) {
+                return updated.isPresent();
+            }
+            return !isMasked(key) && delegate.exist(key);
+        }
+
+        @Override
+        public Optional<ByteString> get(ByteString key) {
+            Optional<ByteString> updated = updates.get(key);
+            if (updated != null) {
+                return updated;
+            }
+            return isMasked(key) ? Optional.empty() : delegate.get(key);
+        }
+
+        @Override
+        public IKVIterator iterator() {
+            return new OverlayIterator(delegate.iterator());
+        }
+    }
+
+    /**
+     * Merge the unmasked keys of base iterator with the live keys in overlay. In forward direction the base iterator
+     * is kept at the first unmasked key not less than current key, and vice versa, so that base iterator is re-sought
+     * only when direction changes.
+     */
+    private class OverlayIterator implements IKVIterator {
+        private final IKVIterator base;
+        private boolean forward = true;
+        private ByteString key;
+        private ByteString value;
+
+        OverlayIterator(IKVIterator base) {
+            this.base = base;
+        }
+
+        @Override
+        public ByteString key() {
+            return key;
+        }
+
+        @Override
+        public ByteString value() {
+            return value;
+        }
+
+        @Override
+        public boolean isValid() {
+            return key != null;
+        }
+
+        @Override
+        public void next() {
+            ByteString current = key;
+            if (!forward) {
+                base.seek(current);
+                skipMaskedForward();
+                forward = true;
+            }
+            if (base.isValid() && base.key().equals(current)) {
+                base.next();
+                skipMaskedForward();
+            }
+            pickForward(updates.higherEntry(current));
+        }
+
+        @Override
+        public void prev() {
+            ByteString current = key;
+            if (forward) {
+                base.seekForPrev(current);
+                skipMaskedBackward();
+                forward = false;
+            }
+            if (base.isValid() && base.key().equals(current)) {
+                base.prev();
+                skipMaskedBackward();
+            }
+            pickBackward(updates.lowerEntry(current));
+        }
+
+        @Override
+        public void seekToFirst() {
+            forward = true;
+            base.seekToFirst();
+            skipMaskedForward();
+            pickForward(updates.firstEntry());
+        }
+
+        @Override
+        public void seekToLast() {
+            forward = false;
+            base.seekToLast();
+            skipMaskedBackward();
+            pickBackward(updates.lastEntry());
+        }
+
+        @Override
+        public void seek(ByteString target) {
+            forward = true;
+            base.seek(target);
+            skipMaskedForward();
+            pickForward(updates.ceilingEntry(target));
+        }
+
+        @Override
+        public void seekForPrev(ByteString target) {
+            forward = false;
+            base.seekForPrev(target);
+            skipMaskedBackward();
+            pickBackward(updates.floorEntry(target));
+        }
+
+        private void skipMaskedForward() {
+            while (base.isValid() && isMasked(base.key())) {
+                base.next();
+            }
+        }
+
+        private void skipMaskedBackward() {
+            while (base.isValid() && isMasked(base.key())) {
+                base.prev();
+            }
+        }
+
+        private void pickForward(Map.Entry<ByteString, Optional<ByteString>> overlay) {
+            while (overlay != null && overlay.getValue().isEmpty()) {
+                overlay = updates.higherEntry(overlay.getKey());
+            }
+            if (overlay != null && (!base.isValid()
+                || ByteString.unsignedLexicographicalComparator().compare(overlay.getKey(), base.key()) < 0)) {
+                key = overlay.getKey();
+                value = overlay.getValue().get();
+            } else if (base.isValid()) {
+                key = base.key();
+                value = base.value();
+            } else {
+                key = null;
+                value = null;
+            }
+        }
+
+        private void pickBackward(Map.Entry<ByteString, Optional<ByteString>> overlay) {
+            while (overlay != null && overlay.getValue().isEmpty()) {
+                overlay = updates.lowerEntry(overlay.getKey());
+            }
+            if (overlay != null && (!base.isValid()
+                || ByteString.unsignedLexicographicalComparator().compare(overlay.getKey(), base.key()) > 0)) {
+                key = overlay.getKey();
+                value = overlay.getValue().get();
+            } else if (base.isValid()) {
+                key = base.key();
+                value = base.value();
+            } else {
+                key = null;
+                value = null;
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ package com.baidu.bifromq.basekv.store.wal;
 
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
 import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface IKVRangeWALSubscriber {
@@ -22,7 +23,14 @@ public interface IKVRangeWALSubscriber {
 
     }
 
-    CompletableFuture<Void> apply(LogEntry log);
+    /**
+     * Apply a run of committed log entries in order. If the returned future fails, the whole run will be applied
+     * again, so the entries already applied must be skipped by the subscriber.
+     *
+     * @param logs the consecutive log entries
+     * @return the future of the application
+     */
+    CompletableFuture<Void> apply(List<LogEntry> logs);
 
     CompletableFuture<Void> apply(KVRangeSnapshot snapshot);
 }
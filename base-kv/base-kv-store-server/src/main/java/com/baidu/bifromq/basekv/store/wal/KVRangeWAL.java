@@ -22,6 +22,7 @@ import com.baidu.bifromq.basekv.proto.KVRangeCommand;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
 import com.baidu.bifromq.basekv.raft.IRaftNode;
+import com.baidu.bifromq.basekv.raft.MultiRaftScheduler;
 import com.baidu.bifromq.basekv.raft.RaftConfig;
 import com.baidu.bifromq.basekv.raft.RaftNode;
 import com.baidu.bifromq.basekv.raft.event.CommitEvent;
@@ -51,6 +52,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -75,15 +77,31 @@ public class KVRangeWAL implements IKVRangeWAL {
                       IKVRangeWALStoreEngine stateStoreEngine,
                       RaftConfig raftConfig,
                       int maxFetchBytes) {
+        this(rangeId, stateStoreEngine, raftConfig, maxFetchBytes, null);
+    }
+
+    public KVRangeWAL(KVRangeId rangeId,
+                      IKVRangeWALStoreEngine stateStoreEngine,
+                      RaftConfig raftConfig,
+                      int maxFetchBytes,
+                      @Nullable MultiRaftScheduler raftScheduler) {
         this.rangeId = rangeId;
         this.stateStoreEngine = stateStoreEngine;
         this.localId = stateStoreEngine.id();
         this.maxFetchBytes = maxFetchBytes;
-        raftNode = new RaftNode(raftConfig, stateStoreEngine.get(rangeId),
-            getLogger("raft.logger"),
-            EnvProvider.INSTANCE.newThreadFactory("wal-raft-executor-" + KVRangeIdUtil.toShortString(rangeId)),
-            "storeId", localId,
-            "rangeId", KVRangeIdUtil.toString(rangeId));
+        if (raftScheduler != null) {
+            raftNode = new RaftNode(raftConfig, stateStoreEngine.get(rangeId),
+                getLogger("raft.logger"),
+                raftScheduler,
+                "storeId", localId,
+                "rangeId", KVRangeIdUtil.toString(rangeId));
+        } else {
+            raftNode = new RaftNode(raftConfig, stateStoreEngine.get(rangeId),
+                getLogger("raft.logger"),
+                EnvProvider.INSTANCE.newThreadFactory("wal-raft-executor-" + KVRangeIdUtil.toShortString(rangeId)),
+                "storeId", localId,
+                "rangeId", KVRangeIdUtil.toString(rangeId));
+        }
     }
 
     @Override
@@ -142,10 +160,13 @@ public class KVRangeWAL implements IKVRangeWAL {
             new KVRangeWALSubscription(maxFetchBytes, this, commitIndexSubject, startIndex,
                 new IKVRangeWALSubscriber() {
                     @Override
-                    public CompletableFuture<Void> apply(LogEntry log) {
+                    public CompletableFuture<Void> apply(List<LogEntry> logs) {
                         try {
-                            if (condition.test(log)) {
-                                onDone.complete(log);
+                            for (LogEntry log : logs) {
+                                if (condition.test(log)) {
+                                    onDone.complete(log);
+                                    break;
+                                }
                             }
                         } catch (Throwable e) {
                             onDone.completeExceptionally(e);
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Store-wide cache of recently appended log entries shared by all ranges' wal in the same store engine.
+ * <br>
+ * Entries are weighted by their serialized size and evicted when the total weight exceeds the limit. The owning
+ * KVRangeWALStore is responsible for invalidating entries which are overwritten by conflicting append, compacted by
+ * snapshot or destroyed, so cached entry is always identical to the persisted one.
+ */
+class KVRangeWALLogEntryCache {
+    // rough per-entry overhead of key and cache node
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Cache<CacheKey, LogEntry> cache;
+    private final Gauge hitRatioGauge;
+    private final Gauge sizeGauge;
+
+    KVRangeWALLogEntryCache(String storeId, long maxBytes) {
+        cache = Caffeine.newBuilder()
+            .maximumWeight(Math.max(0, maxBytes))
+            .weigher((CacheKey k, LogEntry v) -> v.getSerializedSize() + ENTRY_OVERHEAD)
+            .executor(Runnable::run)
+            .recordStats()
+            .build();
+        Tags tags = Tags.of("storeId", storeId);
+        hitRatioGauge = Gauge.builder("basekv.engine.wal.logcache.hitratio", () -> cache.stats().hitRate())
+            .tags(tags)
+            .register(Metrics.globalRegistry);
+        sizeGauge = Gauge.builder("basekv.engine.wal.logcache.size",
+                () -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+            .tags(tags)
+            .baseUnit("bytes")
+            .register(Metrics.globalRegistry);
+    }
+
+    LogEntry get(KVRangeId rangeId, long index) {
+        return cache.getIfPresent(new CacheKey(rangeId, index));
+    }
+
+    void put(KVRangeId rangeId, List<LogEntry> entries) {
+        for (LogEntry entry : entries) {
+            cache.put(new CacheKey(rangeId, entry.getIndex()), entry);
+        }
+    }
+
+    /**
+     * Invalidate cached entries of the range whose index is in [fromIndex, toIndex)
+     *
+     * @param rangeId   the range id
+     * @param fromIndex the start index, inclusive
+     * @param toIndex   the end index, exclusive
+     */
+    void invalidate(KVRangeId rangeId, long fromIndex, long toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        if (toIndex - fromIndex > cache.estimatedSize()) {
+            // cheaper to scan the cached keys than the index range
+            cache.asMap().keySet().removeIf(k -> k.rangeId.equals(rangeId) && k.index >= fromIndex
+                && k.index < toIndex);
+        } else {
+            for (long i = fromIndex; i < toIndex; i++) {
+                cache.invalidate(new CacheKey(rangeId, i));
+            }
+        }
+    }
+
+    void close() {
+        cache.invalidateAll();
+        Metrics.globalRegistry.remove(hitRatioGauge);
+        Metrics.globalRegistry.remove(sizeGauge);
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class CacheKey {
+        final KVRangeId rangeId;
+        final long index;
+    }
+}
@@ -61,6 +61,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
     private static final int CF_NUM = 100;
+    private static final long DEFAULT_LOG_ENTRY_CACHE_SIZE = 64 * 1024 * 1024;
     private final ConcurrentLinkedQueue<StabilizingIndex> stabilizingQueue = new ConcurrentLinkedQueue<>();
     private final AtomicReference<State> state = new AtomicReference<>(State.INIT);
     private final Map<KVRangeId, KVRangeWALStore> instances = Maps.newConcurrentMap();
@@ -70,20 +71,29 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
     private final ExecutorService flushExecutor;
     private final AtomicBoolean flushing = new AtomicBoolean();
     private final IKVEngine kvEngine;
+    private final KVRangeWALLogEntryCache logEntryCache;
     private final MetricManager metricMgr;
 
     private ScheduledExecutorService bgTaskExecutor;
 
-    public KVRangeWALStorageEngine(String overrideIdentity, int flushBufferSize, KVEngineConfigurator<?> configurator) {
+    public KVRangeWALStorageEngine(String overrideIdentity,
+                                   int flushBufferSize,
+                                   long logEntryCacheSize,
+                                   KVEngineConfigurator<?> configurator) {
         this.flushBufferSize = flushBufferSize;
         kvEngine = KVEngineFactory.create(overrideIdentity, kvNamespaces(), cpId -> false, configurator);
         flushExecutor = ExecutorServiceMetrics.monitor(Metrics.globalRegistry, new ThreadPoolExecutor(1, 1,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<>(), EnvProvider.INSTANCE.newThreadFactory("wal-flusher")),
             "basekv[" + kvEngine.id() + "]-wal-flusher");
+        logEntryCache = new KVRangeWALLogEntryCache(kvEngine.id(), logEntryCacheSize);
         metricMgr = new MetricManager(kvEngine.id());
     }
 
+    public KVRangeWALStorageEngine(String overrideIdentity, int flushBufferSize, KVEngineConfigurator<?> configurator) {
+        this(overrideIdentity, flushBufferSize, DEFAULT_LOG_ENTRY_CACHE_SIZE, configurator);
+    }
+
     public KVRangeWALStorageEngine(String overrideIdentity, KVEngineConfigurator<?> configurator) {
         this(overrideIdentity, 1024, configurator);
     }
@@ -96,6 +106,7 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
                 instances.values().forEach(KVRangeWALStore::stop);
                 kvEngine.stop();
                 MoreExecutors.shutdownAndAwaitTermination(flushExecutor, 5, TimeUnit.SECONDS);
+                logEntryCache.close();
                 metricMgr.close();
                 state.set(State.STOPPED);
             } catch (Throwable e) {
@@ -141,7 +152,8 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
             int keyRangeId = kvEngine.registerKeyRange(ns, KVRangeWALKeys.walStartKey(kvRangeId),
                 KVRangeWALKeys.walEndKey(kvRangeId));
             kvEngine.put(keyRangeId, KVRangeWALKeys.latestSnapshotKey(kvRangeId), initSnapshot.toByteString());
-            return new KVRangeWALStore(kvRangeId, kvEngine, keyRangeId, this::onAppend, bgTaskExecutor);
+            return new KVRangeWALStore(kvRangeId, kvEngine, keyRangeId, this::onAppend, logEntryCache,
+                bgTaskExecutor);
         });
         kvEngine.flush();
         return instances.get(kvRangeId);
@@ -219,6 +231,7 @@ public class KVRangeWALStorageEngine implements IKVRangeWALStoreEngine {
                         kvEngine,
                         walKeyRangeId,
                         this::onAppend,
+                        logEntryCache,
                         bgTaskExecutor));
                     log.debug("WAL loaded: kvRangeId={}", toShortString(kvRangeId));
                     it.seek(KVRangeWALKeys.walEndKey(kvRangeId));
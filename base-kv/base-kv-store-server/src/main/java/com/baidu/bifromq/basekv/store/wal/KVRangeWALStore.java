@@ -59,6 +59,7 @@ class KVRangeWALStore implements IRaftStateStore {
     private final int walKeyRangeId;
     private final TreeMap<Long, ClusterConfig> configEntryMap = Maps.newTreeMap();
     private final AppendCallback appendCallback;
+    private final KVRangeWALLogEntryCache logEntryCache;
     private final Executor bgMgmtExecutor;
     private final Set<CompletableFuture<Void>> bgTasks = Sets.newConcurrentHashSet();
 
@@ -76,12 +77,14 @@ class KVRangeWALStore implements IRaftStateStore {
                     IKVEngine kvEngine,
                     int walKeyRangeId,
                     AppendCallback appendCallback,
+                    KVRangeWALLogEntryCache logEntryCache,
                     Executor bgMgmtExecutor) {
         this.rangeId = rangeId;
         this.kvEngine = kvEngine;
         this.storeId = kvEngine.id();
         this.walKeyRangeId = walKeyRangeId;
         this.appendCallback = appendCallback;
+        this.logEntryCache = logEntryCache;
         this.bgMgmtExecutor = bgMgmtExecutor;
         load();
     }
@@ -137,11 +140,13 @@ class KVRangeWALStore implements IRaftStateStore {
         if (lastEntryInSS.isPresent() && lastEntryInSS.get().getTerm() == snapLastTerm) {
             // the snapshot represents partial history, it happens when compacting
             // save snapshot
+            long prevFirstIndex = firstIndex();
             kvEngine.put(walKeyRangeId, KVRangeWALKeys.latestSnapshotKey(rangeId), snapshot.toByteString());
             latestSnapshot = snapshot;
             lastIndex = Math.max(lastIndex, snapLastIndex);
 
             long truncateBeforeIndex = Math.min(lastIndex(), snapLastIndex) + 1;
+            logEntryCache.invalidate(rangeId, prevFirstIndex, truncateBeforeIndex);
             while (!configEntryMap.isEmpty()) {
                 if (configEntryMap.firstKey() <= truncateBeforeIndex) {
                     configEntryMap.pollFirstEntry();
@@ -188,6 +193,7 @@ class KVRangeWALStore implements IRaftStateStore {
             }
         } else {
             // the snapshot represents a different history, it happens when installing snapshot from leader
+            logEntryCache.invalidate(rangeId, firstIndex(), lastIndex() + 1);
             // save snapshot
             kvEngine.put(walKeyRangeId, KVRangeWALKeys.latestSnapshotKey(rangeId), snapshot.toByteString());
             latestSnapshot = snapshot;
@@ -255,6 +261,10 @@ class KVRangeWALStore implements IRaftStateStore {
         if (index < firstIndex() || index > lastIndex()) {
             return Optional.ofNullable(null);
         }
+        LogEntry cached = logEntryCache.get(rangeId, index);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
         try {
             ByteString data =
                 kvEngine.get(walKeyRangeId, KVRangeWALKeys.logEntryKey(rangeId, logEntriesKeyInfix, index)).get();
@@ -318,7 +328,11 @@ class KVRangeWALStore implements IRaftStateStore {
                 entry.toByteString());
         }
         kvEngine.endBatch(batchId);
+        long prevLastIndex = lastIndex;
         lastIndex = entries.get(entries.size() - 1).getIndex();
+        // drop the conflicting entries beyond new last index, those in between are overwritten
+        logEntryCache.invalidate(rangeId, lastIndex + 1, prevLastIndex + 1);
+        logEntryCache.put(rangeId, entries);
         if (flush) {
             kvEngine.flush();
             onStable(lastIndex);
@@ -340,6 +354,7 @@ class KVRangeWALStore implements IRaftStateStore {
     }
 
     public void destroy() {
+        logEntryCache.invalidate(rangeId, firstIndex(), lastIndex() + 1);
         int batchId = kvEngine.startBatch();
         kvEngine.clearRange(batchId, walKeyRangeId);
         kvEngine.endBatch(batchId);
@@ -440,6 +455,8 @@ class KVRangeWALStore implements IRaftStateStore {
         private long currentIndex;
         private long accumulatedSize;
         private final IKVEngineIterator iterator;
+        // the log index the underlying iterator is positioned at, it's only seeked when entry missing in cache
+        private long iteratorIndex = -1;
 
         private LogEntryIterator(long startIndex, long endIndex, long maxSize) {
             this.currentIndex = startIndex;
@@ -448,7 +465,6 @@ class KVRangeWALStore implements IRaftStateStore {
             this.iterator = kvEngine.newIterator(walKeyRangeId,
                 KVRangeWALKeys.logEntryKey(rangeId, logEntriesKeyInfix, currentIndex),
                 RangeUtil.upperBound(KVRangeWALKeys.logEntriesKeyPrefixInfix(rangeId, logEntriesKeyInfix)));
-            this.iterator.seek(KVRangeWALKeys.logEntryKey(rangeId, logEntriesKeyInfix, currentIndex));
         }
 
         @Override
@@ -463,18 +479,30 @@ class KVRangeWALStore implements IRaftStateStore {
 
         @Override
         public LogEntry next() {
+            LogEntry entry = logEntryCache.get(rangeId, currentIndex);
+            if (entry == null) {
+                entry = load();
+            }
+            accumulatedSize += entry.getData().size();
+            currentIndex++;
+            return entry;
+        }
+
+        private LogEntry load() {
+            if (iteratorIndex != currentIndex) {
+                iterator.seek(KVRangeWALKeys.logEntryKey(rangeId, logEntriesKeyInfix, currentIndex));
+                iteratorIndex = currentIndex;
+            }
             if (!iterator.isValid()) {
                 throw new NoSuchElementException();
-            } else {
-                try {
-                    LogEntry entry = LogEntry.parseFrom(iterator.value());
-                    accumulatedSize += entry.getData().size();
-                    currentIndex++;
-                    iterator.next();
-                    return entry;
-                } catch (InvalidProtocolBufferException e) {
-                    throw new KVRangeStoreException("Log data corruption", e);
-                }
+            }
+            try {
+                LogEntry entry = LogEntry.parseFrom(iterator.value());
+                iterator.next();
+                iteratorIndex++;
+                return entry;
+            } catch (InvalidProtocolBufferException e) {
+                throw new KVRangeStoreException("Log data corruption", e);
             }
         }
     }
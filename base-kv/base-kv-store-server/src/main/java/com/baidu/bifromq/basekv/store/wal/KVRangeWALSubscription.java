@@ -19,6 +19,8 @@ import com.baidu.bifromq.basekv.store.util.AsyncRunner;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -99,14 +101,15 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
                         scheduleFetchWAL();
                     } else {
                         fetchRunner.add(() -> {
-                            LogEntry entry = null;
+                            List<LogEntry> entries = new ArrayList<>();
                             while (logEntries.hasNext()) {
                                 // no restore task interrupted
-                                entry = logEntries.next();
-                                applyRunner.add(applyLog(entry));
+                                entries.add(logEntries.next());
                             }
-                            if (entry != null) {
-                                lastFetchedIdx = entry.getIndex();
+                            if (!entries.isEmpty()) {
+                                // the fetched entries are applied as a whole
+                                applyRunner.add(applyLogs(entries));
+                                lastFetchedIdx = entries.get(entries.size() - 1).getIndex();
                             }
                             fetching.set(false);
                             if (lastFetchedIdx < commitIdx) {
@@ -125,13 +128,13 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
         }
     }
 
-    private Supplier<CompletableFuture<Void>> applyLog(LogEntry logEntry) {
+    private Supplier<CompletableFuture<Void>> applyLogs(List<LogEntry> logEntries) {
         return () -> {
             CompletableFuture<Void> onDone = new CompletableFuture<>();
             if (onDone.isCancelled()) {
                 return CompletableFuture.completedFuture(null);
             }
-            CompletableFuture<Void> applyFuture = subscriber.apply(logEntry);
+            CompletableFuture<Void> applyFuture = subscriber.apply(logEntries);
             onDone.whenComplete((v, e) -> {
                 if (onDone.isCancelled()) {
                     applyFuture.cancel(true);
@@ -142,7 +145,7 @@ class KVRangeWALSubscription implements IKVRangeWALSubscription {
                 if (!onDone.isCancelled()) {
                     if (e != null) {
                         // reapply
-                        applyRunner.addFirst(applyLog(logEntry));
+                        applyRunner.addFirst(applyLogs(logEntries));
                     }
                 }
                 onDone.complete(null);
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An append-only file holding consecutive raft log entries starting from base index.
+ * <br>
+ * Each entry is framed as [length(4 bytes)][crc32c(4 bytes)][serialized LogEntry]. The file offsets of entries and the
+ * indexes of config entries are kept in memory, and persisted into an index file when the segment is sealed, so that
+ * loading sealed segments doesn't need to scan the log file. The active segment is always recovered by scanning, torn
+ * tail is truncated.
+ * <br>
+ * Appending is expected from a single thread, while sync, seal and close may be called from other threads.
+ */
+@Slf4j
+class LogSegment {
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    final long baseIndex;
+    private final Path logPath;
+    private final Path indexPath;
+    private final FileChannel channel;
+    private final List<Long> configIndexes = new ArrayList<>();
+    // offsets[count] is always the end of the last entry, so that count and size could be read consistently
+    private long[] offsets = new long[1024];
+    private volatile int count;
+    private volatile long size;
+    private volatile long syncedSize;
+    // increased on every truncation, so a seal requested before the truncation can be told and skipped
+    private volatile int generation;
+    private boolean closed;
+
+    private LogSegment(Path dir, long baseIndex) throws IOException {
+        this.baseIndex = baseIndex;
+        this.logPath = dir.resolve(fileName(baseIndex, LOG_SUFFIX));
+        this.indexPath = dir.resolve(fileName(baseIndex, INDEX_SUFFIX));
+        this.channel = FileChannel.open(logPath,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    static LogSegment create(Path dir, long baseIndex) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseIndex);
+        segment.channel.truncate(0);
+        Files.deleteIfExists(segment.indexPath);
+        return segment;
+    }
+
+    static LogSegment open(Path dir, long baseIndex, boolean sealed) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseIndex);
+        if (!sealed || !segment.loadIndex()) {
+            segment.recover();
+        }
+        return segment;
+    }
+
+    static String fileName(long baseIndex, String suffix) {
+        return String.format("%020d%s", baseIndex, suffix);
+    }
+
+    static long parseBaseIndex(String fileName) {
+        return Long.parseLong(fileName.substring(0, fileName.length() - LOG_SUFFIX.length()));
+    }
+
+    int count() {
+        return count;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long lastIndex() {
+        return baseIndex + count - 1;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * The indexes of config entries in this segment in ascending order
+     */
+    synchronized List<Long> configIndexes() {
+        return new ArrayList<>(configIndexes);
+    }
+
+    void append(LogEntry entry) throws IOException {
+        assert entry.getIndex() == baseIndex + count;
+        byte[] payload = entry.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length)
+            .putInt(payload.length)
+            .putInt((int) crc.getValue())
+            .put(payload)
+            .flip();
+        long offset = size;
+        writeFully(buffer, offset);
+        if (count + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count + 1] = offset + buffer.limit();
+        if (entry.hasConfig()) {
+            synchronized (this) {
+                configIndexes.add(entry.getIndex());
+            }
+        }
+        size = offset + buffer.limit();
+        count++;
+    }
+
+    LogEntry read(long index) throws IOException {
+        int i = (int) (index - baseIndex);
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("index[" + index + "] not in segment[" + baseIndex + "]");
+        }
+        long offset = offsets[i];
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, offset);
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, offset + HEADER_SIZE);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch at index[" + index + "] of " + logPath);
+        }
+        return LogEntry.parseFrom(payload.array());
+    }
+
+    /**
+     * Drop the entries since the given index, the segment becomes active again if it was sealed
+     *
+     * @param index the index from which entries will be dropped
+     */
+    synchronized void truncateFrom(long index) throws IOException {
+        int i = (int) (index - baseIndex);
+        if (i < 0 || i >= count) {
+            return;
+        }
+        Files.deleteIfExists(indexPath);
+        channel.truncate(offsets[i]);
+        configIndexes.removeIf(configIndex -> configIndex >= index);
+        size = offsets[i];
+        // the truncated file may grow back to the synced size with different content
+        syncedSize = -1;
+        count = i;
+        generation++;
+    }
+
+    /**
+     * Make the appended entries durable, it's a no-op if nothing appended since last sync or the segment is closed
+     */
+    synchronized void sync() throws IOException {
+        long sizeToSync = size;
+        if (closed || syncedSize == sizeToSync) {
+            return;
+        }
+        channel.force(false);
+        syncedSize = sizeToSync;
+    }
+
+    /**
+     * Flush the log file and persist the offsets into the index file, no more entries should be appended after that.
+     * It's a no-op if the segment has been truncated since the given generation, whose index would be stale.
+     *
+     * @param generation the generation when sealing is requested
+     */
+    synchronized void seal(int generation) throws IOException {
+        if (closed || this.generation != generation) {
+            return;
+        }
+        sync();
+        int sealedCount = count;
+        long sealedSize = offsets[sealedCount];
+        List<Long> sealedConfigIndexes = configIndexes.stream()
+            .filter(configIndex -> configIndex < baseIndex + sealedCount)
+            .collect(Collectors.toList());
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * (sealedCount + sealedConfigIndexes.size() + 3));
+        buffer.putLong(sealedCount);
+        for (int i = 0; i < sealedCount; i++) {
+            buffer.putLong(offsets[i]);
+        }
+        buffer.putLong(sealedConfigIndexes.size());
+        for (long configIndex : sealedConfigIndexes) {
+            buffer.putLong(configIndex);
+        }
+        // the trailing log size is used to validate the index file
+        buffer.putLong(sealedSize).flip();
+        Path tmpPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (FileChannel indexChannel = FileChannel.open(tmpPath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                indexChannel.write(buffer);
+            }
+            indexChannel.force(false);
+        }
+        Files.move(tmpPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close log segment: {}", logPath, e);
+        }
+    }
+
+    synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(logPath);
+            Files.deleteIfExists(indexPath);
+        } catch (IOException e) {
+            log.warn("Failed to delete log segment: {}", logPath, e);
+        }
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        if (buffer.limit() % Long.BYTES != 0 || buffer.remaining() < Long.BYTES) {
+            return false;
+        }
+        long entries = buffer.getLong();
+        if (entries < 0 || buffer.remaining() < Long.BYTES * (entries + 2)) {
+            return false;
+        }
+        long[] loaded = new long[(int) entries + 1];
+        for (int i = 0; i < entries; i++) {
+            loaded[i] = buffer.getLong();
+        }
+        long configs = buffer.getLong();
+        if (configs < 0 || buffer.remaining() != Long.BYTES * (configs + 1)) {
+            return false;
+        }
+        List<Long> loadedConfigIndexes = new ArrayList<>();
+        for (int i = 0; i < configs; i++) {
+            loadedConfigIndexes.add(buffer.getLong());
+        }
+        long logSize = buffer.getLong();
+        loaded[(int) entries] = logSize;
+        if (logSize != channel.size()) {
+            log.warn("Index file mismatched with log file, rebuild from log: {}", logPath);
+            return false;
+        }
+        offsets = loaded;
+        configIndexes.addAll(loadedConfigIndexes);
+        count = (int) entries;
+        size = logSize;
+        return true;
+    }
+
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        long offset = 0;
+        int recovered = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || offset + HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER_SIZE);
+            CRC32C crc = new CRC32C();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            // only the segments without valid index file are scanned, so the parsing cost is bounded
+            LogEntry entry = LogEntry.parseFrom(payload.array());
+            if (entry.hasConfig()) {
+                configIndexes.add(entry.getIndex());
+            }
+            if (recovered + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[recovered++] = offset;
+            offset += HEADER_SIZE + length;
+        }
+        offsets[recovered] = offset;
+        if (offset < fileSize) {
+            log.warn("Truncate torn tail of log segment: file={}, validSize={}, fileSize={}",
+                logPath, offset, fileSize);
+            channel.truncate(offset);
+        }
+        count = recovered;
+        size = offset;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of log segment: " + logPath);
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import com.baidu.bifromq.basekv.localengine.KVEngineConfigurator;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+
+/**
+ * The configurator for selecting {@link SegmentedWALStorageEngine} as the wal engine of KVRangeStore.
+ */
+@Accessors(chain = true)
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SegmentedWALEngineConfigurator implements KVEngineConfigurator<SegmentedWALEngineConfigurator> {
+    private String dbRootDir;
+    private long segmentSize = 64 * 1024 * 1024; // in bytes
+
+    public static SegmentedWALEngineConfiguratorBuilder builder() {
+        return new SegmentedWALEngineConfigurator().toBuilder();
+    }
+
+    public SegmentedWALEngineConfiguratorBuilder toBuilder() {
+        return new SegmentedWALEngineConfiguratorBuilder()
+            .dbRootDir(this.dbRootDir)
+            .segmentSize(this.segmentSize);
+    }
+
+    public static class SegmentedWALEngineConfiguratorBuilder implements
+        KVEngineConfiguratorBuilder<SegmentedWALEngineConfigurator> {
+        private String dbRootDir;
+        private long segmentSize;
+
+        SegmentedWALEngineConfiguratorBuilder() {
+        }
+
+        public SegmentedWALEngineConfiguratorBuilder dbRootDir(String dbRootDir) {
+            this.dbRootDir = dbRootDir;
+            return this;
+        }
+
+        public SegmentedWALEngineConfiguratorBuilder segmentSize(long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public SegmentedWALEngineConfigurator build() {
+            return new SegmentedWALEngineConfigurator(dbRootDir, segmentSize);
+        }
+
+        public String toString() {
+            return "SegmentedWALEngineConfigurator.SegmentedWALEngineConfiguratorBuilder(dbRootDir="
+                + this.dbRootDir + ", segmentSize=" + this.segmentSize + ")";
+        }
+    }
+}
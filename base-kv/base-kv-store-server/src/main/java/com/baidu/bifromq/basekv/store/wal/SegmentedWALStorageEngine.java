@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static com.baidu.bifromq.basekv.utils.KVRangeIdUtil.toShortString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.IRaftStateStore;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WAL store engine which keeps raft logs of each KVRange in dedicated append-only segment files instead of key-values
+ * in a shared kv engine, so appending doesn't pay for memtable insertion and compaction, and log truncation is done by
+ * deleting or truncating files instead of writing tombstones.
+ * <br>
+ * Asynchronous appends are made durable by a single flusher thread in group-commit manner: all ranges appended since
+ * last flush are synced in one round before notifying their stabilized indexes.
+ */
+@Slf4j
+public class SegmentedWALStorageEngine implements IKVRangeWALStoreEngine {
+    private static final String IDENTITY_FILE = "IDENTITY";
+    private static final long DEFAULT_LOG_ENTRY_CACHE_SIZE = 64 * 1024 * 1024;
+    private final ConcurrentLinkedQueue<StabilizingIndex> stabilizingQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<State> state = new AtomicReference<>(State.INIT);
+    private final Map<KVRangeId, SegmentedWALStore> instances = Maps.newConcurrentMap();
+    private final Map<KVRangeId, Long> stabilizingRanges = new HashMap<>();
+    private final String overrideIdentity;
+    private final Path rootDir;
+    private final long segmentSize;
+    private final int flushBufferSize;
+    private final LongAdder queuingCount = new LongAdder();
+    private final ExecutorService flushExecutor;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final KVRangeWALLogEntryCache logEntryCache;
+    private final String identity;
+    private final MetricManager metricMgr;
+
+    private ScheduledExecutorService bgTaskExecutor;
+
+    public SegmentedWALStorageEngine(String overrideIdentity,
+                                     int flushBufferSize,
+                                     long logEntryCacheSize,
+                                     SegmentedWALEngineConfigurator configurator) {
+        Preconditions.checkArgument(configurator.getDbRootDir() != null, "dbRootDir must be specified");
+        Preconditions.checkArgument(configurator.getSegmentSize() > 0, "segmentSize must be positive");
+        this.overrideIdentity = overrideIdentity;
+        this.rootDir = Paths.get(configurator.getDbRootDir());
+        this.segmentSize = configurator.getSegmentSize();
+        this.flushBufferSize = flushBufferSize;
+        this.identity = loadIdentity();
+        flushExecutor = ExecutorServiceMetrics.monitor(Metrics.globalRegistry, new ThreadPoolExecutor(1, 1,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), EnvProvider.INSTANCE.newThreadFactory("wal-flusher")),
+            "basekv[" + identity + "]-wal-flusher");
+        logEntryCache = new KVRangeWALLogEntryCache(identity, logEntryCacheSize);
+        metricMgr = new MetricManager(identity);
+    }
+
+    public SegmentedWALStorageEngine(String overrideIdentity, SegmentedWALEngineConfigurator configurator) {
+        this(overrideIdentity, 1024, DEFAULT_LOG_ENTRY_CACHE_SIZE, configurator);
+    }
+
+    @Override
+    public String id() {
+        return identity;
+    }
+
+    @Override
+    public void start(ScheduledExecutorService bgTaskExecutor) {
+        if (state.compareAndSet(State.INIT, State.STARTING)) {
+            try {
+                this.bgTaskExecutor = bgTaskExecutor;
+                loadExisting();
+                state.set(State.STARTED);
+            } catch (Throwable e) {
+                state.set(State.TERMINATED);
+                throw new KVRangeStoreException("Failed to start wal engine", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (state.compareAndSet(State.STARTED, State.STOPPING)) {
+            try {
+                log.debug("Stopping SegmentedWALStoreEngine[{}]", identity);
+                instances.values().forEach(SegmentedWALStore::stop);
+                MoreExecutors.shutdownAndAwaitTermination(flushExecutor, 5, TimeUnit.SECONDS);
+                instances.values().forEach(SegmentedWALStore::close);
+                logEntryCache.close();
+                metricMgr.close();
+                state.set(State.STOPPED);
+            } catch (Throwable e) {
+                log.warn("Failed to stop wal engine", e);
+            } finally {
+                state.set(State.TERMINATED);
+            }
+        }
+    }
+
+    @Override
+    public IRaftStateStore newRaftStateStorage(KVRangeId kvRangeId, Snapshot initSnapshot) {
+        checkState();
+        return instances.computeIfAbsent(kvRangeId, id -> {
+            Path dir = rangeDir(kvRangeId);
+            SegmentedWALStore.init(dir, initSnapshot);
+            return newStore(kvRangeId, dir);
+        });
+    }
+
+    @Override
+    public Set<KVRangeId> allKVRangeIds() {
+        checkState();
+        return Sets.newHashSet(instances.keySet());
+    }
+
+    @Override
+    public boolean has(KVRangeId kvRangeId) {
+        checkState();
+        return instances.containsKey(kvRangeId);
+    }
+
+    @Override
+    public IRaftStateStore get(KVRangeId kvRangeId) {
+        checkState();
+        return instances.get(kvRangeId);
+    }
+
+    @Override
+    public long storageSize(KVRangeId kvRangeId) {
+        checkState();
+        SegmentedWALStore store = instances.get(kvRangeId);
+        return store == null ? 0 : store.storageSize();
+    }
+
+    @Override
+    public void destroy(KVRangeId rangeId) {
+        checkState();
+        instances.computeIfPresent(rangeId, (k, v) -> {
+            try {
+                log.debug("Destroy range wal storage: storeId={}, rangeId={}", id(), toShortString(rangeId));
+                v.destroy();
+            } catch (Throwable e) {
+                log.error("Failed to destroy SegmentedWALStore[{}]", toShortString(rangeId), e);
+            }
+            return null;
+        });
+    }
+
+    private SegmentedWALStore newStore(KVRangeId kvRangeId, Path dir) {
+        return new SegmentedWALStore(identity, kvRangeId, dir, segmentSize, this::onAppend, logEntryCache,
+            bgTaskExecutor);
+    }
+
+    private Path rangeDir(KVRangeId kvRangeId) {
+        return rootDir.resolve(KVRangeIdUtil.toString(kvRangeId));
+    }
+
+    private String loadIdentity() {
+        try {
+            Files.createDirectories(rootDir);
+            Path identityFile = rootDir.resolve(IDENTITY_FILE);
+            if (!Files.exists(identityFile)) {
+                String newIdentity = overrideIdentity != null && !overrideIdentity.trim().isEmpty()
+                    ? overrideIdentity : UUID.randomUUID().toString();
+                Files.write(identityFile, newIdentity.getBytes(UTF_8));
+            }
+            List<String> lines = Files.readAllLines(identityFile);
+            return lines.get(0);
+        } catch (IndexOutOfBoundsException | IOException e) {
+            throw new KVRangeStoreException("Failed to read IDENTITY file", e);
+        }
+    }
+
+    private void loadExisting() throws IOException {
+        try (Stream<Path> dirs = Files.list(rootDir)) {
+            dirs.filter(Files::isDirectory).forEach(dir -> {
+                KVRangeId kvRangeId = KVRangeIdUtil.fromString(dir.getFileName().toString());
+                instances.put(kvRangeId, newStore(kvRangeId, dir));
+                log.debug("WAL loaded: kvRangeId={}", toShortString(kvRangeId));
+            });
+        }
+    }
+
+    private void onAppend(KVRangeId kvRangeId, long stabilizingIndex) {
+        stabilizingQueue.add(new StabilizingIndex(kvRangeId, stabilizingIndex));
+        queuingCount.increment();
+        scheduleFlush();
+    }
+
+    private void checkState() {
+        Preconditions.checkState(state.get() == State.STARTED, "Not started");
+    }
+
+    private void scheduleFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        StabilizingIndex sIdx;
+        int i = 0;
+        while (i++ < flushBufferSize && (sIdx = stabilizingQueue.poll()) != null) {
+            stabilizingRanges.put(sIdx.id, sIdx.index);
+        }
+        queuingCount.add(-i);
+        metricMgr.flushBatchSummary.record(i);
+        Timer.Sample sample = Timer.start();
+        stabilizingRanges.forEach((id, idx) -> {
+            SegmentedWALStore stateStorage = instances.get(id);
+            if (stateStorage != null) {
+                try {
+                    stateStorage.sync();
+                    stateStorage.onStable(idx);
+                } catch (Throwable e) {
+                    log.error("Unexpected error during flushing: rangeId={}", toShortString(id), e);
+                }
+            }
+        });
+        sample.stop(metricMgr.flushTimer);
+        stabilizingRanges.clear();
+        flushing.set(false);
+        if (!stabilizingQueue.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private enum State {
+        INIT, STARTING, STARTED, STOPPING, STOPPED, TERMINATED
+    }
+
+    @AllArgsConstructor
+    private static class StabilizingIndex {
+        KVRangeId id;
+        long index;
+    }
+
+    private class MetricManager {
+        private final Gauge flushBufferGauge;
+        private final DistributionSummary flushBatchSummary;
+        private final Timer flushTimer;
+
+        MetricManager(String id) {
+            Tags tags = Tags.of("storeId", id);
+            flushBufferGauge = Gauge.builder("basekv.engine.wal.flushbuffer", queuingCount::intValue)
+                .tags(tags).register(Metrics.globalRegistry);
+            flushBatchSummary = DistributionSummary.builder("basekv.engine.wal.flushbatch")
+                .tags(tags)
+                .baseUnit("indexes")
+                .register(Metrics.globalRegistry);
+            flushTimer = Timer.builder("basekv.engine.wal.flush")
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+        }
+
+        void close() {
+            Metrics.globalRegistry.remove(flushBufferGauge);
+            Metrics.globalRegistry.remove(flushBatchSummary);
+            Metrics.globalRegistry.remove(flushTimer);
+        }
+    }
+}
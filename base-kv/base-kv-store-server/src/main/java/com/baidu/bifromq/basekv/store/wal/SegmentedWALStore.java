@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static com.baidu.bifromq.basekv.utils.KVRangeIdUtil.toShortString;
+import static java.lang.String.format;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.IRaftStateStore;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.raft.proto.Voting;
+import com.baidu.bifromq.basekv.store.exception.KVRangeStoreException;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Raft state store of one KVRange backed by a directory of append-only log segments.
+ * <br>
+ * Voting, term and latest snapshot are kept in a small META file which is rewritten atomically, log entries are
+ * appended into the active segment which is sealed and rolled over once its size exceeds the limit. Compaction deletes
+ * the whole segments covered by snapshot, and suffix truncation only touches the segments after the truncation point.
+ * <br>
+ * The segments live in a sub-directory named after the log epoch recorded in META. Installing a snapshot of different
+ * history bumps the epoch in the same META rewrite, which is the commit point making all previous segments unreachable,
+ * so they could be deleted lazily.
+ */
+@Slf4j
+class SegmentedWALStore implements IRaftStateStore {
+    private static final StableListener DEFAULT_STABLE_LISTENER = stabledIndex -> {
+    };
+    private static final String META_FILE = "META";
+    private static final String LOG_DIR_PREFIX = "log-";
+    private static final int META_VERSION = 1;
+
+    private final String storeId;
+    private final KVRangeId rangeId;
+    private final Path dir;
+    private final long segmentSize;
+    private final KVRangeWALStore.AppendCallback appendCallback;
+    private final KVRangeWALLogEntryCache logEntryCache;
+    private final Executor bgMgmtExecutor;
+    private final TreeMap<Long, ClusterConfig> configEntryMap = Maps.newTreeMap();
+    private final NavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Set<CompletableFuture<Void>> bgTasks = Sets.newConcurrentHashSet();
+
+    private long currentTerm = 0;
+    private long logEpoch = 0;
+    private Voting currentVoting;
+    private Snapshot latestSnapshot;
+    private volatile long lastIndex;
+    private long prevStabilizedIndex;
+
+    private volatile StableListener stableListener = DEFAULT_STABLE_LISTENER;
+
+    SegmentedWALStore(String storeId,
+                      KVRangeId rangeId,
+                      Path dir,
+                      long segmentSize,
+                      KVRangeWALStore.AppendCallback appendCallback,
+                      KVRangeWALLogEntryCache logEntryCache,
+                      Executor bgMgmtExecutor) {
+        this.storeId = storeId;
+        this.rangeId = rangeId;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.appendCallback = appendCallback;
+        this.logEntryCache = logEntryCache;
+        this.bgMgmtExecutor = bgMgmtExecutor;
+        load();
+    }
+
+    static void init(Path dir, Snapshot initSnapshot) {
+        try {
+            Files.createDirectories(dir);
+            writeMeta(dir, 0, null, initSnapshot, 0);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to init wal dir: " + dir, e);
+        }
+    }
+
+    @Override
+    public String local() {
+        return storeId;
+    }
+
+    @Override
+    public long currentTerm() {
+        return currentTerm;
+    }
+
+    @Override
+    public void saveTerm(long term) {
+        trace("Save term: {}", term);
+        saveMeta(term, currentVoting, latestSnapshot, logEpoch);
+        currentTerm = term;
+    }
+
+    @Override
+    public Optional<Voting> currentVoting() {
+        return Optional.ofNullable(currentVoting);
+    }
+
+    @Override
+    public void saveVoting(Voting voting) {
+        trace("Save voting: {}", voting);
+        saveMeta(currentTerm, voting, latestSnapshot, logEpoch);
+        currentVoting = voting;
+    }
+
+    @Override
+    public ClusterConfig latestClusterConfig() {
+        if (configEntryMap.isEmpty()) {
+            return latestSnapshot.getClusterConfig();
+        } else {
+            return configEntryMap.lastEntry().getValue();
+        }
+    }
+
+    @Override
+    public void applySnapshot(Snapshot snapshot) {
+        long snapLastIndex = snapshot.getIndex();
+        long snapLastTerm = snapshot.getTerm();
+        Optional<LogEntry> lastEntryInSS = entryAt(snapLastIndex);
+        log.debug("Compact logs using snapshot[term={}, index={}]: rangeId={}, storeId={}",
+            snapLastIndex, snapLastTerm, toShortString(rangeId), storeId);
+        if (lastEntryInSS.isPresent() && lastEntryInSS.get().getTerm() == snapLastTerm) {
+            // the snapshot represents partial history, it happens when compacting
+            long prevFirstIndex = firstIndex();
+            saveMeta(currentTerm, currentVoting, snapshot, logEpoch);
+            latestSnapshot = snapshot;
+            lastIndex = Math.max(lastIndex, snapLastIndex);
+
+            long truncateBeforeIndex = Math.min(lastIndex(), snapLastIndex) + 1;
+            while (!configEntryMap.isEmpty() && configEntryMap.firstKey() <= truncateBeforeIndex) {
+                configEntryMap.pollFirstEntry();
+            }
+            logEntryCache.invalidate(rangeId, prevFirstIndex, truncateBeforeIndex);
+            // only the segments entirely covered by snapshot could be deleted
+            List<LogSegment> obsoleteSegments = new ArrayList<>();
+            for (LogSegment segment : segments.values()) {
+                if (segment.lastIndex() >= truncateBeforeIndex) {
+                    break;
+                }
+                segments.remove(segment.baseIndex);
+                obsoleteSegments.add(segment);
+            }
+            if (!obsoleteSegments.isEmpty()) {
+                runInBackground(() -> {
+                    obsoleteSegments.forEach(LogSegment::delete);
+                    log.debug("{} log segments deleted: rangeId={}, storeId={}",
+                        obsoleteSegments.size(), toShortString(rangeId), storeId);
+                });
+            }
+        } else {
+            // the snapshot represents a different history, it happens when installing snapshot from leader
+            logEntryCache.invalidate(rangeId, firstIndex(), lastIndex() + 1);
+            Path obsoleteLogDir = logDir();
+            List<LogSegment> obsoleteSegments = new ArrayList<>(segments.values());
+            // the segments of previous epoch won't be loaded after restart once the new epoch is saved
+            saveMeta(currentTerm, currentVoting, snapshot, logEpoch + 1);
+            logEpoch++;
+            latestSnapshot = snapshot;
+            lastIndex = latestSnapshot.getIndex();
+            prevStabilizedIndex = lastIndex;
+            configEntryMap.clear();
+            segments.clear();
+            runInBackground(() -> {
+                obsoleteSegments.forEach(LogSegment::delete);
+                deleteDir(obsoleteLogDir);
+            });
+            log.debug("All logs truncated: rangeId={}, storeId={}", toShortString(rangeId), storeId);
+        }
+    }
+
+    @Override
+    public Snapshot latestSnapshot() {
+        return latestSnapshot;
+    }
+
+    @Override
+    public long firstIndex() {
+        return latestSnapshot.getIndex() + 1;
+    }
+
+    @Override
+    public long lastIndex() {
+        return lastIndex;
+    }
+
+    @Override
+    public Optional<LogEntry> entryAt(long index) {
+        if (index < firstIndex() || index > lastIndex()) {
+            return Optional.empty();
+        }
+        LogEntry cached = logEntryCache.get(rangeId, index);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        try {
+            return Optional.of(read(index));
+        } catch (IOException | IndexOutOfBoundsException e) {
+            log.error("Failed to read log entry[index={}, rangeId={}]", index, toShortString(rangeId), e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Iterator<LogEntry> entries(long lo, long hi, long maxSize) {
+        if (lo < firstIndex()) {
+            throw new IndexOutOfBoundsException("lo[" + lo + "] must not be less than firstIndex["
+                + firstIndex() + "]");
+        }
+        if (hi > lastIndex() + 1) {
+            throw new IndexOutOfBoundsException("hi[" + hi + "] must not be greater than lastIndex["
+                + lastIndex() + "]");
+        }
+        if (maxSize < 0) {
+            maxSize = Long.MAX_VALUE;
+        }
+        return new LogEntryIterator(lo, hi, maxSize);
+    }
+
+    @Override
+    public void append(List<LogEntry> entries, boolean flush) {
+        assert !entries.isEmpty();
+        LogEntry startEntry = entries.get(0);
+        if (lastIndex() >= firstIndex()) {
+            if (firstIndex() > startEntry.getIndex() || lastIndex() + 1 < startEntry.getIndex()) {
+                throw new IndexOutOfBoundsException(format("first index[%d] must be in [%d,%d]",
+                    startEntry.getIndex(), firstIndex(), lastIndex() + 1));
+            }
+        } else {
+            if (startEntry.getIndex() != firstIndex()) {
+                throw new IndexOutOfBoundsException(format("log index must start from %d", firstIndex()));
+            }
+        }
+        long afterIndex = startEntry.getIndex() - 1;
+        try {
+            truncateAfter(afterIndex);
+            while (!configEntryMap.isEmpty() && configEntryMap.lastKey() > afterIndex) {
+                configEntryMap.pollLastEntry();
+            }
+            for (LogEntry entry : entries) {
+                if (entry.hasConfig()) {
+                    configEntryMap.put(entry.getIndex(), entry.getConfig());
+                }
+                trace("Append log entry[index={}, term={}, type={}]",
+                    entry.getIndex(), entry.getTerm(), entry.getTypeCase().name());
+                activeSegment(entry.getIndex()).append(entry);
+            }
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to append log entries", e);
+        }
+        long prevLastIndex = lastIndex;
+        lastIndex = entries.get(entries.size() - 1).getIndex();
+        // drop the conflicting entries beyond new last index, those in between are overwritten
+        logEntryCache.invalidate(rangeId, lastIndex + 1, prevLastIndex + 1);
+        logEntryCache.put(rangeId, entries);
+        if (flush) {
+            sync();
+            onStable(lastIndex);
+        } else {
+            appendCallback.onAppend(rangeId, lastIndex);
+        }
+    }
+
+    @Override
+    public void addStableListener(StableListener listener) {
+        stableListener = listener;
+    }
+
+    @Override
+    public CompletableFuture<Void> stop() {
+        log.debug("Stop range wal storage: rangeId={}, storeId={}", toShortString(rangeId), storeId);
+        stableListener = DEFAULT_STABLE_LISTENER;
+        return CompletableFuture.allOf(bgTasks.toArray(new CompletableFuture[0]));
+    }
+
+    long storageSize() {
+        return segments.values().stream().mapToLong(LogSegment::size).sum();
+    }
+
+    /**
+     * Make all appended entries durable, the recently rolled over segments may not have been synced by sealing yet
+     */
+    void sync() {
+        try {
+            for (LogSegment segment : segments.values()) {
+                segment.sync();
+            }
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to sync log segment", e);
+        }
+    }
+
+    void close() {
+        segments.values().forEach(LogSegment::close);
+    }
+
+    void destroy() {
+        logEntryCache.invalidate(rangeId, firstIndex(), lastIndex() + 1);
+        segments.values().forEach(LogSegment::delete);
+        segments.clear();
+        deleteDir(dir);
+    }
+
+    void onStable(long stabledIndex) {
+        if (prevStabilizedIndex < stabledIndex) {
+            trace("Log entries before index[{}] stabilized", stabledIndex);
+            stableListener.onStabilized(stabledIndex);
+            prevStabilizedIndex = stabledIndex;
+        }
+    }
+
+    private LogEntry read(long index) throws IOException {
+        Map.Entry<Long, LogSegment> segment = segments.floorEntry(index);
+        if (segment == null) {
+            throw new IndexOutOfBoundsException("No segment contains index[" + index + "]");
+        }
+        return segment.getValue().read(index);
+    }
+
+    private void truncateAfter(long afterIndex) throws IOException {
+        while (!segments.isEmpty() && segments.lastKey() > afterIndex) {
+            segments.pollLastEntry().getValue().delete();
+        }
+        Map.Entry<Long, LogSegment> last = segments.lastEntry();
+        if (last != null && last.getValue().lastIndex() > afterIndex) {
+            last.getValue().truncateFrom(afterIndex + 1);
+        }
+    }
+
+    private LogSegment activeSegment(long nextIndex) throws IOException {
+        Map.Entry<Long, LogSegment> last = segments.lastEntry();
+        if (last != null) {
+            LogSegment active = last.getValue();
+            if (active.size() < segmentSize) {
+                return active;
+            }
+            // sealing involves fsync, keep it off the appending path
+            int generation = active.generation();
+            runInBackground(() -> {
+                try {
+                    active.seal(generation);
+                } catch (IOException e) {
+                    log.warn("Failed to seal log segment[{}]: rangeId={}, storeId={}",
+                        active.baseIndex, toShortString(rangeId), storeId, e);
+                }
+            });
+        } else {
+            Files.createDirectories(logDir());
+        }
+        LogSegment segment = LogSegment.create(logDir(), nextIndex);
+        segments.put(nextIndex, segment);
+        return segment;
+    }
+
+    private Path logDir() {
+        return dir.resolve(LOG_DIR_PREFIX + logEpoch);
+    }
+
+    private void runInBackground(Runnable task) {
+        CompletableFuture<Void> taskDone = new CompletableFuture<>();
+        Runnable bgTask = () -> {
+            try {
+                task.run();
+            } finally {
+                taskDone.complete(null);
+            }
+        };
+        bgTasks.add(taskDone);
+        taskDone.whenComplete((v, e) -> bgTasks.remove(taskDone));
+        try {
+            bgMgmtExecutor.execute(bgTask);
+        } catch (RejectedExecutionException ree) {
+            log.warn("Segment management task rejected by executor, run it in calling thread");
+            bgTask.run();
+        }
+    }
+
+    private void deleteDir(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            log.error("Failed to delete dir[{}]: rangeId={}, storeId={}", path, toShortString(rangeId), storeId, e);
+        }
+    }
+
+    private void saveMeta(long term, Voting voting, Snapshot snapshot, long epoch) {
+        try {
+            writeMeta(dir, term, voting, snapshot, epoch);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to save wal meta", e);
+        }
+    }
+
+    private static void writeMeta(Path dir, long term, Voting voting, Snapshot snapshot, long epoch)
+        throws IOException {
+        Path tmpPath = dir.resolve(META_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpPath,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream os = Channels.newOutputStream(channel);
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(META_VERSION);
+            dos.writeLong(term);
+            dos.writeLong(epoch);
+            writeBytes(dos, voting == null ? null : voting.toByteArray());
+            writeBytes(dos, snapshot.toByteArray());
+            dos.flush();
+            channel.force(false);
+        }
+        Files.move(tmpPath, dir.resolve(META_FILE), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeBytes(DataOutputStream dos, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            dos.writeInt(-1);
+        } else {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return bytes;
+    }
+
+    private void load() {
+        loadMeta();
+        loadSegments();
+        loadConfigEntries();
+        trace("New raft state storage loaded");
+    }
+
+    private void loadMeta() {
+        try (InputStream is = Files.newInputStream(dir.resolve(META_FILE));
+             DataInputStream dis = new DataInputStream(is)) {
+            int version = dis.readInt();
+            if (version != META_VERSION) {
+                throw new KVRangeStoreException("Unsupported wal meta version: " + version);
+            }
+            currentTerm = dis.readLong();
+            logEpoch = dis.readLong();
+            byte[] votingBytes = readBytes(dis);
+            if (votingBytes != null) {
+                currentVoting = Voting.parseFrom(votingBytes);
+            }
+            latestSnapshot = Snapshot.parseFrom(readBytes(dis));
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to load wal meta", e);
+        }
+    }
+
+    private void loadSegments() {
+        Path logDir = logDir();
+        List<Long> baseIndexes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            // the segments of previous epochs are left by crash during installing snapshot
+            files.filter(path -> Files.isDirectory(path) && !path.equals(logDir)).forEach(this::deleteDir);
+            Files.createDirectories(logDir);
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to clean obsolete log segments", e);
+        }
+        try (Stream<Path> files = Files.list(logDir)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(LogSegment.LOG_SUFFIX))
+                .forEach(name -> baseIndexes.add(LogSegment.parseBaseIndex(name)));
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to list log segments", e);
+        }
+        baseIndexes.sort(Long::compare);
+        lastIndex = latestSnapshot.getIndex();
+        try {
+            for (int i = 0; i < baseIndexes.size(); i++) {
+                boolean sealed = i < baseIndexes.size() - 1;
+                LogSegment segment = LogSegment.open(logDir, baseIndexes.get(i), sealed);
+                if (segment.count() == 0 || segment.lastIndex() < firstIndex()) {
+                    // empty or compacted segment
+                    segment.delete();
+                } else if (segment.baseIndex > lastIndex + 1) {
+                    log.warn("Discontinuous log segment[{}] found: rangeId={}, storeId={}",
+                        segment.baseIndex, toShortString(rangeId), storeId);
+                    segment.delete();
+                } else {
+                    segments.put(segment.baseIndex, segment);
+                    lastIndex = segment.lastIndex();
+                }
+            }
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to load log segments", e);
+        }
+        prevStabilizedIndex = lastIndex;
+    }
+
+    private void loadConfigEntries() {
+        if (lastIndex < firstIndex()) {
+            return;
+        }
+        try {
+            // only the config entries recorded by segments are read
+            for (LogSegment segment : segments.values()) {
+                for (long configIndex : segment.configIndexes()) {
+                    if (configIndex >= firstIndex() && configIndex <= lastIndex) {
+                        configEntryMap.put(configIndex, read(configIndex).getConfig());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new KVRangeStoreException("Failed to load config entries", e);
+        }
+    }
+
+    private class LogEntryIterator implements Iterator<LogEntry> {
+        private final long maxIndex;
+        private final long maxSize;
+        private long currentIndex;
+        private long accumulatedSize;
+
+        private LogEntryIterator(long startIndex, long endIndex, long maxSize) {
+            this.currentIndex = startIndex;
+            this.maxIndex = endIndex;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return currentIndex < maxIndex && accumulatedSize <= maxSize;
+        }
+
+        @Override
+        public LogEntry next() {
+            if (currentIndex >= maxIndex) {
+                throw new NoSuchElementException();
+            }
+            LogEntry entry = logEntryCache.get(rangeId, currentIndex);
+            if (entry == null) {
+                try {
+                    entry = read(currentIndex);
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    throw new KVRangeStoreException("Log data corruption", e);
+                }
+            }
+            accumulatedSize += entry.getData().size();
+            currentIndex++;
+            return entry;
+        }
+    }
+
+    private void trace(String msg, Object... args) {
+        if (log.isTraceEnabled()) {
+            log.trace(msg, args);
+        }
+    }
+}
@@ -26,4 +26,6 @@ public @interface Cluster {
     int installSnapshotTimeoutTick() default 2000;
 
     boolean asyncAppend() default true;
+
+    int maxFollowerReadLag() default 1000;
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.benchmark;
+
+import static com.baidu.bifromq.basekv.utils.KVRangeIdUtil.toShortString;
+import static com.google.protobuf.ByteString.copyFromUtf8;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.store.KVRangeStoreTestCluster;
+import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the per-query latency distribution of linearized reads issued concurrently against a single range, and log
+ * the cpu utilization of the raft thread in each iteration. Run it before and after a change to the way read indexes
+ * are acquired to compare how much of the raft thread is spent on minting read indexes.
+ */
+@Slf4j
+@BenchmarkMode(Mode.SampleTime)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(64)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinearizedQueryBenchmark {
+    private static final String RAFT_THREAD_PREFIX = "wal-raft-executor-";
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private KVRangeStoreTestCluster cluster;
+    private String store;
+    private KVRangeId rangeId;
+    private long iterationStartNanos;
+    private long raftCpuNanosAtStart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        KVRangeStoreOptions options = new KVRangeStoreOptions();
+        options.getKvRangeOptions().getWalRaftConfig().setAsyncAppend(false);
+        cluster = new KVRangeStoreTestCluster(options);
+        store = cluster.bootstrapStore();
+        rangeId = cluster.genesisKVRangeId();
+        cluster.awaitKVRangeReady(store, rangeId);
+        cluster.awaitAllKVRangeReady(rangeId, 0, 5000);
+        cluster.put(store, rangeId, copyFromUtf8("key"), copyFromUtf8("value"));
+        log.info("KVRange ready: kvRangeId={}", toShortString(rangeId));
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationStartNanos = System.nanoTime();
+        raftCpuNanosAtStart = raftCpuNanos();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long elapsed = System.nanoTime() - iterationStartNanos;
+        long raftCpu = raftCpuNanos() - raftCpuNanosAtStart;
+        log.info("Raft thread utilization: {}%", String.format("%.2f", raftCpu * 100.0 / elapsed));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        cluster.shutdown();
+    }
+
+    @Benchmark
+    public void linearizedGet() {
+        cluster.get(store, rangeId, copyFromUtf8("key"));
+    }
+
+    private long raftCpuNanos() {
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(RAFT_THREAD_PREFIX)) {
+                long cpu = threadMXBean.getThreadCpuTime(thread.getId());
+                if (cpu > 0) {
+                    total += cpu;
+                }
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(LinearizedQueryBenchmark.class.getSimpleName())
+            .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            System.out.println(e);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.benchmark;
+
+import com.baidu.bifromq.basekv.TestUtil;
+import com.baidu.bifromq.basekv.localengine.RocksDBKVEngineConfigurator;
+import com.baidu.bifromq.basekv.localengine.RocksDBKVEngineConfigurator.CFOptionsConfigurator;
+import com.baidu.bifromq.basekv.localengine.RocksDBKVEngineConfigurator.DBOptionsConfigurator;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.IRaftStateStore;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.store.wal.IKVRangeWALStoreEngine;
+import com.baidu.bifromq.basekv.store.wal.KVRangeWALStorageEngine;
+import com.baidu.bifromq.basekv.store.wal.SegmentedWALEngineConfigurator;
+import com.baidu.bifromq.basekv.store.wal.SegmentedWALStorageEngine;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.rocksdb.DBOptions;
+import org.rocksdb.DBOptionsInterface;
+import org.rocksdb.MutableDBOptionsInterface;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+
+/**
+ * Compare the append latency distribution(see p0.99 in the result) of the kv based wal engine and the segmented wal
+ * engine. After each trial the write amplification is logged for both engines as the bytes the process wrote to the
+ * storage layer divided by the logical bytes appended, for the kv based engine it's also broken down into the bytes
+ * written by RocksDB WAL, memtable flush and compaction.
+ */
+@Slf4j
+@BenchmarkMode(Mode.SampleTime)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 10, time = 5)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class WALStoreEngineBenchmark {
+    @Param({"rocksdb", "segmented"})
+    private String engineType;
+
+    @Param({"256", "4096"})
+    private int entrySize;
+
+    @Param({"true", "false"})
+    private boolean flush;
+
+    private final int rangeCount = 8;
+    private final int compactInterval = 10000;
+    private Path dbRootDir;
+    private ScheduledExecutorService bgTaskExecutor;
+    private IKVRangeWALStoreEngine walEngine;
+    private final List<IRaftStateStore> stores = new ArrayList<>();
+    private long appendedBytes;
+    private long processWriteBytes;
+    private Statistics statistics;
+    private ByteString data;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dbRootDir = Files.createTempDirectory("");
+        bgTaskExecutor = Executors.newSingleThreadScheduledExecutor();
+        if (engineType.equals("segmented")) {
+            walEngine = new SegmentedWALStorageEngine(null, SegmentedWALEngineConfigurator.builder()
+                .dbRootDir(Paths.get(dbRootDir.toString(), "wal").toString())
+                .segmentSize(64 * 1024 * 1024)
+                .build());
+        } else {
+            // use the default options with a statistics collecting the bytes written by rocksdb
+            RocksDBKVEngineConfigurator defaultConfigurator = new RocksDBKVEngineConfigurator();
+            DBOptionsConfigurator baseDBOptions = defaultConfigurator.new BaseDBOptionConfigurator();
+            CFOptionsConfigurator baseCFOptions = defaultConfigurator.new BaseCFOptionConfigurator();
+            statistics = new Statistics();
+            walEngine = new KVRangeWALStorageEngine(null, new RocksDBKVEngineConfigurator(new DBOptionsConfigurator() {
+                @Override
+                public void config(DBOptionsInterface<DBOptions> targetOption) {
+                    baseDBOptions.config(targetOption);
+                    targetOption.setStatistics(statistics);
+                }
+
+                @Override
+                public void config(MutableDBOptionsInterface<DBOptions> targetOption) {
+                    baseDBOptions.config(targetOption);
+                }
+            }, baseCFOptions)
+                .setDbRootDir(Paths.get(dbRootDir.toString(), "wal").toString())
+                .setDbCheckpointRootDir(Paths.get(dbRootDir.toString(), "wal_cp").toString()));
+        }
+        processWriteBytes = processWriteBytes();
+        walEngine.start(bgTaskExecutor);
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        for (int i = 0; i < rangeCount; i++) {
+            stores.add(walEngine.newRaftStateStorage(rangeId, Snapshot.newBuilder()
+                .setClusterConfig(ClusterConfig.newBuilder().addVoters(walEngine.id()).build())
+                .build()));
+            rangeId = KVRangeIdUtil.next(rangeId);
+        }
+        byte[] bytes = new byte[entrySize];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        data = ByteString.copyFrom(bytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        long writtenBytes = processWriteBytes() - processWriteBytes;
+        log.info("engine={}, entrySize={}, flush={}: appended {} bytes, {} bytes on disk, "
+                + "{} bytes written to storage, write amplification {}",
+            engineType, entrySize, flush, appendedBytes, diskUsage(), writtenBytes,
+            String.format("%.2f", (double) writtenBytes / appendedBytes));
+        if (statistics != null) {
+            long walBytes = statistics.getTickerCount(TickerType.WAL_FILE_BYTES);
+            long flushBytes = statistics.getTickerCount(TickerType.FLUSH_WRITE_BYTES);
+            long compactBytes = statistics.getTickerCount(TickerType.COMPACT_WRITE_BYTES);
+            log.info("rocksdb: {} user bytes, {} wal bytes, {} flush bytes, {} compaction bytes, "
+                    + "write amplification {}",
+                statistics.getTickerCount(TickerType.BYTES_WRITTEN), walBytes, flushBytes, compactBytes,
+                String.format("%.2f", (double) (walBytes + flushBytes + compactBytes) / appendedBytes));
+        }
+        walEngine.stop();
+        if (statistics != null) {
+            statistics.close();
+        }
+        MoreExecutors.shutdownAndAwaitTermination(bgTaskExecutor, 5, TimeUnit.SECONDS);
+        TestUtil.deleteDir(dbRootDir.toString());
+        dbRootDir.toFile().delete();
+    }
+
+    @Benchmark
+    public void append() {
+        IRaftStateStore store = stores.get(ThreadLocalRandom.current().nextInt(rangeCount));
+        long index = store.lastIndex() + 1;
+        store.append(List.of(LogEntry.newBuilder()
+            .setTerm(1)
+            .setIndex(index)
+            .setData(data)
+            .build()), flush);
+        appendedBytes += entrySize;
+        if (index % compactInterval == 0) {
+            // keep the log bounded like the raft node does after snapshot
+            store.applySnapshot(Snapshot.newBuilder()
+                .setTerm(1)
+                .setIndex(index - compactInterval / 2)
+                .setClusterConfig(store.latestClusterConfig())
+                .build());
+        }
+    }
+
+    private long diskUsage() {
+        try (Stream<Path> files = Files.walk(dbRootDir)) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The bytes this process caused to be sent to the storage layer, including the background threads of rocksdb
+     */
+    private long processWriteBytes() {
+        try (Stream<String> lines = Files.lines(Paths.get("/proc/self/io"))) {
+            return lines.filter(line -> line.startsWith("write_bytes:"))
+                .mapToLong(line -> Long.parseLong(line.substring("write_bytes:".length()).trim()))
+                .findFirst()
+                .orElse(-1);
+        } catch (IOException | UncheckedIOException e) {
+            // not available on non-linux platform
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(WALStoreEngineBenchmark.class.getSimpleName())
+            .forks(1)
+            .build();
+        try {
+            new Runner(opt).run();
+        } catch (RunnerException e) {
+            System.out.println(e);
+        }
+    }
+}
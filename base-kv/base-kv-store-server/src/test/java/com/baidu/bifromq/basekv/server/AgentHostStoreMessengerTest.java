@@ -16,6 +16,11 @@ package com.baidu.bifromq.basekv.server;
 import static com.baidu.bifromq.basekv.server.AgentHostStoreMessenger.agentId;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -27,10 +32,17 @@ import com.baidu.bifromq.basecluster.memberlist.agent.IAgentMember;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessageBatch;
+import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.protobuf.ByteString;
 import io.reactivex.rxjava3.observers.TestObserver;
 import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import lombok.SneakyThrows;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -103,6 +115,83 @@ public class AgentHostStoreMessengerTest {
         assertTrue(reliableCap.getValue());
     }
 
+    @SneakyThrows
+    @Test
+    public void sendInBatch() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        AgentHostStoreMessenger messenger =
+            new AgentHostStoreMessenger(agentHost, clusterId, srcStore, scheduler, 100_000, 1024 * 1024);
+        StoreMessage message1 = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        StoreMessage message2 = message1.toBuilder().setSrcRange(KVRangeIdUtil.next(srcRange)).build();
+        messenger.send(message1);
+        messenger.send(message2);
+        verify(srcStoreAgentMember, never()).multicast(anyString(), any(), anyBoolean());
+
+        ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
+        verify(srcStoreAgentMember, timeout(1000)).multicast(anyString(), msgCap.capture(), anyBoolean());
+        StoreMessageBatch batch = StoreMessageBatch.parseFrom(msgCap.getValue());
+        assertEquals(batch.getMessageCount(), 2);
+        assertEquals(batch.getMessage(0), message1);
+        assertEquals(batch.getMessage(1), message2);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void sendWhenBatchFull() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore, scheduler,
+            Long.MAX_VALUE / 1000, message.getSerializedSize());
+        messenger.send(message);
+        ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
+        verify(srcStoreAgentMember).multicast(anyString(), msgCap.capture(), anyBoolean());
+        assertEquals(msgCap.getValue(), message.toByteString());
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void noBatchingByDefault() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, srcStore,
+            new KVRangeStoreOptions().getMessageBatchWindowMicros(), 1024 * 1024);
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        messenger.send(message);
+        verify(srcStoreAgentMember).multicast(targetStore, message.toByteString(), true);
+    }
+
+    @SneakyThrows
+    @Test
+    public void sendInBatchWithOwnScheduler() {
+        AgentHostStoreMessenger messenger =
+            new AgentHostStoreMessenger(agentHost, clusterId, srcStore, 1000, 1024 * 1024);
+        StoreMessage message1 = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        StoreMessage message2 = message1.toBuilder().setSrcRange(KVRangeIdUtil.next(srcRange)).build();
+        messenger.send(message1);
+        messenger.send(message2);
+
+        ArgumentCaptor<ByteString> msgCap = ArgumentCaptor.forClass(ByteString.class);
+        verify(srcStoreAgentMember, timeout(1000)).multicast(anyString(), msgCap.capture(), anyBoolean());
+        StoreMessageBatch batch = StoreMessageBatch.parseFrom(msgCap.getValue());
+        assertEquals(batch.getMessageCount(), 2);
+        when(agent.deregister(srcStoreAgentMember)).thenReturn(CompletableFuture.completedFuture(null));
+        messenger.close();
+    }
+
     @Test
     public void broadcast() {
         when(agentHost.host(agentId(clusterId))).thenReturn(agent);
@@ -159,4 +248,51 @@ public class AgentHostStoreMessengerTest {
         testObserver.awaitCount(1);
         assertEquals(testObserver.values().get(0).getPayload().getHostStoreId(), targetStore);
     }
+
+    @Test
+    public void receiveBatch() {
+        AgentHostStoreMessenger messenger = new AgentHostStoreMessenger(agentHost, clusterId, targetStore);
+        TestObserver<StoreMessage> testObserver = TestObserver.create();
+        messenger.receive().subscribe(testObserver);
+
+        StoreMessage message1 = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        StoreMessage message2 = message1.toBuilder().setSrcRange(KVRangeIdUtil.next(srcRange)).build();
+        AgentMessage nodeMessage = AgentMessage.newBuilder()
+            .setSender(AgentMemberAddr.newBuilder().setName(srcStore).build())
+            .setPayload(StoreMessageBatch.newBuilder()
+                .addMessage(message1)
+                .addMessage(message2)
+                .build().toByteString())
+            .build();
+        tgtStoreMessageSubject.onNext(nodeMessage);
+        testObserver.awaitCount(2);
+        assertEquals(testObserver.values().get(0), message1);
+        assertEquals(testObserver.values().get(1), message2);
+    }
+
+    @SneakyThrows
+    @Test
+    public void parseFrameKind() {
+        StoreMessage message = StoreMessage.newBuilder()
+            .setFrom(srcStore)
+            .setSrcRange(srcRange)
+            .setPayload(KVRangeMessage.newBuilder().setHostStoreId(targetStore).setRangeId(targetRange).build())
+            .build();
+        assertEquals(AgentHostStoreMessenger.parseFrame(message.toByteString()), List.of(message));
+        StoreMessage payloadOnly = StoreMessage.newBuilder()
+            .setPayload(KVRangeMessage.newBuilder().setRangeId(targetRange).build())
+            .build();
+        assertEquals(AgentHostStoreMessenger.parseFrame(payloadOnly.toByteString()), List.of(payloadOnly));
+        assertEquals(AgentHostStoreMessenger.parseFrame(ByteString.EMPTY), List.of(StoreMessage.getDefaultInstance()));
+
+        StoreMessageBatch batch = StoreMessageBatch.newBuilder()
+            .addMessage(message)
+            .addMessage(payloadOnly)
+            .build();
+        assertEquals(AgentHostStoreMessenger.parseFrame(batch.toByteString()), List.of(message, payloadOnly));
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.proto.KVRangeMessage;
+import com.baidu.bifromq.basekv.proto.StoreMessage;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the cost of dispatching one inbound store message to its target range against the number of ranges hosted
+ * in the store: every range filtering the store level stream, versus looking up the dispatch table by range id.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KVRangeMessageDispatchBenchmark {
+    private static final String STORE_ID = "store1";
+
+    @Param({"10", "100", "1000", "10000"})
+    private int rangeCount;
+
+    @Param({"filter", "table"})
+    private String dispatch;
+
+    private final PublishSubject<StoreMessage> storeMessages = PublishSubject.create();
+    private final Map<KVRangeId, KVRangeMessenger> dispatchTable = new HashMap<>();
+    private final CompositeDisposable disposables = new CompositeDisposable();
+    private StoreMessage[] messages;
+    private int seq;
+    private long received;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        messages = new StoreMessage[rangeCount];
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        for (int i = 0; i < rangeCount; i++) {
+            KVRangeId targetRangeId = rangeId;
+            if ("filter".equals(dispatch)) {
+                // the way each range picked its messages before the dispatch table is introduced
+                disposables.add(storeMessages.mapOptional(storeMessage -> {
+                    KVRangeMessage payload = storeMessage.getPayload();
+                    if (!payload.getHostStoreId().equals(STORE_ID) || !payload.getRangeId().equals(targetRangeId)) {
+                        return Optional.empty();
+                    }
+                    return Optional.of(payload);
+                }).subscribe(msg -> received++));
+            } else {
+                KVRangeMessenger messenger = new KVRangeMessenger(STORE_ID, targetRangeId, null);
+                disposables.add(messenger.receive().subscribe(msg -> received++));
+                dispatchTable.put(targetRangeId, messenger);
+            }
+            messages[i] = StoreMessage.newBuilder()
+                .setFrom("store2")
+                .setSrcRange(targetRangeId)
+                .setPayload(KVRangeMessage.newBuilder()
+                    .setHostStoreId(STORE_ID)
+                    .setRangeId(targetRangeId)
+                    .build())
+                .build();
+            rangeId = KVRangeIdUtil.next(rangeId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        disposables.dispose();
+        dispatchTable.values().forEach(KVRangeMessenger::close);
+    }
+
+    @Benchmark
+    public long dispatch() {
+        StoreMessage message = messages[seq];
+        seq = (seq + 1) % rangeCount;
+        if ("filter".equals(dispatch)) {
+            storeMessages.onNext(message);
+        } else {
+            KVRangeMessenger messenger = dispatchTable.get(message.getPayload().getRangeId());
+            if (messenger != null) {
+                messenger.deliver(message);
+            }
+        }
+        return received;
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(KVRangeMessageDispatchBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -16,14 +16,12 @@ package com.baidu.bifromq.basekv.store;
 import static org.awaitility.Awaitility.await;
 import static org.testng.Assert.assertEquals;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
 import com.baidu.bifromq.basekv.proto.StoreMessage;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import io.reactivex.rxjava3.observers.TestObserver;
-import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import lombok.SneakyThrows;
@@ -37,12 +35,10 @@ import org.mockito.Mock;
 public class KVRangeMessengerTest {
     @Mock
     private IStoreMessenger storeMessenger;
-    private PublishSubject<StoreMessage> incomingStoreMsg;
     private AutoCloseable closeable;
     @BeforeMethod
     public void setup() {
         closeable = MockitoAnnotations.openMocks(this);
-        incomingStoreMsg = PublishSubject.create();
     }
 
     @AfterMethod
@@ -69,7 +65,6 @@ public class KVRangeMessengerTest {
         KVRangeId srcRangeId = KVRangeIdUtil.generate();
         String targetStoreId = "targetStoreId";
         KVRangeId targetRangeId = KVRangeIdUtil.generate();
-        when(storeMessenger.receive()).thenReturn(incomingStoreMsg);
         KVRangeMessenger messenger = new KVRangeMessenger(targetStoreId, targetRangeId, storeMessenger);
         TestObserver<KVRangeMessage> rangeMsgObserver = TestObserver.create();
         messenger.receive().subscribe(rangeMsgObserver);
@@ -83,7 +78,7 @@ public class KVRangeMessengerTest {
             .setSrcRange(srcRangeId)
             .setPayload(rangeMessage)
             .build();
-        incomingStoreMsg.onNext(storeMessage);
+        messenger.deliver(storeMessage);
         rangeMsgObserver.awaitCount(1);
 
         KVRangeMessage receivedMsg = rangeMsgObserver.values().get(0);
@@ -100,7 +95,6 @@ public class KVRangeMessengerTest {
         String targetStoreId1 = "targetStoreId1";
         KVRangeId targetRangeId = KVRangeIdUtil.generate();
         KVRangeId targetRangeId1 = KVRangeIdUtil.generate();
-        when(storeMessenger.receive()).thenReturn(incomingStoreMsg);
         KVRangeMessenger messenger = new KVRangeMessenger(targetStoreId, targetRangeId, storeMessenger);
         TestObserver<KVRangeMessage> rangeMsgObserver = TestObserver.create();
         messenger.receive().subscribe(rangeMsgObserver);
@@ -114,7 +108,7 @@ public class KVRangeMessengerTest {
             .setSrcRange(srcRangeId)
             .setPayload(rangeMessage)
             .build();
-        incomingStoreMsg.onNext(storeMessage);
+        messenger.deliver(storeMessage);
         rangeMsgObserver.await(100, TimeUnit.MILLISECONDS);
         assertEquals(rangeMsgObserver.values().size(), 0);
 
@@ -127,7 +121,7 @@ public class KVRangeMessengerTest {
             .setSrcRange(srcRangeId)
             .setPayload(rangeMessage)
             .build();
-        incomingStoreMsg.onNext(storeMessage);
+        messenger.deliver(storeMessage);
         rangeMsgObserver.await(100, TimeUnit.MILLISECONDS);
         assertEquals(rangeMsgObserver.values().size(), 0);
     }
@@ -138,7 +132,6 @@ public class KVRangeMessengerTest {
         KVRangeId srcRangeId = KVRangeIdUtil.generate();
         String targetStoreId = "targetStoreId";
         KVRangeId targetRangeId = KVRangeIdUtil.generate();
-        when(storeMessenger.receive()).thenReturn(incomingStoreMsg);
         KVRangeMessenger messenger = new KVRangeMessenger(targetStoreId, targetRangeId, storeMessenger);
         TestObserver<KVRangeMessage> rangeMsgObserver = TestObserver.create();
         messenger.receive().subscribe(rangeMsgObserver);
@@ -153,7 +146,7 @@ public class KVRangeMessengerTest {
             .setPayload(rangeMessage)
             .build();
         CompletableFuture<KVRangeMessage> onceFuture = messenger.once(msg -> true);
-        incomingStoreMsg.onNext(storeMessage);
+        messenger.deliver(storeMessage);
         await().until(() -> onceFuture.isDone() && !onceFuture.isCompletedExceptionally() &&
             onceFuture.join().equals(KVRangeMessage.newBuilder()
                 .setRangeId(srcRangeId)
@@ -161,7 +154,7 @@ public class KVRangeMessengerTest {
                 .build()));
 
         CompletableFuture<KVRangeMessage> onceFuture1 = messenger.once(msg -> true);
-        incomingStoreMsg.onComplete();
+        messenger.close();
         await().until(() -> onceFuture1.isCompletedExceptionally());
     }
 }
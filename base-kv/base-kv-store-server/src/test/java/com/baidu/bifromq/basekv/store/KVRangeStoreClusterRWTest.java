@@ -19,10 +19,13 @@ import static org.awaitility.Awaitility.await;
 import static org.testng.Assert.assertEquals;
 
 import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.annotation.Cluster;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.store.exception.KVRangeException;
 import com.google.common.collect.Sets;
 import com.google.protobuf.ByteString;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 import lombok.extern.slf4j.Slf4j;
 import org.testng.annotations.Listeners;
 import org.testng.annotations.Test;
@@ -52,6 +55,36 @@ public class KVRangeStoreClusterRWTest extends KVRangeStoreClusterTestTemplate {
         }
     }
 
+    @Cluster(maxFollowerReadLag = 2)
+    @Test(groups = "integration")
+    public void staleReadFromLaggingFollower() {
+        KVRangeId rangeId = cluster.genesisKVRangeId();
+        KVRangeSetting rangeSetting = cluster.awaitAllKVRangeReady(rangeId, 1, 5000);
+        String followerStoreId = nonLeaderStore(rangeSetting);
+        cluster.pauseApply(followerStoreId);
+        try {
+            for (int i = 0; i < 10; i++) {
+                cluster.put(rangeSetting.leader, rangeId, copyFromUtf8("key" + i), copyFromUtf8("value" + i));
+            }
+            // the follower learns the commit index but is unable to apply the logs
+            await().until(() -> {
+                try {
+                    cluster.staleGet(followerStoreId, rangeId, copyFromUtf8("key0")).toCompletableFuture().join();
+                    return false;
+                } catch (CompletionException e) {
+                    return e.getCause() instanceof KVRangeException.TryLater;
+                }
+            });
+            // the leader serves stale read regardless of the lag
+            assertEquals(cluster.staleGet(rangeSetting.leader, rangeId, copyFromUtf8("key0"))
+                .toCompletableFuture().join(), Optional.of(copyFromUtf8("value0")));
+        } finally {
+            cluster.resumeApply(followerStoreId);
+        }
+        await().ignoreExceptions().until(() -> cluster.staleGet(followerStoreId, rangeId, copyFromUtf8("key9"))
+            .toCompletableFuture().join().equals(Optional.of(copyFromUtf8("value9"))));
+    }
+
     @Test(groups = "integration")
     public void readWhenReplicaRestart() {
         KVRangeId rangeId = cluster.genesisKVRangeId();
@@ -53,6 +53,7 @@ public abstract class KVRangeStoreClusterTestTemplate {
             rangeOptions.setWalRaftConfig(rangeOptions.getWalRaftConfig().setAsyncAppend(cluster.asyncAppend()));
             rangeOptions.setWalRaftConfig(rangeOptions.getWalRaftConfig()
                     .setInstallSnapshotTimeoutTick(cluster.installSnapshotTimeoutTick()));
+            rangeOptions.setMaxFollowerReadLag(cluster.maxFollowerReadLag());
             options.setKvRangeOptions(rangeOptions);
         } else {
             initNodes = 3;
@@ -44,13 +44,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ScheduledExecutorService;
@@ -87,6 +90,7 @@ public class KVRangeStoreTestCluster {
         EnvProvider.INSTANCE.newThreadFactory("tick-task-executor"));
     private final ScheduledExecutorService bgTaskExecutor = new ScheduledThreadPoolExecutor(1,
         EnvProvider.INSTANCE.newThreadFactory("bg-task-executor"));
+    private final Map<String, PausableExecutor> storeMutationExecutorMap = Maps.newConcurrentMap();
 
     private Path dbRootDir;
 
@@ -116,6 +120,21 @@ public class KVRangeStoreTestCluster {
         rangeStoreMsgSourceMap.remove(storeId).onComplete();
     }
 
+    /**
+     * Hold the log applying of the store, the committed entries are still replicated to it.
+     *
+     * @param storeId the store
+     */
+    public void pauseApply(String storeId) {
+        checkStore(storeId);
+        storeMutationExecutorMap.get(storeId).pause();
+    }
+
+    public void resumeApply(String storeId) {
+        checkStore(storeId);
+        storeMutationExecutorMap.get(storeId).resume();
+    }
+
     public CompletionStage<Void> recover(String storeId) {
         checkStore(storeId);
         return rangeStoreMap.get(storeId).recover();
@@ -279,6 +298,11 @@ public class KVRangeStoreTestCluster {
             });
     }
 
+    public CompletionStage<Optional<ByteString>> staleGet(String storeId, KVRangeId kvRangeId, ByteString key) {
+        checkStore(storeId);
+        return rangeStoreMap.get(storeId).get(kvRangeSetting(kvRangeId).ver, kvRangeId, key, false);
+    }
+
     public ByteString queryCoProc(String storeId, KVRangeId kvRangeId, ByteString key) {
         checkStore(storeId);
         CompletableFuture<ByteString> onDone = new CompletableFuture<>();
@@ -428,9 +452,11 @@ public class KVRangeStoreTestCluster {
     }
 
     private KVRangeStore initStore(KVRangeStoreOptions options) {
+        PausableExecutor storeMutationExecutor = new PausableExecutor(mutationExecutor);
         KVRangeStore store =
-            new KVRangeStore(options, new TestCoProcFactory(), queryExecutor, mutationExecutor, tickTaskExecutor,
+            new KVRangeStore(options, new TestCoProcFactory(), queryExecutor, storeMutationExecutor, tickTaskExecutor,
                 bgTaskExecutor);
+        storeMutationExecutorMap.put(store.id(), storeMutationExecutor);
         PublishSubject<StoreMessage> storeMsgSource = PublishSubject.create();
         store.start(new IStoreMessenger() {
             @Override
@@ -508,4 +534,35 @@ public class KVRangeStoreTestCluster {
     private long reqId() {
         return System.nanoTime();
     }
+
+    private static class PausableExecutor implements Executor {
+        private final Executor delegate;
+        private final Queue<Runnable> pending = new LinkedList<>();
+        private boolean paused;
+
+        PausableExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            if (paused) {
+                pending.add(command);
+            } else {
+                delegate.execute(command);
+            }
+        }
+
+        synchronized void pause() {
+            paused = true;
+        }
+
+        synchronized void resume() {
+            paused = false;
+            Runnable command;
+            while ((command = pending.poll()) != null) {
+                delegate.execute(command);
+            }
+        }
+    }
 }
@@ -17,14 +17,20 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeMessage;
+import com.baidu.bifromq.basekv.proto.KVPair;
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
+import com.baidu.bifromq.basekv.proto.Range;
 import com.baidu.bifromq.basekv.proto.SaveSnapshotDataReply;
 import com.baidu.bifromq.basekv.proto.SaveSnapshotDataRequest;
 import com.baidu.bifromq.basekv.proto.SnapshotSyncRequest;
@@ -33,7 +39,16 @@ import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
 import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import lombok.SneakyThrows;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.AfterMethod;
@@ -297,4 +312,373 @@ public class KVRangeDumpSessionTest {
         verify(messenger, times(1)).send(any());
         assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
     }
+
+    @Test
+    public void dumpInParallelStreams() {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .setMaxStreams(2)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+        List<KVRangeMessage> sent = new ArrayList<>();
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.size(eq(snapshot), any(Range.class))).thenReturn(100L);
+        when(rangeAccessor.open(eq(snapshot), any(Range.class)))
+            .thenReturn(new ListIterator("a1", "a2", "a3"), new ListIterator("b1", "b2", "b3"));
+        when(messenger.receive()).thenReturn(incomingMsgs);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(messenger).send(any());
+
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), Duration.ofSeconds(5), Integer.MAX_VALUE,
+            2, 2, 1, dumpBytesRecorder);
+        // two chunks in flight for each stream
+        assertEquals(sent.size(), 4);
+
+        Map<Integer, List<String>> dumped = new HashMap<>();
+        int replied = 0;
+        while (replied < sent.size()) {
+            SaveSnapshotDataRequest req = sent.get(replied++).getSaveSnapshotDataRequest();
+            assertEquals(req.getStreams(), 2);
+            List<String> keys = dumped.computeIfAbsent(req.getStreamId(), k -> new ArrayList<>());
+            assertEquals(req.getSeq(), keys.size());
+            req.getKvList().forEach(kv -> keys.add(kv.getKey().toStringUtf8()));
+            assertFalse(dumpSession.awaitDone().toCompletableFuture().isDone());
+            incomingMsgs.onNext(KVRangeMessage.newBuilder()
+                .setRangeId(rangeId)
+                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                    .setReqId(req.getReqId())
+                    .setSessionId(sessionId)
+                    .setResult(SaveSnapshotDataReply.Result.OK)
+                    .build())
+                .build());
+        }
+        assertEquals(sent.size(), 6);
+        Set<List<String>> streams = new HashSet<>(dumped.values());
+        assertEquals(streams, Set.of(List.of("a1", "a2", "a3"), List.of("b1", "b2", "b3")));
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+        verify(dumpBytesRecorder).throughput(anyDouble());
+    }
+
+    @Test
+    public void dumpInSingleStreamForLegacyRequester() {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        // the requester doesn't tell how many streams it could restore
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+        List<KVRangeMessage> sent = new ArrayList<>();
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.size(eq(snapshot), any(Range.class))).thenReturn(100L);
+        when(rangeAccessor.open(snapshot)).thenReturn(new ListIterator("a1", "a2"));
+        when(messenger.receive()).thenReturn(incomingMsgs);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(messenger).send(any());
+
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), Duration.ofSeconds(5), Integer.MAX_VALUE,
+            4, 1, 1, dumpBytesRecorder);
+        int replied = 0;
+        while (replied < sent.size()) {
+            SaveSnapshotDataRequest req = sent.get(replied++).getSaveSnapshotDataRequest();
+            assertEquals(req.getStreams(), 1);
+            assertEquals(req.getStreamId(), 0);
+            incomingMsgs.onNext(KVRangeMessage.newBuilder()
+                .setRangeId(rangeId)
+                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                    .setReqId(req.getReqId())
+                    .setSessionId(sessionId)
+                    .setResult(SaveSnapshotDataReply.Result.OK)
+                    .build())
+                .build());
+        }
+        verify(rangeAccessor, never()).open(eq(snapshot), any(Range.class));
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+    }
+
+    @SneakyThrows
+    @Test
+    public void oneChunkInFlightForLegacyRequester() {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+        List<KVRangeMessage> sent = new ArrayList<>();
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.open(snapshot)).thenReturn(new ListIterator("a1", "a2", "a3"));
+        when(messenger.receive()).thenReturn(incomingMsgs);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(messenger).send(any());
+
+        // the window size is ignored for the legacy requester
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), Duration.ofMillis(100), Integer.MAX_VALUE,
+            4, 4, 1, dumpBytesRecorder);
+        assertEquals(sent.size(), 1);
+
+        // only the chunk in flight is resent
+        Thread.sleep(60);
+        dumpSession.tick();
+        assertEquals(sent.size(), 2);
+        assertEquals(sent.get(1), sent.get(0));
+
+        List<SaveSnapshotDataRequest> chunks = new ArrayList<>();
+        int replied = 1;
+        while (replied < sent.size()) {
+            SaveSnapshotDataRequest req = sent.get(replied++).getSaveSnapshotDataRequest();
+            chunks.add(req);
+            incomingMsgs.onNext(KVRangeMessage.newBuilder()
+                .setRangeId(rangeId)
+                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                    .setReqId(req.getReqId())
+                    .setSessionId(sessionId)
+                    .setResult(SaveSnapshotDataReply.Result.OK)
+                    .build())
+                .build());
+            // the next chunk is sent only after the previous one is acked
+            assertEquals(sent.size(), replied + (dumpSession.awaitDone().toCompletableFuture().isDone() ? 0 : 1));
+        }
+        assertEquals(chunks.size(), 3);
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i).getSeq(), i);
+            assertEquals(chunks.get(i).getKvCount(), 1);
+        }
+        assertEquals(chunks.get(2).getFlag(), SaveSnapshotDataRequest.Flag.End);
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void dumpDataFile() throws Exception {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .setAcceptDataFile(true)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+        List<KVRangeMessage> sent = new ArrayList<>();
+        Path dataFile = Files.createTempFile("", ".sst");
+        Files.writeString(dataFile, "abcde");
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.exportable()).thenReturn(true);
+        when(rangeAccessor.export(eq(snapshot), any(Range.class))).thenReturn(Optional.of(dataFile));
+        when(messenger.receive()).thenReturn(incomingMsgs);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(messenger).send(any());
+
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), Duration.ofSeconds(5), Integer.MAX_VALUE,
+            1, 1, 2, dumpBytesRecorder);
+        StringBuilder dumped = new StringBuilder();
+        int replied = 0;
+        while (replied < sent.size()) {
+            SaveSnapshotDataRequest req = sent.get(replied++).getSaveSnapshotDataRequest();
+            assertEquals(req.getKvCount(), 0);
+            dumped.append(req.getDataFile().toStringUtf8());
+            incomingMsgs.onNext(KVRangeMessage.newBuilder()
+                .setRangeId(rangeId)
+                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                    .setReqId(req.getReqId())
+                    .setSessionId(sessionId)
+                    .setResult(SaveSnapshotDataReply.Result.OK)
+                    .build())
+                .build());
+        }
+        assertEquals(sent.size(), 3);
+        assertEquals(sent.get(2).getSaveSnapshotDataRequest().getFlag(), SaveSnapshotDataRequest.Flag.End);
+        assertEquals(dumped.toString(), "abcde");
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+        assertFalse(Files.exists(dataFile));
+        verify(rangeAccessor, never()).open(snapshot);
+    }
+
+    @Test
+    public void exportDataFileAsync() throws Exception {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .setAcceptDataFile(true)
+            .build();
+        PublishSubject<KVRangeMessage> incomingMsgs = PublishSubject.create();
+        List<KVRangeMessage> sent = new ArrayList<>();
+        List<Runnable> exportTasks = new ArrayList<>();
+        Path dataFile = Files.createTempFile("", ".sst");
+        Files.writeString(dataFile, "abcde");
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.exportable()).thenReturn(true);
+        when(rangeAccessor.export(eq(snapshot), any(Range.class))).thenReturn(Optional.of(dataFile));
+        when(messenger.receive()).thenReturn(incomingMsgs);
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(messenger).send(any());
+
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), exportTasks::add, Duration.ofMillis(100), Integer.MAX_VALUE, 1, 1, 2,
+            dumpBytesRecorder);
+        // nothing is sent until the data file is exported
+        assertEquals(exportTasks.size(), 1);
+        assertTrue(sent.isEmpty());
+        verify(rangeAccessor, never()).export(eq(snapshot), any(Range.class));
+
+        Thread.sleep(30);
+        dumpSession.tick();
+        assertEquals(sent.size(), 1);
+        SaveSnapshotDataRequest keepAlive = sent.get(0).getSaveSnapshotDataRequest();
+        assertEquals(keepAlive.getFlag(), SaveSnapshotDataRequest.Flag.More);
+        assertEquals(keepAlive.getKvCount(), 0);
+        assertTrue(keepAlive.getDataFile().isEmpty());
+
+        // keep-alive is not resent while in flight
+        dumpSession.tick();
+        assertEquals(sent.size(), 1);
+
+        exportTasks.forEach(Runnable::run);
+        StringBuilder dumped = new StringBuilder();
+        int replied = 0;
+        while (replied < sent.size()) {
+            SaveSnapshotDataRequest req = sent.get(replied++).getSaveSnapshotDataRequest();
+            dumped.append(req.getDataFile().toStringUtf8());
+            incomingMsgs.onNext(KVRangeMessage.newBuilder()
+                .setRangeId(rangeId)
+                .setSaveSnapshotDataReply(SaveSnapshotDataReply.newBuilder()
+                    .setReqId(req.getReqId())
+                    .setSessionId(sessionId)
+                    .setResult(SaveSnapshotDataReply.Result.OK)
+                    .build())
+                .build());
+        }
+        assertEquals(dumped.toString(), "abcde");
+        assertEquals(sent.get(sent.size() - 1).getSaveSnapshotDataRequest().getFlag(),
+            SaveSnapshotDataRequest.Flag.End);
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+        assertFalse(Files.exists(dataFile));
+    }
+
+    @Test
+    public void cancelWhileExporting() throws Exception {
+        String peerStoreId = "follower";
+        String sessionId = "session";
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setCheckpointId("checkpoint")
+            .build();
+        SnapshotSyncRequest request = SnapshotSyncRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setSnapshot(snapshot)
+            .setAcceptDataFile(true)
+            .build();
+        List<Runnable> exportTasks = new ArrayList<>();
+        Path dataFile = Files.createTempFile("", ".sst");
+
+        when(rangeAccessor.hasCheckpoint(snapshot)).thenReturn(true);
+        when(rangeAccessor.exportable()).thenReturn(true);
+        when(rangeAccessor.export(eq(snapshot), any(Range.class))).thenReturn(Optional.of(dataFile));
+        when(messenger.receive()).thenReturn(PublishSubject.create());
+
+        KVRangeDumpSession dumpSession = new KVRangeDumpSession(peerStoreId, request, rangeAccessor, messenger,
+            MoreExecutors.directExecutor(), exportTasks::add, Duration.ofSeconds(5), Integer.MAX_VALUE, 1, 1, 2,
+            dumpBytesRecorder);
+        dumpSession.cancel();
+        assertTrue(dumpSession.awaitDone().toCompletableFuture().isDone());
+        // the file exported after canceled is deleted
+        exportTasks.forEach(Runnable::run);
+        assertFalse(Files.exists(dataFile));
+        verify(messenger, never()).send(any());
+    }
+
+    private static class ListIterator implements IKVIterator {
+        private final List<KVPair> kvs = new ArrayList<>();
+        private int index;
+
+        ListIterator(String... keys) {
+            for (String key : keys) {
+                kvs.add(KVPair.newBuilder()
+                    .setKey(ByteString.copyFromUtf8(key))
+                    .setValue(ByteString.copyFromUtf8(key))
+                    .build());
+            }
+        }
+
+        @Override
+        public ByteString key() {
+            return kvs.get(index).getKey();
+        }
+
+        @Override
+        public ByteString value() {
+            return kvs.get(index).getValue();
+        }
+
+        @Override
+        public boolean isValid() {
+            return index >= 0 && index < kvs.size();
+        }
+
+        @Override
+        public void next() {
+            index++;
+        }
+
+        @Override
+        public void prev() {
+            index--;
+        }
+
+        @Override
+        public void seekToFirst() {
+            index = 0;
+        }
+
+        @Override
+        public void seekToLast() {
+            index = kvs.size() - 1;
+        }
+
+        @Override
+        public void seek(ByteString key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void seekForPrev(ByteString key) {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -15,6 +15,8 @@ package com.baidu.bifromq.basekv.store.range;
 
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.util.concurrent.MoreExecutors;
@@ -65,4 +67,65 @@ public class KVRangeQueryLinearizerTest {
 
         assertTrue(linearizer.linearize().toCompletableFuture().isDone());
     }
+
+    @Test
+    public void shareInflightReadIndex() {
+        KVRangeQueryLinearizer linearizer =
+            new KVRangeQueryLinearizer(readIndexSupplier, MoreExecutors.directExecutor());
+        CompletableFuture<Long> readIndex1 = new CompletableFuture<>();
+        CompletableFuture<Long> readIndex2 = new CompletableFuture<>();
+        when(readIndexSupplier.get()).thenReturn(readIndex1, readIndex2);
+        CompletableFuture<Void> t1 = linearizer.linearize().toCompletableFuture();
+        // join next round
+        CompletableFuture<Void> t2 = linearizer.linearize().toCompletableFuture();
+        CompletableFuture<Void> t3 = linearizer.linearize().toCompletableFuture();
+        verify(readIndexSupplier, times(1)).get();
+
+        readIndex1.complete(1L);
+        verify(readIndexSupplier, times(2)).get();
+        linearizer.afterLogApplied(1);
+        assertTrue(t1.isDone());
+        assertFalse(t2.isDone());
+        assertFalse(t3.isDone());
+
+        readIndex2.complete(2L);
+        assertFalse(t2.isDone());
+        linearizer.afterLogApplied(2);
+        assertTrue(t2.isDone());
+        assertTrue(t3.isDone());
+        verify(readIndexSupplier, times(2)).get();
+    }
+
+    @Test
+    public void readIndexFailed() {
+        KVRangeQueryLinearizer linearizer =
+            new KVRangeQueryLinearizer(readIndexSupplier, MoreExecutors.directExecutor());
+        CompletableFuture<Long> readIndex1 = new CompletableFuture<>();
+        when(readIndexSupplier.get())
+            .thenReturn(readIndex1, CompletableFuture.failedFuture(new RuntimeException("Mocked")));
+        CompletableFuture<Void> t1 = linearizer.linearize().toCompletableFuture();
+        CompletableFuture<Void> t2 = linearizer.linearize().toCompletableFuture();
+        readIndex1.completeExceptionally(new RuntimeException("Mocked"));
+        assertTrue(t1.isCompletedExceptionally());
+        assertTrue(t2.isCompletedExceptionally());
+    }
+
+    @Test
+    public void readIndexProviderThrows() {
+        KVRangeQueryLinearizer linearizer =
+            new KVRangeQueryLinearizer(readIndexSupplier, MoreExecutors.directExecutor());
+        when(readIndexSupplier.get())
+            .thenThrow(new IllegalStateException("Mock exception"))
+            .thenReturn(CompletableFuture.completedFuture(1L));
+        CompletableFuture<Void> t1 = linearizer.linearize().toCompletableFuture();
+        assertTrue(t1.isCompletedExceptionally());
+
+        // next round acquires a fresh read index
+        CompletableFuture<Void> t2 = linearizer.linearize().toCompletableFuture();
+        assertFalse(t2.isDone());
+        linearizer.afterLogApplied(1);
+        assertTrue(t2.isDone());
+        assertFalse(t2.isCompletedExceptionally());
+        verify(readIndexSupplier, times(2)).get();
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.basekv.store.range;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.proto.KVPair;
+import com.baidu.bifromq.basekv.proto.SaveSnapshotDataRequest;
+import com.google.protobuf.ByteString;
+import lombok.SneakyThrows;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KVRangeRestoreSessionTest {
+    @Mock
+    private IKVRangeRestorer restorer;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void openMocks() {
+        closeable = MockitoAnnotations.openMocks(this);
+    }
+
+    @SneakyThrows
+    @AfterMethod
+    public void releaseMocks() {
+        closeable.close();
+    }
+
+    @Test
+    public void legacySingleStream() {
+        KVRangeRestoreSession session = new KVRangeRestoreSession(restorer);
+        KVPair kv1 = kv("a");
+        KVPair kv2 = kv("b");
+        assertEquals(session.add(chunk(0, 0, 0, 0, SaveSnapshotDataRequest.Flag.More, kv1)), 2);
+        assertFalse(session.isDone());
+        assertEquals(session.add(chunk(1, 0, 0, 0, SaveSnapshotDataRequest.Flag.End, kv2)), 2);
+        assertTrue(session.isDone());
+        InOrder inOrder = inOrder(restorer);
+        inOrder.verify(restorer).add(0, kv1);
+        inOrder.verify(restorer).add(0, kv2);
+    }
+
+    @Test
+    public void reorderChunks() {
+        KVRangeRestoreSession session = new KVRangeRestoreSession(restorer);
+        KVPair kv1 = kv("a");
+        KVPair kv2 = kv("b");
+        KVPair kv3 = kv("c");
+        assertEquals(session.add(chunk(1, 1, 1, 2, SaveSnapshotDataRequest.Flag.End, kv2)), 0);
+        verify(restorer, never()).add(anyInt(), any());
+        assertEquals(session.add(chunk(0, 1, 1, 0, SaveSnapshotDataRequest.Flag.More, kv1)), 2);
+        assertEquals(session.add(chunk(2, 1, 1, 1, SaveSnapshotDataRequest.Flag.More, kv3)), 4);
+        assertTrue(session.isDone());
+        InOrder inOrder = inOrder(restorer);
+        inOrder.verify(restorer).add(1, kv1);
+        inOrder.verify(restorer).add(1, kv3);
+        inOrder.verify(restorer).add(1, kv2);
+    }
+
+    @Test
+    public void ignoreDuplicatedChunks() {
+        KVRangeRestoreSession session = new KVRangeRestoreSession(restorer);
+        KVPair kv1 = kv("a");
+        KVPair kv2 = kv("b");
+        assertEquals(session.add(chunk(0, 2, 0, 0, SaveSnapshotDataRequest.Flag.End, kv1)), 2);
+        assertEquals(session.add(chunk(0, 2, 0, 0, SaveSnapshotDataRequest.Flag.End, kv1)), 0);
+        assertFalse(session.isDone());
+        assertEquals(session.add(chunk(1, 2, 1, 0, SaveSnapshotDataRequest.Flag.End, kv2)), 2);
+        assertTrue(session.isDone());
+        verify(restorer).add(0, kv1);
+        verify(restorer).add(1, kv2);
+    }
+
+    private KVPair kv(String key) {
+        return KVPair.newBuilder()
+            .setKey(ByteString.copyFromUtf8(key))
+            .setValue(ByteString.copyFromUtf8(key))
+            .build();
+    }
+
+    private SaveSnapshotDataRequest chunk(int reqId, int streams, int streamId, int seq,
+                                          SaveSnapshotDataRequest.Flag flag, KVPair... kvs) {
+        SaveSnapshotDataRequest.Builder builder = SaveSnapshotDataRequest.newBuilder()
+            .setSessionId("session")
+            .setReqId(reqId)
+            .setStreams(streams)
+            .setStreamId(streamId)
+            .setSeq(seq)
+            .setFlag(flag);
+        for (KVPair kv : kvs) {
+            builder.addKv(kv);
+        }
+        return builder.build();
+    }
+}
@@ -18,21 +18,33 @@ import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.dataBound;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.dataKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.lastAppliedIndexKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.rangeKey;
+import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.restoringKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.stateKey;
 import static com.baidu.bifromq.basekv.store.range.KVRangeKeys.verKey;
 import static com.baidu.bifromq.basekv.store.util.KVUtil.toByteString;
 import static com.baidu.bifromq.basekv.store.util.KVUtil.toByteStringNativeOrder;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basekv.localengine.IKVEngine;
+import com.baidu.bifromq.basekv.localengine.IKVEngineBulkLoad;
 import com.baidu.bifromq.basekv.proto.KVPair;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.KVRangeSnapshot;
+import com.baidu.bifromq.basekv.proto.Range;
 import com.baidu.bifromq.basekv.proto.State;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.google.protobuf.ByteString;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.mockito.InOrder;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -44,6 +56,14 @@ public class KVRangeRestorerTest {
     IKVRangeMetadataAccessor metadata;
     @Mock
     IKVEngine kvEngine;
+    @Mock
+    IKVEngineBulkLoad bulkLoad;
+    @Mock
+    IKVEngineBulkLoad.Writer writer1;
+    @Mock
+    IKVEngineBulkLoad.Writer writer2;
+    @Mock
+    IKVEngineBulkLoad.Writer metaWriter;
 
     KVRangeStateAccessor accessor = new KVRangeStateAccessor();
     private AutoCloseable closeable;
@@ -73,24 +93,112 @@ public class KVRangeRestorerTest {
         ByteString val = ByteString.copyFromUtf8("Val");
 
         when(kvEngine.startBatch()).thenReturn(batchId);
+        when(kvEngine.startBulkLoad(IKVEngine.DEFAULT_NS)).thenReturn(bulkLoad);
+        when(bulkLoad.newWriter()).thenReturn(writer1, metaWriter);
         when(metadata.dataBound()).thenReturn(dataBound(FULL_RANGE));
 
         KVRangeRestorer restorer = new KVRangeRestorer(snapshot, metadata, kvEngine, accessor.mutator());
         restorer.add(KVPair.newBuilder().setKey(key).setValue(val).build());
+        verify(writer1).add(dataKey(key), val);
+        assertEquals(restorer.size(), 1);
         restorer.close();
 
         verify(metadata, times(2)).refresh();
-        verify(kvEngine).put(batchId, IKVEngine.DEFAULT_NS, verKey(rangeId),
+        Range dataBound = dataBound(FULL_RANGE);
+        InOrder inOrder = inOrder(kvEngine, bulkLoad, metaWriter);
+        // the marker is committed before clearing
+        inOrder.verify(kvEngine).put(batchId, IKVEngine.DEFAULT_NS, restoringKey(rangeId), snapshot.toByteString());
+        inOrder.verify(kvEngine).endBatch(batchId);
+        inOrder.verify(kvEngine).clearSubRange(0, dataBound.getStartKey(), dataBound.getEndKey());
+        // the metadata is ingested along with data
+        inOrder.verify(metaWriter).add(verKey(rangeId), toByteStringNativeOrder(snapshot.getVer()));
+        inOrder.verify(metaWriter).add(rangeKey(rangeId), snapshot.getRange().toByteString());
+        inOrder.verify(metaWriter).add(lastAppliedIndexKey(rangeId), toByteString(snapshot.getLastAppliedIndex()));
+        inOrder.verify(metaWriter).add(stateKey(rangeId), snapshot.getState().toByteString());
+        inOrder.verify(metaWriter).add(restoringKey(rangeId), ByteString.EMPTY);
+        inOrder.verify(bulkLoad).ingest();
+        inOrder.verify(kvEngine).delete(batchId, IKVEngine.DEFAULT_NS, restoringKey(rangeId));
+        inOrder.verify(kvEngine).endBatch(batchId);
+        verify(kvEngine, never()).put(batchId, IKVEngine.DEFAULT_NS, verKey(rangeId),
             toByteStringNativeOrder(snapshot.getVer()));
-        verify(kvEngine).put(batchId, IKVEngine.DEFAULT_NS, lastAppliedIndexKey(rangeId),
-            toByteString(snapshot.getLastAppliedIndex()));
-        verify(kvEngine).put(batchId, IKVEngine.DEFAULT_NS, rangeKey(rangeId), snapshot.getRange().toByteString());
-        verify(kvEngine).put(batchId, IKVEngine.DEFAULT_NS, stateKey(rangeId), snapshot.getState().toByteString());
-        verify(kvEngine).clearSubRange(batchId, metadata.dataBoundId(),
-            metadata.dataBound().getStartKey(),
-            metadata.dataBound().getEndKey());
-        kvEngine.put(batchId, IKVEngine.DEFAULT_NS, dataKey(key), val);
-
-        verify(kvEngine).endBatch(batchId);
+    }
+
+    @Test
+    public void detectInterruptedRestore() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        when(kvEngine.get(IKVEngine.DEFAULT_NS, restoringKey(rangeId))).thenReturn(Optional.empty());
+        assertFalse(KVRangeRestorer.isInterrupted(rangeId, kvEngine));
+        // the marker is ingested as done but not yet deleted
+        when(kvEngine.get(IKVEngine.DEFAULT_NS, restoringKey(rangeId))).thenReturn(Optional.of(ByteString.EMPTY));
+        assertFalse(KVRangeRestorer.isInterrupted(rangeId, kvEngine));
+        when(kvEngine.get(IKVEngine.DEFAULT_NS, restoringKey(rangeId)))
+            .thenReturn(Optional.of(KVRangeSnapshot.newBuilder().setId(rangeId).build().toByteString()));
+        assertTrue(KVRangeRestorer.isInterrupted(rangeId, kvEngine));
+    }
+
+    @Test
+    public void restoreStreams() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setRange(FULL_RANGE)
+            .setCheckpointId("CheckPoint")
+            .build();
+        when(kvEngine.startBatch()).thenReturn(1);
+        when(kvEngine.startBulkLoad(IKVEngine.DEFAULT_NS)).thenReturn(bulkLoad);
+        when(bulkLoad.newWriter()).thenReturn(writer1, writer2);
+        when(metadata.dataBound()).thenReturn(dataBound(FULL_RANGE));
+
+        KVRangeRestorer restorer = new KVRangeRestorer(snapshot, metadata, kvEngine, accessor.mutator());
+        KVPair kv1 = KVPair.newBuilder().setKey(ByteString.copyFromUtf8("a")).build();
+        KVPair kv2 = KVPair.newBuilder().setKey(ByteString.copyFromUtf8("m")).build();
+        KVPair kv3 = KVPair.newBuilder().setKey(ByteString.copyFromUtf8("b")).build();
+        restorer.add(0, kv1);
+        restorer.add(1, kv2);
+        restorer.add(0, kv3);
+        verify(bulkLoad, times(2)).newWriter();
+        verify(writer1).add(dataKey(kv1.getKey()), kv1.getValue());
+        verify(writer1).add(dataKey(kv3.getKey()), kv3.getValue());
+        verify(writer2).add(dataKey(kv2.getKey()), kv2.getValue());
+
+        restorer.abort();
+        verify(bulkLoad).abort();
+        verify(bulkLoad, never()).ingest();
+        verify(kvEngine, never()).startBatch();
+    }
+
+    @Test
+    public void restoreDataFiles() throws Exception {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(rangeId)
+            .setRange(FULL_RANGE)
+            .setCheckpointId("CheckPoint")
+            .build();
+        Path dir = Files.createTempDirectory("");
+        Path file1 = dir.resolve("1.sst");
+        Path file2 = dir.resolve("2.sst");
+        try {
+            when(kvEngine.startBatch()).thenReturn(1);
+            when(kvEngine.startBulkLoad(IKVEngine.DEFAULT_NS)).thenReturn(bulkLoad);
+            when(bulkLoad.newFile()).thenReturn(Optional.of(file1), Optional.of(file2));
+            when(bulkLoad.newWriter()).thenReturn(metaWriter);
+            when(metadata.dataBound()).thenReturn(dataBound(FULL_RANGE));
+
+            KVRangeRestorer restorer = new KVRangeRestorer(snapshot, metadata, kvEngine, accessor.mutator());
+            restorer.addDataFile(0, ByteString.copyFromUtf8("ab"));
+            restorer.addDataFile(1, ByteString.copyFromUtf8("xy"));
+            restorer.addDataFile(0, ByteString.copyFromUtf8("cd"));
+            restorer.close();
+
+            verify(bulkLoad, times(2)).newFile();
+            verify(bulkLoad).ingest();
+            assertEquals(Files.readString(file1), "abcd");
+            assertEquals(Files.readString(file2), "xy");
+        } finally {
+            Files.deleteIfExists(file1);
+            Files.deleteIfExists(file2);
+            Files.delete(dir);
+        }
     }
 }
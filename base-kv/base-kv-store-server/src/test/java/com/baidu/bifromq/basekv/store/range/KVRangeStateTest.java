@@ -342,6 +342,32 @@ public class KVRangeStateTest {
         assertFalse(rangeReader.kvReader().exist(key));
     }
 
+    @Test
+    public void restoringMarker() {
+        KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
+            .setId(KVRangeIdUtil.generate())
+            .setVer(0)
+            .setLastAppliedIndex(0)
+            .setState(State.newBuilder().setType(State.StateType.Normal).build())
+            .setRange(FULL_RANGE)
+            .build();
+        KVRangeState accessor = new KVRangeState(snapshot, kvEngine);
+        assertFalse(KVRangeRestorer.isInterrupted(snapshot.getId(), kvEngine));
+        assertFalse(kvEngine.exist(DEFAULT_NS, KVRangeKeys.restoringKey(snapshot.getId())));
+
+        // the marker left by an interrupted restoring
+        int batchId = kvEngine.startBatch();
+        kvEngine.put(batchId, DEFAULT_NS, KVRangeKeys.restoringKey(snapshot.getId()), snapshot.toByteString());
+        kvEngine.endBatch(batchId);
+        assertTrue(KVRangeRestorer.isInterrupted(snapshot.getId(), kvEngine));
+
+        KVRangeSnapshot newSnapshot = snapshot.toBuilder().setVer(2).setLastAppliedIndex(10).build();
+        accessor.reset(newSnapshot).close();
+        assertFalse(KVRangeRestorer.isInterrupted(snapshot.getId(), kvEngine));
+        assertEquals(accessor.getReader().ver(), 2);
+        assertEquals(accessor.getReader().lastAppliedIndex(), 10);
+    }
+
     @Test
     public void destroy() {
         KVRangeSnapshot snapshot = KVRangeSnapshot.newBuilder()
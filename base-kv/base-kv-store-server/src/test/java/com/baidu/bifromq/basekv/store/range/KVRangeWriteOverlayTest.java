@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.range;
+
+import static com.google.protobuf.ByteString.copyFromUtf8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KVRangeWriteOverlayTest {
+    @Mock
+    private IKVRangeReader rangeReader;
+    @Mock
+    private IKVRangeWriter rangeWriter;
+    @Mock
+    private IKVReader kvReader;
+    @Mock
+    private IKVWriter kvWriter;
+    private final NavigableMap<ByteString, ByteString> committed =
+        new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+    private IKVReader reader;
+    private IKVWriter writer;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        for (String key : List.of("a", "c", "e", "g")) {
+            committed.put(copyFromUtf8(key), copyFromUtf8(key));
+        }
+        when(rangeReader.kvReader()).thenReturn(kvReader);
+        when(rangeWriter.kvWriter()).thenReturn(kvWriter);
+        when(kvReader.get(any()))
+            .thenAnswer(invocation -> Optional.ofNullable(committed.get(invocation.<ByteString>getArgument(0))));
+        when(kvReader.exist(any()))
+            .thenAnswer(invocation -> committed.containsKey(invocation.<ByteString>getArgument(0)));
+        when(kvReader.iterator()).thenAnswer(invocation -> new MapIterator(committed));
+        KVRangeWriteOverlay overlay = new KVRangeWriteOverlay();
+        reader = overlay.wrap(rangeReader).kvReader();
+        writer = overlay.wrap(rangeWriter).kvWriter();
+    }
+
+    @AfterMethod
+    public void releaseMocks() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void readYourWrites() {
+        writer.put(copyFromUtf8("b"), copyFromUtf8("b1"));
+        writer.put(copyFromUtf8("c"), copyFromUtf8("c1"));
+        writer.delete(copyFromUtf8("e"));
+        verify(kvWriter).put(copyFromUtf8("b"), copyFromUtf8("b1"));
+        verify(kvWriter).delete(copyFromUtf8("e"));
+
+        assertEquals(reader.get(copyFromUtf8("b")).get(), copyFromUtf8("b1"));
+        assertEquals(reader.get(copyFromUtf8("c")).get(), copyFromUtf8("c1"));
+        assertFalse(reader.get(copyFromUtf8("e")).isPresent());
+        assertFalse(reader.exist(copyFromUtf8("e")));
+        assertTrue(reader.exist(copyFromUtf8("a")));
+    }
+
+    @Test
+    public void deleteRange() {
+        writer.put(copyFromUtf8("d"), copyFromUtf8("d"));
+        writer.deleteRange(Range.newBuilder().setStartKey(copyFromUtf8("c")).setEndKey(copyFromUtf8("f")).build());
+        writer.put(copyFromUtf8("e"), copyFromUtf8("e1"));
+        assertFalse(reader.exist(copyFromUtf8("c")));
+        assertFalse(reader.get(copyFromUtf8("d")).isPresent());
+        assertEquals(reader.get(copyFromUtf8("e")).get(), copyFromUtf8("e1"));
+        assertTrue(reader.exist(copyFromUtf8("g")));
+    }
+
+    @Test
+    public void iterate() {
+        writer.put(copyFromUtf8("b"), copyFromUtf8("b1"));
+        writer.put(copyFromUtf8("c"), copyFromUtf8("c1"));
+        writer.delete(copyFromUtf8("e"));
+        writer.put(copyFromUtf8("h"), copyFromUtf8("h1"));
+
+        IKVIterator itr = reader.iterator();
+        List<String> forward = new ArrayList<>();
+        for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+            forward.add(itr.key().toStringUtf8() + "=" + itr.value().toStringUtf8());
+        }
+        assertEquals(forward, List.of("a=a", "b=b1", "c=c1", "g=g", "h=h1"));
+
+        List<String> backward = new ArrayList<>();
+        for (itr.seekToLast(); itr.isValid(); itr.prev()) {
+            backward.add(itr.key().toStringUtf8());
+        }
+        assertEquals(backward, List.of("h", "g", "c", "b", "a"));
+
+        itr.seek(copyFromUtf8("d"));
+        assertEquals(itr.key(), copyFromUtf8("g"));
+        itr.prev();
+        assertEquals(itr.key(), copyFromUtf8("c"));
+        itr.next();
+        assertEquals(itr.key(), copyFromUtf8("g"));
+
+        itr.seekForPrev(copyFromUtf8("f"));
+        assertEquals(itr.key(), copyFromUtf8("c"));
+        itr.next();
+        assertEquals(itr.key(), copyFromUtf8("g"));
+    }
+
+    private static class MapIterator implements IKVIterator {
+        private final NavigableMap<ByteString, ByteString> data;
+        private Map.Entry<ByteString, ByteString> current;
+
+        MapIterator(NavigableMap<ByteString, ByteString> data) {
+            this.data = data;
+        }
+
+        @Override
+        public ByteString key() {
+            return current.getKey();
+        }
+
+        @Override
+        public ByteString value() {
+            return current.getValue();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @Override
+        public void next() {
+            current = data.higherEntry(current.getKey());
+        }
+
+        @Override
+        public void prev() {
+            current = data.lowerEntry(current.getKey());
+        }
+
+        @Override
+        public void seekToFirst() {
+            current = data.firstEntry();
+        }
+
+        @Override
+        public void seekToLast() {
+            current = data.lastEntry();
+        }
+
+        @Override
+        public void seek(ByteString key) {
+            current = data.ceilingEntry(key);
+        }
+
+        @Override
+        public void seekForPrev(ByteString key) {
+            current = data.floorEntry(key);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KVRangeWALLogEntryCacheTest {
+    private KVRangeWALLogEntryCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new KVRangeWALLogEntryCache("testStore", 1024 * 1024);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        cache.close();
+    }
+
+    @Test
+    public void putAndGet() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeId otherRangeId = KVRangeIdUtil.generate();
+        cache.put(rangeId, entries(1, 10, 1));
+
+        assertEquals(cache.get(rangeId, 5), entry(5, 1));
+        assertNull(cache.get(rangeId, 11));
+        assertNull(cache.get(otherRangeId, 5));
+
+        // overwrite with entries from new term
+        cache.put(rangeId, entries(5, 6, 2));
+        assertEquals(cache.get(rangeId, 5).getTerm(), 2);
+        assertEquals(cache.get(rangeId, 7).getTerm(), 1);
+    }
+
+    @Test
+    public void invalidate() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeId otherRangeId = KVRangeIdUtil.generate();
+        cache.put(rangeId, entries(1, 10, 1));
+        cache.put(otherRangeId, entries(1, 10, 1));
+
+        cache.invalidate(rangeId, 1, 4);
+        assertNull(cache.get(rangeId, 1));
+        assertNull(cache.get(rangeId, 3));
+        assertNotNull(cache.get(rangeId, 4));
+
+        // index range wider than cached entries
+        cache.invalidate(rangeId, 8, Long.MAX_VALUE);
+        assertNull(cache.get(rangeId, 8));
+        assertNull(cache.get(rangeId, 10));
+        assertNotNull(cache.get(rangeId, 7));
+
+        for (long i = 1; i <= 10; i++) {
+            assertNotNull(cache.get(otherRangeId, i));
+        }
+    }
+
+    @Test
+    public void evictBySize() {
+        KVRangeId rangeId = KVRangeIdUtil.generate();
+        KVRangeWALLogEntryCache smallCache = new KVRangeWALLogEntryCache("smallStore", 4096);
+        List<LogEntry> entries = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            entries.add(LogEntry.newBuilder()
+                .setIndex(i)
+                .setTerm(1)
+                .setData(ByteString.copyFrom(new byte[512]))
+                .build());
+        }
+        smallCache.put(rangeId, entries);
+        int cached = 0;
+        for (long i = 1; i <= 100; i++) {
+            if (smallCache.get(rangeId, i) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached < 10);
+        smallCache.close();
+    }
+
+    private List<LogEntry> entries(long fromIndex, long toIndex, long term) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (long i = fromIndex; i <= toIndex; i++) {
+            entries.add(entry(i, term));
+        }
+        return entries;
+    }
+
+    private LogEntry entry(long index, long term) {
+        return LogEntry.newBuilder()
+            .setIndex(index)
+            .setTerm(term)
+            .setData(ByteString.copyFromUtf8("data" + index))
+            .build();
+    }
+}
@@ -17,6 +17,7 @@ import static org.awaitility.Awaitility.await;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -31,6 +32,7 @@ import io.reactivex.rxjava3.subjects.BehaviorSubject;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.time.Duration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -82,7 +84,7 @@ public class KVRangeWALSubscriptionTest {
                     .setIndex(0)
                     .build())));
         CountDownLatch latch = new CountDownLatch(1);
-        when(subscriber.apply(any(LogEntry.class))).thenAnswer(
+        when(subscriber.apply(anyList())).thenAnswer(
             (Answer<CompletableFuture<Void>>) invocationOnMock -> {
                 latch.countDown();
                 return CompletableFuture.completedFuture(null);
@@ -155,7 +157,7 @@ public class KVRangeWALSubscriptionTest {
         );
         CountDownLatch latch = new CountDownLatch(1);
         AtomicInteger applyCount = new AtomicInteger();
-        when(subscriber.apply(any(LogEntry.class)))
+        when(subscriber.apply(anyList()))
             .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
                 log.info("invoke");
                 if (applyCount.getAndIncrement() == 0) {
@@ -170,11 +172,12 @@ public class KVRangeWALSubscriptionTest {
         latch.await();
         log.info("{}", applyCount.get());
         assertTrue(1 < applyCount.get());
-        ArgumentCaptor<LogEntry> logEntryCap = ArgumentCaptor.forClass(LogEntry.class);
+        ArgumentCaptor<List<LogEntry>> logEntriesCap = ArgumentCaptor.forClass(List.class);
         await().until(() -> {
-            verify(subscriber, atLeast(2)).apply(logEntryCap.capture());
-            return logEntryCap.getAllValues().get(0).getIndex() == 0 &&
-                logEntryCap.getAllValues().get(logEntryCap.getAllValues().size() - 1).getIndex() == 1;
+            verify(subscriber, atLeast(2)).apply(logEntriesCap.capture());
+            // the whole run is reapplied
+            List<LogEntry> reapplied = logEntriesCap.getAllValues().get(logEntriesCap.getAllValues().size() - 1);
+            return reapplied.size() == 2 && reapplied.get(0).getIndex() == 0 && reapplied.get(1).getIndex() == 1;
         });
     }
 
@@ -188,7 +191,7 @@ public class KVRangeWALSubscriptionTest {
         );
         CountDownLatch latch = new CountDownLatch(1);
         CompletableFuture<Void> applyLogFuture = new CompletableFuture<>();
-        when(subscriber.apply(any(LogEntry.class)))
+        when(subscriber.apply(anyList()))
             .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
                 latch.countDown();
                 return applyLogFuture;
@@ -210,7 +213,7 @@ public class KVRangeWALSubscriptionTest {
                 LogEntry.newBuilder().setTerm(0).setIndex(1).build()))
         );
         AtomicInteger retryCount = new AtomicInteger();
-        when(subscriber.apply(any(LogEntry.class)))
+        when(subscriber.apply(anyList()))
             .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
                 retryCount.incrementAndGet();
                 return CompletableFuture.failedFuture(new KVRangeException.TryLater("Try again"));
@@ -277,7 +280,7 @@ public class KVRangeWALSubscriptionTest {
             .thenReturn(CompletableFuture.completedFuture(Iterators.forArray(entry1, entry2)));
         CountDownLatch latch = new CountDownLatch(1);
         CompletableFuture<Void> applyLogFuture1 = new CompletableFuture<>();
-        when(subscriber.apply(entry1))
+        when(subscriber.apply(List.of(entry1, entry2)))
             .thenAnswer((Answer<CompletableFuture<Void>>) invocationOnMock -> {
                 latch.countDown();
                 return applyLogFuture1;
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.TestUtil;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LogSegmentTest {
+    private Path dir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("");
+    }
+
+    @AfterMethod
+    public void teardown() {
+        TestUtil.deleteDir(dir.toString());
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void sealAfterTruncation() throws IOException {
+        LogSegment segment = LogSegment.create(dir, 1);
+        for (long index = 1; index <= 3; index++) {
+            segment.append(LogEntry.newBuilder()
+                .setTerm(1)
+                .setIndex(index)
+                .setData(ByteString.copyFromUtf8("data" + index))
+                .build());
+        }
+        Path indexPath = dir.resolve(LogSegment.fileName(1, LogSegment.INDEX_SUFFIX));
+        int generation = segment.generation();
+        segment.truncateFrom(2);
+
+        // the seal requested before truncation is skipped
+        segment.seal(generation);
+        assertFalse(Files.exists(indexPath));
+
+        segment.seal(segment.generation());
+        assertTrue(Files.exists(indexPath));
+        segment.close();
+
+        LogSegment reopened = LogSegment.open(dir, 1, true);
+        assertEquals(reopened.count(), 1);
+        assertEquals(reopened.read(1).getData().toStringUtf8(), "data1");
+        reopened.close();
+    }
+}
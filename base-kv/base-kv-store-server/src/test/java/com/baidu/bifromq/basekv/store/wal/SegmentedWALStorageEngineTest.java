@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.basekv.store.wal;
+
+import static org.awaitility.Awaitility.await;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.TestUtil;
+import com.baidu.bifromq.basekv.proto.KVRangeId;
+import com.baidu.bifromq.basekv.raft.IRaftStateStore;
+import com.baidu.bifromq.basekv.raft.proto.ClusterConfig;
+import com.baidu.bifromq.basekv.raft.proto.LogEntry;
+import com.baidu.bifromq.basekv.raft.proto.Snapshot;
+import com.baidu.bifromq.basekv.raft.proto.Voting;
+import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SegmentedWALStorageEngineTest {
+    private Path dbRootDir;
+    private SegmentedWALEngineConfigurator configurator;
+    private ScheduledExecutorService bgMgmtTaskExecutor;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        bgMgmtTaskExecutor = Executors.newSingleThreadScheduledExecutor();
+        dbRootDir = Files.createTempDirectory("");
+        configurator = SegmentedWALEngineConfigurator.builder()
+            .dbRootDir(dbRootDir.toString())
+            .segmentSize(1024)
+            .build();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        MoreExecutors.shutdownAndAwaitTermination(bgMgmtTaskExecutor, 5, TimeUnit.SECONDS);
+        TestUtil.deleteDir(dbRootDir.toString());
+        dbRootDir.toFile().delete();
+    }
+
+    @Test
+    public void testIdentity() {
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine("testStore", configurator);
+        assertEquals(engine.id(), "testStore");
+        engine.start(bgMgmtTaskExecutor);
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine("otherStore", configurator);
+        assertEquals(engine.id(), "testStore");
+        engine.start(bgMgmtTaskExecutor);
+        engine.stop();
+    }
+
+    @Test
+    public void testLoadExistingRaftStateStorage() {
+        KVRangeId testId1 = KVRangeIdUtil.generate();
+        KVRangeId testId2 = KVRangeIdUtil.next(testId1);
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        Snapshot snapshot = initSnapshot(engine.id());
+        IRaftStateStore stateStorage = engine.newRaftStateStorage(testId1, snapshot);
+        engine.newRaftStateStorage(testId2, snapshot);
+        Voting voting = Voting.newBuilder().setTerm(2).setFor("voter").build();
+        stateStorage.saveTerm(2);
+        stateStorage.saveVoting(voting);
+        stateStorage.append(entries(1, 100, 2), true);
+        ClusterConfig newConfig = ClusterConfig.newBuilder().addVoters("newVoter").build();
+        stateStorage.append(List.of(LogEntry.newBuilder().setTerm(2).setIndex(101).setConfig(newConfig).build()),
+            true);
+        // multiple segments rolled
+        assertTrue(segmentFiles(testId1) > 1);
+        assertEquals(engine.allKVRangeIds().size(), 2);
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        assertEquals(engine.allKVRangeIds().size(), 2);
+        stateStorage = engine.get(testId1);
+        assertEquals(stateStorage.local(), engine.id());
+        assertEquals(stateStorage.currentTerm(), 2);
+        assertEquals(stateStorage.currentVoting().get(), voting);
+        assertEquals(stateStorage.latestSnapshot(), snapshot);
+        assertEquals(stateStorage.firstIndex(), 1);
+        assertEquals(stateStorage.lastIndex(), 101);
+        assertEquals(stateStorage.latestClusterConfig(), newConfig);
+        Iterator<LogEntry> itr = stateStorage.entries(1, 101, -1);
+        long index = 1;
+        while (itr.hasNext()) {
+            LogEntry entry = itr.next();
+            assertEquals(entry.getIndex(), index);
+            assertEquals(entry.getData(), ByteString.copyFromUtf8("data" + index));
+            index++;
+        }
+        assertEquals(index, 101);
+        assertEquals(engine.get(testId2).lastIndex(), 0);
+        engine.stop();
+    }
+
+    @Test
+    public void testLoadConfigEntriesFromSealedSegments() {
+        KVRangeId testId = KVRangeIdUtil.generate();
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        IRaftStateStore stateStorage = engine.newRaftStateStorage(testId, initSnapshot(engine.id()));
+        ClusterConfig newConfig = ClusterConfig.newBuilder().addVoters("newVoter").build();
+        stateStorage.append(entries(1, 4, 1), true);
+        stateStorage.append(List.of(LogEntry.newBuilder().setTerm(1).setIndex(5).setConfig(newConfig).build()),
+            true);
+        stateStorage.append(entries(6, 100, 1), true);
+        Path rangeDir = dbRootDir.resolve(KVRangeIdUtil.toString(testId));
+        // sealed segments are indexed in background
+        await().until(() -> countFiles(rangeDir, LogSegment.INDEX_SUFFIX) == segmentFiles(testId) - 1);
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        stateStorage = engine.get(testId);
+        assertEquals(stateStorage.lastIndex(), 100);
+        assertEquals(stateStorage.latestClusterConfig(), newConfig);
+        engine.stop();
+    }
+
+    @Test
+    public void testCrashBeforeObsoleteSegmentsDeleted() {
+        KVRangeId testId = KVRangeIdUtil.generate();
+        Path rangeDir = dbRootDir.resolve(KVRangeIdUtil.toString(testId));
+        List<Runnable> pendingTasks = new ArrayList<>();
+        KVRangeWALLogEntryCache logEntryCache = new KVRangeWALLogEntryCache("testStore", 1024 * 1024);
+        SegmentedWALStore.init(rangeDir, initSnapshot("testStore"));
+        SegmentedWALStore stateStorage = new SegmentedWALStore("testStore", testId, rangeDir, 1024,
+            (id, index) -> {
+            }, logEntryCache, pendingTasks::add);
+        stateStorage.append(entries(1, 100, 1), true);
+        int segments = segmentFiles(testId);
+        // install a snapshot of different history
+        Snapshot snapshot = Snapshot.newBuilder()
+            .setIndex(200)
+            .setTerm(2)
+            .setClusterConfig(ClusterConfig.newBuilder().addVoters("newVoter").build())
+            .build();
+        stateStorage.applySnapshot(snapshot);
+        // crash before the background tasks deleting previous segments get run
+        stateStorage.close();
+        assertFalse(pendingTasks.isEmpty());
+        assertEquals(segmentFiles(testId), segments);
+
+        stateStorage = new SegmentedWALStore("testStore", testId, rangeDir, 1024,
+            (id, index) -> {
+            }, logEntryCache, pendingTasks::add);
+        assertEquals(stateStorage.latestSnapshot(), snapshot);
+        assertEquals(stateStorage.firstIndex(), 201);
+        assertEquals(stateStorage.lastIndex(), 200);
+        assertEquals(stateStorage.latestClusterConfig(), snapshot.getClusterConfig());
+        assertFalse(stateStorage.entryAt(100).isPresent());
+        // segments of previous epoch are dropped when loading
+        assertEquals(segmentFiles(testId), 0);
+        assertEquals(subDirs(rangeDir), 1);
+
+        stateStorage.append(entries(201, 210, 2), true);
+        assertEquals(stateStorage.lastIndex(), 210);
+        assertEquals(stateStorage.entryAt(201).get().getTerm(), 2);
+        stateStorage.close();
+        logEntryCache.close();
+    }
+
+    @Test
+    public void testTruncateAcrossSegments() {
+        KVRangeId testId = KVRangeIdUtil.generate();
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        IRaftStateStore stateStorage = engine.newRaftStateStorage(testId, initSnapshot(engine.id()));
+        stateStorage.append(entries(1, 100, 1), true);
+        // conflicting entries from new term
+        stateStorage.append(entries(10, 20, 2), true);
+        assertEquals(stateStorage.lastIndex(), 20);
+        assertEquals(stateStorage.entryAt(9).get().getTerm(), 1);
+        assertEquals(stateStorage.entryAt(10).get().getTerm(), 2);
+        assertFalse(stateStorage.entryAt(21).isPresent());
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        stateStorage = engine.get(testId);
+        assertEquals(stateStorage.lastIndex(), 20);
+        assertEquals(stateStorage.entryAt(20).get().getTerm(), 2);
+        engine.stop();
+    }
+
+    @Test
+    public void testCompactDeletesSegments() {
+        KVRangeId testId = KVRangeIdUtil.generate();
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        IRaftStateStore stateStorage = engine.newRaftStateStorage(testId, initSnapshot(engine.id()));
+        stateStorage.append(entries(1, 100, 1), true);
+        long sizeBefore = engine.storageSize(testId);
+        int segmentsBefore = segmentFiles(testId);
+        stateStorage.applySnapshot(Snapshot.newBuilder()
+            .setIndex(90)
+            .setTerm(1)
+            .setClusterConfig(ClusterConfig.newBuilder().addVoters(engine.id()).build())
+            .build());
+        assertEquals(stateStorage.firstIndex(), 91);
+        assertEquals(stateStorage.lastIndex(), 100);
+        assertTrue(engine.storageSize(testId) < sizeBefore);
+        await().until(() -> segmentFiles(testId) < segmentsBefore);
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        stateStorage = engine.get(testId);
+        assertEquals(stateStorage.firstIndex(), 91);
+        assertEquals(stateStorage.lastIndex(), 100);
+        assertEquals(stateStorage.entryAt(91).get().getIndex(), 91);
+        engine.stop();
+    }
+
+    @Test
+    public void testAsyncAppendGroupCommit() {
+        KVRangeId testId1 = KVRangeIdUtil.generate();
+        KVRangeId testId2 = KVRangeIdUtil.next(testId1);
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        IRaftStateStore stateStorage1 = engine.newRaftStateStorage(testId1, initSnapshot(engine.id()));
+        IRaftStateStore stateStorage2 = engine.newRaftStateStorage(testId2, initSnapshot(engine.id()));
+        AtomicLong stabled1 = new AtomicLong();
+        AtomicLong stabled2 = new AtomicLong();
+        stateStorage1.addStableListener(stabled1::set);
+        stateStorage2.addStableListener(stabled2::set);
+        for (long i = 1; i <= 50; i++) {
+            stateStorage1.append(entries(i, i, 1), false);
+            stateStorage2.append(entries(i, i, 1), false);
+        }
+        await().until(() -> stabled1.get() == 50 && stabled2.get() == 50);
+        engine.stop();
+    }
+
+    @Test
+    public void testDestroyRaftStateStorage() {
+        KVRangeId testId1 = KVRangeIdUtil.generate();
+        KVRangeId testId2 = KVRangeIdUtil.next(testId1);
+        SegmentedWALStorageEngine engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        engine.newRaftStateStorage(testId1, initSnapshot(engine.id())).append(entries(1, 10, 1), true);
+        engine.newRaftStateStorage(testId2, initSnapshot(engine.id()));
+        engine.destroy(testId1);
+        assertFalse(engine.has(testId1));
+        assertTrue(engine.has(testId2));
+        assertFalse(Files.exists(dbRootDir.resolve(KVRangeIdUtil.toString(testId1))));
+        engine.stop();
+
+        engine = new SegmentedWALStorageEngine(null, configurator);
+        engine.start(bgMgmtTaskExecutor);
+        assertEquals(engine.allKVRangeIds().size(), 1);
+        assertTrue(engine.has(testId2));
+        engine.stop();
+    }
+
+    private Snapshot initSnapshot(String storeId) {
+        return Snapshot.newBuilder()
+            .setIndex(0)
+            .setTerm(0)
+            .setClusterConfig(ClusterConfig.newBuilder().addVoters(storeId).build())
+            .build();
+    }
+
+    private List<LogEntry> entries(long fromIndex, long toIndex, long term) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (long i = fromIndex; i <= toIndex; i++) {
+            entries.add(LogEntry.newBuilder()
+                .setTerm(term)
+                .setIndex(i)
+                .setData(ByteString.copyFromUtf8("data" + i))
+                .build());
+        }
+        return entries;
+    }
+
+    private int segmentFiles(KVRangeId rangeId) {
+        return countFiles(dbRootDir.resolve(KVRangeIdUtil.toString(rangeId)), LogSegment.LOG_SUFFIX);
+    }
+
+    private int countFiles(Path dir, String suffix) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return (int) files.filter(p -> p.toString().endsWith(suffix)).count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long subDirs(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(Files::isDirectory).count();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -56,6 +56,14 @@ public interface IRPCClient {
 
         Observable<MsgT> msg();
 
+        /**
+         * The observable of the moments(in nanos) when the underlying stream is (re)established, the state kept by
+         * previous server-side stream should be restored via acks
+         *
+         * @return
+         */
+        Observable<Long> retarget();
+
         void close();
     }
 
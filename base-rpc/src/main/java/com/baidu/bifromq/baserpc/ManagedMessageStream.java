@@ -53,6 +53,7 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
     private final AtomicReference<State> state = new AtomicReference<>(State.Normal);
     private final ConcurrentLinkedQueue<AckT> ackSendingBuffers;
     private final PublishSubject<MsgT> msgSubject = PublishSubject.create();
+    private final PublishSubject<Long> retargetSubject = PublishSubject.create();
     private final RPCMeters.MeterKey meterKey;
     private final String tenantId;
     private final String wchKey;
@@ -229,12 +230,18 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
         return msgSubject;
     }
 
+    @Override
+    public Observable<Long> retarget() {
+        return retargetSubject;
+    }
+
     @Override
     public void close() {
         state.set(State.Closed);
         ackSendingBuffers.clear();
         disposables.dispose();
         msgSubject.onComplete();
+        retargetSubject.onComplete();
         ClientCallStreamObserver<AckT> r = requester.getAndSet(null);
         if (r != null) {
             r.onCompleted();
@@ -264,6 +271,7 @@ class ManagedMessageStream<MsgT, AckT> implements IRPCClient.IMessageStream<MsgT
                 requester.set(reqStream);
                 log.trace("MsgStream@{} request stream@{} created", hashCode(), reqStream.hashCode());
                 selectedServerId.set(RPCContext.SELECTED_SERVER_ID_CTX_KEY.get().getServerId());
+                retargetSubject.onNext(System.nanoTime());
                 sendUntilStreamNotReadyOrNoTask();
             } else {
                 log.trace("MsgStream@{} retry request stream creation in 5 seconds", hashCode());
@@ -27,6 +27,11 @@ import com.baidu.bifromq.dist.rpc.proto.UnsubRequest;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.Message;
 import com.baidu.bifromq.type.QoS;
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.reactivex.rxjava3.core.Observable;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
@@ -40,10 +45,23 @@ class DistClient implements IDistClient {
     private final DistServerCallScheduler reqScheduler;
     private final IRPCClient rpcClient;
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    // the count and total amount tell the rate of payloads and bytes wrapped in place or copied onto heap
+    private final DistributionSummary wrappedPayloadBytes = DistributionSummary.builder("dist.client.pub.payload.bytes")
+        .tags("copy", "false")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
+    private final DistributionSummary copiedPayloadBytes = DistributionSummary.builder("dist.client.pub.payload.bytes")
+        .tags("copy", "true")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
 
     DistClient(@NonNull IRPCClient rpcClient) {
+        this(rpcClient, new DistServerCallScheduler(rpcClient));
+    }
+
+    DistClient(@NonNull IRPCClient rpcClient, @NonNull DistServerCallScheduler reqScheduler) {
         this.rpcClient = rpcClient;
-        reqScheduler = new DistServerCallScheduler(rpcClient);
+        this.reqScheduler = reqScheduler;
     }
 
     @Override
@@ -54,16 +72,31 @@ class DistClient implements IDistClient {
     @Override
     public CompletableFuture<Void> pub(long reqId, String topic, QoS qos, ByteBuffer payload,
                                        int expirySeconds, ClientInfo publisher) {
-        long now = HLC.INST.getPhysical();
-        long expiry = expirySeconds == Integer.MAX_VALUE ? Long.MAX_VALUE :
-            now + TimeUnit.MILLISECONDS.convert(expirySeconds, TimeUnit.SECONDS);
-        return reqScheduler.schedule(new ClientCall(publisher, topic, Message.newBuilder()
-            .setMessageId(reqId)
-            .setPubQoS(qos)
-            .setPayload(unsafeWrap(payload))
-            .setTimestamp(now)
-            .setExpireTimestamp(expiry)
-            .build()));
+        return reqScheduler.schedule(new ClientCall(publisher, topic,
+            buildMessage(reqId, qos, unsafeWrap(payload), expirySeconds)));
+    }
+
+    @Override
+    public CompletableFuture<Void> pub(long reqId, String topic, QoS qos, ByteBuf payload,
+                                       int expirySeconds, ClientInfo publisher) {
+        if (payload.nioBufferCount() == 1) {
+            // the batch carrying the message completes only after the request has been sent, keep the buffer alive
+            // till then regardless of the cancellation of the returned future
+            ByteBuf retained = payload.retainedDuplicate();
+            wrappedPayloadBytes.record(retained.readableBytes());
+            CompletableFuture<Void> onDone;
+            try {
+                onDone = reqScheduler.schedule(new ClientCall(publisher, topic,
+                    buildMessage(reqId, qos, unsafeWrap(retained.nioBuffer()), expirySeconds)));
+            } catch (Throwable e) {
+                retained.release();
+                return CompletableFuture.failedFuture(e);
+            }
+            return onDone.whenComplete((v, e) -> retained.release());
+        }
+        copiedPayloadBytes.record(payload.readableBytes());
+        return reqScheduler.schedule(new ClientCall(publisher, topic,
+            buildMessage(reqId, qos, unsafeWrap(ByteBufUtil.getBytes(payload)), expirySeconds)));
     }
 
     @Override
@@ -128,6 +161,19 @@ class DistClient implements IDistClient {
             });
     }
 
+    private Message buildMessage(long reqId, QoS qos, ByteString payload, int expirySeconds) {
+        long now = HLC.INST.getPhysical();
+        long expiry = expirySeconds == Integer.MAX_VALUE ? Long.MAX_VALUE :
+            now + TimeUnit.MILLISECONDS.convert(expirySeconds, TimeUnit.SECONDS);
+        return Message.newBuilder()
+            .setMessageId(reqId)
+            .setPubQoS(qos)
+            .setPayload(payload)
+            .setTimestamp(now)
+            .setExpireTimestamp(expiry)
+            .build();
+    }
+
     @Override
     public void stop() {
         // close tenant logger and drain logs before closing the dist client
@@ -135,6 +181,8 @@ class DistClient implements IDistClient {
             log.info("Stopping dist client");
             log.debug("Closing request scheduler");
             reqScheduler.close();
+            Metrics.globalRegistry.remove(wrappedPayloadBytes);
+            Metrics.globalRegistry.remove(copiedPayloadBytes);
             log.debug("Stopping rpc client");
             rpcClient.stop();
             log.info("Dist client stopped");
@@ -16,6 +16,7 @@ package com.baidu.bifromq.dist.client;
 import com.baidu.bifromq.baserpc.IRPCClient;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
+import io.netty.buffer.ByteBuf;
 import io.reactivex.rxjava3.core.Observable;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
@@ -51,6 +52,22 @@ public interface IDistClient {
     CompletableFuture<Void> pub(long reqId, String topic, QoS qos, ByteBuffer payload, int expirySeconds,
                                 ClientInfo publisher);
 
+    /**
+     * Same as {@link #pub(long, String, QoS, ByteBuffer, int, ClientInfo)}, but the payload is sent without copying
+     * if it's backed by a single buffer. The payload is retained until the batch carrying it has been sent, so the
+     * caller is free to release its own reference once the returned future completed or cancelled.
+     *
+     * @param reqId         the caller supplied request id for event tracing
+     * @param topic         the message topic
+     * @param qos           the message original qos
+     * @param payload       the message body
+     * @param expirySeconds the expiry of the message
+     * @param publisher     the publisher of the message which must have non-null tenantId and type field
+     * @return a future for tracking the publishing process asynchronously
+     */
+    CompletableFuture<Void> pub(long reqId, String topic, QoS qos, ByteBuf payload, int expirySeconds,
+                                ClientInfo publisher);
+
     /**
      * Add a topic subscription
      *
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.dist.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.baserpc.IRPCClient;
+import com.baidu.bifromq.dist.client.scheduler.ClientCall;
+import com.baidu.bifromq.dist.client.scheduler.DistServerCallScheduler;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.QoS;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DistClientTest {
+    private final ClientInfo publisher = ClientInfo.newBuilder().setTenantId("tenantA").build();
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private DistServerCallScheduler reqScheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private AutoCloseable closeable;
+    private DistClient distClient;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        Metrics.globalRegistry.add(meterRegistry);
+        distClient = new DistClient(rpcClient, reqScheduler);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        distClient.stop();
+        Metrics.globalRegistry.remove(meterRegistry);
+        closeable.close();
+    }
+
+    @Test
+    public void releaseOnSuccess() {
+        CompletableFuture<Void> batchDone = new CompletableFuture<>();
+        when(reqScheduler.schedule(any(ClientCall.class))).thenReturn(batchDone);
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<Void> pubDone = distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher);
+        // the caller and the pending batch both hold the buffer
+        assertEquals(payload.refCnt(), 2);
+        batchDone.complete(null);
+        assertTrue(pubDone.isDone());
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+        assertEquals(summary("false").count(), 1);
+        assertEquals(summary("false").totalAmount(), 8.0);
+    }
+
+    @Test
+    public void releaseOnFailure() {
+        CompletableFuture<Void> batchDone = new CompletableFuture<>();
+        when(reqScheduler.schedule(any(ClientCall.class))).thenReturn(batchDone);
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<Void> pubDone = distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher);
+        batchDone.completeExceptionally(new RuntimeException("Mock exception"));
+        assertTrue(pubDone.isCompletedExceptionally());
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void releaseOnReject() {
+        when(reqScheduler.schedule(any(ClientCall.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("Mock reject")));
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<Void> pubDone = distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher);
+        assertTrue(pubDone.isCompletedExceptionally());
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void releaseOnSchedulerThrows() {
+        when(reqScheduler.schedule(any(ClientCall.class))).thenThrow(new RejectedExecutionException("Mock reject"));
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<Void> pubDone = distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher);
+        assertTrue(pubDone.isCompletedExceptionally());
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void keepBufferWhenCallerCancels() {
+        CompletableFuture<Void> batchDone = new CompletableFuture<>();
+        when(reqScheduler.schedule(any(ClientCall.class))).thenReturn(batchDone);
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<Void> pubDone = distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher);
+        pubDone.cancel(true);
+        // the batch still references the buffer
+        assertEquals(payload.refCnt(), 2);
+        batchDone.complete(null);
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void copyCompositePayload() {
+        when(reqScheduler.schedule(any(ClientCall.class))).thenReturn(CompletableFuture.completedFuture(null));
+        CompositeByteBuf payload = PooledByteBufAllocator.DEFAULT.compositeBuffer()
+            .addComponent(true, pooledPayload())
+            .addComponent(true, pooledPayload());
+        distClient.pub(1, "topic", QoS.AT_MOST_ONCE, payload, 10, publisher).join();
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+        assertEquals(summary("true").count(), 1);
+        assertEquals(summary("true").totalAmount(), 16.0);
+    }
+
+    private ByteBuf pooledPayload() {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(8).writeLong(System.nanoTime());
+    }
+
+    private DistributionSummary summary(String copy) {
+        return meterRegistry.find("dist.client.pub.payload.bytes").tag("copy", copy).summary();
+    }
+}
@@ -47,7 +47,6 @@ import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
@@ -159,7 +158,7 @@ public class DistCallScheduler extends BatchCallScheduler<DistCall, Map<String,
                             .addAllDistPack(entry.getValue())
                             .setOrderKey(orderKey)
                             .build();
-                        return kvStoreClient.query(selectStore(range), KVRangeRORequest.newBuilder()
+                        return kvStoreClient.query(range, KVRangeRORequest.newBuilder()
                                 .setReqId(reqId)
                                 .setVer(range.ver)
                                 .setKvRangeId(range.id)
@@ -227,10 +226,6 @@ public class DistCallScheduler extends BatchCallScheduler<DistCall, Map<String,
 
             }
 
-            private String selectStore(KVRangeSetting setting) {
-                return setting.allReplicas.get(ThreadLocalRandom.current().nextInt(setting.allReplicas.size()));
-            }
-
             private Map<String, DistPack> buildDistPack() {
                 Map<String, DistPack> distPackMap = new HashMap<>();
                 batch.forEach((tenantId, topicMap) -> {
@@ -112,6 +112,8 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     private final ISettingProvider settingProvider;
     private final ISubBrokerManager subBrokerManager;
     private final DeliveryScheduler scheduler;
+    private final Supplier<IKVRangeReader> readerProvider;
+    private final SubscriptionIndex subscriptionIndex;
     private final SubscriptionCache routeCache;
     private final LoadEstimator loadEstimator;
     private final Gauge loadGauge;
@@ -132,7 +134,10 @@ class DistWorkerCoProc implements IKVRangeCoProc {
         this.scheduler = scheduler;
         this.loadEstimator = new LoadEstimator(DIST_MAX_RANGE_LOAD.get(), DIST_SPLIT_KEY_EST_THRESHOLD.get(),
             DIST_LOAD_TRACKING_SECONDS.get());
-        this.routeCache = new SubscriptionCache(id, readClientProvider, matchExecutor, loadEstimator);
+        this.readerProvider = readClientProvider;
+        this.subscriptionIndex = new SubscriptionIndex();
+        this.subscriptionIndex.reset(readClientProvider.get().kvReader());
+        this.routeCache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadEstimator);
         loadGauge = Gauge.builder("dist.worker.load", () -> loadEstimator.estimate().getLoad())
             .tags("id", KVRangeIdUtil.toString(id))
             .register(Metrics.globalRegistry);
@@ -190,26 +195,46 @@ class DistWorkerCoProc implements IKVRangeCoProc {
         DistServiceRWCoProcInput coProcInput = DistServiceRWCoProcInput.parseFrom(cis);
         log.trace("Receive rw co-proc request\n{}", coProcInput);
         UpdateRequest request = coProcInput.getUpdateRequest();
-        Set<String> touchedTenants = Sets.newHashSet();
+        // key: tenantId, value: the touched wildcard topic filters
+        Map<String, Set<String>> touchedTopicFilters = Maps.newHashMap();
         Set<ScopedTopic> touchedTopics = Sets.newHashSet();
+        // key: matchRecordKey, value: the latest matching or empty if removed
+        Map<ByteString, Optional<Matching>> indexUpdates = Maps.newLinkedHashMap();
         ByteString output = DistServiceRWCoProcOutput.newBuilder()
-            .setUpdateReply(batchUpdate(request, reader, writer, touchedTenants, touchedTopics))
+            .setUpdateReply(batchUpdate(request, reader, writer, touchedTopicFilters, touchedTopics, indexUpdates))
             .build().toByteString();
         return () -> {
+            indexUpdates.forEach((matchRecordKey, matching) -> {
+                if (matching.isPresent()) {
+                    subscriptionIndex.add(matching.get());
+                } else {
+                    subscriptionIndex.remove(matchRecordKey);
+                }
+            });
             touchedTopics.forEach(routeCache::invalidate);
-            touchedTenants.forEach(routeCache::touch);
+            touchedTopicFilters.forEach(routeCache::invalidate);
             return output;
         };
     }
 
+    @Override
+    public void reset(Range range) {
+        IKVRangeReader rangeReader = readerProvider.get();
+        subscriptionIndex.reset(rangeReader.kvReader());
+        routeCache.reset();
+    }
+
     public void close() {
         routeCache.close();
+        subscriptionIndex.clear();
         fanoutExecutorGroup.shutdown();
         Metrics.globalRegistry.remove(loadGauge);
     }
 
     private UpdateReply batchUpdate(UpdateRequest request, IKVReader reader, IKVWriter writer,
-                                    Set<String> touchedTenants, Set<ScopedTopic> touchedTopics) {
+                                    Map<String, Set<String>> touchedTopicFilters,
+                                    Set<ScopedTopic> touchedTopics,
+                                    Map<ByteString, Optional<Matching>> indexUpdates) {
         UpdateReply.Builder replyBuilder = UpdateReply.newBuilder().setReqId(request.getReqId());
         if (request.hasAddTopicFilter()) {
             replyBuilder.setAddTopicFilter(
@@ -221,19 +246,23 @@ class DistWorkerCoProc implements IKVRangeCoProc {
         }
         if (request.hasInsertMatchRecord()) {
             replyBuilder.setInsertMatchRecord(
-                insertMatchRecord(request.getInsertMatchRecord(), reader, writer, touchedTenants, touchedTopics));
+                insertMatchRecord(request.getInsertMatchRecord(), reader, writer, touchedTopicFilters, touchedTopics,
+                    indexUpdates));
         }
         if (request.hasDeleteMatchRecord()) {
             replyBuilder.setDeleteMatchRecord(
-                deleteMatchRecord(request.getDeleteMatchRecord(), reader, writer, touchedTenants, touchedTopics));
+                deleteMatchRecord(request.getDeleteMatchRecord(), reader, writer, touchedTopicFilters, touchedTopics,
+                    indexUpdates));
         }
         if (request.hasJoinMatchGroup()) {
             replyBuilder.setJoinMatchGroup(
-                joinMatchGroup(request.getJoinMatchGroup(), reader, writer, touchedTenants, touchedTopics));
+                joinMatchGroup(request.getJoinMatchGroup(), reader, writer, touchedTopicFilters, touchedTopics,
+                    indexUpdates));
         }
         if (request.hasLeaveMatchGroup()) {
             replyBuilder.setLeaveMatchGroup(
-                leaveMatchGroup(request.getLeaveMatchGroup(), reader, writer, touchedTenants, touchedTopics));
+                leaveMatchGroup(request.getLeaveMatchGroup(), reader, writer, touchedTopicFilters, touchedTopics,
+                    indexUpdates));
         }
         if (request.hasClearSubInfo()) {
             replyBuilder.setClearSubInfo(clearSubInfo(request.getClearSubInfo(), reader, writer));
@@ -325,7 +354,9 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     }
 
     private InsertMatchRecordReply insertMatchRecord(InsertMatchRecord request, IKVReader reader, IKVWriter writer,
-                                                     Set<String> touchedTenants, Set<ScopedTopic> touchedTopics) {
+                                                     Map<String, Set<String>> touchedTopicFilters,
+                                                     Set<ScopedTopic> touchedTopics,
+                                                     Map<ByteString, Optional<Matching>> indexUpdates) {
         InsertMatchRecordReply.Builder replyBuilder = InsertMatchRecordReply.newBuilder();
         for (String matchRecordKey : request.getRecordMap().keySet()) {
             ByteString key = ByteString.copyFromUtf8(matchRecordKey);
@@ -335,13 +366,15 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                 case AT_LEAST_ONCE:
                 case EXACTLY_ONCE:
                     if (!reader.exist(key)) {
-                        writer.put(key, MatchRecord.newBuilder().setNormal(subQoS).build().toByteString());
+                        ByteString value = MatchRecord.newBuilder().setNormal(subQoS).build().toByteString();
+                        writer.put(key, value);
                         loadEstimator.track(key, LoadUnits.KEY_PUT);
+                        indexUpdates.put(key, Optional.of(parseMatchRecord(key, value)));
 
                         String tenantId = EntityUtil.parseTenantId(matchRecordKey);
                         String topicFilter = parseTopicFilter(matchRecordKey);
                         if (isWildcardTopicFilter(topicFilter)) {
-                            touchedTenants.add(EntityUtil.parseTenantId(matchRecordKey));
+                            touchedTopicFilters.computeIfAbsent(tenantId, k -> Sets.newHashSet()).add(topicFilter);
                         } else {
                             touchedTopics.add(ScopedTopic.builder()
                                 .tenantId(tenantId)
@@ -358,7 +391,9 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     }
 
     private JoinMatchGroupReply joinMatchGroup(JoinMatchGroup request, IKVReader reader, IKVWriter writer,
-                                               Set<String> touchedTenants, Set<ScopedTopic> touchedTopics) {
+                                               Map<String, Set<String>> touchedTopicFilters,
+                                               Set<ScopedTopic> touchedTopics,
+                                               Map<ByteString, Optional<Matching>> indexUpdates) {
         JoinMatchGroupReply.Builder replyBuilder = JoinMatchGroupReply.newBuilder();
         for (String matchRecordKeyUtf8 : request.getRecordMap().keySet()) {
             String tenantId = parseTenantId(matchRecordKeyUtf8);
@@ -391,11 +426,13 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                 }
             }
             if (updated) {
-                writer.put(matchRecordKey, MatchRecord.newBuilder().setGroup(matchGroup).build().toByteString());
+                ByteString value = MatchRecord.newBuilder().setGroup(matchGroup).build().toByteString();
+                writer.put(matchRecordKey, value);
                 loadEstimator.track(matchRecordKey, LoadUnits.KEY_PUT);
+                indexUpdates.put(matchRecordKey, Optional.of(parseMatchRecord(matchRecordKey, value)));
                 String topicFilter = parseTopicFilter(matchRecordKeyUtf8);
                 if (isWildcardTopicFilter(topicFilter)) {
-                    touchedTenants.add(parseTenantId(matchRecordKey));
+                    touchedTopicFilters.computeIfAbsent(tenantId, k -> Sets.newHashSet()).add(topicFilter);
                 } else {
                     touchedTopics.add(ScopedTopic.builder()
                         .tenantId(tenantId)
@@ -410,7 +447,9 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     }
 
     private DeleteMatchRecordReply deleteMatchRecord(DeleteMatchRecord request, IKVReader reader, IKVWriter writer,
-                                                     Set<String> touchedTenants, Set<ScopedTopic> touchedTopics) {
+                                                     Map<String, Set<String>> touchedTopicFilters,
+                                                     Set<ScopedTopic> touchedTopics,
+                                                     Map<ByteString, Optional<Matching>> indexUpdates) {
         DeleteMatchRecordReply.Builder replyBuilder = DeleteMatchRecordReply.newBuilder();
         for (String matchRecordKeyUtf8 : request.getMatchRecordKeyList()) {
             ByteString matchRecordKey = ByteString.copyFromUtf8(matchRecordKeyUtf8);
@@ -420,11 +459,12 @@ class DistWorkerCoProc implements IKVRangeCoProc {
             if (value.isPresent()) {
                 writer.delete(matchRecordKey);
                 loadEstimator.track(matchRecordKey, LoadUnits.KEY_DEL);
+                indexUpdates.put(matchRecordKey, Optional.empty());
 
                 String tenantId = parseTenantId(matchRecordKey);
                 String topicFilter = parseTopicFilter(matchRecordKeyUtf8);
                 if (isWildcardTopicFilter(topicFilter)) {
-                    touchedTenants.add(parseTenantId(matchRecordKey));
+                    touchedTopicFilters.computeIfAbsent(tenantId, k -> Sets.newHashSet()).add(topicFilter);
                 } else {
                     touchedTopics.add(ScopedTopic.builder()
                         .tenantId(tenantId)
@@ -441,7 +481,9 @@ class DistWorkerCoProc implements IKVRangeCoProc {
     }
 
     private LeaveMatchGroupReply leaveMatchGroup(LeaveMatchGroup request, IKVReader reader, IKVWriter writer,
-                                                 Set<String> touchedTenants, Set<ScopedTopic> touchedTopics) {
+                                                 Map<String, Set<String>> touchedTopicFilters,
+                                                 Set<ScopedTopic> touchedTopics,
+                                                 Map<ByteString, Optional<Matching>> indexUpdates) {
         for (String matchRecordKeyUtf8 : request.getRecordMap().keySet()) {
             ByteString matchRecordKey = ByteString.copyFromUtf8(matchRecordKeyUtf8);
             Optional<ByteString> value = reader.get(matchRecordKey);
@@ -461,18 +503,21 @@ class DistWorkerCoProc implements IKVRangeCoProc {
                     if (existing.isEmpty()) {
                         writer.delete(matchRecordKey);
                         loadEstimator.track(matchRecordKey, LoadUnits.KEY_DEL);
+                        indexUpdates.put(matchRecordKey, Optional.empty());
                     } else {
-                        writer.put(matchRecordKey, MatchRecord.newBuilder()
+                        ByteString newValue = MatchRecord.newBuilder()
                             .setGroup(GroupMatchRecord.newBuilder()
                                 .putAllEntry(existing)
                                 .build()).build()
-                            .toByteString());
+                            .toByteString();
+                        writer.put(matchRecordKey, newValue);
                         loadEstimator.track(matchRecordKey, LoadUnits.KEY_PUT);
+                        indexUpdates.put(matchRecordKey, Optional.of(parseMatchRecord(matchRecordKey, newValue)));
                     }
                     String tenantId = parseTenantId(matchRecordKey);
                     String topicFilter = parseTopicFilter(matchRecordKeyUtf8);
                     if (isWildcardTopicFilter(topicFilter)) {
-                        touchedTenants.add(parseTenantId(matchRecordKey));
+                        touchedTopicFilters.computeIfAbsent(tenantId, k -> Sets.newHashSet()).add(topicFilter);
                     } else {
                         touchedTopics.add(ScopedTopic.builder()
                             .tenantId(tenantId)
@@ -15,6 +15,7 @@ package com.baidu.bifromq.dist.worker;
 
 public class LoadUnits {
     public static final int KEY_CACHE_HIT = 1;
+    public static final int KEY_INDEX_GET = 2;
     public static final int KEY_ITR_SEEK = 10;
     public static final int KEY_ITR_GET = 10;
     public static final int KEY_EXIST = 20;
@@ -13,26 +13,26 @@
 
 package com.baidu.bifromq.dist.worker;
 
-import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.compare;
-import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordTopicFilterPrefix;
-import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.inRange;
+import static com.baidu.bifromq.metrics.TenantMetric.DistRouteCacheHitCount;
+import static com.baidu.bifromq.metrics.TenantMetric.DistRouteCacheInvalidateCount;
+import static com.baidu.bifromq.metrics.TenantMetric.DistRouteCacheMissCount;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_MAX_CACHED_SUBS_PER_TENANT;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_MAX_CACHED_TOPICS_TO_SCAN;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_TOPIC_MATCH_EXPIRY;
 import static com.google.common.hash.Hashing.murmur3_128;
 import static java.util.Collections.singleton;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.Range;
-import com.baidu.bifromq.basekv.store.api.IKVIterator;
-import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.dist.entity.GroupMatching;
 import com.baidu.bifromq.dist.entity.Matching;
 import com.baidu.bifromq.dist.entity.NormalMatching;
-import com.baidu.bifromq.dist.util.TopicFilterMatcher;
-import com.baidu.bifromq.dist.util.TopicTrie;
+import com.baidu.bifromq.dist.util.TopicMatcher;
+import com.baidu.bifromq.dist.util.TopicUtil;
+import com.baidu.bifromq.metrics.TenantMeter;
 import com.baidu.bifromq.type.ClientInfo;
-import com.baidu.bifromq.type.TopicMessage;
 import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.CacheLoader;
@@ -43,7 +43,6 @@ import com.github.benmanes.caffeine.cache.Scheduler;
 import com.github.benmanes.caffeine.cache.Weigher;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.MoreExecutors;
-import com.google.protobuf.ByteString;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
@@ -53,39 +52,42 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import lombok.AllArgsConstructor;
 import org.checkerframework.checker.index.qual.NonNegative;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class SubscriptionCache {
-    // OuterCacheKey: <tenantId><escapedTopicFilter>
+    // OuterCacheKey: the GroupMatching instance(compared by identity), which is replaced on membership change
     // InnerCacheKey: <orderKey>
-    private final LoadingCache<String, Cache<ClientInfo, NormalMatching>> orderedSharedMatching;
+    private final LoadingCache<GroupMatching, Cache<ClientInfo, NormalMatching>> orderedSharedMatching;
     private final LoadingCache<String, AsyncLoadingCache<ScopedTopic, MatchResult>> tenantCache;
-    private final LoadingCache<String, AtomicLong> tenantVerCache;
-    private final ThreadLocal<IKVRangeReader> threadLocalReader;
+    private final SubscriptionIndex subscriptionIndex;
     private final ILoadEstimator loadEstimator;
+    private final Executor matchExecutor;
+    private final int maxCachedTopicsToScan;
+    // key: tenantId, value: the number of wildcard invalidations in progress
+    private final Map<String, Integer> pendingInvalidations = new ConcurrentHashMap<>();
     private final Timer externalMatchTimer;
     private final Timer internalMatchTimer;
 
-    SubscriptionCache(KVRangeId id, Supplier<IKVRangeReader> rangeReaderProvider, Executor matchExecutor,
+    SubscriptionCache(KVRangeId id, SubscriptionIndex subscriptionIndex, Executor matchExecutor,
                       ILoadEstimator loadEstimator) {
         int expirySec = DIST_TOPIC_MATCH_EXPIRY.get();
-        threadLocalReader = ThreadLocal.withInitial(rangeReaderProvider);
+        this.subscriptionIndex = subscriptionIndex;
         this.loadEstimator = loadEstimator;
+        this.matchExecutor = matchExecutor;
+        this.maxCachedTopicsToScan = DIST_MAX_CACHED_TOPICS_TO_SCAN.get();
         orderedSharedMatching = Caffeine.newBuilder()
+            .weakKeys()
             .expireAfterAccess(expirySec * 2L, TimeUnit.SECONDS)
             .scheduler(Scheduler.systemScheduler())
-            .removalListener((RemovalListener<String, Cache<ClientInfo, NormalMatching>>)
+            .removalListener((RemovalListener<GroupMatching, Cache<ClientInfo, NormalMatching>>)
                 (key, value, cause) -> {
                     if (value != null) {
                         value.invalidateAll();
@@ -114,7 +116,6 @@ public class SubscriptionCache {
                     }
                 })
                 .expireAfterAccess(expirySec, TimeUnit.SECONDS)
-                .refreshAfterWrite(expirySec, TimeUnit.SECONDS)
                 .executor(matchExecutor)
                 .buildAsync(new CacheLoader<>() {
                     @Override
@@ -137,21 +138,7 @@ public class SubscriptionCache {
                                 matchRecordRangeByTenantId.get(entry.getKey())).entrySet().stream())
                             .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
                     }
-
-                    @Override
-                    public @Nullable MatchResult reload(ScopedTopic key, MatchResult oldValue) {
-                        long tenantVer = tenantVerCache.get(key.tenantId).get();
-                        if (oldValue.tenantVer >= tenantVer) {
-                            return oldValue;
-                        }
-                        return match(key.tenantId, singleton(key.topic), key.matchRecordRange, tenantVer).get(
-                            key);
-                    }
                 }));
-        tenantVerCache = Caffeine.newBuilder()
-            .expireAfterAccess(expirySec * 2L, TimeUnit.SECONDS)
-            .scheduler(Scheduler.systemScheduler())
-            .build(k -> new AtomicLong(System.nanoTime()));
 
         Tags tag = Tags.of("id", KVRangeIdUtil.toString(id));
         externalMatchTimer = Timer.builder("dist.match.external")
@@ -164,147 +151,172 @@ public class SubscriptionCache {
 
     public CompletableFuture<Map<NormalMatching, Set<ClientInfo>>> get(ScopedTopic topic, Set<ClientInfo> senders) {
         Timer.Sample sample = Timer.start();
-        return tenantCache.get(topic.tenantId).get(topic)
-            .thenApply(matchResult -> {
-                sample.stop(externalMatchTimer);
-                Map<NormalMatching, Set<ClientInfo>> routesMap = new HashMap<>();
-                for (Matching matching : matchResult.routes) {
-                    NormalMatching matchedInbox;
-                    if (matching instanceof NormalMatching) {
-                        matchedInbox = (NormalMatching) matching;
-                        // track load
-                        loadEstimator.track(matchedInbox.key, LoadUnits.KEY_CACHE_HIT);
-                        routesMap.put(matchedInbox, senders);
-                    } else {
-                        GroupMatching groupMatching = (GroupMatching) matching;
-                        // track load
-                        loadEstimator.track(groupMatching.key, LoadUnits.KEY_CACHE_HIT);
-                        if (groupMatching.ordered) {
-                            for (ClientInfo sender : senders) {
-                                matchedInbox = orderedSharedMatching
-                                    .get(groupMatching.tenantId +
-                                        groupMatching.escapedTopicFilter +
-                                        matchResult.tenantVer)
-                                    .get(sender, k -> {
-                                        RendezvousHash<ClientInfo, NormalMatching> hash =
-                                            new RendezvousHash<>(murmur3_128(),
-                                                (from, into) -> into.putInt(from.hashCode()),
-                                                (from, into) -> into.putBytes(from.scopedInboxId.getBytes()),
-                                                Comparator.comparing(a -> a.scopedInboxId));
-                                        groupMatching.inboxList.forEach(hash::add);
-                                        return hash.get(k);
-                                    });
-                                routesMap.computeIfAbsent(matchedInbox, k -> new HashSet<>()).add(sender);
-                            }
-                        } else {
-                            matchedInbox = groupMatching.inboxList.get(ThreadLocalRandom.current()
-                                .nextInt(groupMatching.inboxList.size()));
-                            routesMap.put(matchedInbox, senders);
-                        }
-                    }
+        CompletableFuture<MatchResult> matchResultFuture;
+        if (pendingInvalidations.containsKey(topic.tenantId)) {
+            // the cached results may be stale until the wildcard invalidation finishes, match against the index
+            TenantMeter.get(topic.tenantId).recordCount(DistRouteCacheMissCount);
+            matchResultFuture = CompletableFuture.supplyAsync(() ->
+                match(topic.tenantId, singleton(topic.topic), topic.matchRecordRange).get(topic), matchExecutor);
+            return matchResultFuture.thenApply(matchResult -> toRoutes(matchResult, senders, sample));
+        }
+        AsyncLoadingCache<ScopedTopic, MatchResult> routeCache = tenantCache.get(topic.tenantId);
+        matchResultFuture = routeCache.getIfPresent(topic);
+        if (matchResultFuture != null) {
+            TenantMeter.get(topic.tenantId).recordCount(DistRouteCacheHitCount);
+        } else {
+            TenantMeter.get(topic.tenantId).recordCount(DistRouteCacheMissCount);
+            matchResultFuture = routeCache.get(topic);
+        }
+        return matchResultFuture.thenApply(matchResult -> toRoutes(matchResult, senders, sample));
+    }
+
+    /**
+     * Invalidate the cached match result of the topic, it's called when a non-wildcard topic filter changed.
+     *
+     * @param topic the topic exactly matched by changed topic filter
+     */
+    public void invalidate(ScopedTopic topic) {
+        AsyncLoadingCache<ScopedTopic, MatchResult> routeCache = tenantCache.getIfPresent(topic.tenantId);
+        if (routeCache != null && routeCache.asMap().remove(topic) != null) {
+            TenantMeter.get(topic.tenantId).recordCount(DistRouteCacheInvalidateCount);
+        }
+    }
+
+    /**
+     * Invalidate all cached match results of the tenant whose topic is matched by any of the wildcard topic filters.
+     * The cached topics are scanned in background, and lookups of the tenant bypass the cache until the scan is done.
+     * If the tenant has cached too many topics to scan, all its cached match results are dropped instead.
+     *
+     * @param tenantId     the tenant
+     * @param topicFilters the changed wildcard topic filters without share prefix
+     */
+    public void invalidate(String tenantId, Set<String> topicFilters) {
+        AsyncLoadingCache<ScopedTopic, MatchResult> routeCache = tenantCache.getIfPresent(tenantId);
+        if (routeCache == null || topicFilters.isEmpty()) {
+            return;
+        }
+        pendingInvalidations.compute(tenantId, (k, v) -> v == null ? 1 : v + 1);
+        try {
+            matchExecutor.execute(() -> {
+                try {
+                    invalidate(tenantId, routeCache, topicFilters);
+                } finally {
+                    pendingInvalidations.compute(tenantId, (k, v) -> v == null || v == 1 ? null : v - 1);
                 }
-                return routesMap;
             });
+        } catch (Throwable e) {
+            // executor rejected
+            pendingInvalidations.compute(tenantId, (k, v) -> v == null || v == 1 ? null : v - 1);
+            tenantCache.invalidate(tenantId);
+        }
     }
 
-    // TODO: explore the possibility to invalidate all keys which matching a given wildcard topic filter
-    public void touch(String tenantId) {
-        tenantVerCache.get(tenantId).updateAndGet(v -> Math.max(v, System.nanoTime()));
+    private void invalidate(String tenantId,
+                            AsyncLoadingCache<ScopedTopic, MatchResult> routeCache,
+                            Set<String> topicFilters) {
+        Map<ScopedTopic, CompletableFuture<MatchResult>> cached = routeCache.asMap();
+        int invalidated = 0;
+        if (cached.size() > maxCachedTopicsToScan) {
+            invalidated = cached.size();
+            routeCache.synchronous().invalidateAll();
+        } else {
+            List<String> escapedTopicFilters = topicFilters.stream().map(TopicUtil::escape).toList();
+            for (ScopedTopic scopedTopic : cached.keySet()) {
+                TopicMatcher matcher = new TopicMatcher(scopedTopic.topic);
+                for (String escapedTopicFilter : escapedTopicFilters) {
+                    if (matcher.match(escapedTopicFilter)) {
+                        if (cached.remove(scopedTopic) != null) {
+                            invalidated++;
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (invalidated > 0) {
+            TenantMeter.get(tenantId).recordCount(DistRouteCacheInvalidateCount, invalidated);
+        }
     }
 
-    public void invalidate(ScopedTopic topic) {
-        AsyncLoadingCache<ScopedTopic, MatchResult> routeCache = tenantCache.getIfPresent(topic.tenantId);
-        if (routeCache != null) {
-            routeCache.synchronous().invalidate(topic);
-        }
+    /**
+     * Drop all cached match results, it's called after the subscription index has been rebuilt.
+     */
+    public void reset() {
+        tenantCache.invalidateAll();
+        orderedSharedMatching.invalidateAll();
     }
 
     public void close() {
         tenantCache.invalidateAll();
         orderedSharedMatching.invalidateAll();
-        tenantVerCache.invalidateAll();
         Metrics.globalRegistry.remove(externalMatchTimer);
         Metrics.globalRegistry.remove(internalMatchTimer);
     }
 
-    private Map<ScopedTopic, MatchResult> match(String tenantId, Set<String> topics, Range matchRecordRange) {
-        long tenantVer = tenantVerCache.get(tenantId).get();
-        return match(tenantId, topics, matchRecordRange, tenantVer);
+    private Map<NormalMatching, Set<ClientInfo>> toRoutes(MatchResult matchResult, Set<ClientInfo> senders,
+                                                          Timer.Sample sample) {
+        sample.stop(externalMatchTimer);
+        Map<NormalMatching, Set<ClientInfo>> routesMap = new HashMap<>();
+        for (Matching matching : matchResult.routes) {
+            NormalMatching matchedInbox;
+            if (matching instanceof NormalMatching) {
+                matchedInbox = (NormalMatching) matching;
+                // track load
+                loadEstimator.track(matchedInbox.key, LoadUnits.KEY_CACHE_HIT);
+                routesMap.put(matchedInbox, senders);
+            } else {
+                GroupMatching groupMatching = (GroupMatching) matching;
+                // track load
+                loadEstimator.track(groupMatching.key, LoadUnits.KEY_CACHE_HIT);
+                if (groupMatching.ordered) {
+                    for (ClientInfo sender : senders) {
+                        matchedInbox = orderedSharedMatching
+                            .get(groupMatching)
+                            .get(sender, k -> {
+                                RendezvousHash<ClientInfo, NormalMatching> hash =
+                                    new RendezvousHash<>(murmur3_128(),
+                                        (from, into) -> into.putInt(from.hashCode()),
+                                        (from, into) -> into.putBytes(from.scopedInboxId.getBytes()),
+                                        Comparator.comparing(a -> a.scopedInboxId));
+                                groupMatching.inboxList.forEach(hash::add);
+                                return hash.get(k);
+                            });
+                        routesMap.computeIfAbsent(matchedInbox, k -> new HashSet<>()).add(sender);
+                    }
+                } else {
+                    matchedInbox = groupMatching.inboxList.get(ThreadLocalRandom.current()
+                        .nextInt(groupMatching.inboxList.size()));
+                    routesMap.put(matchedInbox, senders);
+                }
+            }
+        }
+        return routesMap;
     }
 
-    private Map<ScopedTopic, MatchResult> match(String tenantId,
-                                                Set<String> topics,
-                                                Range matchRecordRange,
-                                                long tenantVer) {
+    private Map<ScopedTopic, MatchResult> match(String tenantId, Set<String> topics, Range matchRecordRange) {
         Timer.Sample sample = Timer.start();
         Map<ScopedTopic, MatchResult> routes = Maps.newHashMap();
-        topics.forEach(topic -> routes.put(ScopedTopic.builder()
-            .tenantId(tenantId)
-            .topic(topic)
-            .range(matchRecordRange)
-            .build(), new MatchResult(tenantVer)));
-        IKVRangeReader rangeReader = threadLocalReader.get();
-        rangeReader.refresh();
-
-        TopicTrie topicTrie = new TopicTrie();
-        topics.forEach(topic -> topicTrie.add(topic, singleton(TopicMessage.getDefaultInstance())));
-        // key: topicFilter, value: set of matched topics
-        Map<String, Set<String>> matched = Maps.newHashMap();
-        TopicFilterMatcher matcher = new TopicFilterMatcher(topicTrie);
-        int probe = 0;
-        IKVIterator itr = rangeReader.kvReader().iterator();
-
-        // track seek
-        loadEstimator.track(matchRecordRange.getStartKey(), LoadUnits.KEY_ITR_SEEK);
-        itr.seek(matchRecordRange.getStartKey());
-        while (itr.isValid() && compare(itr.key(), matchRecordRange.getEndKey()) < 0) {
-            // track itr.key()
-            loadEstimator.track(itr.key(), LoadUnits.KEY_ITR_GET);
-            Matching matching = parseMatchRecord(itr.key(), itr.value());
-            // key: topic
-            Set<String> matchedTopics = matched.get(matching.escapedTopicFilter);
-            if (matchedTopics == null) {
-                Optional<Map<String, Iterable<TopicMessage>>> clientMsgs = matcher.match(matching.escapedTopicFilter);
-                if (clientMsgs.isPresent()) {
-                    matchedTopics = clientMsgs.get().keySet();
-                    matched.put(matching.escapedTopicFilter, matchedTopics);
-                    itr.next();
-                    probe = 0;
-                } else {
-                    Optional<String> higherFilter = matcher.higher(matching.escapedTopicFilter);
-                    if (higherFilter.isPresent()) {
-                        // next() is much cheaper than seek(), we probe following 20 entries
-                        if (probe++ < 20) {
-                            // probe next
-                            itr.next();
-                        } else {
-                            // seek to match next topic filter
-                            ByteString nextMatch = matchRecordTopicFilterPrefix(tenantId, higherFilter.get());
-                            loadEstimator.track(nextMatch, LoadUnits.KEY_ITR_SEEK);
-                            itr.seek(nextMatch);
-                        }
-                        continue;
-                    } else {
-                        break; // no more topic filter to match, stop here
-                    }
+        for (String topic : topics) {
+            MatchResult matchResult = new MatchResult();
+            for (Matching matching : subscriptionIndex.match(tenantId, topic)) {
+                // the index may temporarily contain records out of the range before it gets reset
+                if (inRange(matching.key, matchRecordRange)) {
+                    // track matching.key
+                    loadEstimator.track(matching.key, LoadUnits.KEY_INDEX_GET);
+                    matchResult.routes.add(matching);
                 }
-            } else {
-                itr.next();
             }
-            matchedTopics.forEach(t -> routes.get(ScopedTopic.builder()
-                    .tenantId(tenantId)
-                    .topic(t)
-                    .range(matchRecordRange)
-                    .build())
-                .routes.add(matching));
+            routes.put(ScopedTopic.builder()
+                .tenantId(tenantId)
+                .topic(topic)
+                .range(matchRecordRange)
+                .build(), matchResult);
         }
         sample.stop(internalMatchTimer);
         return routes;
     }
 
-    @AllArgsConstructor
     private static class MatchResult {
         final List<Matching> routes = new ArrayList<>();
-        final long tenantVer;
     }
 }
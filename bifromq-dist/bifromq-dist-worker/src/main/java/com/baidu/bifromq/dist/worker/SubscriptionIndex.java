@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.isSubInfoKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKeyPrefix;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseTenantId;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseTopicFilter;
+import static com.baidu.bifromq.dist.util.TopicUtil.SYS_PREFIX;
+
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.util.TopicUtil;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory topic filter trie of all match records hosted in one KVRange, organized per tenant.
+ * <br>
+ * The index is mutated only from the range's apply thread after the corresponding change has been persisted, and
+ * could be matched concurrently from topic matching threads. Full rebuild from the underlying KV is only necessary
+ * when the range is loaded or its boundary/data gets reset, e.g. by split, merge or snapshot installation.
+ */
+@Slf4j
+class SubscriptionIndex {
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    private volatile Map<String, Node> tenantRoots = new ConcurrentHashMap<>();
+
+    /**
+     * Add or replace the matching identified by its match record key
+     *
+     * @param matching the matching parsed from match record
+     */
+    void add(Matching matching) {
+        add(tenantRoots, matching);
+    }
+
+    /**
+     * Remove the matching identified by its match record key
+     *
+     * @param matchRecordKey the key of match record
+     */
+    void remove(ByteString matchRecordKey) {
+        String matchRecordKeyStr = matchRecordKey.toStringUtf8();
+        String tenantId = parseTenantId(matchRecordKeyStr);
+        Node root = tenantRoots.get(tenantId);
+        if (root == null) {
+            return;
+        }
+        List<String> filterLevels = TopicUtil.parse(parseTopicFilter(matchRecordKeyStr), false);
+        if (remove(root, filterLevels, 0, matchRecordKey)) {
+            tenantRoots.remove(tenantId, root);
+        }
+    }
+
+    /**
+     * Find all matchings of given tenant whose topic filter matches the topic
+     *
+     * @param tenantId the tenant
+     * @param topic    the topic to match
+     * @return the matchings
+     */
+    List<Matching> match(String tenantId, String topic) {
+        List<Matching> matched = new ArrayList<>();
+        Node root = tenantRoots.get(tenantId);
+        if (root != null) {
+            List<String> topicLevels = TopicUtil.parse(topic, false);
+            // sys topic don't match "#" and "+" at root level
+            match(root, topicLevels, 0, !topicLevels.get(0).startsWith(SYS_PREFIX), matched);
+        }
+        return matched;
+    }
+
+    /**
+     * Rebuild the index from the match records visible via the reader
+     *
+     * @param reader the reader of the range
+     */
+    void reset(IKVReader reader) {
+        Map<String, Node> newRoots = new ConcurrentHashMap<>();
+        IKVIterator itr = reader.iterator();
+        int count = 0;
+        for (itr.seekToFirst(); itr.isValid(); ) {
+            ByteString key = itr.key();
+            if (isSubInfoKey(key)) {
+                // skip sub info keys of the tenant
+                itr.seek(matchRecordKeyPrefix(parseTenantId(key)));
+            } else {
+                add(newRoots, parseMatchRecord(key, itr.value()));
+                count++;
+                itr.next();
+            }
+        }
+        tenantRoots = newRoots;
+        log.debug("Subscription index rebuilt: {} match records loaded", count);
+    }
+
+    void clear() {
+        tenantRoots.clear();
+    }
+
+    private void add(Map<String, Node> roots, Matching matching) {
+        Node node = roots.computeIfAbsent(matching.tenantId, k -> new Node());
+        for (String level : TopicUtil.parse(matching.escapedTopicFilter, true)) {
+            node = node.children.computeIfAbsent(level, k -> new Node());
+        }
+        node.matchings.put(matching.key, matching);
+    }
+
+    private boolean remove(Node node, List<String> filterLevels, int level, ByteString matchRecordKey) {
+        if (level == filterLevels.size()) {
+            node.matchings.remove(matchRecordKey);
+        } else {
+            String levelName = filterLevels.get(level);
+            Node child = node.children.get(levelName);
+            if (child == null) {
+                return false;
+            }
+            if (remove(child, filterLevels, level + 1, matchRecordKey)) {
+                node.children.remove(levelName, child);
+            }
+        }
+        // prune empty node
+        return node.matchings.isEmpty() && node.children.isEmpty();
+    }
+
+    private void match(Node node, List<String> topicLevels, int level, boolean matchWildcard, List<Matching> matched) {
+        if (level == topicLevels.size()) {
+            matched.addAll(node.matchings.values());
+            return;
+        }
+        if (matchWildcard) {
+            Node multi = node.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                matched.addAll(multi.matchings.values());
+            }
+            Node single = node.children.get(SINGLE_LEVEL);
+            if (single != null) {
+                matchChild(single, SINGLE_LEVEL, topicLevels, level, matched);
+            }
+        }
+        String levelName = topicLevels.get(level);
+        if (!levelName.equals(SINGLE_LEVEL) && !levelName.equals(MULTI_LEVEL)) {
+            Node child = node.children.get(levelName);
+            if (child != null) {
+                matchChild(child, levelName, topicLevels, level, matched);
+            }
+        }
+    }
+
+    private void matchChild(Node child, String childLevelName, List<String> topicLevels, int level,
+                            List<Matching> matched) {
+        if (level + 1 == topicLevels.size() && !childLevelName.isEmpty()) {
+            // "#" also matches parent level if current level name is not empty string
+            Node multi = child.children.get(MULTI_LEVEL);
+            if (multi != null) {
+                matched.addAll(multi.matchings.values());
+            }
+        }
+        match(child, topicLevels, level + 1, true, matched);
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new ConcurrentHashMap<>();
+        final Map<ByteString, Matching> matchings = new ConcurrentHashMap<>();
+    }
+}
@@ -14,10 +14,12 @@
 package com.baidu.bifromq.dist.worker;
 
 import static com.baidu.bifromq.basekv.Constants.FULL_RANGE;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_MAX_CACHED_TOPICS_TO_SCAN;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.DIST_TOPIC_MATCH_EXPIRY;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
+import static java.util.Collections.singletonList;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,22 +27,24 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
-import com.baidu.bifromq.basekv.store.api.IKVIterator;
-import com.baidu.bifromq.basekv.store.api.IKVRangeReader;
-import com.baidu.bifromq.basekv.store.api.IKVReader;
 import com.baidu.bifromq.basekv.utils.KVRangeIdUtil;
 import com.baidu.bifromq.dist.entity.EntityUtil;
+import com.baidu.bifromq.dist.entity.Matching;
 import com.baidu.bifromq.dist.entity.NormalMatching;
 import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
 import com.baidu.bifromq.dist.rpc.proto.MatchRecord;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Supplier;
 import lombok.SneakyThrows;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -51,13 +55,7 @@ import org.testng.annotations.Test;
 public class SubscriptionCacheTest {
     private KVRangeId id = KVRangeIdUtil.generate();
     @Mock
-    private IKVRangeReader rangeReader;
-    @Mock
-    private IKVReader kvReader;
-    @Mock
-    private IKVIterator kvIterator;
-    @Mock
-    private Supplier<IKVRangeReader> rangeReaderProvider;
+    private SubscriptionIndex subscriptionIndex;
 
     @Mock
     private ILoadEstimator loadTracker;
@@ -69,14 +67,12 @@ public class SubscriptionCacheTest {
         closeable = MockitoAnnotations.openMocks(this);
         id = KVRangeIdUtil.generate();
         System.setProperty(DIST_TOPIC_MATCH_EXPIRY.propKey, "1");
-        when(kvReader.iterator()).thenReturn(kvIterator);
-        when(rangeReader.kvReader()).thenReturn(kvReader);
-        when(rangeReaderProvider.get()).thenReturn(rangeReader);
         matchExecutor = MoreExecutors.newDirectExecutorService();
     }
 
     @AfterMethod
     public void teardown() throws Exception {
+        System.clearProperty(DIST_MAX_CACHED_TOPICS_TO_SCAN.propKey);
         MoreExecutors.shutdownAndAwaitTermination(matchExecutor, 5, TimeUnit.SECONDS);
         closeable.close();
     }
@@ -89,20 +85,17 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
+        when(subscriptionIndex.match(scopedTopic.tenantId, scopedTopic.topic)).thenReturn(emptyList());
 
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
-//        assertTrue(routes.get(scopedTopic).isEmpty());
 
         // cacheHit
         routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
-//        assertTrue(routes.get(scopedTopic).isEmpty());
 
-        verify(rangeReader).refresh();
+        verify(subscriptionIndex, times(1)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -115,10 +108,9 @@ public class SubscriptionCacheTest {
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
 
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
+        when(subscriptionIndex.match(scopedTopic.tenantId, scopedTopic.topic)).thenReturn(emptyList());
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
         Thread.sleep(500);
         cache.get(scopedTopic, singleton(sender)).join();
@@ -126,8 +118,7 @@ public class SubscriptionCacheTest {
         routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
 
-        verify(kvIterator, times(1)).seek(any());
-        verify(rangeReader, times(1)).refresh();
+        verify(subscriptionIndex, times(1)).match(scopedTopic.tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -140,24 +131,20 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        when(kvIterator.isValid()).thenReturn(false);
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic)).thenReturn(emptyList());
 
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
         Thread.sleep(1100);
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
 
         routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic.topic);
     }
 
-    @SneakyThrows
-    @Test(priority = 0)
-    public void cacheTouchAndMatch() {
+    @Test
+    public void cacheInvalidateByTopicFilterAndMatch() {
         String tenantId = "testTenant";
         ScopedTopic scopedTopic = ScopedTopic.builder()
             .tenantId(tenantId)
@@ -165,22 +152,106 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        when(kvIterator.isValid()).thenReturn(false);
-        Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
-        Thread.sleep(500);
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic)).thenReturn(emptyList());
         cache.get(scopedTopic, singleton(sender)).join();
-        cache.touch(tenantId);
-        Thread.sleep(600);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
+        // unrelated topic filters keep the cached result
+        cache.invalidate(tenantId, singleton("/other/#"));
+        cache.invalidate(tenantId, singleton("+/test"));
+        cache.invalidate("otherTenant", singleton("#"));
+        cache.get(scopedTopic, singleton(sender)).join();
+        verify(subscriptionIndex, times(1)).match(tenantId, scopedTopic.topic);
 
-        routes = cache.get(scopedTopic, singleton(sender)).join();
+        cache.invalidate(tenantId, singleton("/test/#"));
+        cache.get(scopedTopic, singleton(sender)).join();
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic.topic);
+
+        cache.invalidate(tenantId, singleton("+/+/user"));
+        Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        verify(subscriptionIndex, times(3)).match(tenantId, scopedTopic.topic);
+
+        // several topic filters are checked in one pass
+        cache.get(scopedTopic, singleton(sender)).join();
+        cache.invalidate(tenantId, Set.of("/other/#", "/test/+"));
+        cache.get(scopedTopic, singleton(sender)).join();
+        verify(subscriptionIndex, times(4)).match(tenantId, scopedTopic.topic);
+    }
+
+    @SneakyThrows
+    @Test
+    public void cacheInvalidateAllWhenTooManyCachedTopics() {
+        System.setProperty(DIST_MAX_CACHED_TOPICS_TO_SCAN.propKey, "1");
+        String tenantId = "testTenant";
+        ScopedTopic scopedTopic1 = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/user")
+            .range(FULL_RANGE)
+            .build();
+        ScopedTopic scopedTopic2 = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/other/user")
+            .range(FULL_RANGE)
+            .build();
+        ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
+
+        when(subscriptionIndex.match(tenantId, scopedTopic1.topic)).thenReturn(emptyList());
+        when(subscriptionIndex.match(tenantId, scopedTopic2.topic)).thenReturn(emptyList());
+        cache.get(scopedTopic1, singleton(sender)).join();
+        cache.get(scopedTopic2, singleton(sender)).join();
+
+        // over the scan budget, unrelated cached topics are dropped as well
+        cache.invalidate(tenantId, singleton("/test/#"));
+        cache.get(scopedTopic1, singleton(sender)).join();
+        cache.get(scopedTopic2, singleton(sender)).join();
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic1.topic);
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic2.topic);
+    }
+
+    @SneakyThrows
+    @Test
+    public void bypassCacheWhileInvalidating() {
+        String tenantId = "testTenant";
+        ScopedTopic scopedTopic = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/user")
+            .range(FULL_RANGE)
+            .build();
+        ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, tasks::add, loadTracker);
+
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic)).thenReturn(emptyList());
+        CompletableFuture<Map<NormalMatching, Set<ClientInfo>>> routesFuture =
+            cache.get(scopedTopic, singleton(sender));
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        routesFuture.join();
+        verify(subscriptionIndex, times(1)).match(tenantId, scopedTopic.topic);
+
+        cache.invalidate(tenantId, singleton("/test/#"));
+        List<Runnable> invalidation = new ArrayList<>(tasks);
+        tasks.clear();
+
+        // the cached result is not used while invalidation is pending
+        routesFuture = cache.get(scopedTopic, singleton(sender));
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertTrue(routesFuture.join().isEmpty());
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic.topic);
+
+        invalidation.forEach(Runnable::run);
+        routesFuture = cache.get(scopedTopic, singleton(sender));
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        routesFuture.join();
+        verify(subscriptionIndex, times(3)).match(tenantId, scopedTopic.topic);
     }
 
     @SneakyThrows
@@ -193,9 +264,9 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        when(kvIterator.isValid()).thenReturn(false);
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic)).thenReturn(emptyList());
 
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
 
@@ -204,13 +275,27 @@ public class SubscriptionCacheTest {
         cache.invalidate(scopedTopic); // invalidate
         Thread.sleep(600);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(false);
-
         routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 0);
-        verify(kvIterator, times(2)).seek(any());
-        verify(kvIterator, times(2)).seek(scopedTopic.matchRecordRange.getStartKey());
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic.topic);
+    }
+
+    @Test
+    public void cacheResetAndMatch() {
+        String tenantId = "testTenant";
+        ScopedTopic scopedTopic = ScopedTopic.builder()
+            .tenantId(tenantId)
+            .topic("/test/user")
+            .range(FULL_RANGE)
+            .build();
+        ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
+
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic)).thenReturn(emptyList());
+        cache.get(scopedTopic, singleton(sender)).join();
+        cache.reset();
+        cache.get(scopedTopic, singleton(sender)).join();
+        verify(subscriptionIndex, times(2)).match(tenantId, scopedTopic.topic);
     }
 
     @Test
@@ -221,18 +306,13 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(true, false);
         String qInboxId = EntityUtil.toQualifiedInboxId(0, "inbox1", "deliverer1");
         String sharedTopicFilter = "$oshare/group/" + scopedTopic.topic;
-        when(kvIterator.key())
-            .thenReturn(EntityUtil.matchRecordKey(scopedTopic.tenantId, sharedTopicFilter, qInboxId));
-        when(kvIterator.value())
-            .thenReturn(MatchRecord.newBuilder()
-                .setGroup(GroupMatchRecord.newBuilder().putEntry(qInboxId, QoS.AT_MOST_ONCE).build())
-                .build().toByteString());
+        when(subscriptionIndex.match(scopedTopic.tenantId, scopedTopic.topic))
+            .thenReturn(singletonList(groupMatching(scopedTopic.tenantId, sharedTopicFilter, qInboxId,
+                QoS.AT_MOST_ONCE)));
 
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
         assertEquals(routes.size(), 1);
@@ -248,7 +328,6 @@ public class SubscriptionCacheTest {
         }
     }
 
-    @SneakyThrows
     @Test
     public void groupMatchRefresh() {
         String tenantId = "testTraffic";
@@ -258,27 +337,17 @@ public class SubscriptionCacheTest {
             .range(FULL_RANGE)
             .build();
         ClientInfo sender = ClientInfo.newBuilder().setTenantId("testTraffic").build();
-        SubscriptionCache cache = new SubscriptionCache(id, rangeReaderProvider, matchExecutor, loadTracker);
+        SubscriptionCache cache = new SubscriptionCache(id, subscriptionIndex, matchExecutor, loadTracker);
 
-        doNothing().when(kvIterator).seek(scopedTopic.matchRecordRange.getStartKey());
-        when(kvIterator.isValid()).thenReturn(true, false, true, false);
         String qInboxId1 = EntityUtil.toQualifiedInboxId(0, "inbox1", "deliverer1");
         String qInboxId2 = EntityUtil.toQualifiedInboxId(0, "inbox2", "deliverer1");
         String sharedTopicFilter = "$oshare/group/" + scopedTopic.topic;
-        when(kvIterator.key())
-            .thenReturn(EntityUtil.matchRecordKey(scopedTopic.tenantId, sharedTopicFilter, qInboxId1));
-        when(kvIterator.value())
-            .thenReturn(
-                MatchRecord.newBuilder()
-                    .setGroup(GroupMatchRecord.newBuilder().putEntry(qInboxId1, QoS.AT_MOST_ONCE).build())
-                    .build().toByteString(),
-                MatchRecord.newBuilder()
-                    .setGroup(GroupMatchRecord.newBuilder().putEntry(qInboxId2, QoS.AT_LEAST_ONCE).build())
-                    .build().toByteString());
+        when(subscriptionIndex.match(tenantId, scopedTopic.topic))
+            .thenReturn(singletonList(groupMatching(tenantId, sharedTopicFilter, qInboxId1, QoS.AT_MOST_ONCE)),
+                singletonList(groupMatching(tenantId, sharedTopicFilter, qInboxId2, QoS.AT_LEAST_ONCE)));
 
         Map<NormalMatching, Set<ClientInfo>> routes = cache.get(scopedTopic, singleton(sender)).join();
-        cache.touch(tenantId);
-        Thread.sleep(1100);
+        cache.invalidate(scopedTopic);
         routes = cache.get(scopedTopic, singleton(sender)).join();
 
         assertEquals(routes.size(), 1);
@@ -293,4 +362,11 @@ public class SubscriptionCacheTest {
             assertTrue(entry.getValue().contains(sender));
         }
     }
+
+    private Matching groupMatching(String tenantId, String sharedTopicFilter, String qInboxId, QoS subQoS) {
+        return parseMatchRecord(EntityUtil.matchRecordKey(tenantId, sharedTopicFilter, qInboxId),
+            MatchRecord.newBuilder()
+                .setGroup(GroupMatchRecord.newBuilder().putEntry(qInboxId, subQoS).build())
+                .build().toByteString());
+    }
 }
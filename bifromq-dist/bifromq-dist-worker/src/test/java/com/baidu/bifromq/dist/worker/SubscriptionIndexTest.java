@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker;
+
+import static com.baidu.bifromq.dist.entity.EntityUtil.matchRecordKey;
+import static com.baidu.bifromq.dist.entity.EntityUtil.parseMatchRecord;
+import static com.baidu.bifromq.dist.entity.EntityUtil.subInfoKey;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.dist.entity.EntityUtil;
+import com.baidu.bifromq.dist.entity.GroupMatching;
+import com.baidu.bifromq.dist.entity.Matching;
+import com.baidu.bifromq.dist.rpc.proto.GroupMatchRecord;
+import com.baidu.bifromq.dist.rpc.proto.MatchRecord;
+import com.baidu.bifromq.type.QoS;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SubscriptionIndexTest {
+    private static final String TENANT_ID = "testTenant";
+    private static final String INBOX = EntityUtil.toQualifiedInboxId(0, "inbox1", "deliverer1");
+    @Mock
+    private IKVReader kvReader;
+    @Mock
+    private IKVIterator kvIterator;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(kvReader.iterator()).thenReturn(kvIterator);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void matchExactAndWildcard() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.add(normal(TENANT_ID, "a/b/c"));
+        index.add(normal(TENANT_ID, "a/+/c"));
+        index.add(normal(TENANT_ID, "a/#"));
+        index.add(normal(TENANT_ID, "+/b/#"));
+        index.add(normal(TENANT_ID, "#"));
+        index.add(normal(TENANT_ID, "a/b"));
+        index.add(normal(TENANT_ID, "a/+/d"));
+
+        assertEquals(topicFilters(index.match(TENANT_ID, "a/b/c")), Set.of("a/b/c", "a/+/c", "a/#", "+/b/#", "#"));
+        assertEquals(topicFilters(index.match(TENANT_ID, "a/b")), Set.of("a/b", "a/#", "+/b/#", "#"));
+        assertEquals(topicFilters(index.match(TENANT_ID, "a")), Set.of("a/#", "#"));
+        assertEquals(topicFilters(index.match(TENANT_ID, "x/y")), Set.of("#"));
+        assertTrue(index.match("otherTenant", "a/b/c").isEmpty());
+    }
+
+    @Test
+    public void matchEmptyLevel() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.add(normal(TENANT_ID, "/"));
+        index.add(normal(TENANT_ID, "+/+"));
+        index.add(normal(TENANT_ID, "/#"));
+        index.add(normal(TENANT_ID, "+"));
+
+        assertEquals(topicFilters(index.match(TENANT_ID, "/")), Set.of("/", "+/+", "/#"));
+        assertEquals(topicFilters(index.match(TENANT_ID, "a")), Set.of("+"));
+    }
+
+    @Test
+    public void sysTopicNotMatchedByRootWildcard() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.add(normal(TENANT_ID, "#"));
+        index.add(normal(TENANT_ID, "+/status"));
+        index.add(normal(TENANT_ID, "$SYS/#"));
+        index.add(normal(TENANT_ID, "$SYS/+"));
+
+        assertEquals(topicFilters(index.match(TENANT_ID, "$SYS/status")), Set.of("$SYS/#", "$SYS/+"));
+    }
+
+    @Test
+    public void groupMatching() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.add(group(TENANT_ID, "$share/g1/a/+", INBOX));
+        index.add(group(TENANT_ID, "$oshare/g2/a/b", INBOX));
+
+        List<Matching> matched = index.match(TENANT_ID, "a/b");
+        assertEquals(matched.size(), 2);
+        assertTrue(matched.stream().allMatch(m -> m instanceof GroupMatching));
+    }
+
+    @Test
+    public void replaceAndRemove() {
+        SubscriptionIndex index = new SubscriptionIndex();
+        Matching group1 = group(TENANT_ID, "$share/g1/a/+", INBOX);
+        index.add(group1);
+        String inbox2 = EntityUtil.toQualifiedInboxId(0, "inbox2", "deliverer1");
+        index.add(parseMatchRecord(group1.key, MatchRecord.newBuilder()
+            .setGroup(GroupMatchRecord.newBuilder()
+                .putEntry(INBOX, QoS.AT_MOST_ONCE)
+                .putEntry(inbox2, QoS.AT_LEAST_ONCE)
+                .build())
+            .build().toByteString()));
+
+        List<Matching> matched = index.match(TENANT_ID, "a/b");
+        assertEquals(matched.size(), 1);
+        assertEquals(((GroupMatching) matched.get(0)).inboxList.size(), 2);
+
+        Matching normal = normal(TENANT_ID, "a/b");
+        index.add(normal);
+        index.remove(group1.key);
+        assertEquals(topicFilters(index.match(TENANT_ID, "a/b")), Set.of("a/b"));
+        index.remove(normal.key);
+        assertTrue(index.match(TENANT_ID, "a/b").isEmpty());
+        // remove non-exist key
+        index.remove(normal.key);
+        assertTrue(index.match(TENANT_ID, "a/b").isEmpty());
+    }
+
+    @Test
+    public void reset() {
+        Matching matching1 = normal(TENANT_ID, "a/b");
+        Matching matching2 = normal(TENANT_ID, "a/+");
+        ByteString normalValue = MatchRecord.newBuilder().setNormal(QoS.AT_MOST_ONCE).build().toByteString();
+        when(kvIterator.isValid()).thenReturn(true, true, true, false);
+        when(kvIterator.key()).thenReturn(subInfoKey(TENANT_ID, INBOX), matching1.key, matching2.key);
+        when(kvIterator.value()).thenReturn(normalValue);
+
+        SubscriptionIndex index = new SubscriptionIndex();
+        index.add(normal(TENANT_ID, "x/y"));
+        index.reset(kvReader);
+
+        assertEquals(topicFilters(index.match(TENANT_ID, "a/b")), Set.of("a/b", "a/+"));
+        assertTrue(index.match(TENANT_ID, "x/y").isEmpty());
+    }
+
+    private Set<String> topicFilters(List<Matching> matchings) {
+        return matchings.stream().map(Matching::originalTopicFilter).collect(Collectors.toSet());
+    }
+
+    private Matching normal(String tenantId, String topicFilter) {
+        return parseMatchRecord(matchRecordKey(tenantId, topicFilter, INBOX),
+            MatchRecord.newBuilder().setNormal(QoS.AT_MOST_ONCE).build().toByteString());
+    }
+
+    private Matching group(String tenantId, String sharedTopicFilter, String qInboxId) {
+        return parseMatchRecord(matchRecordKey(tenantId, sharedTopicFilter, qInboxId),
+            MatchRecord.newBuilder()
+                .setGroup(GroupMatchRecord.newBuilder().putEntry(qInboxId, QoS.AT_MOST_ONCE).build())
+                .build().toByteString());
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.dist.worker.benchmark;
+
+import static com.baidu.bifromq.dist.util.TopicUtil.ORDERED_SHARE;
+import static com.baidu.bifromq.dist.util.TopicUtil.UNORDERED_SHARE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
+
+import com.baidu.bifromq.basecluster.AgentHostOptions;
+import com.baidu.bifromq.basecluster.IAgentHost;
+import com.baidu.bifromq.basecrdt.service.CRDTServiceOptions;
+import com.baidu.bifromq.basecrdt.service.ICRDTService;
+import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
+import com.baidu.bifromq.basekv.localengine.InMemoryKVEngineConfigurator;
+import com.baidu.bifromq.basekv.store.option.KVRangeStoreOptions;
+import com.baidu.bifromq.basekv.store.proto.KVRangeROReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRORequest;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRWReply;
+import com.baidu.bifromq.basekv.store.proto.KVRangeRWRequest;
+import com.baidu.bifromq.basekv.store.proto.ReplyCode;
+import com.baidu.bifromq.dist.client.IDistClient;
+import com.baidu.bifromq.dist.entity.EntityUtil;
+import com.baidu.bifromq.dist.rpc.proto.BatchDist;
+import com.baidu.bifromq.dist.rpc.proto.BatchDistReply;
+import com.baidu.bifromq.dist.rpc.proto.DistPack;
+import com.baidu.bifromq.dist.rpc.proto.DistServiceROCoProcInput;
+import com.baidu.bifromq.dist.rpc.proto.DistServiceROCoProcOutput;
+import com.baidu.bifromq.dist.rpc.proto.DistServiceRWCoProcInput;
+import com.baidu.bifromq.dist.rpc.proto.SubRequest;
+import com.baidu.bifromq.dist.rpc.proto.TopicFanout;
+import com.baidu.bifromq.dist.util.MessageUtil;
+import com.baidu.bifromq.dist.worker.IDistWorker;
+import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
+import com.baidu.bifromq.plugin.settingprovider.ISettingProvider;
+import com.baidu.bifromq.plugin.settingprovider.Setting;
+import com.baidu.bifromq.plugin.subbroker.DeliveryPack;
+import com.baidu.bifromq.plugin.subbroker.DeliveryResult;
+import com.baidu.bifromq.plugin.subbroker.IDeliverer;
+import com.baidu.bifromq.plugin.subbroker.ISubBroker;
+import com.baidu.bifromq.plugin.subbroker.ISubBrokerManager;
+import com.baidu.bifromq.sysprops.BifroMQSysProp;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.QoS;
+import com.baidu.bifromq.type.SubInfo;
+import com.baidu.bifromq.type.TopicMessagePack;
+import com.google.protobuf.ByteString;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measure the fanout path of dist worker end-to-end: BatchDist coproc query, subscription cache lookup, fanout
+ * executors and delivery scheduler, until the stub sub broker received every matched route. The worker runs on
+ * in-memory kv engine in proc.
+ * <p>
+ * Every published topic is matched by 'fanout' routes evenly mixed by exact, wildcard, shared and ordered-shared
+ * subscriptions, each shared group has two members. Subscriptions are evenly spread among tenants. When cacheHit is
+ * false, the route cache of the worker is limited to a single route so almost every dist goes through the index.
+ * <p>
+ * Run main to get the throughput along with allocation rate reported by GC profiler.
+ */
+@Slf4j
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistWorkerFanoutBenchmark {
+    private static final int MQTT_BROKER = 0;
+    private static final int DELIVERERS = 8;
+    private static final long DELIVERY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final ByteString PAYLOAD = ByteString.copyFromUtf8("0123456789abcdef");
+
+    @Param({"1000", "10000"})
+    private int subscriptionCount;
+
+    @Param({"1", "10", "100"})
+    private int fanout;
+
+    @Param({"3", "8"})
+    private int topicDepth;
+
+    @Param({"1", "10"})
+    private int tenantCount;
+
+    @Param({"true", "false"})
+    private boolean cacheHit;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong seqNo = new AtomicLong();
+    private final AtomicLong pubSeqNo = new AtomicLong();
+    private IAgentHost agentHost;
+    private ICRDTService crdtService;
+    private IDistClient distClient;
+    private IBaseKVStoreClient storeClient;
+    private IDistWorker distWorker;
+    private String[] tenantIds;
+    private String[] topics;
+    private TopicMessagePack[][] msgPacks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (!cacheHit) {
+            // each fork runs single param combination, so the property only affects current trial
+            System.setProperty(BifroMQSysProp.DIST_MAX_CACHED_SUBS_PER_TENANT.propKey, "1");
+        }
+        agentHost = IAgentHost.newInstance(AgentHostOptions.builder()
+            .addr("127.0.0.1")
+            .baseProbeInterval(Duration.ofSeconds(10))
+            .joinRetryInSec(5)
+            .joinTimeout(Duration.ofMinutes(5))
+            .build());
+        agentHost.start();
+        crdtService = ICRDTService.newInstance(CRDTServiceOptions.builder().build());
+        crdtService.start(agentHost);
+        distClient = IDistClient.inProcClientBuilder().build();
+
+        KVRangeStoreOptions kvRangeStoreOptions = new KVRangeStoreOptions();
+        kvRangeStoreOptions.setDataEngineConfigurator(new InMemoryKVEngineConfigurator());
+        kvRangeStoreOptions.setWalEngineConfigurator(new InMemoryKVEngineConfigurator());
+        storeClient = IBaseKVStoreClient
+            .inProcClientBuilder()
+            .clusterId(IDistWorker.CLUSTER_NAME)
+            .crdtService(crdtService)
+            .build();
+        ISettingProvider settingProvider = Setting::current;
+        IEventCollector eventCollector = event -> {
+        };
+        distWorker = IDistWorker
+            .inProcBuilder()
+            .agentHost(agentHost)
+            .crdtService(crdtService)
+            .settingProvider(settingProvider)
+            .eventCollector(eventCollector)
+            .distClient(distClient)
+            .storeClient(storeClient)
+            .kvRangeStoreOptions(kvRangeStoreOptions)
+            .subBrokerManager(new StubSubBrokerManager())
+            .build();
+        distWorker.start(true);
+        storeClient.join();
+
+        int topicsPerTenant = Math.max(1, subscriptionCount / tenantCount / fanout);
+        tenantIds = new String[tenantCount];
+        topics = new String[topicsPerTenant];
+        msgPacks = new TopicMessagePack[tenantCount][topicsPerTenant];
+        for (int k = 0; k < topicsPerTenant; k++) {
+            topics[k] = topic(k);
+        }
+        List<CompletableFuture<KVRangeRWReply>> subFutures = new ArrayList<>();
+        for (int t = 0; t < tenantCount; t++) {
+            tenantIds[t] = "tenant" + t;
+            for (int k = 0; k < topicsPerTenant; k++) {
+                msgPacks[t][k] = msgPack(tenantIds[t], topics[k]);
+                for (int i = 0; i < fanout; i++) {
+                    String inboxId = "inbox_" + k + "_" + i;
+                    switch (i % 4) {
+                        case 0:
+                            subFutures.add(sub(tenantIds[t], topics[k], inboxId, false));
+                            break;
+                        case 1:
+                            subFutures.add(sub(tenantIds[t], wildcard(k, i), inboxId, false));
+                            break;
+                        default:
+                            String topicFilter = (i % 4 == 2 ? UNORDERED_SHARE : ORDERED_SHARE)
+                                + "/g" + i + "/" + topics[k];
+                            subFutures.add(sub(tenantIds[t], topicFilter, inboxId + "_a", true));
+                            subFutures.add(sub(tenantIds[t], topicFilter, inboxId + "_b", true));
+                    }
+                    if (subFutures.size() >= 1000) {
+                        awaitSubs(subFutures);
+                    }
+                }
+            }
+        }
+        awaitSubs(subFutures);
+        log.info("Setup finished: subscriptions={}, fanout={}, topicDepth={}, tenants={}, cacheHit={}",
+            subscriptionCount, fanout, topicDepth, tenantCount, cacheHit);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.info("Finish testing, and tearing down");
+        System.clearProperty(BifroMQSysProp.DIST_MAX_CACHED_SUBS_PER_TENANT.propKey);
+        storeClient.stop();
+        distWorker.stop();
+        distClient.stop();
+        crdtService.stop();
+        agentHost.shutdown();
+    }
+
+    @Benchmark
+    public void fanout(Blackhole blackhole) {
+        long seq = pubSeqNo.getAndIncrement();
+        int tenantIdx = (int) (seq % tenantCount);
+        int topicIdx = (int) ((seq / tenantCount) % topics.length);
+        BatchDistReply reply = dist(tenantIds[tenantIdx], msgPacks[tenantIdx][topicIdx]);
+        int routes = 0;
+        for (TopicFanout topicFanout : reply.getResultMap().values()) {
+            for (int n : topicFanout.getFanoutMap().values()) {
+                routes += n;
+            }
+        }
+        // wait until all matched routes are delivered, so the measured throughput covers the async fanout stages
+        long target = expected.addAndGet(routes);
+        long deadline = System.nanoTime() + DELIVERY_TIMEOUT_NANOS;
+        while (delivered.get() < target) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Deliveries dropped: expected=" + target + ", delivered="
+                    + delivered.get());
+            }
+            LockSupport.parkNanos(1000);
+        }
+        blackhole.consume(reply);
+    }
+
+    private String topic(int k) {
+        StringBuilder topic = new StringBuilder("t").append(k);
+        for (int level = 1; level < topicDepth; level++) {
+            topic.append("/l").append(level);
+        }
+        return topic.toString();
+    }
+
+    private String wildcard(int k, int i) {
+        if ((i / 4) % 2 == 0) {
+            return "t" + k + "/#";
+        }
+        StringBuilder topicFilter = new StringBuilder("t").append(k).append("/+");
+        for (int level = 2; level < topicDepth; level++) {
+            topicFilter.append("/l").append(level);
+        }
+        return topicFilter.toString();
+    }
+
+    private TopicMessagePack msgPack(String tenantId, String topic) {
+        return TopicMessagePack.newBuilder()
+            .setTopic(topic)
+            .addMessage(TopicMessagePack.PublisherPack.newBuilder()
+                .setPublisher(ClientInfo.newBuilder()
+                    .setTenantId(tenantId)
+                    .setType(MQTT_TYPE_VALUE)
+                    .putMetadata(MQTT_USER_ID_KEY, "benchUser")
+                    .putMetadata(MQTT_CLIENT_ID_KEY, "benchClient")
+                    .build())
+                .addMessage(Message.newBuilder()
+                    .setMessageId(1)
+                    .setPubQoS(QoS.AT_MOST_ONCE)
+                    .setPayload(PAYLOAD)
+                    .setExpireTimestamp(Long.MAX_VALUE)
+                    .build())
+                .build())
+            .build();
+    }
+
+    @SneakyThrows
+    private CompletableFuture<KVRangeRWReply> sub(String tenantId, String topicFilter, String inboxId,
+                                                  boolean shared) {
+        long reqId = seqNo.incrementAndGet();
+        String delivererKey = "deliverer" + Math.floorMod(inboxId.hashCode(), DELIVERERS);
+        ByteString matchRecordKey = EntityUtil.matchRecordKey(tenantId, topicFilter,
+            EntityUtil.toQualifiedInboxId(MQTT_BROKER, inboxId, delivererKey));
+        KVRangeSetting s = storeClient.findByKey(matchRecordKey).get();
+        SubRequest request = SubRequest.newBuilder()
+            .setReqId(reqId)
+            .setTenantId(tenantId)
+            .setTopicFilter(topicFilter)
+            .setInboxId(inboxId)
+            .setBroker(MQTT_BROKER)
+            .setSubQoS(QoS.AT_MOST_ONCE)
+            .setDelivererKey(delivererKey)
+            .build();
+        DistServiceRWCoProcInput input = shared
+            ? MessageUtil.buildJoinMatchGroupRequest(request) : MessageUtil.buildInsertMatchRecordRequest(request);
+        return storeClient.execute(s.leader, KVRangeRWRequest.newBuilder()
+            .setReqId(reqId)
+            .setVer(s.ver)
+            .setKvRangeId(s.id)
+            .setRwCoProc(input.toByteString())
+            .build());
+    }
+
+    private void awaitSubs(List<CompletableFuture<KVRangeRWReply>> subFutures) {
+        for (CompletableFuture<KVRangeRWReply> subFuture : subFutures) {
+            if (subFuture.join().getCode() != ReplyCode.Ok) {
+                throw new IllegalStateException("Failed to prepare subscriptions");
+            }
+        }
+        subFutures.clear();
+    }
+
+    @SneakyThrows
+    private BatchDistReply dist(String tenantId, TopicMessagePack msgPack) {
+        long reqId = seqNo.incrementAndGet();
+        KVRangeSetting s = storeClient.findByKey(EntityUtil.matchRecordKeyPrefix(tenantId)).get();
+        DistServiceROCoProcInput input = MessageUtil.buildBatchDistRequest(BatchDist.newBuilder()
+            .setReqId(reqId)
+            .addDistPack(DistPack.newBuilder()
+                .setTenantId(tenantId)
+                .addMsgPack(msgPack)
+                .build())
+            .setOrderKey(tenantId)
+            .build());
+        KVRangeROReply reply = storeClient.query(s.leader, KVRangeRORequest.newBuilder()
+            .setReqId(reqId)
+            .setVer(s.ver)
+            .setKvRangeId(s.id)
+            .setRoCoProcInput(input.toByteString())
+            .build()).join();
+        return DistServiceROCoProcOutput.parseFrom(reply.getRoCoProcResult()).getDistReply();
+    }
+
+    private class StubSubBrokerManager implements ISubBrokerManager {
+        private final ISubBroker subBroker = new ISubBroker() {
+            @Override
+            public int id() {
+                return MQTT_BROKER;
+            }
+
+            @Override
+            public IDeliverer open(String delivererKey) {
+                return new IDeliverer() {
+                    @Override
+                    public CompletableFuture<Map<SubInfo, DeliveryResult>> deliver(Iterable<DeliveryPack> packs) {
+                        Map<SubInfo, DeliveryResult> results = new HashMap<>();
+                        for (DeliveryPack pack : packs) {
+                            for (SubInfo subInfo : pack.inboxes) {
+                                results.put(subInfo, DeliveryResult.OK);
+                                delivered.incrementAndGet();
+                            }
+                        }
+                        return CompletableFuture.completedFuture(results);
+                    }
+
+                    @Override
+                    public void close() {
+
+                    }
+                };
+            }
+
+            @Override
+            public CompletableFuture<Boolean> hasInbox(long reqId, String tenantId, String inboxId,
+                                                       String delivererKey) {
+                return CompletableFuture.completedFuture(true);
+            }
+
+            @Override
+            public void close() {
+
+            }
+        };
+
+        @Override
+        public ISubBroker get(int subBrokerId) {
+            return subBroker;
+        }
+
+        @Override
+        public void stop() {
+
+        }
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(DistWorkerFanoutBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opt).run();
+    }
+}
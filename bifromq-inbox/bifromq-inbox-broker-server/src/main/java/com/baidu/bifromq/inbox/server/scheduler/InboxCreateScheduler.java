@@ -16,6 +16,7 @@ package com.baidu.bifromq.inbox.server.scheduler;
 import static com.baidu.bifromq.inbox.util.KeyUtil.scopedInboxId;
 import static com.baidu.bifromq.plugin.settingprovider.Setting.OfflineExpireTimeSeconds;
 import static com.baidu.bifromq.plugin.settingprovider.Setting.OfflineOverflowDropOldest;
+import static com.baidu.bifromq.plugin.settingprovider.Setting.OfflineQoS0InMemory;
 import static com.baidu.bifromq.plugin.settingprovider.Setting.OfflineQueueSize;
 import static com.baidu.bifromq.sysprops.BifroMQSysProp.INBOX_MAX_INBOXES_PER_CREATE;
 
@@ -94,6 +95,7 @@ public class InboxCreateScheduler extends InboxUpdateScheduler<CreateInboxReques
                     .setExpireSeconds(settingProvider.provide(OfflineExpireTimeSeconds, tenantId))
                     .setLimit(settingProvider.provide(OfflineQueueSize, tenantId))
                     .setDropOldest(settingProvider.provide(OfflineOverflowDropOldest, tenantId))
+                    .setQos0InMemory(settingProvider.provide(OfflineQoS0InMemory, tenantId))
                     .setClient(client)
                     .build());
                 return onInboxCreated.computeIfAbsent(request, k -> new CompletableFuture<>());
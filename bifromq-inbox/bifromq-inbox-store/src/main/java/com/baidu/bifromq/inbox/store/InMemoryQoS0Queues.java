@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.inbox.store;
+
+import com.baidu.bifromq.basekv.localengine.RangeUtil;
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.inbox.storage.proto.Fetched;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessage;
+import com.google.protobuf.ByteString;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The QoS0 queues of the inboxes whose offline QoS0 messages are kept in memory only. The queues are populated after
+ * the insert mutations are committed, so they are never written to the data engine and get lost whenever the range's
+ * data is reset or the store restarts. The memory usage is bounded by a byte budget shared by all ranges of the store,
+ * new messages are dropped once the budget is exhausted. Since the seqs are assigned by the replicated inbox metadata,
+ * the dropped messages leave gaps in the seq space of the queue.
+ *
+ * <p>The inserted messages are still carried by the raft log, only the data engine is spared. Every replica keeps its
+ * own queues because fetching could be served by any replica, so the budget is consumed per replica hosted in the
+ * store, and the overflow of a queue is reported by each replica.
+ */
+final class InMemoryQoS0Queues {
+    private final Map<ByteString, Queue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes;
+    private final long maxBytes;
+
+    InMemoryQoS0Queues(AtomicLong usedBytes, long maxBytes) {
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Insert messages into the queue of given inbox.
+     *
+     * @param scopedInboxId the inbox
+     * @param startSeq      the seq assigned to the first message
+     * @param messages      the messages to insert
+     * @param limit         the max number of messages allowed in the queue
+     * @param dropOldest    drop the oldest messages instead of the new ones when the queue is full
+     * @return the number of dropped messages
+     */
+    int insert(ByteString scopedInboxId, long startSeq, List<InboxMessage> messages, int limit, boolean dropOldest) {
+        Queue queue = queues.computeIfAbsent(scopedInboxId, k -> new Queue());
+        synchronized (queue) {
+            if (!queue.messages.isEmpty() && queue.messages.peekLast().seq >= startSeq) {
+                // the seq goes backwards, the inbox has been recreated
+                queue.clear();
+            }
+            int dropped = 0;
+            long seq = startSeq;
+            for (InboxMessage message : messages) {
+                long msgSeq = seq++;
+                if (queue.messages.size() >= limit) {
+                    if (!dropOldest) {
+                        dropped++;
+                        continue;
+                    }
+                    queue.poll();
+                    dropped++;
+                }
+                int size = message.getSerializedSize();
+                if (usedBytes.addAndGet(size) > maxBytes) {
+                    usedBytes.addAndGet(-size);
+                    dropped++;
+                    continue;
+                }
+                queue.messages.addLast(new Entry(msgSeq, message, size));
+            }
+            return dropped;
+        }
+    }
+
+    /**
+     * Fetch messages from the queue of given inbox.
+     *
+     * @param scopedInboxId the inbox
+     * @param fromSeq       fetch the messages whose seq is no less than
+     * @param maxFetch      the max number of messages to fetch
+     * @param fetched       the builder to collect fetched messages
+     * @return the number of fetched messages
+     */
+    int fetch(ByteString scopedInboxId, long fromSeq, int maxFetch, Fetched.Builder fetched) {
+        Queue queue = queues.get(scopedInboxId);
+        if (queue == null || maxFetch <= 0) {
+            return 0;
+        }
+        synchronized (queue) {
+            int count = 0;
+            Iterator<Entry> itr = queue.messages.iterator();
+            while (itr.hasNext() && count < maxFetch) {
+                Entry entry = itr.next();
+                if (entry.seq >= fromSeq) {
+                    fetched.addQos0Seq(entry.seq);
+                    fetched.addQos0Msg(entry.message);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    void commit(ByteString scopedInboxId, long upToSeq) {
+        Queue queue = queues.get(scopedInboxId);
+        if (queue == null) {
+            return;
+        }
+        synchronized (queue) {
+            while (!queue.messages.isEmpty() && queue.messages.peekFirst().seq <= upToSeq) {
+                queue.poll();
+            }
+        }
+    }
+
+    void remove(ByteString scopedInboxId) {
+        Queue queue = queues.remove(scopedInboxId);
+        if (queue != null) {
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Drop the queues of the inboxes out of given range.
+     *
+     * @param range the range
+     */
+    void retain(Range range) {
+        ByteString startKey = range.hasStartKey() ? range.getStartKey() : null;
+        ByteString endKey = range.hasEndKey() ? range.getEndKey() : null;
+        for (ByteString scopedInboxId : queues.keySet()) {
+            if (!RangeUtil.inRange(scopedInboxId, startKey, endKey)) {
+                remove(scopedInboxId);
+            }
+        }
+    }
+
+    void clear() {
+        queues.keySet().forEach(this::remove);
+    }
+
+    private record Entry(long seq, InboxMessage message, int size) {
+    }
+
+    private final class Queue {
+        private final ArrayDeque<Entry> messages = new ArrayDeque<>();
+
+        void poll() {
+            Entry entry = messages.pollFirst();
+            if (entry != null) {
+                usedBytes.addAndGet(-entry.size);
+            }
+        }
+
+        void clear() {
+            while (!messages.isEmpty()) {
+                poll();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.inbox.store;
+
+import com.baidu.bifromq.inbox.storage.proto.InboxMessage;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessageList;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encode and decode the InboxMessageList values stored under message keys. A value holds consecutive messages
+ * starting from the seq in its key, so splitting a batch into several values keeps the layout unchanged, and values
+ * written before chunking remain readable.
+ */
+final class InboxMessageListCodec {
+    interface MessageConsumer {
+        void accept(int index, InboxMessage message);
+    }
+
+    /**
+     * Split messages into lists whose serialized size doesn't exceed given max bytes, unless a list contains only one
+     * message.
+     *
+     * @param messages the messages to split
+     * @param maxBytes the max serialized size of each list
+     * @return the lists in order
+     */
+    static List<InboxMessageList> split(List<InboxMessage> messages, int maxBytes) {
+        List<InboxMessageList> chunks = new ArrayList<>(1);
+        InboxMessageList.Builder chunkBuilder = InboxMessageList.newBuilder();
+        int chunkBytes = 0;
+        for (InboxMessage message : messages) {
+            int msgBytes = CodedOutputStream.computeMessageSize(InboxMessageList.MESSAGE_FIELD_NUMBER, message);
+            if (chunkBuilder.getMessageCount() > 0 && chunkBytes + msgBytes > maxBytes) {
+                chunks.add(chunkBuilder.build());
+                chunkBuilder = InboxMessageList.newBuilder();
+                chunkBytes = 0;
+            }
+            chunkBuilder.addMessage(message);
+            chunkBytes += msgBytes;
+        }
+        if (chunkBuilder.getMessageCount() > 0) {
+            chunks.add(chunkBuilder.build());
+        }
+        return chunks;
+    }
+
+    /**
+     * Decode messages from the serialized InboxMessageList, the skipped messages are not parsed.
+     *
+     * @param listBytes the serialized InboxMessageList
+     * @param skip      the number of leading messages to skip
+     * @param limit     the max number of messages to decode
+     * @param consumer  the consumer of the decoded messages along with their index in the list
+     * @return the number of decoded messages
+     */
+    static int decode(ByteString listBytes, int skip, int limit, MessageConsumer consumer)
+        throws InvalidProtocolBufferException {
+        try {
+            CodedInputStream input = listBytes.newCodedInput();
+            input.enableAliasing(true);
+            int index = 0;
+            int decoded = 0;
+            while (decoded < limit) {
+                int tag = input.readTag();
+                if (tag == 0) {
+                    break;
+                }
+                if (WireFormat.getTagFieldNumber(tag) != InboxMessageList.MESSAGE_FIELD_NUMBER
+                    || WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    input.skipField(tag);
+                    continue;
+                }
+                if (index < skip) {
+                    input.skipField(tag);
+                } else {
+                    consumer.accept(index,
+                        input.readMessage(InboxMessage.parser(), ExtensionRegistryLite.getEmptyRegistry()));
+                    decoded++;
+                }
+                index++;
+            }
+            return decoded;
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+    }
+}
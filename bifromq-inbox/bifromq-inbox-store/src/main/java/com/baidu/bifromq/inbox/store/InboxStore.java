@@ -19,6 +19,8 @@ import com.baidu.bifromq.basecluster.IAgentHost;
 import com.baidu.bifromq.basecrdt.service.ICRDTService;
 import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basekv.KVRangeSetting;
+import com.baidu.bifromq.basekv.balance.KVRangeBalanceController;
+import com.baidu.bifromq.basekv.balance.option.KVRangeBalanceControllerOptions;
 import com.baidu.bifromq.basekv.client.IBaseKVStoreClient;
 import com.baidu.bifromq.basekv.server.IBaseKVStoreServer;
 import com.baidu.bifromq.basekv.store.api.IKVRangeCoProcFactory;
@@ -54,6 +56,7 @@ abstract class InboxStore implements IInboxStore {
     private final IBaseKVStoreClient storeClient;
     private final InboxStoreCoProcFactory coProcFactory;
     private final IBaseKVStoreServer storeServer;
+    private final KVRangeBalanceController rangeBalanceController;
     private final ScheduledExecutorService jobExecutor;
     private final boolean jobExecutorOwner;
     private final Duration statsInterval;
@@ -71,6 +74,7 @@ abstract class InboxStore implements IInboxStore {
                       Duration purgeDelay,
                       Clock clock,
                       KVRangeStoreOptions kvRangeStoreOptions,
+                      KVRangeBalanceControllerOptions balanceOptions,
                       Executor ioExecutor,
                       Executor queryExecutor,
                       Executor mutationExecutor,
@@ -90,6 +94,7 @@ abstract class InboxStore implements IInboxStore {
             mutationExecutor,
             tickTaskExecutor,
             bgTaskExecutor);
+        rangeBalanceController = new KVRangeBalanceController(storeClient, balanceOptions, bgTaskExecutor);
         jobExecutorOwner = bgTaskExecutor == null;
         if (jobExecutorOwner) {
             jobExecutor = ExecutorServiceMetrics
@@ -122,6 +127,7 @@ abstract class InboxStore implements IInboxStore {
             log.info("Starting inbox store");
             log.debug("Starting KVStore server: bootstrap={}", bootstrap);
             storeServer.start(bootstrap);
+            rangeBalanceController.start(storeServer.id());
             status.compareAndSet(Status.STARTING, Status.STARTED);
             scheduleGC();
             scheduleStats();
@@ -132,6 +138,7 @@ abstract class InboxStore implements IInboxStore {
     public void stop() {
         if (status.compareAndSet(Status.STARTED, Status.STOPPING)) {
             log.info("Shutting down inbox store");
+            rangeBalanceController.stop();
             log.debug("Stopping KVStore server");
             storeServer.stop();
             if (gcJob != null && !gcJob.isDone()) {
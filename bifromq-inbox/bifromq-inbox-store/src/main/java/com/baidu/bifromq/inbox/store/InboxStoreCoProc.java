@@ -14,6 +14,8 @@
 package com.baidu.bifromq.inbox.store;
 
 import static com.baidu.bifromq.basekv.localengine.RangeUtil.upperBound;
+import static com.baidu.bifromq.inbox.store.InboxMessageListCodec.decode;
+import static com.baidu.bifromq.inbox.store.InboxMessageListCodec.split;
 import static com.baidu.bifromq.inbox.util.KeyUtil.buildMsgKey;
 import static com.baidu.bifromq.inbox.util.KeyUtil.isInboxMetadataKey;
 import static com.baidu.bifromq.inbox.util.KeyUtil.isQoS0MessageKey;
@@ -30,6 +32,7 @@ import static com.baidu.bifromq.inbox.util.KeyUtil.qos2InboxIndex;
 import static com.baidu.bifromq.inbox.util.KeyUtil.qos2InboxMsgKey;
 import static com.baidu.bifromq.inbox.util.KeyUtil.qos2InboxPrefix;
 import static com.baidu.bifromq.plugin.eventcollector.ThreadLocalEventPool.getLocal;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.INBOX_STORE_MAX_MESSAGE_LIST_BYTES;
 
 import com.baidu.bifromq.basekv.proto.KVRangeId;
 import com.baidu.bifromq.basekv.proto.Range;
@@ -92,6 +95,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import lombok.SneakyThrows;
@@ -102,13 +106,17 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     private final IEventCollector eventCollector;
     private final Clock clock;
     private final Duration purgeDelay;
+    private final InMemoryQoS0Queues inMemoryQoS0Queues;
+    private final int maxMessageListBytes = INBOX_STORE_MAX_MESSAGE_LIST_BYTES.get();
 
     InboxStoreCoProc(KVRangeId id, Supplier<IKVRangeReader> rangeReaderProvider, IEventCollector eventCollector,
                      Clock clock,
-                     Duration purgeDelay) {
+                     Duration purgeDelay,
+                     InMemoryQoS0Queues inMemoryQoS0Queues) {
         this.eventCollector = eventCollector;
         this.clock = clock;
         this.purgeDelay = purgeDelay;
+        this.inMemoryQoS0Queues = inMemoryQoS0Queues;
     }
 
     @Override
@@ -137,30 +145,41 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
         InboxServiceRWCoProcInput coProcInput = InboxServiceRWCoProcInput.parseFrom(input);
         UpdateRequest request = coProcInput.getRequest();
         UpdateReply.Builder replyBuilder = UpdateReply.newBuilder().setReqId(request.getReqId());
+        // the changes to in-memory qos0 queues are deferred until the mutation is committed
+        List<Runnable> afterCommit = new ArrayList<>();
         switch (request.getTypeCase()) {
             case CREATEINBOX:
-                replyBuilder.setCreateInbox(createInbox(request.getCreateInbox(), reader, writer));
+                replyBuilder.setCreateInbox(createInbox(request.getCreateInbox(), reader, writer, afterCommit));
                 break;
             case INSERT:
-                replyBuilder.setInsert(batchInsert(request.getInsert(), reader, writer));
+                replyBuilder.setInsert(batchInsert(request.getInsert(), reader, writer, afterCommit));
                 break;
             case COMMIT:
-                replyBuilder.setCommit(batchCommit(request.getCommit(), reader, writer));
+                replyBuilder.setCommit(batchCommit(request.getCommit(), reader, writer, afterCommit));
                 break;
             case TOUCH:
-                replyBuilder.setTouch(touch(request.getTouch(), reader, writer));
+                replyBuilder.setTouch(touch(request.getTouch(), reader, writer, afterCommit));
                 break;
         }
         if (request.hasGc()) {
-            replyBuilder.setGc(gc(request.getGc(), reader, writer));
+            replyBuilder.setGc(gc(request.getGc(), reader, writer, afterCommit));
         }
         ByteString output =
             InboxServiceRWCoProcOutput.newBuilder().setReply(replyBuilder.build()).build().toByteString();
-        return () -> output;
+        return () -> {
+            afterCommit.forEach(Runnable::run);
+            return output;
+        };
+    }
+
+    @Override
+    public void reset(Range range) {
+        inMemoryQoS0Queues.retain(range);
     }
 
     @Override
     public void close() {
+        inMemoryQoS0Queues.clear();
     }
 
     @SneakyThrows
@@ -207,35 +226,21 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                 !request.hasQos0StartAfter()
                     ? metadata.getQos0LastFetchBeforeSeq()
                     : Math.max(request.getQos0StartAfter() + 1, metadata.getQos0LastFetchBeforeSeq());
-            if (startFetchFromSeq < metadata.getQos0NextSeq()) {
+            if (metadata.getQos0InMemory()) {
+                fetchCount -= inMemoryQoS0Queues.fetch(scopedInboxId, startFetchFromSeq, fetchCount, replyBuilder);
+            } else if (startFetchFromSeq < metadata.getQos0NextSeq()) {
                 itr.seekForPrev(qos0InboxMsgKey(scopedInboxId, startFetchFromSeq));
                 if (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId)) {
                     long startSeq = parseSeq(scopedInboxId, itr.key());
-                    InboxMessageList messageList = InboxMessageList.parseFrom(itr.value());
-                    for (int i = (int) (startFetchFromSeq - startSeq); i < messageList.getMessageCount(); i++) {
-                        if (fetchCount > 0) {
-                            replyBuilder.addQos0Seq(startSeq + i);
-                            replyBuilder.addQos0Msg(messageList.getMessage(i));
-                            fetchCount--;
-                        } else {
-                            break;
-                        }
-                    }
+                    // only decode the messages after startFetchFromSeq
+                    fetchCount -= decode(itr.value(), (int) (startFetchFromSeq - startSeq), fetchCount,
+                        (i, msg) -> replyBuilder.addQos0Seq(startSeq + i).addQos0Msg(msg));
                 }
                 itr.next();
-                outer:
                 while (fetchCount > 0 && itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId)) {
                     long startSeq = parseSeq(scopedInboxId, itr.key());
-                    InboxMessageList messageList = InboxMessageList.parseFrom(itr.value());
-                    for (int i = 0; i < messageList.getMessageCount(); i++) {
-                        if (fetchCount > 0) {
-                            replyBuilder.addQos0Seq(startSeq + i);
-                            replyBuilder.addQos0Msg(messageList.getMessage(i));
-                            fetchCount--;
-                        } else {
-                            break outer;
-                        }
-                    }
+                    fetchCount -= decode(itr.value(), 0, fetchCount,
+                        (i, msg) -> replyBuilder.addQos0Seq(startSeq + i).addQos0Msg(msg));
                     itr.next();
                 }
             }
@@ -248,31 +253,15 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                 itr.seekForPrev(qos1InboxMsgKey(scopedInboxId, startFetchFromSeq));
                 if (itr.isValid() && isQoS1MessageKey(itr.key(), scopedInboxId)) {
                     long startSeq = parseSeq(scopedInboxId, itr.key());
-                    InboxMessageList messageList = InboxMessageList.parseFrom(itr.value());
-                    for (int i = (int) (startFetchFromSeq - startSeq); i < messageList.getMessageCount(); i++) {
-                        if (fetchCount > 0) {
-                            replyBuilder.addQos1Seq(startSeq + i);
-                            replyBuilder.addQos1Msg(messageList.getMessage(i));
-                            fetchCount--;
-                        } else {
-                            break;
-                        }
-                    }
+                    // only decode the messages after startFetchFromSeq
+                    fetchCount -= decode(itr.value(), (int) (startFetchFromSeq - startSeq), fetchCount,
+                        (i, msg) -> replyBuilder.addQos1Seq(startSeq + i).addQos1Msg(msg));
                 }
                 itr.next();
-                outer:
                 while (fetchCount > 0 && itr.isValid() && isQoS1MessageKey(itr.key(), scopedInboxId)) {
                     long startSeq = parseSeq(scopedInboxId, itr.key());
-                    InboxMessageList messageList = InboxMessageList.parseFrom(itr.value());
-                    for (int i = 0; i < messageList.getMessageCount(); i++) {
-                        if (fetchCount > 0) {
-                            replyBuilder.addQos1Seq(startSeq + i);
-                            replyBuilder.addQos1Msg(messageList.getMessage(i));
-                            fetchCount--;
-                        } else {
-                            break outer;
-                        }
-                    }
+                    fetchCount -= decode(itr.value(), 0, fetchCount,
+                        (i, msg) -> replyBuilder.addQos1Seq(startSeq + i).addQos1Msg(msg));
                     itr.next();
                 }
             }
@@ -299,7 +288,8 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     }
 
     @SneakyThrows
-    private CreateReply createInbox(CreateRequest request, IKVReader reader, IKVWriter writeClient) {
+    private CreateReply createInbox(CreateRequest request, IKVReader reader, IKVWriter writeClient,
+                                    List<Runnable> afterCommit) {
         for (String scopedInboxIdUtf8 : request.getInboxesMap().keySet()) {
             ByteString scopedInboxId = ByteString.copyFromUtf8(scopedInboxIdUtf8);
             CreateParams inboxParams = request.getInboxesMap().get(scopedInboxIdUtf8);
@@ -308,7 +298,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                 InboxMetadata metadata = InboxMetadata.parseFrom(value.get());
                 if (hasExpired(metadata)) {
                     // clear all message belong to previous inbox
-                    clearInbox(scopedInboxId, metadata, reader.iterator(), writeClient);
+                    clearInbox(scopedInboxId, metadata, reader.iterator(), writeClient, afterCommit);
                     writeClient.put(
                         scopedInboxId,
                         InboxMetadata.newBuilder()
@@ -316,6 +306,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                             .setLimit(inboxParams.getLimit())
                             .setLastFetchTime(clock.millis())
                             .setDropOldest(inboxParams.getDropOldest())
+                            .setQos0InMemory(inboxParams.getQos0InMemory())
                             .setQos0NextSeq(0)
                             .setQos1NextSeq(0)
                             .setQos2NextSeq(0)
@@ -331,6 +322,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                         .setLimit(inboxParams.getLimit())
                         .setLastFetchTime(clock.millis())
                         .setDropOldest(inboxParams.getDropOldest())
+                        .setQos0InMemory(inboxParams.getQos0InMemory())
                         .setQos0NextSeq(0)
                         .setQos1NextSeq(0)
                         .setQos2NextSeq(0)
@@ -343,8 +335,11 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     }
 
 
-    private void clearInbox(ByteString scopedInboxId, InboxMetadata metadata, IKVIterator itr, IKVWriter writeClient) {
-        if (metadata.getQos0NextSeq() > 0) {
+    private void clearInbox(ByteString scopedInboxId, InboxMetadata metadata, IKVIterator itr, IKVWriter writeClient,
+                            List<Runnable> afterCommit) {
+        if (metadata.getQos0InMemory()) {
+            afterCommit.add(() -> inMemoryQoS0Queues.remove(scopedInboxId));
+        } else if (metadata.getQos0NextSeq() > 0) {
             // find lowest seq of qos0 message
             itr.seek(qos0InboxPrefix(scopedInboxId));
             if (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId)) {
@@ -374,7 +369,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     }
 
     @SneakyThrows
-    private GCReply gc(GCRequest request, IKVReader reader, IKVWriter writeClient) {
+    private GCReply gc(GCRequest request, IKVReader reader, IKVWriter writeClient, List<Runnable> afterCommit) {
         long start = System.nanoTime();
         long yieldThreshold = TimeUnit.NANOSECONDS.convert(100, TimeUnit.MILLISECONDS);
         IKVIterator itr = reader.iterator();
@@ -383,7 +378,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
             if (isInboxMetadataKey(itr.key())) {
                 InboxMetadata metadata = InboxMetadata.parseFrom(itr.value());
                 if (isGcable(metadata)) {
-                    clearInbox(scopedInboxId, metadata, itr, writeClient);
+                    clearInbox(scopedInboxId, metadata, itr, writeClient, afterCommit);
                 }
             }
             itr.seek(upperBound(scopedInboxId));
@@ -392,7 +387,8 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     }
 
     @SneakyThrows
-    private InboxInsertReply batchInsert(InboxInsertRequest request, IKVReader reader, IKVWriter writer) {
+    private InboxInsertReply batchInsert(InboxInsertRequest request, IKVReader reader, IKVWriter writer,
+                                         List<Runnable> afterCommit) {
         IKVIterator itr = reader.iterator();
 
         Map<SubInfo, InboxInsertResult.Result> results = new LinkedHashMap<>();
@@ -418,7 +414,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                 subMsgPacks.forEach(pack -> results.put(pack.getSubInfo(), InboxInsertResult.Result.NO_INBOX));
                 continue;
             }
-            insertInbox(scopedInboxId, subMsgPacks, metadata, itr, reader, writer);
+            insertInbox(scopedInboxId, subMsgPacks, metadata, itr, reader, writer, afterCommit);
             subMsgPacks.forEach(pack -> results.put(pack.getSubInfo(), InboxInsertResult.Result.OK));
         }
 
@@ -434,7 +430,8 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                              InboxMetadata metadata,
                              IKVIterator itr,
                              IKVReader reader,
-                             IKVWriter writer) {
+                             IKVWriter writer,
+                             List<Runnable> afterCommit) {
         List<InboxMessage> qos0MsgList = new ArrayList<>();
         List<InboxMessage> qos1MsgList = new ArrayList<>();
         List<InboxMessage> qos2MsgList = new ArrayList<>();
@@ -472,7 +469,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
             }
         }
         if (!qos0MsgList.isEmpty()) {
-            metadata = insertQoS0Inbox(scopedInboxId, metadata, qos0MsgList, itr, writer);
+            metadata = insertQoS0Inbox(scopedInboxId, metadata, qos0MsgList, itr, writer, afterCommit);
         }
         if (!qos1MsgList.isEmpty()) {
             metadata = insertQoS1Inbox(scopedInboxId, metadata, qos1MsgList, itr, writer);
@@ -487,7 +484,8 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     private InboxInsertResult.Result insertInbox(MessagePack msgPack,
                                                  IKVIterator itr,
                                                  IKVReader reader,
-                                                 IKVWriter writer) {
+                                                 IKVWriter writer,
+                                                 List<Runnable> afterCommit) {
         SubInfo subInfo = msgPack.getSubInfo();
         String topicFilter = subInfo.getTopicFilter();
         ByteString scopedInboxId = KeyUtil.scopedInboxId(subInfo.getTenantId(), subInfo.getInboxId());
@@ -533,7 +531,7 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
             }
         }
         if (!qos0MsgList.isEmpty()) {
-            metadata = insertQoS0Inbox(scopedInboxId, metadata, qos0MsgList, itr, writer);
+            metadata = insertQoS0Inbox(scopedInboxId, metadata, qos0MsgList, itr, writer, afterCommit);
         }
         if (!qos1MsgList.isEmpty()) {
             metadata = insertQoS1Inbox(scopedInboxId, metadata, qos1MsgList, itr, writer);
@@ -548,7 +546,11 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
 
     private InboxMetadata insertQoS0Inbox(ByteString scopedInboxId, InboxMetadata metadata,
                                           List<InboxMessage> messages,
-                                          IKVIterator itr, IKVWriter writeClient) {
+                                          IKVIterator itr, IKVWriter writeClient,
+                                          List<Runnable> afterCommit) {
+        if (metadata.getQos0InMemory()) {
+            return insertInMemoryQoS0Inbox(scopedInboxId, metadata, messages, afterCommit);
+        }
         itr.seek(qos0InboxMsgKey(scopedInboxId, 0));
         long nextSeq = metadata.getQos0NextSeq();
         long oldestSeq =
@@ -567,48 +569,24 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                             .build());
                     actualDropped += current;
                 }
-                // TODO: put a limit on value size?
-                InboxMessageList messageList =
-                    InboxMessageList.newBuilder()
-                        .addAllMessage(
-                            messages.size() > metadata.getLimit()
-                                ? messages.subList(messages.size() - metadata.getLimit(), messages.size())
-                                : messages)
-                        .build();
                 actualDropped += messages.size() - metadata.getLimit();
-                writeClient.insert(qos0InboxMsgKey(scopedInboxId, nextSeq), messageList.toByteString());
+                insertMessageList(scopedInboxId, nextSeq, messages.size() > metadata.getLimit()
+                    ? messages.subList(messages.size() - metadata.getLimit(), messages.size())
+                    : messages, KeyUtil::qos0InboxMsgKey, writeClient);
                 nextSeq += metadata.getLimit();
             } else {
                 if (dropCount > 0) {
-                    long delBeforeSeq = dropCount + oldestSeq;
-                    // keep current key and move to next one
-                    ByteString delKey = itr.key();
-                    for (itr.next(); itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId); itr.next()) {
-                        long seq = parseSeq(scopedInboxId, itr.key());
-                        if (seq >= delBeforeSeq) {
-                            // all messages in delKey's value should be dropped
-                            writeClient.delete(delKey);
-                            actualDropped += seq - parseSeq(scopedInboxId, delKey);
-                            delKey = itr.key();
-                        } else {
-                            break;
-                        }
-                    }
+                    actualDropped += dropMessagesBefore(scopedInboxId, oldestSeq, oldestSeq + dropCount, itr,
+                        KeyUtil::qos0InboxMsgKey, writeClient);
                 }
-                // TODO: put a limit on value size?
-                writeClient.insert(
-                    qos0InboxMsgKey(scopedInboxId, nextSeq),
-                    InboxMessageList.newBuilder().addAllMessage(messages).build().toByteString());
+                insertMessageList(scopedInboxId, nextSeq, messages, KeyUtil::qos0InboxMsgKey, writeClient);
                 nextSeq += messages.size();
             }
         } else {
             if (dropCount < messages.size()) {
-                // TODO: put a limit on value size?
-                InboxMessageList messageList =
-                    InboxMessageList.newBuilder()
-                        .addAllMessage(dropCount > 0 ? messages.subList(0, messages.size() - dropCount) : messages)
-                        .build();
-                writeClient.insert(qos0InboxMsgKey(scopedInboxId, nextSeq), messageList.toByteString());
+                insertMessageList(scopedInboxId, nextSeq,
+                    dropCount > 0 ? messages.subList(0, messages.size() - dropCount) : messages,
+                    KeyUtil::qos0InboxMsgKey, writeClient);
                 if (dropCount > 0) {
                     actualDropped += dropCount;
                     nextSeq += messages.size() - dropCount;
@@ -629,6 +607,66 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
         return metadata.toBuilder().setQos0NextSeq(nextSeq).build();
     }
 
+    /**
+     * Drop the messages in [oldestSeq, delBeforeSeq) which must not cover the latest message. The values lying
+     * entirely before delBeforeSeq are deleted, and the value straddling it is rewritten to keep its tail, so the
+     * queue is trimmed to exactly the expected size even if it holds only one value.
+     *
+     * @return the number of dropped messages
+     */
+    @SneakyThrows
+    private int dropMessagesBefore(ByteString scopedInboxId, long oldestSeq, long delBeforeSeq, IKVIterator itr,
+                                   BiFunction<ByteString, Long, ByteString> msgKeyBuilder,
+                                   IKVWriter writeClient) {
+        // locate the value containing the first kept message
+        itr.seekForPrev(msgKeyBuilder.apply(scopedInboxId, delBeforeSeq));
+        long keptStartSeq = parseSeq(scopedInboxId, itr.key());
+        if (keptStartSeq > oldestSeq) {
+            writeClient.deleteRange(Range.newBuilder()
+                .setStartKey(msgKeyBuilder.apply(scopedInboxId, oldestSeq))
+                .setEndKey(itr.key())
+                .build());
+        }
+        if (keptStartSeq < delBeforeSeq) {
+            // rewrite the tail starting from delBeforeSeq
+            List<InboxMessage> tail = new ArrayList<>();
+            decode(itr.value(), (int) (delBeforeSeq - keptStartSeq), Integer.MAX_VALUE,
+                (index, message) -> tail.add(message));
+            writeClient.delete(itr.key());
+            insertMessageList(scopedInboxId, delBeforeSeq, tail, msgKeyBuilder, writeClient);
+        }
+        return (int) (delBeforeSeq - oldestSeq);
+    }
+
+    private void insertMessageList(ByteString scopedInboxId, long startSeq, List<InboxMessage> messages,
+                                   BiFunction<ByteString, Long, ByteString> msgKeyBuilder,
+                                   IKVWriter writeClient) {
+        // split into chunks to bound the value size, each chunk is keyed by the seq of its first message
+        for (InboxMessageList chunk : split(messages, maxMessageListBytes)) {
+            writeClient.insert(msgKeyBuilder.apply(scopedInboxId, startSeq), chunk.toByteString());
+            startSeq += chunk.getMessageCount();
+        }
+    }
+
+    private InboxMetadata insertInMemoryQoS0Inbox(ByteString scopedInboxId, InboxMetadata metadata,
+                                                  List<InboxMessage> messages, List<Runnable> afterCommit) {
+        // the seqs are always assigned to all messages, so that the replicated metadata never depends on the local
+        // queue state, the messages dropped by the queue just leave gaps in the seq space
+        long startSeq = metadata.getQos0NextSeq();
+        afterCommit.add(() -> {
+            int dropped = inMemoryQoS0Queues.insert(scopedInboxId, startSeq, messages, metadata.getLimit(),
+                metadata.getDropOldest());
+            if (dropped > 0) {
+                eventCollector.report(getLocal(Overflowed.class)
+                    .oldest(metadata.getDropOldest())
+                    .qos(QoS.AT_MOST_ONCE)
+                    .clientInfo(metadata.getClient())
+                    .dropCount(dropped));
+            }
+        });
+        return metadata.toBuilder().setQos0NextSeq(startSeq + messages.size()).build();
+    }
+
     private InboxMetadata insertQoS1Inbox(ByteString scopedInboxId, InboxMetadata metadata,
                                           List<InboxMessage> messages, IKVIterator itr,
                                           IKVWriter writeClient) {
@@ -650,48 +688,24 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                             .build());
                     actualDropped += current;
                 }
-                // TODO: put a limit on value size?
-                InboxMessageList messageList =
-                    InboxMessageList.newBuilder()
-                        .addAllMessage(
-                            messages.size() > metadata.getLimit()
-                                ? messages.subList(messages.size() - metadata.getLimit(), messages.size())
-                                : messages)
-                        .build();
                 actualDropped += messages.size() - metadata.getLimit();
-                writeClient.insert(qos1InboxMsgKey(scopedInboxId, nextSeq), messageList.toByteString());
+                insertMessageList(scopedInboxId, nextSeq, messages.size() > metadata.getLimit()
+                    ? messages.subList(messages.size() - metadata.getLimit(), messages.size())
+                    : messages, KeyUtil::qos1InboxMsgKey, writeClient);
                 nextSeq += metadata.getLimit();
             } else {
                 if (dropCount > 0) {
-                    long delBeforeSeq = dropCount + oldestSeq;
-                    // keep current key and move to next one
-                    ByteString delKey = itr.key();
-                    for (itr.next(); itr.isValid() && isQoS1MessageKey(itr.key(), scopedInboxId); itr.next()) {
-                        long seq = parseSeq(scopedInboxId, itr.key());
-                        if (seq >= delBeforeSeq) {
-                            // all messages in delKey's value should be dropped
-                            writeClient.delete(delKey);
-                            actualDropped += seq - parseSeq(scopedInboxId, delKey);
-                            delKey = itr.key();
-                        } else {
-                            break;
-                        }
-                    }
+                    actualDropped += dropMessagesBefore(scopedInboxId, oldestSeq, oldestSeq + dropCount, itr,
+                        KeyUtil::qos1InboxMsgKey, writeClient);
                 }
-                // TODO: put a limit on value size?
-                writeClient.insert(
-                    qos1InboxMsgKey(scopedInboxId, nextSeq),
-                    InboxMessageList.newBuilder().addAllMessage(messages).build().toByteString());
+                insertMessageList(scopedInboxId, nextSeq, messages, KeyUtil::qos1InboxMsgKey, writeClient);
                 nextSeq += messages.size();
             }
         } else {
             if (dropCount < messages.size()) {
-                // TODO: put a limit on value size?
-                InboxMessageList messageList =
-                    InboxMessageList.newBuilder()
-                        .addAllMessage(dropCount > 0 ? messages.subList(0, messages.size() - dropCount) : messages)
-                        .build();
-                writeClient.insert(qos1InboxMsgKey(scopedInboxId, nextSeq), messageList.toByteString());
+                insertMessageList(scopedInboxId, nextSeq,
+                    dropCount > 0 ? messages.subList(0, messages.size() - dropCount) : messages,
+                    KeyUtil::qos1InboxMsgKey, writeClient);
                 if (dropCount > 0) {
                     actualDropped += dropCount;
                     nextSeq += messages.size() - dropCount;
@@ -815,14 +829,14 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     }
 
     @SneakyThrows
-    private TouchReply touch(TouchRequest request, IKVReader reader, IKVWriter writer) {
+    private TouchReply touch(TouchRequest request, IKVReader reader, IKVWriter writer, List<Runnable> afterCommit) {
         for (String scopedInboxIdUtf8 : request.getScopedInboxIdMap().keySet()) {
             ByteString scopedInboxId = ByteString.copyFromUtf8(scopedInboxIdUtf8);
             Optional<ByteString> metadataBytes = reader.get(scopedInboxId);
             if (metadataBytes.isPresent()) {
                 InboxMetadata metadata = InboxMetadata.parseFrom(metadataBytes.get());
                 if (hasExpired(metadata) || !request.getScopedInboxIdMap().get(scopedInboxIdUtf8)) {
-                    clearInbox(scopedInboxId, metadata, reader.iterator(), writer);
+                    clearInbox(scopedInboxId, metadata, reader.iterator(), writer, afterCommit);
                     break;
                 }
                 metadata = metadata.toBuilder().setLastFetchTime(clock.millis()).build();
@@ -832,14 +846,16 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
         return TouchReply.getDefaultInstance();
     }
 
-    private InboxCommitReply batchCommit(InboxCommitRequest request, IKVReader reader, IKVWriter writer) {
+    private InboxCommitReply batchCommit(InboxCommitRequest request, IKVReader reader, IKVWriter writer,
+                                         List<Runnable> afterCommit) {
         InboxCommitReply.Builder replyBuilder = InboxCommitReply.newBuilder();
         IKVIterator itr = reader.iterator();
         for (String scopedInboxIdUtf8 : request.getInboxCommitMap().keySet()) {
             ByteString scopedInboxId = ByteString.copyFromUtf8(scopedInboxIdUtf8);
             InboxCommit inboxCommit = request.getInboxCommitMap().get(scopedInboxIdUtf8);
             assert inboxCommit.hasQos0UpToSeq() || inboxCommit.hasQos1UpToSeq() || inboxCommit.hasQos2UpToSeq();
-            replyBuilder.putResult(scopedInboxIdUtf8, commitInbox(scopedInboxId, inboxCommit, itr, reader, writer));
+            replyBuilder.putResult(scopedInboxIdUtf8,
+                commitInbox(scopedInboxId, inboxCommit, itr, reader, writer, afterCommit));
         }
         return replyBuilder.build();
     }
@@ -847,7 +863,8 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
     private boolean commitInbox(ByteString scopedInboxId, InboxCommit inboxCommit,
                                 IKVIterator itr,
                                 IKVReader reader,
-                                IKVWriter writer) {
+                                IKVWriter writer,
+                                List<Runnable> afterCommit) {
         try {
             Optional<ByteString> metadataBytes = reader.get(scopedInboxId);
             if (metadataBytes.isEmpty()) {
@@ -858,25 +875,30 @@ final class InboxStoreCoProc implements IKVRangeCoProc {
                 return false;
             }
             if (inboxCommit.hasQos0UpToSeq()) {
-                itr.seek(qos0InboxPrefix(scopedInboxId));
-                if (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId)) {
-                    long oldestSeq = parseSeq(scopedInboxId, itr.key());
-                    if (oldestSeq <= inboxCommit.getQos0UpToSeq()) {
-                        ByteString delKey = itr.key();
-                        do {
-                            itr.next();
-                            if (!itr.isValid() || !isQoS0MessageKey(itr.key(), scopedInboxId)) {
-                                if (inboxCommit.getQos0UpToSeq() == metadata.getQos0NextSeq() - 1) {
-                                    writer.delete(delKey);
-                                }
-                                break;
-                            } else {
-                                if (parseSeq(scopedInboxId, itr.key()) <= inboxCommit.getQos0UpToSeq() + 1) {
-                                    writer.delete(delKey);
-                                    delKey = itr.key();
+                if (metadata.getQos0InMemory()) {
+                    long upToSeq = inboxCommit.getQos0UpToSeq();
+                    afterCommit.add(() -> inMemoryQoS0Queues.commit(scopedInboxId, upToSeq));
+                } else {
+                    itr.seek(qos0InboxPrefix(scopedInboxId));
+                    if (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId)) {
+                        long oldestSeq = parseSeq(scopedInboxId, itr.key());
+                        if (oldestSeq <= inboxCommit.getQos0UpToSeq()) {
+                            ByteString delKey = itr.key();
+                            do {
+                                itr.next();
+                                if (!itr.isValid() || !isQoS0MessageKey(itr.key(), scopedInboxId)) {
+                                    if (inboxCommit.getQos0UpToSeq() == metadata.getQos0NextSeq() - 1) {
+                                        writer.delete(delKey);
+                                    }
+                                    break;
+                                } else {
+                                    if (parseSeq(scopedInboxId, itr.key()) <= inboxCommit.getQos0UpToSeq() + 1) {
+                                        writer.delete(delKey);
+                                        delKey = itr.key();
+                                    }
                                 }
-                            }
-                        } while (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId));
+                            } while (itr.isValid() && isQoS0MessageKey(itr.key(), scopedInboxId));
+                        }
                     }
                 }
                 metadata = metadata.toBuilder().setQos0LastFetchBeforeSeq(inboxCommit.getQos0UpToSeq() + 1).build();
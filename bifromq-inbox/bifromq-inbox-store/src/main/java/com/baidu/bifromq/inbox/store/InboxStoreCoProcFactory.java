@@ -14,6 +14,7 @@
 package com.baidu.bifromq.inbox.store;
 
 import static com.baidu.bifromq.inbox.util.KeyUtil.parseScopedInboxId;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.INBOX_STORE_QOS0_IN_MEMORY_MAX_BYTES;
 
 import com.baidu.bifromq.basekv.localengine.RangeUtil;
 import com.baidu.bifromq.basekv.proto.KVRangeId;
@@ -24,12 +25,16 @@ import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
 import com.google.protobuf.ByteString;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 public class InboxStoreCoProcFactory implements IKVRangeCoProcFactory {
     private final IEventCollector eventCollector;
     private final Clock clock;
     private final Duration purgeDelay;
+    // shared by all ranges hosted in the store
+    private final AtomicLong inMemoryQoS0Bytes = new AtomicLong();
+    private final long maxInMemoryQoS0Bytes = INBOX_STORE_QOS0_IN_MEMORY_MAX_BYTES.get();
 
     public InboxStoreCoProcFactory(IEventCollector eventCollector, Clock clock, Duration purgeDelay) {
         this.eventCollector = eventCollector;
@@ -43,6 +48,7 @@ public class InboxStoreCoProcFactory implements IKVRangeCoProcFactory {
 
     @Override
     public IKVRangeCoProc create(KVRangeId id, Supplier<IKVRangeReader> rangeReaderProvider) {
-        return new InboxStoreCoProc(id, rangeReaderProvider, eventCollector, clock, purgeDelay);
+        return new InboxStoreCoProc(id, rangeReaderProvider, eventCollector, clock, purgeDelay,
+            new InMemoryQoS0Queues(inMemoryQoS0Bytes, maxInMemoryQoS0Bytes));
     }
 }
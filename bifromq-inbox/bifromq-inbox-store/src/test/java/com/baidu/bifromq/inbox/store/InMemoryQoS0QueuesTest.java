@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.inbox.store;
+
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.inbox.storage.proto.Fetched;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessage;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.TopicMessage;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class InMemoryQoS0QueuesTest {
+    private final ByteString inboxA = ByteString.copyFromUtf8("a");
+    private final ByteString inboxB = ByteString.copyFromUtf8("b");
+    private final InboxMessage msg = InboxMessage.newBuilder()
+        .setTopicFilter("greeting")
+        .setMsg(TopicMessage.newBuilder()
+            .setTopic("greeting")
+            .setMessage(Message.newBuilder().setPayload(ByteString.copyFromUtf8("hello")).build())
+            .build())
+        .build();
+    private AtomicLong usedBytes;
+
+    @BeforeMethod
+    public void setup() {
+        usedBytes = new AtomicLong();
+    }
+
+    @Test
+    public void insertAndCommit() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, Long.MAX_VALUE);
+        assertEquals(queues.insert(inboxA, 5, List.of(msg, msg, msg), 10, false), 0);
+        assertEquals(usedBytes.get(), 3L * msg.getSerializedSize());
+
+        Fetched.Builder fetched = Fetched.newBuilder();
+        assertEquals(queues.fetch(inboxA, 6, 10, fetched), 2);
+        assertEquals(fetched.getQos0SeqList(), List.of(6L, 7L));
+
+        queues.commit(inboxA, 6);
+        fetched = Fetched.newBuilder();
+        assertEquals(queues.fetch(inboxA, 0, 10, fetched), 1);
+        assertEquals(fetched.getQos0SeqList(), List.of(7L));
+        assertEquals(usedBytes.get(), msg.getSerializedSize());
+
+        queues.remove(inboxA);
+        assertEquals(usedBytes.get(), 0);
+    }
+
+    @Test
+    public void seqGap() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, Long.MAX_VALUE);
+        assertEquals(queues.insert(inboxA, 0, List.of(msg, msg, msg), 2, false), 1);
+        // seq 2 has been dropped
+        assertEquals(queues.insert(inboxA, 3, List.of(msg), 3, false), 0);
+        Fetched.Builder fetched = Fetched.newBuilder();
+        queues.fetch(inboxA, 0, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(0L, 1L, 3L));
+
+        fetched = Fetched.newBuilder();
+        queues.fetch(inboxA, 2, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(3L));
+
+        queues.commit(inboxA, 2);
+        fetched = Fetched.newBuilder();
+        queues.fetch(inboxA, 0, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(3L));
+    }
+
+    @Test
+    public void dropOldest() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, Long.MAX_VALUE);
+        assertEquals(queues.insert(inboxA, 0, List.of(msg, msg, msg), 2, true), 1);
+        Fetched.Builder fetched = Fetched.newBuilder();
+        queues.fetch(inboxA, 0, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(1L, 2L));
+        assertEquals(usedBytes.get(), 2L * msg.getSerializedSize());
+    }
+
+    @Test
+    public void seqGoesBackwards() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, Long.MAX_VALUE);
+        queues.insert(inboxA, 10, List.of(msg, msg), 10, false);
+        // the inbox has been recreated and the seq restarts from 0
+        queues.insert(inboxA, 0, List.of(msg), 10, false);
+        Fetched.Builder fetched = Fetched.newBuilder();
+        queues.fetch(inboxA, 0, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(0L));
+        assertEquals(usedBytes.get(), msg.getSerializedSize());
+    }
+
+    @Test
+    public void budgetExhausted() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, 2L * msg.getSerializedSize());
+        assertEquals(queues.insert(inboxA, 0, List.of(msg, msg, msg), 10, false), 1);
+
+        // the budget is shared
+        InMemoryQoS0Queues other = new InMemoryQoS0Queues(usedBytes, 2L * msg.getSerializedSize());
+        assertEquals(other.insert(inboxB, 0, List.of(msg), 10, false), 1);
+
+        queues.commit(inboxA, 0);
+        assertEquals(other.insert(inboxB, 1, List.of(msg), 10, false), 0);
+        Fetched.Builder fetched = Fetched.newBuilder();
+        other.fetch(inboxB, 0, 10, fetched);
+        assertEquals(fetched.getQos0SeqList(), List.of(1L));
+    }
+
+    @Test
+    public void retain() {
+        InMemoryQoS0Queues queues = new InMemoryQoS0Queues(usedBytes, Long.MAX_VALUE);
+        queues.insert(inboxA, 0, List.of(msg), 10, false);
+        queues.insert(inboxB, 0, List.of(msg), 10, false);
+        queues.retain(Range.newBuilder().setEndKey(inboxB).build());
+
+        assertEquals(queues.fetch(inboxA, 0, 10, Fetched.newBuilder()), 1);
+        assertEquals(queues.fetch(inboxB, 0, 10, Fetched.newBuilder()), 0);
+        assertEquals(usedBytes.get(), msg.getSerializedSize());
+
+        queues.clear();
+        assertEquals(usedBytes.get(), 0);
+    }
+}
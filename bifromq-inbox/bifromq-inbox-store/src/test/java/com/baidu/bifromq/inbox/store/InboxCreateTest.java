@@ -26,6 +26,7 @@ import java.time.Clock;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
@@ -91,7 +92,7 @@ public class InboxCreateTest {
         doNothing().when(writer).put(any(), any());
 
         InboxStoreCoProc coProc = new InboxStoreCoProc(id, rangeReaderProvider, eventCollector,
-            clock, Duration.ofMinutes(30));
+            clock, Duration.ofMinutes(30), new InMemoryQoS0Queues(new AtomicLong(), Long.MAX_VALUE));
         coProc.mutate(coProcInput.toByteString(), reader, writer);
         ArgumentCaptor<ByteString> argumentCaptor = ArgumentCaptor.forClass(ByteString.class);
         verify(writer).put(argumentCaptor.capture(), argumentCaptor.capture());
@@ -137,7 +138,7 @@ public class InboxCreateTest {
         doNothing().when(writer).put(any(), any());
 
         InboxStoreCoProc coProc = new InboxStoreCoProc(id, rangeReaderProvider, eventCollector,
-            Clock.systemUTC(), Duration.ofMinutes(30));
+            Clock.systemUTC(), Duration.ofMinutes(30), new InMemoryQoS0Queues(new AtomicLong(), Long.MAX_VALUE));
         coProc.mutate(coProcInput.toByteString(), reader, writer);
         ArgumentCaptor<ByteString> argumentCaptor = ArgumentCaptor.forClass(ByteString.class);
         verify(writer).put(argumentCaptor.capture(), argumentCaptor.capture());
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.inbox.store;
+
+import static com.baidu.bifromq.inbox.store.InboxMessageListCodec.decode;
+import static com.baidu.bifromq.inbox.store.InboxMessageListCodec.split;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.inbox.storage.proto.InboxMessage;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessageList;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.TopicMessage;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.SneakyThrows;
+import org.testng.annotations.Test;
+
+public class InboxMessageListCodecTest {
+    private final List<InboxMessage> messages = IntStream.range(0, 10)
+        .mapToObj(i -> InboxMessage.newBuilder()
+            .setTopicFilter("greeting")
+            .setMsg(TopicMessage.newBuilder()
+                .setTopic("greeting")
+                .setMessage(Message.newBuilder()
+                    .setMessageId(i)
+                    .setPayload(ByteString.copyFromUtf8("hello"))
+                    .build())
+                .build())
+            .build())
+        .collect(Collectors.toList());
+
+    @Test
+    public void splitByBytes() {
+        int msgBytes = InboxMessageList.newBuilder().addMessage(messages.get(0)).build().getSerializedSize();
+        List<InboxMessageList> chunks = split(messages, msgBytes * 3);
+        assertEquals(chunks.size(), 4);
+        assertEquals(chunks.stream().map(InboxMessageList::getMessageCount).collect(Collectors.toList()),
+            List.of(3, 3, 3, 1));
+        chunks.forEach(chunk -> assertTrue(chunk.getSerializedSize() <= msgBytes * 3));
+        assertEquals(chunks.stream().flatMap(c -> c.getMessageList().stream()).collect(Collectors.toList()),
+            messages);
+    }
+
+    @Test
+    public void splitOversizedMessage() {
+        List<InboxMessageList> chunks = split(messages.subList(0, 2), 1);
+        assertEquals(chunks.size(), 2);
+        assertEquals(chunks.get(0).getMessage(0), messages.get(0));
+        assertEquals(chunks.get(1).getMessage(0), messages.get(1));
+    }
+
+    @Test
+    public void splitWithinLimit() {
+        List<InboxMessageList> chunks = split(messages, Integer.MAX_VALUE);
+        assertEquals(chunks.size(), 1);
+        assertEquals(chunks.get(0).getMessageList(), messages);
+    }
+
+    @SneakyThrows
+    @Test
+    public void decodeFromOffset() {
+        // the value written without chunking
+        ByteString listBytes = InboxMessageList.newBuilder().addAllMessage(messages).build().toByteString();
+        List<Integer> indexes = new ArrayList<>();
+        List<InboxMessage> decoded = new ArrayList<>();
+        int count = decode(listBytes, 7, 10, (i, msg) -> {
+            indexes.add(i);
+            decoded.add(msg);
+        });
+        assertEquals(count, 3);
+        assertEquals(indexes, List.of(7, 8, 9));
+        assertEquals(decoded, messages.subList(7, 10));
+    }
+
+    @SneakyThrows
+    @Test
+    public void decodeWithLimit() {
+        ByteString listBytes = InboxMessageList.newBuilder().addAllMessage(messages).build().toByteString();
+        List<Integer> indexes = new ArrayList<>();
+        int count = decode(listBytes, 2, 3, (i, msg) -> {
+            indexes.add(i);
+            assertEquals(msg, messages.get(i));
+        });
+        assertEquals(count, 3);
+        assertEquals(indexes, List.of(2, 3, 4));
+
+        assertEquals(decode(listBytes, 10, 3, (i, msg) -> {
+        }), 0);
+        assertEquals(decode(listBytes, 0, 0, (i, msg) -> {
+        }), 0);
+    }
+
+    @Test(expectedExceptions = InvalidProtocolBufferException.class)
+    public void decodeMalformed() throws InvalidProtocolBufferException {
+        ByteString listBytes = InboxMessageList.newBuilder().addAllMessage(messages).build().toByteString();
+        decode(listBytes.substring(0, listBytes.size() - 3), 0, 10, (i, msg) -> {
+        });
+    }
+}
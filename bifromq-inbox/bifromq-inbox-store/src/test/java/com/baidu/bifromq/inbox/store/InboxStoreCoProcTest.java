@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.inbox.store;
+
+import static com.baidu.bifromq.inbox.util.KeyUtil.isQoS0MessageKey;
+import static com.baidu.bifromq.inbox.util.KeyUtil.isQoS1MessageKey;
+import static com.baidu.bifromq.inbox.util.KeyUtil.parseSeq;
+import static com.baidu.bifromq.inbox.util.KeyUtil.scopedInboxId;
+import static com.baidu.bifromq.type.QoS.AT_LEAST_ONCE;
+import static com.baidu.bifromq.type.QoS.AT_MOST_ONCE;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.basekv.proto.Range;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.baidu.bifromq.basekv.store.api.IKVReader;
+import com.baidu.bifromq.basekv.store.api.IKVWriter;
+import com.baidu.bifromq.inbox.storage.proto.CreateParams;
+import com.baidu.bifromq.inbox.storage.proto.CreateRequest;
+import com.baidu.bifromq.inbox.storage.proto.FetchParams;
+import com.baidu.bifromq.inbox.storage.proto.Fetched;
+import com.baidu.bifromq.inbox.storage.proto.InboxCommit;
+import com.baidu.bifromq.inbox.storage.proto.InboxCommitRequest;
+import com.baidu.bifromq.inbox.storage.proto.InboxFetchRequest;
+import com.baidu.bifromq.inbox.storage.proto.InboxInsertRequest;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessage;
+import com.baidu.bifromq.inbox.storage.proto.InboxMessageList;
+import com.baidu.bifromq.inbox.storage.proto.InboxServiceROCoProcInput;
+import com.baidu.bifromq.inbox.storage.proto.InboxServiceROCoProcOutput;
+import com.baidu.bifromq.inbox.storage.proto.InboxServiceRWCoProcInput;
+import com.baidu.bifromq.inbox.storage.proto.MessagePack;
+import com.baidu.bifromq.inbox.util.MessageUtil;
+import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
+import com.baidu.bifromq.plugin.eventcollector.inboxservice.Overflowed;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.Message;
+import com.baidu.bifromq.type.QoS;
+import com.baidu.bifromq.type.SubInfo;
+import com.baidu.bifromq.type.TopicMessage;
+import com.baidu.bifromq.type.TopicMessagePack;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test the chunked message lists against a sorted map, each chunk holds at most two messages.
+ */
+public class InboxStoreCoProcTest {
+    private static final String MAX_MESSAGE_LIST_BYTES = "inbox_store_max_message_list_bytes";
+    private final String tenantId = "tenantA";
+    private final String inboxId = "inboxId";
+    private final String topic = "greeting";
+    private final ByteString scopedInboxId = scopedInboxId(tenantId, inboxId);
+    private final SubInfo subInfo = SubInfo.newBuilder()
+        .setTenantId(tenantId)
+        .setInboxId(inboxId)
+        .setSubQoS(AT_LEAST_ONCE)
+        .setTopicFilter(topic)
+        .build();
+    @Mock
+    private IEventCollector eventCollector;
+    @Mock
+    private Clock clock;
+    private AutoCloseable closeable;
+    private NavigableMap<ByteString, ByteString> data;
+    private InboxStoreCoProc coProc;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(clock.millis()).thenReturn(0L);
+        data = new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+        coProc = newCoProc(chunkBytes());
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        System.clearProperty(MAX_MESSAGE_LIST_BYTES);
+        closeable.close();
+    }
+
+    @Test
+    public void splitIntoChunksQoS0() {
+        splitIntoChunks(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void splitIntoChunksQoS1() {
+        splitIntoChunks(AT_LEAST_ONCE);
+    }
+
+    private void splitIntoChunks(QoS qos) {
+        create(10, false);
+        insert(qos, 0, 5);
+        assertEquals(chunkSeqs(qos), List.of(0L, 2L, 4L));
+        insert(qos, 5, 1);
+        assertEquals(chunkSeqs(qos), List.of(0L, 2L, 4L, 5L));
+
+        Fetched fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), LongStream.range(0, 6).boxed().collect(Collectors.toList()));
+        assertEquals(payloads(qos, fetched), payloads(0, 6));
+    }
+
+    @Test
+    public void fetchAcrossChunksQoS0() {
+        fetchAcrossChunks(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void fetchAcrossChunksQoS1() {
+        fetchAcrossChunks(AT_LEAST_ONCE);
+    }
+
+    private void fetchAcrossChunks(QoS qos) {
+        create(10, false);
+        insert(qos, 0, 5);
+
+        // start in the middle of the first chunk and stop in the middle of the second one
+        Fetched fetched = fetch(qos, 0L, 2);
+        assertEquals(seqs(qos, fetched), List.of(1L, 2L));
+        assertEquals(payloads(qos, fetched), payloads(1, 3));
+
+        // start in the middle of the second chunk and go through the last one
+        fetched = fetch(qos, 2L, 10);
+        assertEquals(seqs(qos, fetched), List.of(3L, 4L));
+        assertEquals(payloads(qos, fetched), payloads(3, 5));
+
+        // start at the beginning of the last chunk
+        fetched = fetch(qos, 3L, 10);
+        assertEquals(seqs(qos, fetched), List.of(4L));
+    }
+
+    @Test
+    public void commitQoS0() {
+        commit(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void commitQoS1() {
+        commit(AT_LEAST_ONCE);
+    }
+
+    private void commit(QoS qos) {
+        create(10, false);
+        insert(qos, 0, 5);
+
+        // the partially committed chunk is kept
+        commit(qos, 0);
+        assertEquals(chunkSeqs(qos), List.of(0L, 2L, 4L));
+        assertEquals(seqs(qos, fetch(qos, null, 10)), List.of(1L, 2L, 3L, 4L));
+
+        // delete the whole first chunk and keep the partially committed second one
+        commit(qos, 2);
+        assertEquals(chunkSeqs(qos), List.of(2L, 4L));
+        Fetched fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), List.of(3L, 4L));
+        assertEquals(payloads(qos, fetched), payloads(3, 5));
+
+        commit(qos, 3);
+        assertEquals(chunkSeqs(qos), List.of(4L));
+
+        // commit up to the latest message deletes the last chunk
+        commit(qos, 4);
+        assertEquals(chunkSeqs(qos), List.of());
+        assertEquals(seqs(qos, fetch(qos, null, 10)), List.of());
+
+        insert(qos, 5, 3);
+        assertEquals(chunkSeqs(qos), List.of(5L, 7L));
+        commit(qos, 6);
+        assertEquals(chunkSeqs(qos), List.of(7L));
+        assertEquals(seqs(qos, fetch(qos, null, 10)), List.of(7L));
+    }
+
+    @Test
+    public void dropOldestQoS0() {
+        dropOldest(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void dropOldestQoS1() {
+        dropOldest(AT_LEAST_ONCE);
+    }
+
+    private void dropOldest(QoS qos) {
+        create(5, true);
+        insert(qos, 0, 5);
+        assertEquals(chunkSeqs(qos), List.of(0L, 2L, 4L));
+
+        // drop the first two chunks
+        insert(qos, 5, 4);
+        assertEquals(chunkSeqs(qos), List.of(4L, 5L, 7L));
+        assertOverflowed(1, qos, 4);
+        Fetched fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), List.of(4L, 5L, 6L, 7L, 8L));
+        assertEquals(payloads(qos, fetched), payloads(4, 9));
+
+        // the chunk straddling the drop boundary is rewritten to keep its tail
+        insert(qos, 9, 2);
+        assertEquals(chunkSeqs(qos), List.of(6L, 7L, 9L));
+        fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), List.of(6L, 7L, 8L, 9L, 10L));
+        assertEquals(payloads(qos, fetched), payloads(6, 11));
+        assertOverflowed(2, qos, 2);
+    }
+
+    @Test
+    public void dropOldestInSingleChunkQoS0() {
+        dropOldestInSingleChunk(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void dropOldestInSingleChunkQoS1() {
+        dropOldestInSingleChunk(AT_LEAST_ONCE);
+    }
+
+    private void dropOldestInSingleChunk(QoS qos) {
+        create(3, true);
+        insert(qos, 0, 2);
+        assertEquals(chunkSeqs(qos), List.of(0L));
+
+        // the only chunk is rewritten, so the queue doesn't exceed the limit
+        insert(qos, 2, 2);
+        assertEquals(chunkSeqs(qos), List.of(1L, 2L));
+        Fetched fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), List.of(1L, 2L, 3L));
+        assertEquals(payloads(qos, fetched), payloads(1, 4));
+        assertOverflowed(1, qos, 1);
+
+        // the chunk lying entirely before the drop boundary is deleted, and the straddling one is rewritten
+        insert(qos, 4, 2);
+        assertEquals(chunkSeqs(qos), List.of(3L, 4L));
+        fetched = fetch(qos, null, 10);
+        assertEquals(seqs(qos, fetched), List.of(3L, 4L, 5L));
+        assertEquals(payloads(qos, fetched), payloads(3, 6));
+        assertOverflowed(2, qos, 2);
+    }
+
+    private void assertOverflowed(int times, QoS qos, int dropCount) {
+        // the event object is reused, so only the latest one is checked
+        ArgumentCaptor<Overflowed> argCap = ArgumentCaptor.forClass(Overflowed.class);
+        verify(eventCollector, times(times)).report(argCap.capture());
+        Overflowed event = argCap.getValue();
+        assertTrue(event.oldest());
+        assertEquals(event.qos(), qos);
+        assertEquals(event.dropCount(), dropCount);
+    }
+
+    @Test
+    public void mixUnchunkedValuesQoS0() {
+        mixUnchunkedValues(AT_MOST_ONCE);
+    }
+
+    @Test
+    public void mixUnchunkedValuesQoS1() {
+        mixUnchunkedValues(AT_LEAST_ONCE);
+    }
+
+    private void mixUnchunkedValues(QoS qos) {
+        // values written before chunking hold the whole batch
+        coProc = newCoProc(64 * 1024);
+        create(10, true);
+        insert(qos, 0, 4);
+        assertEquals(chunkSeqs(qos), List.of(0L));
+
+        coProc = newCoProc(chunkBytes());
+        insert(qos, 4, 3);
+        assertEquals(chunkSeqs(qos), List.of(0L, 4L, 6L));
+
+        // fetch from the middle of the unchunked value into the chunks
+        Fetched fetched = fetch(qos, 1L, 4);
+        assertEquals(seqs(qos, fetched), List.of(2L, 3L, 4L, 5L));
+        assertEquals(payloads(qos, fetched), payloads(2, 6));
+
+        // the unchunked value is kept until all its messages are committed
+        commit(qos, 2);
+        assertEquals(chunkSeqs(qos), List.of(0L, 4L, 6L));
+        commit(qos, 3);
+        assertEquals(chunkSeqs(qos), List.of(4L, 6L));
+        assertEquals(seqs(qos, fetch(qos, null, 10)), List.of(4L, 5L, 6L));
+
+        // drop the oldest across the unchunked value and the chunks
+        coProc = newCoProc(64 * 1024);
+        insert(qos, 7, 6);
+        assertEquals(chunkSeqs(qos), List.of(4L, 6L, 7L));
+        coProc = newCoProc(chunkBytes());
+        insert(qos, 13, 2);
+        assertEquals(chunkSeqs(qos), List.of(5L, 6L, 7L, 13L));
+        fetched = fetch(qos, null, 20);
+        assertEquals(seqs(qos, fetched), LongStream.range(5, 15).boxed().collect(Collectors.toList()));
+        assertEquals(payloads(qos, fetched), payloads(5, 15));
+
+        // the unchunked value straddling the drop boundary is rewritten into chunks to keep its tail
+        insert(qos, 15, 3);
+        assertEquals(chunkSeqs(qos), List.of(8L, 10L, 12L, 13L, 15L, 17L));
+        fetched = fetch(qos, null, 20);
+        assertEquals(seqs(qos, fetched), LongStream.range(8, 18).boxed().collect(Collectors.toList()));
+        assertEquals(payloads(qos, fetched), payloads(8, 18));
+    }
+
+    private InboxStoreCoProc newCoProc(int maxMessageListBytes) {
+        System.setProperty(MAX_MESSAGE_LIST_BYTES, Integer.toString(maxMessageListBytes));
+        return new InboxStoreCoProc(null, null, eventCollector, clock, Duration.ofMinutes(1),
+            new InMemoryQoS0Queues(new AtomicLong(), Long.MAX_VALUE));
+    }
+
+    private void create(int limit, boolean dropOldest) {
+        mutate(MessageUtil.buildCreateRequest(System.nanoTime(), CreateRequest.newBuilder()
+            .putInboxes(scopedInboxId.toStringUtf8(), CreateParams.newBuilder()
+                .setExpireSeconds(600)
+                .setLimit(limit)
+                .setDropOldest(dropOldest)
+                .build())
+            .build()));
+    }
+
+    private void insert(QoS qos, int from, int count) {
+        TopicMessagePack.Builder topicMsgPack = TopicMessagePack.newBuilder().setTopic(topic);
+        for (int i = from; i < from + count; i++) {
+            topicMsgPack.addMessage(TopicMessagePack.PublisherPack.newBuilder()
+                .addMessage(message(qos, i))
+                .build());
+        }
+        mutate(MessageUtil.buildBatchInboxInsertRequest(System.nanoTime(), InboxInsertRequest.newBuilder()
+            .addSubMsgPack(MessagePack.newBuilder()
+                .setSubInfo(subInfo)
+                .addMessages(topicMsgPack.build())
+                .build())
+            .build()));
+    }
+
+    private void commit(QoS qos, long upToSeq) {
+        InboxCommit.Builder commit = InboxCommit.newBuilder();
+        if (qos == AT_MOST_ONCE) {
+            commit.setQos0UpToSeq(upToSeq);
+        } else {
+            commit.setQos1UpToSeq(upToSeq);
+        }
+        mutate(MessageUtil.buildBatchCommitRequest(System.nanoTime(), InboxCommitRequest.newBuilder()
+            .putInboxCommit(scopedInboxId.toStringUtf8(), commit.build())
+            .build()));
+    }
+
+    private Fetched fetch(QoS qos, Long startAfter, int maxFetch) {
+        FetchParams.Builder params = FetchParams.newBuilder().setMaxFetch(maxFetch);
+        if (startAfter != null) {
+            if (qos == AT_MOST_ONCE) {
+                params.setQos0StartAfter(startAfter);
+            } else {
+                params.setQos1StartAfter(startAfter);
+            }
+        }
+        InboxServiceROCoProcInput input = MessageUtil.buildInboxFetchRequest(System.nanoTime(),
+            InboxFetchRequest.newBuilder().putInboxFetch(scopedInboxId.toStringUtf8(), params.build()).build());
+        try {
+            ByteString output = coProc.query(input.toByteString(), new MapReader()).join();
+            Fetched fetched = InboxServiceROCoProcOutput.parseFrom(output).getReply().getFetch()
+                .getResultMap().get(scopedInboxId.toStringUtf8());
+            assertEquals(fetched.getResult(), Fetched.Result.OK);
+            return fetched;
+        } catch (InvalidProtocolBufferException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void mutate(InboxServiceRWCoProcInput input) {
+        // the writes are applied after the mutation returns, as a committed write batch
+        List<Runnable> writes = new ArrayList<>();
+        Supplier<ByteString> afterCommit = coProc.mutate(input.toByteString(), new MapReader(), new IKVWriter() {
+            @Override
+            public void delete(ByteString key) {
+                writes.add(() -> data.remove(key));
+            }
+
+            @Override
+            public void deleteRange(Range range) {
+                writes.add(() -> data.subMap(range.getStartKey(), range.getEndKey()).clear());
+            }
+
+            @Override
+            public void insert(ByteString key, ByteString value) {
+                writes.add(() -> data.put(key, value));
+            }
+
+            @Override
+            public void put(ByteString key, ByteString value) {
+                writes.add(() -> data.put(key, value));
+            }
+        });
+        writes.forEach(Runnable::run);
+        afterCommit.get();
+    }
+
+    private List<Long> chunkSeqs(QoS qos) {
+        return data.keySet().stream()
+            .filter(key -> qos == AT_MOST_ONCE
+                ? isQoS0MessageKey(key, scopedInboxId) : isQoS1MessageKey(key, scopedInboxId))
+            .map(key -> parseSeq(scopedInboxId, key))
+            .collect(Collectors.toList());
+    }
+
+    private List<Long> seqs(QoS qos, Fetched fetched) {
+        return qos == AT_MOST_ONCE ? fetched.getQos0SeqList() : fetched.getQos1SeqList();
+    }
+
+    private List<String> payloads(QoS qos, Fetched fetched) {
+        return (qos == AT_MOST_ONCE ? fetched.getQos0MsgList() : fetched.getQos1MsgList()).stream()
+            .map(inboxMsg -> inboxMsg.getMsg().getMessage().getPayload().toStringUtf8())
+            .collect(Collectors.toList());
+    }
+
+    private List<String> payloads(int from, int to) {
+        return LongStream.range(from, to).mapToObj(this::payload).collect(Collectors.toList());
+    }
+
+    private String payload(long i) {
+        return String.format("msg%03d", i);
+    }
+
+    private Message message(QoS qos, int i) {
+        return Message.newBuilder()
+            .setMessageId(i)
+            .setPubQoS(qos)
+            .setPayload(ByteString.copyFromUtf8(payload(i)))
+            .build();
+    }
+
+    // the messages differ in size by a few bytes at most, so two of them fit in a chunk while three don't
+    private int chunkBytes() {
+        InboxMessage inboxMsg = InboxMessage.newBuilder()
+            .setTopicFilter(topic)
+            .setMsg(TopicMessage.newBuilder()
+                .setTopic(topic)
+                .setMessage(message(AT_LEAST_ONCE, 100))
+                .setPublisher(ClientInfo.getDefaultInstance())
+                .build())
+            .build();
+        return CodedOutputStream.computeMessageSize(InboxMessageList.MESSAGE_FIELD_NUMBER, inboxMsg) * 5 / 2;
+    }
+
+    private class MapReader implements IKVReader {
+        @Override
+        public Range range() {
+            return Range.getDefaultInstance();
+        }
+
+        @Override
+        public long size(Range range) {
+            return 0;
+        }
+
+        @Override
+        public boolean exist(ByteString key) {
+            return data.containsKey(key);
+        }
+
+        @Override
+        public Optional<ByteString> get(ByteString key) {
+            return Optional.ofNullable(data.get(key));
+        }
+
+        @Override
+        public IKVIterator iterator() {
+            return new MapIterator();
+        }
+    }
+
+    private class MapIterator implements IKVIterator {
+        private Map.Entry<ByteString, ByteString> current;
+
+        @Override
+        public ByteString key() {
+            return current.getKey();
+        }
+
+        @Override
+        public ByteString value() {
+            return current.getValue();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @Override
+        public void next() {
+            current = data.higherEntry(current.getKey());
+        }
+
+        @Override
+        public void prev() {
+            current = data.lowerEntry(current.getKey());
+        }
+
+        @Override
+        public void seekToFirst() {
+            current = data.firstEntry();
+        }
+
+        @Override
+        public void seekToLast() {
+            current = data.lastEntry();
+        }
+
+        @Override
+        public void seek(ByteString key) {
+            current = data.ceilingEntry(key);
+        }
+
+        @Override
+        public void seekForPrev(ByteString key) {
+            current = data.floorEntry(key);
+        }
+    }
+}
@@ -212,6 +212,11 @@ abstract class InboxStoreTest {
 
     protected CreateReply requestCreate(String tenantId, String inboxId,
                                         int limit, int expireSeconds, boolean dropOldest) {
+        return requestCreate(tenantId, inboxId, limit, expireSeconds, dropOldest, false);
+    }
+
+    protected CreateReply requestCreate(String tenantId, String inboxId,
+                                        int limit, int expireSeconds, boolean dropOldest, boolean qos0InMemory) {
         try {
             long reqId = ThreadLocalRandom.current().nextInt();
             ByteString scopedInboxId = KeyUtil.scopedInboxId(tenantId, inboxId);
@@ -221,6 +226,7 @@ abstract class InboxStoreTest {
                     .setExpireSeconds(expireSeconds)
                     .setLimit(limit)
                     .setDropOldest(dropOldest)
+                    .setQos0InMemory(qos0InMemory)
                     .build())
                 .build();
             InboxServiceRWCoProcInput input = MessageUtil.buildCreateRequest(reqId, request);
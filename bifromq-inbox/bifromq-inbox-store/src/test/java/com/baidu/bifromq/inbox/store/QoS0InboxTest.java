@@ -32,6 +32,7 @@ import com.baidu.bifromq.type.SubInfo;
 import com.baidu.bifromq.type.TopicMessagePack;
 import java.io.IOException;
 import java.time.Clock;
+import java.util.List;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.testng.annotations.BeforeMethod;
@@ -365,5 +366,100 @@ public class QoS0InboxTest extends InboxStoreTest {
         InboxInsertReply reply = requestInsert(subInfo, topic, msg1);
         assertEquals(reply.getResults(0).getResult(), InboxInsertResult.Result.NO_INBOX);
     }
-}
 
+    @Test(groups = "integration")
+    public void inMemoryFetchAndCommit() {
+        String scopedInboxIdUtf8 = scopedInboxId(tenantId, inboxId).toStringUtf8();
+        String topic = "greeting";
+        TopicMessagePack.PublisherPack msg1 = message(AT_MOST_ONCE, "hello");
+        TopicMessagePack.PublisherPack msg2 = message(AT_MOST_ONCE, "world");
+        TopicMessagePack.PublisherPack msg3 = message(AT_MOST_ONCE, "!!!!!");
+        requestCreate(tenantId, inboxId, 10, 600, false, true);
+        requestInsert(subInfo, topic, msg1, msg2, msg3);
+
+        InboxFetchReply reply = requestFetchQoS0(tenantId, inboxId, 10, 0L);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(1L, 2L));
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0Msg(0).getMsg().getMessage(),
+            msg2.getMessage(0));
+
+        requestCommitQoS0(tenantId, inboxId, 1);
+        reply = requestFetchQoS0(tenantId, inboxId, 10, null);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(2L));
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0Msg(0).getMsg().getMessage(),
+            msg3.getMessage(0));
+
+        requestCommitQoS0(tenantId, inboxId, 2);
+        reply = requestFetchQoS0(tenantId, inboxId, 10, null);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqCount(), 0);
+
+        // seq continues after all committed
+        requestInsert(subInfo, topic, msg1);
+        reply = requestFetchQoS0(tenantId, inboxId, 10, null);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(3L));
+    }
+
+    @Test(groups = "integration")
+    public void inMemoryInsertDropOldest() {
+        String scopedInboxIdUtf8 = scopedInboxId(tenantId, inboxId).toStringUtf8();
+        String topic = "greeting";
+        TopicMessagePack.PublisherPack msg0 = message(AT_MOST_ONCE, "hello");
+        TopicMessagePack.PublisherPack msg1 = message(AT_MOST_ONCE, "world");
+        TopicMessagePack.PublisherPack msg2 = message(AT_MOST_ONCE, "!!!!!");
+        requestCreate(tenantId, inboxId, 2, 600, true, true);
+        requestInsert(subInfo, topic, msg0, msg1, msg2);
+
+        ArgumentCaptor<Overflowed> argCap = ArgumentCaptor.forClass(Overflowed.class);
+        verify(eventCollector, times(1)).report(argCap.capture());
+        Overflowed event = argCap.getValue();
+        assertTrue(event.oldest());
+        assertEquals(event.qos(), AT_MOST_ONCE);
+        assertEquals(event.dropCount(), 1);
+
+        InboxFetchReply reply = requestFetchQoS0(tenantId, inboxId, 10);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(1L, 2L));
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0Msg(0).getMsg().getMessage(),
+            msg1.getMessage(0));
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0Msg(1).getMsg().getMessage(),
+            msg2.getMessage(0));
+    }
+
+    @Test(groups = "integration")
+    public void inMemoryInsertDropYoungest() {
+        String scopedInboxIdUtf8 = scopedInboxId(tenantId, inboxId).toStringUtf8();
+        String topic = "greeting";
+        TopicMessagePack.PublisherPack msg0 = message(AT_MOST_ONCE, "hello");
+        TopicMessagePack.PublisherPack msg1 = message(AT_MOST_ONCE, "world");
+        TopicMessagePack.PublisherPack msg2 = message(AT_MOST_ONCE, "!!!!!");
+        requestCreate(tenantId, inboxId, 2, 600, false, true);
+        requestInsert(subInfo, topic, msg0, msg1, msg2);
+
+        ArgumentCaptor<Overflowed> argCap = ArgumentCaptor.forClass(Overflowed.class);
+        verify(eventCollector, times(1)).report(argCap.capture());
+        Overflowed event = argCap.getValue();
+        assertFalse(event.oldest());
+        assertEquals(event.dropCount(), 1);
+
+        InboxFetchReply reply = requestFetchQoS0(tenantId, inboxId, 10);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(0L, 1L));
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0Msg(0).getMsg().getMessage(),
+            msg0.getMessage(0));
+
+        // the seq of dropped message is skipped
+        requestCommitQoS0(tenantId, inboxId, 1);
+        requestInsert(subInfo, topic, msg0);
+        reply = requestFetchQoS0(tenantId, inboxId, 10, null);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqList(), List.of(3L));
+    }
+
+    @Test(groups = "integration")
+    public void inMemoryClearedWithInbox() {
+        String scopedInboxIdUtf8 = scopedInboxId(tenantId, inboxId).toStringUtf8();
+        requestCreate(tenantId, inboxId, 10, 600, false, true);
+        requestInsert(subInfo, "greeting", message(AT_MOST_ONCE, "hello"));
+        requestDelete(tenantId, inboxId);
+
+        requestCreate(tenantId, inboxId, 10, 600, false, true);
+        InboxFetchReply reply = requestFetchQoS0(tenantId, inboxId, 10);
+        assertEquals(reply.getResultMap().get(scopedInboxIdUtf8).getQos0SeqCount(), 0);
+    }
+}
@@ -197,6 +197,11 @@ abstract class InboxStoreState {
 
     protected CreateReply requestCreate(String tenantId, String inboxId, int limit, int expireSeconds,
                                         boolean dropOldest) {
+        return requestCreate(tenantId, inboxId, limit, expireSeconds, dropOldest, false);
+    }
+
+    protected CreateReply requestCreate(String tenantId, String inboxId, int limit, int expireSeconds,
+                                        boolean dropOldest, boolean qos0InMemory) {
         try {
             long reqId = ThreadLocalRandom.current().nextInt();
             ByteString scopedInboxId = scopedInboxId(tenantId, inboxId);
@@ -206,6 +211,7 @@ abstract class InboxStoreState {
                     .setExpireSeconds(expireSeconds)
                     .setLimit(limit)
                     .setDropOldest(dropOldest)
+                    .setQos0InMemory(qos0InMemory)
                     .build())
                 .build();
             InboxServiceRWCoProcInput input = buildCreateRequest(reqId, request);
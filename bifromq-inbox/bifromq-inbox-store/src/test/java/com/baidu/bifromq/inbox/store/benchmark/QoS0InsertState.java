@@ -19,6 +19,7 @@ import com.baidu.bifromq.inbox.storage.proto.InboxInsertReply;
 import com.baidu.bifromq.type.Message;
 import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
 
@@ -31,11 +32,14 @@ public class QoS0InsertState extends InboxStoreState {
     private final Message msg = message(AT_MOST_ONCE, "hello");
     private static final int inboxCount = 100;
 
+    @Param({"false", "true"})
+    private boolean qos0InMemory;
+
     @Override
     void afterSetup() {
         int i = 0;
         while (i < inboxCount) {
-            requestCreate(tenantId, i + "", 100, 600, false);
+            requestCreate(tenantId, i + "", 100, 600, false, qos0InMemory);
             i++;
         }
     }
@@ -38,6 +38,9 @@ public enum TenantMetric {
     MqttQoS2ExternalLatency("mqtt.ex.qos2.latency", Meter.Type.TIMER),
     MqttChannelLatency("mqtt.channel.latency", Meter.Type.TIMER),
     DistSubInfoSizeGauge("dist.sub.size.gauge", Meter.Type.GAUGE),
+    DistRouteCacheHitCount("dist.route.cache.hit.count", Meter.Type.COUNTER),
+    DistRouteCacheMissCount("dist.route.cache.miss.count", Meter.Type.COUNTER),
+    DistRouteCacheInvalidateCount("dist.route.cache.invalidate.count", Meter.Type.COUNTER),
     InboxFetcherGauge("inbox.fetcher.num.gauge", Meter.Type.GAUGE);
 
     public final String metricName;
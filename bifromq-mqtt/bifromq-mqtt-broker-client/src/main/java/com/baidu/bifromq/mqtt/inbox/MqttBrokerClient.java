@@ -21,6 +21,7 @@ import com.baidu.bifromq.mqtt.inbox.rpc.proto.HasInboxRequest;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.OnlineInboxBrokerGrpc;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteReply;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteRequest;
+import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteResult;
 import com.baidu.bifromq.mqtt.inbox.util.DeliveryGroupKeyUtil;
 import com.baidu.bifromq.plugin.subbroker.IDeliverer;
 import com.baidu.bifromq.plugin.subbroker.DeliveryPack;
@@ -28,7 +29,9 @@ import com.baidu.bifromq.plugin.subbroker.DeliveryResult;
 import com.baidu.bifromq.type.SubInfo;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
@@ -70,16 +73,27 @@ class MqttBrokerClient implements IMqttBrokerClient {
     }
 
     private class DeliveryPipeline implements IDeliverer {
+        private final String serverId;
         private final IRPCClient.IRequestPipeline<WriteRequest, WriteReply> ppln;
 
         DeliveryPipeline(String deliveryGroupKey) {
-            ppln = rpcClient.createRequestPipeline("", DeliveryGroupKeyUtil.parseServerId(deliveryGroupKey), "",
+            serverId = DeliveryGroupKeyUtil.parseServerId(deliveryGroupKey);
+            ppln = rpcClient.createRequestPipeline("", serverId, "",
                 emptyMap(), OnlineInboxBrokerGrpc.getWriteMethod());
         }
 
         @Override
         public CompletableFuture<Map<SubInfo, DeliveryResult>> deliver(Iterable<DeliveryPack> packs) {
             Preconditions.checkState(!hasStopped.get());
+            Optional<ILocalSessionWriter> localWriter = LocalSessionWriters.get(serverId);
+            if (localWriter.isPresent()) {
+                // the sessions are hosted in the same JVM, hand over the message packs without serialization
+                Map<SubInfo, DeliveryResult> results = new HashMap<>();
+                localWriter.get().write(Iterables.transform(packs,
+                        e -> new ILocalSessionWriter.WritePack(e.messagePack, e.inboxes)))
+                    .forEach((subInfo, result) -> results.put(subInfo, toDeliveryResult(result)));
+                return CompletableFuture.completedFuture(results);
+            }
             long reqId = System.nanoTime();
             return ppln.invoke(WriteRequest.newBuilder()
                     .setReqId(reqId)
@@ -89,20 +103,22 @@ class MqttBrokerClient implements IMqttBrokerClient {
                         .build()))
                     .build())
                 .thenApply(writeReply -> writeReply.getResultList().stream()
-                    .collect(Collectors.toMap(e -> e.getSubInfo(), e -> {
-                        switch (e.getResult()) {
-                            case NO_INBOX:
-                                return DeliveryResult.NO_INBOX;
-                            case OK:
-                            default:
-                                return DeliveryResult.OK;
-                        }
-                    })));
+                    .collect(Collectors.toMap(e -> e.getSubInfo(), e -> toDeliveryResult(e.getResult()))));
         }
 
         @Override
         public void close() {
             ppln.close();
         }
+
+        private DeliveryResult toDeliveryResult(WriteResult.Result result) {
+            switch (result) {
+                case NO_INBOX:
+                    return DeliveryResult.NO_INBOX;
+                case OK:
+                default:
+                    return DeliveryResult.OK;
+            }
+        }
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.mqtt.inbox;
+
+import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteResult;
+import com.baidu.bifromq.type.SubInfo;
+import com.baidu.bifromq.type.TopicMessagePack;
+import java.util.Map;
+
+/**
+ * Writer for delivering message packs to the sessions hosted by a broker server in the same JVM, bypassing the rpc
+ * write stream.
+ */
+public interface ILocalSessionWriter {
+    /**
+     * The message pack to be written to the sessions of its subscribers.
+     */
+    record WritePack(TopicMessagePack messagePack, Iterable<SubInfo> subscribers) {
+    }
+
+    /**
+     * Write the packs to local sessions, subscriber whose session is absent is reported as NO_INBOX.
+     *
+     * @param packs the packs to write
+     * @return the write result of each subscriber
+     */
+    Map<SubInfo, WriteResult.Result> write(Iterable<WritePack> packs);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.mqtt.inbox;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of the local session writers of the broker servers started in current JVM, indexed by server id.
+ */
+public final class LocalSessionWriters {
+    private static final ConcurrentMap<String, ILocalSessionWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private LocalSessionWriters() {
+    }
+
+    public static void register(String serverId, ILocalSessionWriter writer) {
+        WRITERS.put(serverId, writer);
+    }
+
+    public static void unregister(String serverId, ILocalSessionWriter writer) {
+        WRITERS.remove(serverId, writer);
+    }
+
+    public static Optional<ILocalSessionWriter> get(String serverId) {
+        return Optional.ofNullable(WRITERS.get(serverId));
+    }
+}
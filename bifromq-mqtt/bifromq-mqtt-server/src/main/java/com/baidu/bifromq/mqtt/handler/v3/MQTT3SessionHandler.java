@@ -56,7 +56,6 @@ import static com.baidu.bifromq.type.QoS.EXACTLY_ONCE;
 import static java.util.concurrent.CompletableFuture.allOf;
 
 import com.baidu.bifromq.basehlc.HLC;
-import com.baidu.bifromq.baserpc.IRPCClient;
 import com.baidu.bifromq.metrics.TenantMeter;
 import com.baidu.bifromq.mqtt.handler.MPSThrottler;
 import com.baidu.bifromq.mqtt.handler.MQTTMessageHandler;
@@ -112,8 +111,6 @@ import com.baidu.bifromq.plugin.eventcollector.mqttbroker.retainhandling.RetainM
 import com.baidu.bifromq.plugin.eventcollector.mqttbroker.subhandling.SubAcked;
 import com.baidu.bifromq.plugin.eventcollector.mqttbroker.subhandling.UnsubAcked;
 import com.baidu.bifromq.retain.client.IRetainServiceClient;
-import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
 import com.baidu.bifromq.sysprops.BifroMQSysProp;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.Message;
@@ -135,8 +132,6 @@ import io.netty.handler.codec.mqtt.MqttQoS;
 import io.netty.handler.codec.mqtt.MqttSubscribeMessage;
 import io.netty.handler.codec.mqtt.MqttTopicSubscription;
 import io.netty.handler.codec.mqtt.MqttUnsubscribeMessage;
-import io.reactivex.rxjava3.disposables.Disposable;
-import io.reactivex.rxjava3.schedulers.Schedulers;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.List;
@@ -174,8 +169,6 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
     private ScheduledFuture<?> idleTimeoutTask;
     private ScheduledFuture<?> resendUnconfirmedTask;
     private MPSThrottler throttler;
-    private IRPCClient.IMessageStream<Quit, Ping> sessionDictEntry;
-    private Disposable sessionKickDisposable;
     private int publishPacketId = 0;
     private long lastActiveAtNanos;
     private int maxTopicLevelLength;
@@ -213,16 +206,12 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         retainMatchLimit = settingProvider.provide(RetainMessageMatchLimit, tenantId);
 
         throttler = new MPSThrottler(Math.max(mps, 1));
-        sessionDictEntry = sessionCtx.sessionDictClient.reg(clientInfo);
-        sessionKickDisposable = sessionDictEntry.msg()
-            .observeOn(Schedulers.from(ctx.channel().eventLoop()))
-            .subscribe(quit -> {
-                if (log.isTraceEnabled()) {
-                    log.trace("Received quit request:reqId={},killer={}", quit.getReqId(), quit.getKiller());
-                }
-                closeConnectionNow(getLocal(Kicked.class)
-                    .kicker(quit.getKiller()).clientInfo(clientInfo));
-            });
+        sessionCtx.sessionDictClient.reg(clientInfo, killer -> ctx.channel().eventLoop().execute(() -> {
+            if (log.isTraceEnabled()) {
+                log.trace("Received quit request:killer={}", killer);
+            }
+            closeConnectionNow(getLocal(Kicked.class).kicker(killer).clientInfo(clientInfo));
+        }));
         tenantMeter.recordCount(MqttConnectCount);
         lastActiveAtNanos = sessionCtx.nanoTime();
         idleTimeoutTask = ctx.channel().eventLoop()
@@ -246,8 +235,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         super.channelInactive(ctx);
         sessionCtx.closeClientRetainPipeline(clientInfo);
         sessionCtx.localSessionRegistry.remove(channelId(), this);
-        sessionKickDisposable.dispose();
-        sessionDictEntry.close();
+        sessionCtx.sessionDictClient.unreg(clientInfo);
         tenantMeter.recordCount(MqttDisconnectCount);
     }
 
@@ -1256,8 +1244,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         tenantMeter.recordSummary(MqttQoS0IngressBytes,
             MQTTMessageSizer.sizePublishMsg(topic, payload.readableBytes()));
         CompletableFuture<Void> distTask = cancelOnInactive(
-            sessionCtx.distClient.pub(reqId, topic, AT_MOST_ONCE, payload.duplicate().nioBuffer(),
-                    Integer.MAX_VALUE, clientInfo)
+            sessionCtx.distClient.pub(reqId, topic, AT_MOST_ONCE, payload, Integer.MAX_VALUE, clientInfo)
                 .handleAsync((v, e) -> {
                     if (e != null) {
                         eventCollector.report(getLocal(QoS0DistError.class)
@@ -1287,8 +1274,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         tenantMeter.recordSummary(MqttQoS1IngressBytes,
             MQTTMessageSizer.sizePublishMsg(topic, payload.readableBytes()));
         CompletableFuture<Boolean> distTask = cancelOnInactive(
-            sessionCtx.distClient.pub(reqId, topic, AT_LEAST_ONCE, payload.duplicate().nioBuffer(),
-                    Integer.MAX_VALUE, clientInfo)
+            sessionCtx.distClient.pub(reqId, topic, AT_LEAST_ONCE, payload, Integer.MAX_VALUE, clientInfo)
                 .handleAsync((v, e) -> {
                     if (e != null) {
                         eventCollector.report(getLocal(QoS1DistError.class)
@@ -1320,8 +1306,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         tenantMeter.recordSummary(MqttQoS2IngressBytes,
             MQTTMessageSizer.sizePublishMsg(topic, payload.readableBytes()));
         CompletableFuture<Boolean> distTask = cancelOnInactive(
-            sessionCtx.distClient.pub(reqId, topic, EXACTLY_ONCE, payload.duplicate().nioBuffer(),
-                    Integer.MAX_VALUE, clientInfo)
+            sessionCtx.distClient.pub(reqId, topic, EXACTLY_ONCE, payload, Integer.MAX_VALUE, clientInfo)
                 .handleAsync((v, e) -> {
                     if (e != null) {
                         eventCollector.report(getLocal(QoS2DistError.class)
@@ -1364,7 +1349,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
 
     private CompletableFuture<Void> distWillMessage(long reqId, WillMessage willMessage) {
         return sessionCtx.distClient.pub(reqId, willMessage.topic, willMessage.qos,
-                willMessage.payload.duplicate().nioBuffer(), Integer.MAX_VALUE, clientInfo)
+                willMessage.payload, Integer.MAX_VALUE, clientInfo)
             .handleAsync((v, e) -> {
                 if (e != null) {
                     eventCollector.report(getLocal(WillDistError.class)
@@ -1394,7 +1379,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
                 reqId, qos, topic, payload.readableBytes());
         }
         IRetainServiceClient.IClientPipeline pipeline = sessionCtx.getClientRetainPipeline(clientInfo);
-        return cancelOnInactive(pipeline.retain(reqId, topic, qos, payload.duplicate().nioBuffer(), Integer.MAX_VALUE)
+        return cancelOnInactive(pipeline.retain(reqId, topic, qos, payload, Integer.MAX_VALUE)
             .thenApplyAsync(v -> {
                 if (log.isTraceEnabled()) {
                     log.trace("Message retained: reqId={}, result={}", v.getReqId(), v.getResult());
@@ -1443,7 +1428,7 @@ abstract class MQTT3SessionHandler extends MQTTMessageHandler implements IMQTT3S
         ByteBuf payload = willMessage.payload;
 
         IRetainServiceClient.IClientPipeline pipeline = sessionCtx.retainClient.open(clientInfo);
-        return pipeline.retain(reqId, topic, willMessage.qos, payload.duplicate().nioBuffer(), Integer.MAX_VALUE)
+        return pipeline.retain(reqId, topic, willMessage.qos, payload, Integer.MAX_VALUE)
             .handleAsync((v, e) -> {
                 switch (v.getResult()) {
                     case RETAINED:
@@ -14,6 +14,7 @@
 package com.baidu.bifromq.mqtt.service;
 
 import com.baidu.bifromq.baserpc.IRPCServer;
+import com.baidu.bifromq.mqtt.inbox.LocalSessionWriters;
 import com.baidu.bifromq.mqtt.session.IMQTTSession;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -43,11 +44,14 @@ abstract class LocalSessionBrokerServer implements ILocalSessionBrokerServer {
     @Override
     public void start() {
         server.start();
+        // deliverers opened in the same JVM write to the sessions directly
+        LocalSessionWriters.register(server.id(), service);
     }
 
     @SneakyThrows
     @Override
     public void shutdown() {
+        LocalSessionWriters.unregister(server.id(), service);
         server.shutdown();
         service.close();
     }
@@ -15,26 +15,32 @@ package com.baidu.bifromq.mqtt.service;
 
 import static com.baidu.bifromq.baserpc.UnaryResponse.response;
 
+import com.baidu.bifromq.mqtt.inbox.ILocalSessionWriter;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.HasInboxReply;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.HasInboxRequest;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.OnlineInboxBrokerGrpc;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteReply;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteRequest;
+import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteResult;
 import com.baidu.bifromq.mqtt.session.IMQTTSession;
 import com.baidu.bifromq.mqtt.session.v3.IMQTT3TransientSession;
+import com.baidu.bifromq.type.SubInfo;
 import com.google.common.util.concurrent.RateLimiter;
 import io.grpc.stub.StreamObserver;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-final class LocalSessionBrokerService extends OnlineInboxBrokerGrpc.OnlineInboxBrokerImplBase {
+final class LocalSessionBrokerService extends OnlineInboxBrokerGrpc.OnlineInboxBrokerImplBase
+    implements ILocalSessionWriter {
     private final ConcurrentMap<String, IMQTTSession> sessionMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, IMQTT3TransientSession> transientSessionMap = new ConcurrentHashMap<>();
 
@@ -47,7 +53,26 @@ final class LocalSessionBrokerService extends OnlineInboxBrokerGrpc.OnlineInboxB
 
     @Override
     public StreamObserver<WriteRequest> write(StreamObserver<WriteReply> responseObserver) {
-        return new LocalSessionWritePipeline(transientSessionMap, responseObserver);
+        return new LocalSessionWritePipeline(this, responseObserver);
+    }
+
+    @Override
+    public Map<SubInfo, WriteResult.Result> write(Iterable<WritePack> packs) {
+        Map<SubInfo, WriteResult.Result> results = new HashMap<>();
+        for (WritePack pack : packs) {
+            Map<IMQTT3TransientSession, SubInfo> inboxes = new HashMap<>();
+            for (SubInfo subInfo : pack.subscribers()) {
+                IMQTT3TransientSession session = transientSessionMap.get(subInfo.getInboxId());
+                if (results.get(subInfo) != WriteResult.Result.NO_INBOX && session != null) {
+                    results.put(subInfo, WriteResult.Result.OK);
+                    inboxes.put(session, subInfo);
+                } else {
+                    results.put(subInfo, WriteResult.Result.NO_INBOX);
+                }
+            }
+            inboxes.forEach((session, subInfo) -> session.publish(subInfo, pack.messagePack()));
+        }
+        return results;
     }
 
     @Override
@@ -14,61 +14,35 @@
 package com.baidu.bifromq.mqtt.service;
 
 import com.baidu.bifromq.baserpc.ResponsePipeline;
-import com.baidu.bifromq.mqtt.inbox.rpc.proto.DeliveryPack;
+import com.baidu.bifromq.mqtt.inbox.ILocalSessionWriter;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteReply;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteRequest;
 import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteResult;
-import com.baidu.bifromq.mqtt.session.v3.IMQTT3TransientSession;
-import com.baidu.bifromq.type.SubInfo;
-import com.baidu.bifromq.type.TopicMessagePack;
+import com.google.common.collect.Iterables;
 import io.grpc.stub.StreamObserver;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 class LocalSessionWritePipeline extends ResponsePipeline<WriteRequest, WriteReply> {
-    private final Map<String, IMQTT3TransientSession> sessionMap;
+    private final ILocalSessionWriter writer;
 
-    public LocalSessionWritePipeline(Map<String, IMQTT3TransientSession> sessionMap,
-                                     StreamObserver<WriteReply> responseObserver) {
+    public LocalSessionWritePipeline(ILocalSessionWriter writer, StreamObserver<WriteReply> responseObserver) {
         super(responseObserver);
-        this.sessionMap = sessionMap;
+        this.writer = writer;
     }
 
     @Override
     protected CompletableFuture<WriteReply> handleRequest(String tenantId, WriteRequest request) {
         log.trace("Handle inbox write request: \n{}", request);
         WriteReply.Builder replyBuilder = WriteReply.newBuilder().setReqId(request.getReqId());
-        Set<SubInfo> ok = new HashSet<>();
-        Set<SubInfo> noInbox = new HashSet<>();
-        for (DeliveryPack deliveryPack : request.getDeliveryPackList()) {
-            TopicMessagePack topicMsgPack = deliveryPack.getMessagePack();
-            List<SubInfo> subInfos = deliveryPack.getSubscriberList();
-            Map<IMQTT3TransientSession, SubInfo> inboxes = new HashMap<>();
-            for (SubInfo subInfo : subInfos) {
-                IMQTT3TransientSession session = sessionMap.get(subInfo.getInboxId());
-                if (!noInbox.contains(subInfo) && session != null) {
-                    ok.add(subInfo);
-                    inboxes.put(session, subInfo);
-                } else {
-                    noInbox.add(subInfo);
-                }
-            }
-            inboxes.forEach((session, subInfo) -> session.publish(subInfo, topicMsgPack));
-        }
-        ok.forEach(subInfo -> replyBuilder.addResult(WriteResult.newBuilder()
-            .setSubInfo(subInfo)
-            .setResult(WriteResult.Result.OK)
-            .build()));
-        noInbox.forEach(subInfo -> replyBuilder.addResult(WriteResult.newBuilder()
-            .setSubInfo(subInfo)
-            .setResult(WriteResult.Result.NO_INBOX)
-            .build()));
+        writer.write(Iterables.transform(request.getDeliveryPackList(),
+                deliveryPack -> new ILocalSessionWriter.WritePack(deliveryPack.getMessagePack(),
+                    deliveryPack.getSubscriberList())))
+            .forEach((subInfo, result) -> replyBuilder.addResult(WriteResult.newBuilder()
+                .setSubInfo(subInfo)
+                .setResult(result)
+                .build()));
         return CompletableFuture.completedFuture(replyBuilder.build());
     }
 }
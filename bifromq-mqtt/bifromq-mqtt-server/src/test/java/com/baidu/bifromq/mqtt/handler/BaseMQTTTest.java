@@ -41,7 +41,6 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.internal.junit.ArrayAsserts.assertArrayEquals;
 
-import com.baidu.bifromq.baserpc.IRPCClient;
 import com.baidu.bifromq.basescheduler.exception.DropException;
 import com.baidu.bifromq.dist.client.IDistClient;
 import com.baidu.bifromq.inbox.client.IInboxReaderClient;
@@ -68,10 +67,9 @@ import com.baidu.bifromq.retain.client.IRetainServiceClient.IClientPipeline;
 import com.baidu.bifromq.retain.rpc.proto.MatchReply;
 import com.baidu.bifromq.retain.rpc.proto.RetainReply;
 import com.baidu.bifromq.sessiondict.client.ISessionDictionaryClient;
-import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.embedded.EmbeddedChannel;
@@ -79,9 +77,7 @@ import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttConnectMessage;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.traffic.ChannelTrafficShapingHandler;
-import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -111,8 +107,6 @@ public abstract class BaseMQTTTest {
     @Mock
     protected ISessionDictionaryClient sessionDictClient;
     @Mock
-    protected IRPCClient.IMessageStream<Quit, Ping> kickStream;
-    @Mock
     protected IInboxReader inboxReader;
     @Mock
     protected IClientPipeline retainPipeline;
@@ -126,7 +120,7 @@ public abstract class BaseMQTTTest {
     protected String delivererKey = "testGroupKey";
     protected String remoteIp = "127.0.0.1";
     protected int remotePort = 8888;
-    protected PublishSubject<Quit> kickSubject = PublishSubject.create();
+    protected Consumer<ClientInfo> onKick;
     protected long disconnectDelay = 5000;
     protected Consumer<Fetched> inboxFetchConsumer;
     protected List<Integer> fetchHints = new ArrayList<>();
@@ -293,21 +287,23 @@ public abstract class BaseMQTTTest {
     }
 
     protected void mockDistDist(boolean success) {
-        when(distClient.pub(anyLong(), anyString(), any(QoS.class), any(ByteBuffer.class), anyInt(),
+        when(distClient.pub(anyLong(), anyString(), any(QoS.class), any(ByteBuf.class), anyInt(),
             any(ClientInfo.class)))
             .thenReturn(success ? CompletableFuture.completedFuture(null) :
                 CompletableFuture.failedFuture(new RuntimeException("Mock error")));
     }
 
     protected void mockDistDrop() {
-        when(distClient.pub(anyLong(), anyString(), any(QoS.class), any(ByteBuffer.class), anyInt(),
+        when(distClient.pub(anyLong(), anyString(), any(QoS.class), any(ByteBuf.class), anyInt(),
             any(ClientInfo.class)))
             .thenReturn(CompletableFuture.failedFuture(DropException.EXCEED_LIMIT));
     }
 
     protected void mockSessionReg() {
-        when(sessionDictClient.reg(any(ClientInfo.class))).thenReturn(kickStream);
-        when(kickStream.msg()).thenReturn(kickSubject);
+        doAnswer(invocationOnMock -> {
+            onKick = invocationOnMock.getArgument(1);
+            return null;
+        }).when(sessionDictClient).reg(any(ClientInfo.class), any());
     }
 
     protected void mockInboxReader() {
@@ -332,7 +328,7 @@ public abstract class BaseMQTTTest {
 
     protected void mockRetainPipeline(RetainReply.Result result) {
         when(retainClient.open(any(ClientInfo.class))).thenReturn(retainPipeline);
-        when(retainPipeline.retain(anyLong(), anyString(), any(QoS.class), any(ByteBuffer.class), anyInt()))
+        when(retainPipeline.retain(anyLong(), anyString(), any(QoS.class), any(ByteBuf.class), anyInt()))
             .thenReturn(CompletableFuture.completedFuture(RetainReply.newBuilder().setResult(result).build()));
     }
 
@@ -18,7 +18,7 @@ import static com.baidu.bifromq.plugin.eventcollector.EventType.KICKED;
 import static io.netty.handler.codec.mqtt.MqttConnectReturnCode.CONNECTION_ACCEPTED;
 
 import com.baidu.bifromq.mqtt.utils.MQTTMessageUtils;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.type.ClientInfo;
 import io.netty.handler.codec.mqtt.MqttConnAckMessage;
 import io.netty.handler.codec.mqtt.MqttConnectMessage;
 import org.testng.Assert;
@@ -37,7 +37,7 @@ public class MQTTKickTest extends BaseMQTTTest {
         Assert.assertEquals(CONNECTION_ACCEPTED, ackMessage.variableHeader().connectReturnCode());
 
         // kick
-        kickSubject.onNext(Quit.newBuilder().build());
+        onKick.accept(ClientInfo.getDefaultInstance());
         channel.runPendingTasks();
         Assert.assertFalse(channel.isActive());
         verifyEvent(2, CLIENT_CONNECTED, KICKED);
@@ -34,10 +34,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.baidu.bifromq.mqtt.handler.BaseMQTTTest;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
-import java.nio.ByteBuffer;
+import io.netty.buffer.ByteBuf;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.testng.Assert;
@@ -88,15 +87,11 @@ public class MQTTWillMessageTest extends BaseMQTTTest {
         connectAndVerify(true, false, 30, true, false);
         mockAuthCheck(true);
         mockDistDist(true);
-        kickSubject.onNext(
-            Quit.newBuilder()
-                .setKiller(
-                    ClientInfo.newBuilder()
-                        .setTenantId("sys")
-                        .putMetadata("agent", "sys")
-                        .putMetadata("clientId", clientId)
-                        .build()
-                )
+        onKick.accept(
+            ClientInfo.newBuilder()
+                .setTenantId("sys")
+                .putMetadata("agent", "sys")
+                .putMetadata("clientId", clientId)
                 .build()
         );
         channel.runPendingTasks();
@@ -113,7 +108,7 @@ public class MQTTWillMessageTest extends BaseMQTTTest {
         channel.runPendingTasks();
         Assert.assertFalse(channel.isActive());
         verifyEvent(3, CLIENT_CONNECTED, IDLE, PUB_ACTION_DISALLOW);
-        verify(distClient, times(0)).pub(anyLong(), anyString(), any(QoS.class), any(ByteBuffer.class), anyInt(),
+        verify(distClient, times(0)).pub(anyLong(), anyString(), any(QoS.class), any(ByteBuf.class), anyInt(),
             any(ClientInfo.class));
     }
 
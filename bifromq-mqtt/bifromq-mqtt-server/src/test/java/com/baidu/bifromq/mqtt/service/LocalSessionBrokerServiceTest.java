@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.mqtt.service;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.mqtt.inbox.ILocalSessionWriter;
+import com.baidu.bifromq.mqtt.inbox.rpc.proto.WriteResult;
+import com.baidu.bifromq.mqtt.session.v3.IMQTT3TransientSession;
+import com.baidu.bifromq.type.SubInfo;
+import com.baidu.bifromq.type.TopicMessagePack;
+import java.util.List;
+import java.util.Map;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LocalSessionBrokerServiceTest {
+    private LocalSessionBrokerService service;
+
+    @BeforeMethod
+    public void setup() {
+        service = new LocalSessionBrokerService();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void writeToLocalSessions() {
+        IMQTT3TransientSession session = mock(IMQTT3TransientSession.class);
+        service.reg("inbox1", session);
+        SubInfo sub1 = SubInfo.newBuilder().setInboxId("inbox1").setTopicFilter("a/#").build();
+        SubInfo sub2 = SubInfo.newBuilder().setInboxId("inbox2").setTopicFilter("a/#").build();
+        TopicMessagePack pack1 = TopicMessagePack.newBuilder().setTopic("a/b").build();
+        TopicMessagePack pack2 = TopicMessagePack.newBuilder().setTopic("a/c").build();
+
+        Map<SubInfo, WriteResult.Result> results = service.write(List.of(
+            new ILocalSessionWriter.WritePack(pack1, List.of(sub1, sub2)),
+            new ILocalSessionWriter.WritePack(pack2, List.of(sub1))));
+        assertEquals(results, Map.of(sub1, WriteResult.Result.OK, sub2, WriteResult.Result.NO_INBOX));
+        verify(session, times(1)).publish(sub1, pack1);
+        verify(session, times(1)).publish(sub1, pack2);
+    }
+
+    @Test
+    public void writeAfterUnreg() {
+        IMQTT3TransientSession session = mock(IMQTT3TransientSession.class);
+        service.reg("inbox1", session);
+        service.unreg("inbox1", session);
+        SubInfo sub1 = SubInfo.newBuilder().setInboxId("inbox1").setTopicFilter("a/#").build();
+        TopicMessagePack pack = TopicMessagePack.newBuilder().setTopic("a/b").build();
+
+        Map<SubInfo, WriteResult.Result> results =
+            service.write(List.of(new ILocalSessionWriter.WritePack(pack, List.of(sub1))));
+        assertEquals(results, Map.of(sub1, WriteResult.Result.NO_INBOX));
+        verify(session, never()).publish(sub1, pack);
+    }
+}
@@ -15,6 +15,10 @@ package com.baidu.bifromq.plugin.authprovider;
 
 import static com.baidu.bifromq.plugin.eventcollector.ThreadLocalEventPool.getLocal;
 import static com.baidu.bifromq.plugin.settingprovider.Setting.ByPassPermCheckError;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.AUTH_CHECK_CACHE_EXPIRY_SECONDS;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.AUTH_CHECK_CACHE_MAX_SIZE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
 
 import com.baidu.bifromq.plugin.authprovider.type.MQTT3AuthData;
 import com.baidu.bifromq.plugin.authprovider.type.MQTT3AuthResult;
@@ -24,14 +28,20 @@ import com.baidu.bifromq.plugin.eventcollector.IEventCollector;
 import com.baidu.bifromq.plugin.eventcollector.mqttbroker.accessctrl.AccessControlError;
 import com.baidu.bifromq.plugin.settingprovider.ISettingProvider;
 import com.baidu.bifromq.type.ClientInfo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.google.common.base.Preconditions;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.pf4j.PluginManager;
@@ -42,6 +52,14 @@ public class AuthProviderManager implements IAuthProvider {
     private final IAuthProvider delegate;
     private final ISettingProvider settingProvider;
     private final IEventCollector eventCollector;
+    // null if check results are not cached
+    private final Cache<CheckKey, CheckEntry> checkCache;
+    // increased on every invalidation, a cached result is stale if its check started before a related invalidation
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong allInvalidatedAt = new AtomicLong();
+    // the invalidation records outlive the results checked before them, since both expire after the same duration
+    private final Cache<String, Long> tenantInvalidatedAt;
+    private final Cache<ClientKey, Long> clientInvalidatedAt;
     private MetricManager metricMgr;
 
     public AuthProviderManager(String authProviderFQN,
@@ -66,11 +84,40 @@ public class AuthProviderManager implements IAuthProvider {
                 delegate = availAuthProviders.get(authProviderFQN);
             }
         }
+        int checkCacheExpirySeconds = AUTH_CHECK_CACHE_EXPIRY_SECONDS.get();
+        if (checkCacheExpirySeconds > 0) {
+            checkCache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(checkCacheExpirySeconds))
+                .maximumSize(AUTH_CHECK_CACHE_MAX_SIZE.<Long>get())
+                .build();
+            tenantInvalidatedAt = newInvalidationRecords(checkCacheExpirySeconds);
+            clientInvalidatedAt = newInvalidationRecords(checkCacheExpirySeconds);
+        } else {
+            checkCache = null;
+            tenantInvalidatedAt = null;
+            clientInvalidatedAt = null;
+        }
         init();
     }
 
+    private <K> Cache<K, Long> newInvalidationRecords(int expirySeconds) {
+        return Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofSeconds(expirySeconds))
+            .maximumSize(AUTH_CHECK_CACHE_MAX_SIZE.<Long>get())
+            .removalListener((RemovalListener<K, Long>) (key, invalidatedAt, cause) -> {
+                if (cause == RemovalCause.SIZE && invalidatedAt != null) {
+                    // the record evicted early is merged into the global one, so no stale result becomes valid
+                    allInvalidatedAt.accumulateAndGet(invalidatedAt, Math::max);
+                }
+            })
+            .build();
+    }
+
     private void init() {
         metricMgr = new MetricManager(delegate.getClass().getName());
+        if (checkCache != null) {
+            delegate.setCheckCacheInvalidator(new CheckCacheInvalidator());
+        }
     }
 
     @Override
@@ -113,14 +160,10 @@ public class AuthProviderManager implements IAuthProvider {
         assert !stopped.get();
         long start = System.nanoTime();
         try {
-            return delegate.check(client, action)
+            return check(client, action, start)
                 .exceptionally(e -> {
                     eventCollector.report(getLocal(AccessControlError.class).clientInfo(client).cause(e));
                     return settingProvider.provide(ByPassPermCheckError, client.getTenantId());
-                })
-                .thenApply(v -> {
-                    metricMgr.checkCallTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
-                    return v;
                 });
         } catch (Throwable e) {
             metricMgr.checkCallErrorCounter.increment();
@@ -130,6 +173,60 @@ public class AuthProviderManager implements IAuthProvider {
         }
     }
 
+    private CompletableFuture<Boolean> check(ClientInfo client, MQTTAction action, long start) {
+        if (checkCache == null) {
+            return callCheck(client, action, start);
+        }
+        CheckKey key = new CheckKey(ClientKey.of(client), action);
+        CheckEntry cached = checkCache.getIfPresent(key);
+        if (cached != null && !isStale(key, cached)) {
+            metricMgr.checkCacheHitCounter.increment();
+            return cached.result();
+        }
+        CheckEntry candidate = new CheckEntry(generation.get(), new CompletableFuture<>());
+        CheckEntry entry = checkCache.asMap().compute(key, (k, v) -> v == null || isStale(k, v) ? candidate : v);
+        if (entry != candidate) {
+            // join the check started by others
+            metricMgr.checkCacheHitCounter.increment();
+            return entry.result();
+        }
+        metricMgr.checkCacheMissCounter.increment();
+        CompletableFuture<Boolean> checkFuture;
+        try {
+            checkFuture = callCheck(client, action, start);
+        } catch (Throwable e) {
+            checkCache.asMap().remove(key, candidate);
+            candidate.result().completeExceptionally(e);
+            throw e;
+        }
+        checkFuture.whenComplete((v, e) -> {
+            // neither the failed result nor the one checked before permissions changed is kept
+            if (e != null || isStale(key, candidate)) {
+                checkCache.asMap().remove(key, candidate);
+            }
+            if (e != null) {
+                candidate.result().completeExceptionally(e);
+            } else {
+                candidate.result().complete(v);
+            }
+        });
+        return candidate.result();
+    }
+
+    private boolean isStale(CheckKey key, CheckEntry entry) {
+        long invalidatedAt = Math.max(allInvalidatedAt.get(),
+            Math.max(tenantInvalidatedAt.asMap().getOrDefault(key.client().tenantId(), 0L),
+                clientInvalidatedAt.asMap().getOrDefault(key.client(), 0L)));
+        return entry.generation() < invalidatedAt;
+    }
+
+    private CompletableFuture<Boolean> callCheck(ClientInfo client, MQTTAction action, long start) {
+        CompletableFuture<Boolean> checkFuture = delegate.check(client, action);
+        checkFuture.whenComplete((v, e) ->
+            metricMgr.checkCallTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        return checkFuture;
+    }
+
     public void close() {
         if (stopped.compareAndSet(false, true)) {
             log.info("Closing auth provider manager");
@@ -144,6 +241,8 @@ public class AuthProviderManager implements IAuthProvider {
         private final Counter authCallErrorCounter;
         private final Timer checkCallTimer;
         private final Counter checkCallErrorCounter;
+        private final Counter checkCacheHitCounter;
+        private final Counter checkCacheMissCounter;
 
         MetricManager(String id) {
             authCallTimer = Timer.builder("call.exec.timer")
@@ -165,6 +264,16 @@ public class AuthProviderManager implements IAuthProvider {
                 .tag("method", "AuthProvider/check")
                 .tag("type", id)
                 .register(Metrics.globalRegistry);
+
+            checkCacheHitCounter = Counter.builder("call.cache.hit.count")
+                .tag("method", "AuthProvider/check")
+                .tag("type", id)
+                .register(Metrics.globalRegistry);
+
+            checkCacheMissCounter = Counter.builder("call.cache.miss.count")
+                .tag("method", "AuthProvider/check")
+                .tag("type", id)
+                .register(Metrics.globalRegistry);
         }
 
         void close() {
@@ -173,6 +282,44 @@ public class AuthProviderManager implements IAuthProvider {
 
             Metrics.globalRegistry.remove(checkCallTimer);
             Metrics.globalRegistry.remove(checkCallErrorCounter);
+            Metrics.globalRegistry.remove(checkCacheHitCounter);
+            Metrics.globalRegistry.remove(checkCacheMissCounter);
+        }
+    }
+
+    /**
+     * The identity of the client, the connection scoped metadata like address and channel id are left out, so the
+     * cached results are shared by all connections of the same client.
+     */
+    private record ClientKey(String tenantId, String type, String userId, String clientId) {
+        static ClientKey of(ClientInfo client) {
+            return new ClientKey(client.getTenantId(), client.getType(),
+                client.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
+                client.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""));
+        }
+    }
+
+    private record CheckKey(ClientKey client, MQTTAction action) {
+    }
+
+    // the generation when the check started
+    private record CheckEntry(long generation, CompletableFuture<Boolean> result) {
+    }
+
+    private class CheckCacheInvalidator implements ICheckCacheInvalidator {
+        @Override
+        public void invalidate(ClientInfo client) {
+            clientInvalidatedAt.put(ClientKey.of(client), generation.incrementAndGet());
+        }
+
+        @Override
+        public void invalidate(String tenantId) {
+            tenantInvalidatedAt.put(tenantId, generation.incrementAndGet());
+        }
+
+        @Override
+        public void invalidateAll() {
+            allInvalidatedAt.accumulateAndGet(generation.incrementAndGet(), Math::max);
         }
     }
 }
@@ -14,7 +14,10 @@
 package com.baidu.bifromq.plugin.authprovider;
 
 import static com.baidu.bifromq.plugin.settingprovider.Setting.ByPassPermCheckError;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.AUTH_CHECK_CACHE_EXPIRY_SECONDS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
@@ -76,6 +79,7 @@ public class AuthProviderManagerTest {
 
     @AfterMethod
     public void teardown() throws Exception {
+        System.clearProperty(AUTH_CHECK_CACHE_EXPIRY_SECONDS.propKey);
         closeable.close();
     }
 
@@ -238,4 +242,131 @@ public class AuthProviderManagerTest {
         verify(eventCollector).report(eventArgumentCaptor.capture());
         assertEquals(eventArgumentCaptor.getValue().type(), EventType.ACCESS_CONTROL_ERROR);
     }
+
+    @Test
+    public void checkResultNotCachedByDefault() {
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        verify(mockProvider, never()).setCheckCacheInvalidator(any(ICheckCacheInvalidator.class));
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(CompletableFuture.completedFuture(true));
+        assertTrue(manager.check(clientInfo, mockActionInfo).join());
+        assertTrue(manager.check(clientInfo, mockActionInfo).join());
+        verify(mockProvider, times(2)).check(clientInfo, mockActionInfo);
+        manager.close();
+    }
+
+    @Test
+    public void checkResultCached() {
+        System.setProperty(AUTH_CHECK_CACHE_EXPIRY_SECONDS.propKey, "5");
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(CompletableFuture.completedFuture(true));
+        assertTrue(manager.check(clientInfo, mockActionInfo).join());
+        assertTrue(manager.check(clientInfo, mockActionInfo).join());
+        verify(mockProvider, times(1)).check(clientInfo, mockActionInfo);
+
+        MQTTAction otherAction = MQTTAction.newBuilder()
+            .setPub(PubAction.newBuilder().setTopic("topic").build())
+            .build();
+        assertTrue(manager.check(clientInfo, otherAction).join());
+        verify(mockProvider, times(1)).check(clientInfo, otherAction);
+        manager.close();
+    }
+
+    @Test
+    public void checkErrorNotCached() {
+        when(settingProvider.provide(ByPassPermCheckError, clientInfo.getTenantId())).thenReturn(false);
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Intend Error")))
+            .thenReturn(CompletableFuture.completedFuture(true));
+        assertFalse(manager.check(clientInfo, mockActionInfo).join());
+        assertTrue(manager.check(clientInfo, mockActionInfo).join());
+        manager.close();
+    }
+
+    @Test
+    public void invalidateCheckCache() {
+        System.setProperty(AUTH_CHECK_CACHE_EXPIRY_SECONDS.propKey, "5");
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        ArgumentCaptor<ICheckCacheInvalidator> invalidatorCaptor =
+            ArgumentCaptor.forClass(ICheckCacheInvalidator.class);
+        verify(mockProvider).setCheckCacheInvalidator(invalidatorCaptor.capture());
+        ICheckCacheInvalidator invalidator = invalidatorCaptor.getValue();
+
+        ClientInfo client = ClientInfo.newBuilder().setTenantId("tenantA").putMetadata("userId", "user").build();
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(CompletableFuture.completedFuture(true))
+            .thenReturn(CompletableFuture.completedFuture(false));
+        assertTrue(manager.check(client, mockActionInfo).join());
+        assertTrue(manager.check(client, mockActionInfo).join());
+
+        invalidator.invalidate(client);
+        assertFalse(manager.check(client, mockActionInfo).join());
+
+        invalidator.invalidate("tenantA");
+        manager.check(client, mockActionInfo).join();
+
+        invalidator.invalidateAll();
+        manager.check(client, mockActionInfo).join();
+        verify(mockProvider, times(4)).check(client, mockActionInfo);
+        manager.close();
+    }
+
+    @Test
+    public void checkCacheSharedByConnections() {
+        System.setProperty(AUTH_CHECK_CACHE_EXPIRY_SECONDS.propKey, "5");
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        ClientInfo conn1 = ClientInfo.newBuilder().setTenantId("tenantA")
+            .putMetadata("userId", "user")
+            .putMetadata("clientId", "client")
+            .putMetadata("address", "127.0.0.1:1883")
+            .putMetadata("channelId", "channel1")
+            .build();
+        ClientInfo conn2 = conn1.toBuilder()
+            .putMetadata("address", "127.0.0.1:1884")
+            .putMetadata("channelId", "channel2")
+            .build();
+        ClientInfo otherClient = conn1.toBuilder().putMetadata("clientId", "otherClient").build();
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(CompletableFuture.completedFuture(true));
+        assertTrue(manager.check(conn1, mockActionInfo).join());
+        assertTrue(manager.check(conn2, mockActionInfo).join());
+        verify(mockProvider, times(1)).check(any(ClientInfo.class), any(MQTTAction.class));
+
+        assertTrue(manager.check(otherClient, mockActionInfo).join());
+        verify(mockProvider, times(1)).check(otherClient, mockActionInfo);
+        manager.close();
+    }
+
+    @Test
+    public void inflightCheckNotCachedAfterInvalidation() {
+        System.setProperty(AUTH_CHECK_CACHE_EXPIRY_SECONDS.propKey, "5");
+        manager =
+            new AuthProviderManager(mockProvider.getClass().getName(), pluginManager, settingProvider, eventCollector);
+        ArgumentCaptor<ICheckCacheInvalidator> invalidatorCaptor =
+            ArgumentCaptor.forClass(ICheckCacheInvalidator.class);
+        verify(mockProvider).setCheckCacheInvalidator(invalidatorCaptor.capture());
+        ICheckCacheInvalidator invalidator = invalidatorCaptor.getValue();
+
+        ClientInfo client = ClientInfo.newBuilder().setTenantId("tenantA").putMetadata("userId", "user").build();
+        CompletableFuture<Boolean> inflightCheck = new CompletableFuture<>();
+        when(mockProvider.check(any(ClientInfo.class), any(MQTTAction.class)))
+            .thenReturn(inflightCheck)
+            .thenReturn(CompletableFuture.completedFuture(false));
+        CompletableFuture<Boolean> checkFuture = manager.check(client, mockActionInfo);
+        invalidator.invalidate("tenantA");
+        inflightCheck.complete(true);
+        assertTrue(checkFuture.join());
+
+        assertFalse(manager.check(client, mockActionInfo).join());
+        assertFalse(manager.check(client, mockActionInfo).join());
+        verify(mockProvider, times(2)).check(client, mockActionInfo);
+        manager.close();
+    }
 }
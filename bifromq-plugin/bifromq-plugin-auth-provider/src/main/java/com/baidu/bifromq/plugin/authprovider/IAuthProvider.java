@@ -36,6 +36,16 @@ public interface IAuthProvider extends ExtensionPoint {
      */
     CompletableFuture<Boolean> check(ClientInfo client, MQTTAction action);
 
+    /**
+     * The check results may be cached for a short while to save the calls for the same action of the same client.
+     * Implement this method to keep the invalidator, and use it to drop the cached results once the permissions are
+     * changed.
+     *
+     * @param invalidator the invalidator of cached check results
+     */
+    default void setCheckCacheInvalidator(ICheckCacheInvalidator invalidator) {
+    }
+
     /**
      * This method will be called during broker shutdown
      */
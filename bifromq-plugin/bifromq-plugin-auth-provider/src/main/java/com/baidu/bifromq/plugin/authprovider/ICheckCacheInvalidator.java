@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.plugin.authprovider;
+
+import com.baidu.bifromq.type.ClientInfo;
+
+/**
+ * The handle for the auth provider to invalidate the cached check results once the permissions are changed.
+ */
+public interface ICheckCacheInvalidator {
+    /**
+     * Invalidate the cached check results of the client, which is identified by its tenantId, type, userId and
+     * clientId, so the results cached for all its connections are invalidated.
+     *
+     * @param client the client whose permissions are changed
+     */
+    void invalidate(ClientInfo client);
+
+    /**
+     * Invalidate the cached check results of all clients of the tenant
+     *
+     * @param tenantId the tenant whose permissions are changed
+     */
+    void invalidate(String tenantId);
+
+    /**
+     * Invalidate all cached check results
+     */
+    void invalidateAll();
+}
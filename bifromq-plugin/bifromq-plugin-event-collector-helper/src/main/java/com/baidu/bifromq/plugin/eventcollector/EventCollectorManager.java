@@ -11,30 +11,78 @@
  * See the License for the specific language governing permissions and limitations under the License.
  */
 
+
 package com.baidu.bifromq.plugin.eventcollector;
 
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.EVENT_COLLECTOR_ASYNC;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.EVENT_COLLECTOR_BATCH_SIZE;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.EVENT_COLLECTOR_OVERFLOW_POLICY;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.EVENT_COLLECTOR_QUEUE_CAPACITY;
 
+import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basehlc.HLC;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CaseFormat;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import lombok.extern.slf4j.Slf4j;
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscArrayQueue;
 import org.pf4j.PluginManager;
 
 @Slf4j
 public class EventCollectorManager implements IEventCollector {
+    /**
+     * The policy for the event reported when the queue is full in async mode.
+     */
+    public enum OverflowPolicy {
+        DropNewest,
+        DropOldest,
+        // start dropping events randomly once the queue is over three quarters full
+        Sample
+    }
+
     private static final EventPool ZERO_OUT_HOLDERS = new EventPool();
+    private static final int SAMPLE_RATIO = 8;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
     private final AtomicBoolean stopped = new AtomicBoolean();
     private final Map<String, IEventCollector> eventCollectors = new HashMap<>();
     private final Map<String, Timer> eventCollectorTimers = new HashMap<>();
     private final Counter callInvokeCounter;
+    // the queue and the deliverer thread are only available in async mode
+    private final MpscArrayQueue<Event<?>> eventQueue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final int sampleThreshold;
+    // single consumer of the queue, the drop-oldest policy polls the queue on behalf of the deliverer
+    private final Object consumerLock = new Object();
+    private final Thread deliverer;
+    // set once the deliverer has exited, the events enqueued afterward are drained by the reporters as dropped
+    private volatile boolean delivererExited;
+    private Gauge queueDepthGauge;
+    private Counter dropCounter;
 
     public EventCollectorManager(PluginManager pluginMgr) {
+        this(pluginMgr, EVENT_COLLECTOR_ASYNC.get(), EVENT_COLLECTOR_QUEUE_CAPACITY.get(),
+            EVENT_COLLECTOR_BATCH_SIZE.get(), toPolicy(EVENT_COLLECTOR_OVERFLOW_POLICY.get()));
+    }
 
+    @VisibleForTesting
+    EventCollectorManager(PluginManager pluginMgr,
+                          boolean async,
+                          int queueCapacity,
+                          int batchSize,
+                          OverflowPolicy overflowPolicy) {
         for (IEventCollector eventCollector : pluginMgr.getExtensions(IEventCollector.class)) {
             log.info("Event collector loaded: {}", eventCollector.getClass().getName());
             eventCollectors.put(eventCollector.getClass().getName(), eventCollector);
@@ -45,31 +93,72 @@ public class EventCollectorManager implements IEventCollector {
         }
         callInvokeCounter = Counter.builder("event.collector.report.invoke.count")
             .register(Metrics.globalRegistry);
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = batchSize;
+        if (async) {
+            eventQueue = new MpscArrayQueue<>(queueCapacity);
+            sampleThreshold = eventQueue.capacity() / 4 * 3;
+            queueDepthGauge = Gauge.builder("event.collector.queue.depth", eventQueue::size)
+                .register(Metrics.globalRegistry);
+            dropCounter = Counter.builder("event.collector.drop.count")
+                .tag("policy", overflowPolicy.name())
+                .register(Metrics.globalRegistry);
+            deliverer = EnvProvider.INSTANCE.newThreadFactory("event-collector-deliverer", true)
+                .newThread(this::deliverLoop);
+            deliverer.start();
+            log.info("Event collector reports asynchronously: capacity={}, batchSize={}, overflowPolicy={}",
+                eventQueue.capacity(), batchSize, overflowPolicy);
+        } else {
+            eventQueue = null;
+            sampleThreshold = 0;
+            deliverer = null;
+        }
     }
 
     @Override
     public void report(Event<?> event) {
         callInvokeCounter.increment();
         event.hlc(HLC.INST.get());
-        for (Map.Entry<String, IEventCollector> entry : eventCollectors.entrySet()) {
-            Timer.Sample sample = Timer.start();
-            try {
-                entry.getValue().report(event);
-            } catch (Throwable e) {
-                log.warn("Failed to report event to collector: {}", entry.getKey());
-            } finally {
-                sample.stop(eventCollectorTimers.get(entry.getKey()));
+        if (eventQueue == null) {
+            for (Map.Entry<String, IEventCollector> entry : eventCollectors.entrySet()) {
+                Timer.Sample sample = Timer.start();
+                try {
+                    entry.getValue().report(event);
+                } catch (Throwable e) {
+                    log.warn("Failed to report event to collector: {}", entry.getKey());
+                } finally {
+                    sample.stop(eventCollectorTimers.get(entry.getKey()));
+                }
+            }
+        } else if (!stopped.get()) {
+            // the event may come from the thread local pool, so enqueue a copy of it
+            enqueue((Event<?>) event.clone());
+            if (delivererExited) {
+                dropQueued();
             }
         }
         // clear out the event
         event.clone(ZERO_OUT_HOLDERS.get(event.type()));
     }
 
-
     @Override
     public void close() {
         if (stopped.compareAndSet(false, true)) {
             log.debug("Closing event collector manager");
+            if (deliverer != null) {
+                // the deliverer exits after the queued events are delivered
+                LockSupport.unpark(deliverer);
+                try {
+                    deliverer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // deliver the events enqueued after the deliverer's last drain
+                delivererExited = true;
+                deliverQueued();
+                Metrics.globalRegistry.remove(queueDepthGauge);
+                Metrics.globalRegistry.remove(dropCounter);
+            }
             eventCollectors.values().forEach(IEventCollector::close);
             eventCollectorTimers.values().forEach(Metrics.globalRegistry::remove);
             Metrics.globalRegistry.remove(callInvokeCounter);
@@ -81,4 +170,93 @@ public class EventCollectorManager implements IEventCollector {
     IEventCollector get(String collectorName) {
         return eventCollectors.get(collectorName);
     }
+
+    private void enqueue(Event<?> event) {
+        switch (overflowPolicy) {
+            case DropOldest:
+                if (!eventQueue.offer(event)) {
+                    synchronized (consumerLock) {
+                        if (eventQueue.relaxedPoll() != null) {
+                            dropCounter.increment();
+                        }
+                    }
+                    if (!eventQueue.offer(event)) {
+                        dropCounter.increment();
+                    }
+                }
+                break;
+            case Sample:
+                if (eventQueue.size() >= sampleThreshold && ThreadLocalRandom.current().nextInt(SAMPLE_RATIO) != 0) {
+                    dropCounter.increment();
+                    break;
+                }
+                if (!eventQueue.offer(event)) {
+                    dropCounter.increment();
+                }
+                break;
+            case DropNewest:
+            default:
+                if (!eventQueue.offer(event)) {
+                    dropCounter.increment();
+                }
+        }
+    }
+
+    private void deliverLoop() {
+        List<Event<?>> batch = new ArrayList<>(batchSize);
+        MessagePassingQueue.Consumer<Event<?>> batcher = batch::add;
+        while (true) {
+            synchronized (consumerLock) {
+                eventQueue.drain(batcher, batchSize);
+            }
+            if (batch.isEmpty()) {
+                if (stopped.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            deliver(batch);
+            batch.clear();
+        }
+    }
+
+    private void deliverQueued() {
+        List<Event<?>> batch = new ArrayList<>(batchSize);
+        MessagePassingQueue.Consumer<Event<?>> batcher = batch::add;
+        while (true) {
+            synchronized (consumerLock) {
+                eventQueue.drain(batcher, batchSize);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            deliver(batch);
+            batch.clear();
+        }
+    }
+
+    private void dropQueued() {
+        synchronized (consumerLock) {
+            eventQueue.drain(e -> dropCounter.increment());
+        }
+    }
+
+    private void deliver(List<Event<?>> batch) {
+        for (Map.Entry<String, IEventCollector> entry : eventCollectors.entrySet()) {
+            Timer.Sample sample = Timer.start();
+            try {
+                entry.getValue().reportBatch(batch);
+            } catch (Throwable e) {
+                log.warn("Failed to report events to collector: {}", entry.getKey());
+            } finally {
+                sample.stop(eventCollectorTimers.get(entry.getKey()));
+            }
+        }
+    }
+
+    // the policy has been validated by the sysprop parser
+    private static OverflowPolicy toPolicy(String policy) {
+        return OverflowPolicy.valueOf(CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, policy));
+    }
 }
@@ -15,9 +15,13 @@ package com.baidu.bifromq.plugin.eventcollector;
 
 import static org.awaitility.Awaitility.await;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
 
 import com.baidu.bifromq.plugin.eventcollector.mqttbroker.PingReq;
 import com.baidu.bifromq.type.ClientInfo;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -48,4 +52,75 @@ public class EventCollectorManagerTest {
         manager.report(ThreadLocalEventPool.getLocal(PingReq.class).clientInfo(ClientInfo.getDefaultInstance()));
         await().until(() -> collector.events.size() == 1);
     }
+
+    @Test
+    public void reportEventAsync() {
+        EventCollectorManager manager =
+            new EventCollectorManager(pluginManager, true, 16, 4, EventCollectorManager.OverflowPolicy.DropNewest);
+        EventCollectorTestStub collector = (EventCollectorTestStub) manager.get(EventCollectorTestStub.class.getName());
+        PingReq event = ThreadLocalEventPool.getLocal(PingReq.class);
+        for (int i = 0; i < 10; i++) {
+            manager.report(event.clientInfo(client(i)));
+        }
+        await().until(() -> collector.events.size() == 10);
+        // the pooled event is copied
+        collector.events.forEach(e -> assertNotSame(e, event));
+        assertEquals(tenants(collector.events), List.of("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"));
+        manager.close();
+    }
+
+    @Test
+    public void dropNewest() {
+        List<String> tenants = overflow(EventCollectorManager.OverflowPolicy.DropNewest);
+        assertEquals(tenants, List.of("0", "1", "2", "3", "4"));
+    }
+
+    @Test
+    public void dropOldest() {
+        List<String> tenants = overflow(EventCollectorManager.OverflowPolicy.DropOldest);
+        assertEquals(tenants, List.of("0", "6", "7", "8", "9"));
+    }
+
+    @Test
+    public void sample() {
+        List<String> tenants = overflow(EventCollectorManager.OverflowPolicy.Sample);
+        // the queue is never overfilled
+        assertEquals(tenants.subList(0, 4), List.of("0", "1", "2", "3"));
+    }
+
+    @Test
+    public void deliverQueuedEventsWhenClose() {
+        EventCollectorManager manager =
+            new EventCollectorManager(pluginManager, true, 16, 4, EventCollectorManager.OverflowPolicy.DropNewest);
+        EventCollectorTestStub collector = (EventCollectorTestStub) manager.get(EventCollectorTestStub.class.getName());
+        for (int i = 0; i < 10; i++) {
+            manager.report(ThreadLocalEventPool.getLocal(PingReq.class).clientInfo(client(i)));
+        }
+        manager.close();
+        assertEquals(collector.events.size(), 10);
+    }
+
+    private List<String> overflow(EventCollectorManager.OverflowPolicy policy) {
+        EventCollectorManager manager = new EventCollectorManager(pluginManager, true, 4, 4, policy);
+        EventCollectorTestStub collector = (EventCollectorTestStub) manager.get(EventCollectorTestStub.class.getName());
+        CountDownLatch blocker = new CountDownLatch(1);
+        collector.blocker = blocker;
+        manager.report(ThreadLocalEventPool.getLocal(PingReq.class).clientInfo(client(0)));
+        await().until(() -> collector.blocked);
+        for (int i = 1; i < 10; i++) {
+            manager.report(ThreadLocalEventPool.getLocal(PingReq.class).clientInfo(client(i)));
+        }
+        collector.blocker = null;
+        blocker.countDown();
+        manager.close();
+        return tenants(collector.events);
+    }
+
+    private ClientInfo client(int i) {
+        return ClientInfo.newBuilder().setTenantId(String.valueOf(i)).build();
+    }
+
+    private List<String> tenants(List<Event<?>> events) {
+        return events.stream().map(e -> ((PingReq) e).clientInfo().getTenantId()).collect(Collectors.toList());
+    }
 }
@@ -15,6 +15,8 @@ package com.baidu.bifromq.plugin.eventcollector;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.pf4j.Extension;
 
@@ -22,10 +24,18 @@ import org.pf4j.Extension;
 @Extension
 public class EventCollectorTestStub implements IEventCollector {
     public final List<Event<?>> events = new ArrayList<>();
+    public volatile CountDownLatch blocker;
+    public volatile boolean blocked;
 
+    @SneakyThrows
     @Override
     public void report(Event<?> event) {
         log.info("Test sub: {}", event);
+        CountDownLatch latch = blocker;
+        if (latch != null) {
+            blocked = true;
+            latch.await();
+        }
         events.add(event);
     }
 }
@@ -13,6 +13,7 @@
 
 package com.baidu.bifromq.plugin.eventcollector;
 
+import java.util.List;
 import org.pf4j.ExtensionPoint;
 
 public interface IEventCollector extends ExtensionPoint {
@@ -26,6 +27,20 @@ public interface IEventCollector extends ExtensionPoint {
      */
     void report(Event<?> event);
 
+    /**
+     * Implement this method to receive the events in batch when they are reported asynchronously, the default
+     * implementation reports them one by one.
+     * <p/>
+     * Note: The argument list will be reused in later call, while the events in it won't.
+     *
+     * @param events the events reported
+     */
+    default void reportBatch(List<Event<?>> events) {
+        for (Event<?> event : events) {
+            report(event);
+        }
+    }
+
     /**
      * This method will be called during broker shutdown
      */
@@ -11,24 +11,46 @@
  * See the License for the specific language governing permissions and limitations under the License.
  */
 
+
 package com.baidu.bifromq.plugin.settingprovider;
 
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.SETTING_CACHE_MAX_SIZE;
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.SETTING_REFRESH_THREADS;
+
+import com.baidu.bifromq.baseenv.EnvProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Preconditions;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.pf4j.PluginManager;
 
+/**
+ * The provided setting values are cached per tenant. The stale value is still returned while it's being refreshed from
+ * the provider in background, so the provider is called at most once per refresh interval of the setting for each
+ * tenant, and only the first access of the tenant waits for the provider.
+ */
 @Slf4j
 public class SettingProviderManager implements ISettingProvider {
+    // the cached values of the tenant inactive for a while are dropped
+    private static final Duration CACHE_EXPIRY = Duration.ofMinutes(10);
     private final AtomicBoolean stopped = new AtomicBoolean();
     private final ISettingProvider provider;
+    private final Cache<SettingKey, CachedValue> cache;
+    private final ExecutorService refreshExecutor;
     private final Timer provideCallTimer;
     private final Counter provideCallErrorCounter;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
 
     public SettingProviderManager(String settingProviderFQN, PluginManager pluginMgr) {
         Map<String, ISettingProvider> availSettingProviders = pluginMgr.getExtensions(ISettingProvider.class).stream()
@@ -47,6 +69,12 @@ public class SettingProviderManager implements ISettingProvider {
                 provider = availSettingProviders.get(settingProviderFQN);
             }
         }
+        cache = Caffeine.newBuilder()
+            .expireAfterAccess(CACHE_EXPIRY)
+            .maximumSize(SETTING_CACHE_MAX_SIZE.<Long>get())
+            .build();
+        refreshExecutor = Executors.newFixedThreadPool(SETTING_REFRESH_THREADS.get(),
+            EnvProvider.INSTANCE.newThreadFactory("setting-refresher", true));
         provideCallTimer = Timer.builder("call.exec.timer")
             .tag("method", "SettingProvider/provide")
             .tag("type", provider.getClass().getName())
@@ -55,42 +83,116 @@ public class SettingProviderManager implements ISettingProvider {
             .tag("method", "SettingProvider/provide")
             .tag("type", provider.getClass().getName())
             .register(Metrics.globalRegistry);
+        cacheHitCounter = Counter.builder("call.cache.hit.count")
+            .tag("method", "SettingProvider/provide")
+            .tag("type", provider.getClass().getName())
+            .register(Metrics.globalRegistry);
+        cacheMissCounter = Counter.builder("call.cache.miss.count")
+            .tag("method", "SettingProvider/provide")
+            .tag("type", provider.getClass().getName())
+            .register(Metrics.globalRegistry);
+        provider.setSettingChangeListener(new SettingChangeListener());
     }
 
+    @SuppressWarnings("unchecked")
     public <R> R provide(Setting setting, String tenantId) {
         assert !stopped.get();
-        R current = setting.current(tenantId);
+        SettingKey key = new SettingKey(setting, tenantId);
+        CachedValue cached = cache.getIfPresent(key);
+        if (cached == null) {
+            cacheMissCounter.increment();
+            // the first access waits for the value from the provider
+            CachedValue loaded = new CachedValue(load(setting, tenantId, setting.current(tenantId)));
+            cached = cache.asMap().putIfAbsent(key, loaded);
+            if (cached == null) {
+                cached = loaded;
+            }
+        } else {
+            cacheHitCounter.increment();
+            if (cached.isStale(setting.refreshInterval) && cached.refreshing.compareAndSet(false, true)) {
+                refresh(key, cached);
+            }
+        }
+        return (R) cached.value;
+    }
+
+    public ISettingProvider get() {
+        return provider;
+    }
+
+    @Override
+    public void close() {
+        if (stopped.compareAndSet(false, true)) {
+            log.info("Closing setting provider manager");
+            refreshExecutor.shutdownNow();
+            provider.close();
+            Metrics.globalRegistry.remove(provideCallTimer);
+            Metrics.globalRegistry.remove(provideCallErrorCounter);
+            Metrics.globalRegistry.remove(cacheHitCounter);
+            Metrics.globalRegistry.remove(cacheMissCounter);
+            log.info("Setting provider manager closed");
+        }
+    }
+
+    private void refresh(SettingKey key, CachedValue cached) {
+        try {
+            refreshExecutor.execute(() -> {
+                Object newVal = load(key.setting, key.tenantId, cached.value);
+                // the value pushed by the provider during refreshing takes precedence
+                cache.asMap().replace(key, cached, new CachedValue(newVal));
+            });
+        } catch (RejectedExecutionException e) {
+            cached.refreshing.set(false);
+        }
+    }
+
+    private Object load(Setting setting, String tenantId, Object current) {
         try {
             Timer.Sample sample = Timer.start();
-            R newVal = provider.provide(setting, tenantId);
+            Object newVal = provider.provide(setting, tenantId);
             sample.stop(provideCallTimer);
             if (setting.isValid(newVal)) {
                 // update the value
                 setting.current(tenantId, newVal);
+                return newVal;
             } else {
                 log.warn("Invalid setting value: setting={}, value={}", setting.name(), newVal);
             }
         } catch (Throwable e) {
             log.error("Setting provider throws exception: setting={}", setting.name(), e);
-            // keep current value in case provider throws
-            setting.current(tenantId, current);
             provideCallErrorCounter.increment();
         }
+        // keep current value in case provider throws or returns invalid value
+        setting.current(tenantId, current);
         return current;
     }
 
-    public ISettingProvider get() {
-        return provider;
+    private record SettingKey(Setting setting, String tenantId) {
     }
 
-    @Override
-    public void close() {
-        if (stopped.compareAndSet(false, true)) {
-            log.info("Closing setting provider manager");
-            provider.close();
-            Metrics.globalRegistry.remove(provideCallTimer);
-            Metrics.globalRegistry.remove(provideCallErrorCounter);
-            log.info("Setting provider manager closed");
+    private static class CachedValue {
+        final Object value;
+        final long loadedAt = System.nanoTime();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedValue(Object value) {
+            this.value = value;
+        }
+
+        boolean isStale(Duration refreshInterval) {
+            return System.nanoTime() - loadedAt > refreshInterval.toNanos();
+        }
+    }
+
+    private class SettingChangeListener implements ISettingChangeListener {
+        @Override
+        public <R> void onChange(Setting setting, String tenantId, R newVal) {
+            if (!setting.isValid(newVal)) {
+                log.warn("Invalid setting value pushed: setting={}, value={}", setting.name(), newVal);
+                return;
+            }
+            setting.current(tenantId, newVal);
+            cache.put(new SettingKey(setting, tenantId), new CachedValue(newVal));
         }
     }
 }
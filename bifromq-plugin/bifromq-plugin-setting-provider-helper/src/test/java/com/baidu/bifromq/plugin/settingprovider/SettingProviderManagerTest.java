@@ -14,9 +14,11 @@
 package com.baidu.bifromq.plugin.settingprovider;
 
 import static org.awaitility.Awaitility.await;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.time.Duration;
 import org.pf4j.DefaultPluginManager;
 import org.pf4j.PluginManager;
 import org.testng.annotations.AfterMethod;
@@ -57,6 +59,37 @@ public class SettingProviderManagerTest {
         manager.close();
     }
 
+    @Test
+    public void staleWhileRevalidate() {
+        manager = new SettingProviderManager(SettingProviderTestStub.class.getName(), pluginManager);
+        SettingProviderTestStub stub = (SettingProviderTestStub) manager.get();
+        stub.setValue(Setting.MaxTopicLevelLength, 64);
+        assertEquals((int) manager.provide(Setting.MaxTopicLevelLength, tenantId), 64);
+
+        stub.setValue(Setting.MaxTopicLevelLength, 32);
+        // cached value is returned until refreshed
+        assertEquals((int) manager.provide(Setting.MaxTopicLevelLength, tenantId), 64);
+        await().atMost(Setting.MaxTopicLevelLength.refreshInterval.plus(Duration.ofSeconds(5)))
+            .until(() -> (int) manager.provide(Setting.MaxTopicLevelLength, tenantId) == 32);
+        manager.close();
+    }
+
+    @Test
+    public void pushChange() {
+        manager = new SettingProviderManager(SettingProviderTestStub.class.getName(), pluginManager);
+        SettingProviderTestStub stub = (SettingProviderTestStub) manager.get();
+        stub.setValue(Setting.MaxTopicLength, 128);
+        assertEquals((int) manager.provide(Setting.MaxTopicLength, tenantId), 128);
+
+        stub.pushValue(Setting.MaxTopicLength, tenantId, 512);
+        assertEquals((int) manager.provide(Setting.MaxTopicLength, tenantId), 512);
+
+        // invalid value is ignored
+        stub.pushValue(Setting.MaxTopicLength, tenantId, 65536);
+        assertEquals((int) manager.provide(Setting.MaxTopicLength, tenantId), 512);
+        manager.close();
+    }
+
     @Test
     public void authPluginNotFound() {
         try {
@@ -13,13 +13,14 @@
 
 package com.baidu.bifromq.plugin.settingprovider;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.pf4j.Extension;
 
 @Extension
 public class SettingProviderTestStub implements ISettingProvider {
-    private final Map<Setting, Object> settings = new HashMap<>();
+    private final Map<Setting, Object> settings = new ConcurrentHashMap<>();
+    private ISettingChangeListener listener;
 
     @SuppressWarnings("unchecked")
     @Override
@@ -27,7 +28,17 @@ public class SettingProviderTestStub implements ISettingProvider {
         return settings.containsKey(setting) ? (R) settings.get(setting) : setting.current(tenantId);
     }
 
+    @Override
+    public void setSettingChangeListener(ISettingChangeListener listener) {
+        this.listener = listener;
+    }
+
     public void setValue(Setting setting, Object newVal) {
         settings.put(setting, newVal);
     }
+
+    public void pushValue(Setting setting, String tenantId, Object newVal) {
+        settings.put(setting, newVal);
+        listener.onChange(setting, tenantId, newVal);
+    }
 }
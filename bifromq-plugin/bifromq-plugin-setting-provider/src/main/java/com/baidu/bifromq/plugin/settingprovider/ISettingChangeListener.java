@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.plugin.settingprovider;
+
+/**
+ * The listener for the setting provider to push the changed setting values.
+ */
+public interface ISettingChangeListener {
+    /**
+     * Notify the new value of the setting for given tenant, the invalid value will be ignored
+     *
+     * @param setting  the changed setting
+     * @param tenantId the id of the tenant
+     * @param newVal   the new value of the setting
+     */
+    <R> void onChange(Setting setting, String tenantId, R newVal);
+}
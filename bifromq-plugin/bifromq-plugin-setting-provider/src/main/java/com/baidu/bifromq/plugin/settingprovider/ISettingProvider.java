@@ -28,6 +28,16 @@ public interface ISettingProvider extends ExtensionPoint {
      */
     <R> R provide(Setting setting, String tenantId);
 
+    /**
+     * The provided values are cached and refreshed periodically in background. Implement this method to keep the
+     * listener, and use it to push the changed values so that they take effect without waiting for the next refresh.
+     *
+     * @param listener the listener of setting changes
+     */
+    default void setSettingChangeListener(ISettingChangeListener listener) {
+
+    }
+
     /**
      * This method will be called during broker shutdown
      */
@@ -39,13 +39,20 @@ public enum Setting {
     OfflineExpireTimeSeconds(Long.class, val -> (long) val > 0, 24 * 60 * 60L),
     OfflineQueueSize(Integer.class, val -> (int) val > 0 && (int) val <= 100000, 1000),
     OfflineOverflowDropOldest(Boolean.class, val -> true, false),
+    OfflineQoS0InMemory(Boolean.class, val -> true, false),
     RetainedTopicLimit(Integer.class, val -> (int) val >= 0, 10),
     RetainMessageMatchLimit(Integer.class, val -> (int) val >= 0, 10),
     RetainEnabled(Boolean.class, val -> true, true),
     DistReservedUnitInterval(Long.class, val -> (long) val > 0 && (long) val <= 0xFFFFFFFFL, 0xFFFFFFFFL),
     DistLimitUnitInterval(Long.class, val -> (long) val >= 0 && (long) val <= 0xFFFFFFFFL, 0L);
 
+    private static final long DEFAULT_REFRESH_INTERVAL_SECONDS = 5;
     public final Class<?> valueType;
+    /**
+     * The interval for refreshing the cached value of the setting from the provider, which could be overridden by the
+     * system property named '{setting}.refreshSeconds'
+     */
+    public final Duration refreshInterval;
     final Predicate<Object> validator;
     final Object initial;
     final Cache<String, Object> currentVals;
@@ -56,6 +63,7 @@ public enum Setting {
         initial = resolve(initial);
         assert isValid(initial);
         this.initial = initial;
+        this.refreshInterval = resolveRefreshInterval();
         currentVals = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ofSeconds(5))
             .scheduler(Scheduler.systemScheduler())
@@ -118,4 +126,20 @@ public enum Setting {
         }
         return initial;
     }
+
+    Duration resolveRefreshInterval() {
+        String override = System.getProperty(name() + ".refreshSeconds");
+        if (override != null) {
+            try {
+                long seconds = Long.parseLong(override);
+                if (seconds > 0) {
+                    return Duration.ofSeconds(seconds);
+                }
+            } catch (Throwable e) {
+                // fallthrough
+            }
+            log.error("Invalid refresh interval from system property: setting={}, value={}", name(), override);
+        }
+        return Duration.ofSeconds(DEFAULT_REFRESH_INTERVAL_SECONDS);
+    }
 }
\ No newline at end of file
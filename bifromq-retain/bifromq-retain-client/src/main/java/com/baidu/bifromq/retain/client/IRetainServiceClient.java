@@ -18,6 +18,7 @@ import com.baidu.bifromq.retain.rpc.proto.MatchReply;
 import com.baidu.bifromq.retain.rpc.proto.RetainReply;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
+import io.netty.buffer.ByteBuf;
 import io.reactivex.rxjava3.core.Observable;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
@@ -38,6 +39,12 @@ public interface IRetainServiceClient {
     interface IClientPipeline {
         CompletableFuture<RetainReply> retain(long reqId, String topic, QoS qos, ByteBuffer payload, int expirySeconds);
 
+        /**
+         * Retain the payload without copying if it's backed by a single buffer, the payload is retained until the
+         * request has been sent.
+         */
+        CompletableFuture<RetainReply> retain(long reqId, String topic, QoS qos, ByteBuf payload, int expirySeconds);
+
         void close();
     }
 
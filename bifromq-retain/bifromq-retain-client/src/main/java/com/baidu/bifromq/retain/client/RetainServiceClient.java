@@ -25,6 +25,11 @@ import com.baidu.bifromq.retain.rpc.proto.RetainRequest;
 import com.baidu.bifromq.retain.rpc.proto.RetainServiceGrpc;
 import com.baidu.bifromq.type.ClientInfo;
 import com.baidu.bifromq.type.QoS;
+import com.google.protobuf.ByteString;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.reactivex.rxjava3.core.Observable;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
@@ -39,6 +44,15 @@ import lombok.extern.slf4j.Slf4j;
 class RetainServiceClient implements IRetainServiceClient {
     private final IRPCClient rpcClient;
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    // the count and total amount tell the rate of payloads and bytes wrapped in place or copied onto heap
+    private final DistributionSummary wrappedPayloadBytes = DistributionSummary.builder("retain.client.payload.bytes")
+        .tags("copy", "false")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
+    private final DistributionSummary copiedPayloadBytes = DistributionSummary.builder("retain.client.payload.bytes")
+        .tags("copy", "true")
+        .baseUnit("bytes")
+        .register(Metrics.globalRegistry);
 
     RetainServiceClient(@NonNull IRPCClient rpcClient) {
         this.rpcClient = rpcClient;
@@ -48,6 +62,8 @@ class RetainServiceClient implements IRetainServiceClient {
     public void stop() {
         if (closed.compareAndSet(false, true)) {
             log.info("Stopping retain client");
+            Metrics.globalRegistry.remove(wrappedPayloadBytes);
+            Metrics.globalRegistry.remove(copiedPayloadBytes);
             log.debug("Stopping rpc client");
             rpcClient.stop();
             log.debug("Retain client stopped");
@@ -72,23 +88,40 @@ class RetainServiceClient implements IRetainServiceClient {
             @Override
             public CompletableFuture<RetainReply> retain(long reqId, String topic,
                                                          QoS qos, ByteBuffer payload, int expirySeconds) {
-                long now = System.currentTimeMillis();
-                long expiry = expirySeconds == Integer.MAX_VALUE ? Long.MAX_VALUE : now +
-                    TimeUnit.MILLISECONDS.convert(expirySeconds, TimeUnit.SECONDS);
-                return ppln.invoke(RetainRequest.newBuilder()
-                        .setReqId(reqId)
-                        .setQos(qos)
-                        .setTopic(topic)
-                        .setTimestamp(now)
-                        .setExpireTimestamp(expiry)
-                        .setPayload(unsafeWrap(payload))
-                        .build())
+                return ppln.invoke(buildRequest(reqId, topic, qos, unsafeWrap(payload), expirySeconds))
                     .exceptionally(e -> RetainReply.newBuilder()
                         .setReqId(reqId)
                         .setResult(RetainReply.Result.ERROR)
                         .build());
             }
 
+            @Override
+            public CompletableFuture<RetainReply> retain(long reqId, String topic,
+                                                         QoS qos, ByteBuf payload, int expirySeconds) {
+                CompletableFuture<RetainReply> onDone;
+                if (payload.nioBufferCount() == 1) {
+                    ByteBuf retained = payload.retainedDuplicate();
+                    wrappedPayloadBytes.record(retained.readableBytes());
+                    try {
+                        onDone = ppln.invoke(buildRequest(reqId, topic, qos, unsafeWrap(retained.nioBuffer()),
+                            expirySeconds));
+                        // keep the buffer alive until the request is no longer referenced by the pipeline
+                        onDone.whenComplete((v, e) -> retained.release());
+                    } catch (Throwable e) {
+                        retained.release();
+                        onDone = CompletableFuture.failedFuture(e);
+                    }
+                } else {
+                    copiedPayloadBytes.record(payload.readableBytes());
+                    onDone = ppln.invoke(buildRequest(reqId, topic, qos, unsafeWrap(ByteBufUtil.getBytes(payload)),
+                        expirySeconds));
+                }
+                return onDone.exceptionally(e -> RetainReply.newBuilder()
+                    .setReqId(reqId)
+                    .setResult(RetainReply.Result.ERROR)
+                    .build());
+            }
+
             @Override
             public void close() {
                 ppln.close();
@@ -96,6 +129,20 @@ class RetainServiceClient implements IRetainServiceClient {
         };
     }
 
+    private RetainRequest buildRequest(long reqId, String topic, QoS qos, ByteString payload, int expirySeconds) {
+        long now = System.currentTimeMillis();
+        long expiry = expirySeconds == Integer.MAX_VALUE ? Long.MAX_VALUE : now +
+            TimeUnit.MILLISECONDS.convert(expirySeconds, TimeUnit.SECONDS);
+        return RetainRequest.newBuilder()
+            .setReqId(reqId)
+            .setQos(qos)
+            .setTopic(topic)
+            .setTimestamp(now)
+            .setExpireTimestamp(expiry)
+            .setPayload(payload)
+            .build();
+    }
+
     @Override
     public CompletableFuture<MatchReply> match(long reqId, String tenantId,
                                                String topicFilter, int limit, ClientInfo clientInfo) {
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.retain.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.baserpc.IRPCClient;
+import com.baidu.bifromq.retain.rpc.proto.RetainReply;
+import com.baidu.bifromq.retain.rpc.proto.RetainRequest;
+import com.baidu.bifromq.type.ClientInfo;
+import com.baidu.bifromq.type.QoS;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RetainServiceClientTest {
+    private final ClientInfo clientInfo = ClientInfo.newBuilder().setTenantId("tenantA").build();
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private IRPCClient.IRequestPipeline<RetainRequest, RetainReply> ppln;
+    private SimpleMeterRegistry meterRegistry;
+    private AutoCloseable closeable;
+    private RetainServiceClient retainClient;
+    private IRetainServiceClient.IClientPipeline clientPipeline;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        Metrics.globalRegistry.add(meterRegistry);
+        doReturn(ppln).when(rpcClient)
+            .createRequestPipeline(anyString(), isNull(), isNull(), anyMap(), any(MethodDescriptor.class));
+        retainClient = new RetainServiceClient(rpcClient);
+        clientPipeline = retainClient.open(clientInfo);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        clientPipeline.close();
+        retainClient.stop();
+        Metrics.globalRegistry.remove(meterRegistry);
+        closeable.close();
+    }
+
+    @Test
+    public void releaseOnSuccess() {
+        CompletableFuture<RetainReply> requestDone = new CompletableFuture<>();
+        when(ppln.invoke(any(RetainRequest.class))).thenReturn(requestDone);
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<RetainReply> retainDone = clientPipeline.retain(1, "topic", QoS.AT_MOST_ONCE, payload, 10);
+        // the caller and the pending request both hold the buffer
+        assertEquals(payload.refCnt(), 2);
+        requestDone.complete(RetainReply.newBuilder().setReqId(1).setResult(RetainReply.Result.RETAINED).build());
+        assertEquals(retainDone.join().getResult(), RetainReply.Result.RETAINED);
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+        assertEquals(summary("false").count(), 1);
+        assertEquals(summary("false").totalAmount(), 8.0);
+    }
+
+    @Test
+    public void releaseOnFailure() {
+        CompletableFuture<RetainReply> requestDone = new CompletableFuture<>();
+        when(ppln.invoke(any(RetainRequest.class))).thenReturn(requestDone);
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<RetainReply> retainDone = clientPipeline.retain(1, "topic", QoS.AT_MOST_ONCE, payload, 10);
+        requestDone.completeExceptionally(new RuntimeException("Mock exception"));
+        assertEquals(retainDone.join().getResult(), RetainReply.Result.ERROR);
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void releaseOnReject() {
+        when(ppln.invoke(any(RetainRequest.class)))
+            .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("Mock reject")));
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<RetainReply> retainDone = clientPipeline.retain(1, "topic", QoS.AT_MOST_ONCE, payload, 10);
+        assertEquals(retainDone.join().getResult(), RetainReply.Result.ERROR);
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void releaseOnPipelineThrows() {
+        when(ppln.invoke(any(RetainRequest.class))).thenThrow(new RejectedExecutionException("Mock reject"));
+        ByteBuf payload = pooledPayload();
+        CompletableFuture<RetainReply> retainDone = clientPipeline.retain(1, "topic", QoS.AT_MOST_ONCE, payload, 10);
+        assertEquals(retainDone.join().getResult(), RetainReply.Result.ERROR);
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+    }
+
+    @Test
+    public void copyCompositePayload() {
+        when(ppln.invoke(any(RetainRequest.class))).thenReturn(CompletableFuture.completedFuture(
+            RetainReply.newBuilder().setReqId(1).setResult(RetainReply.Result.RETAINED).build()));
+        CompositeByteBuf payload = PooledByteBufAllocator.DEFAULT.compositeBuffer()
+            .addComponent(true, pooledPayload())
+            .addComponent(true, pooledPayload());
+        clientPipeline.retain(1, "topic", QoS.AT_MOST_ONCE, payload, 10).join();
+        assertEquals(payload.refCnt(), 1);
+        payload.release();
+        assertEquals(summary("true").count(), 1);
+        assertEquals(summary("true").totalAmount(), 16.0);
+    }
+
+    private ByteBuf pooledPayload() {
+        return PooledByteBufAllocator.DEFAULT.directBuffer(8).writeLong(System.nanoTime());
+    }
+
+    private DistributionSummary summary(String copy) {
+        return meterRegistry.find("retain.client.payload.bytes").tag("copy", copy).summary();
+    }
+}
@@ -156,7 +156,7 @@ public class RetainService extends RetainServiceGrpc.RetainServiceImplBase {
             .build();
         CompletableFuture<KVRangeROReply> replyFuture = linearized ?
             kvStoreClient.linearizedQuery(selectStore(setting), request) :
-            kvStoreClient.query(selectStore(setting), request);
+            kvStoreClient.query(setting, request);
         return replyFuture
             .thenApply(reply -> {
                 if (reply.getCode() == ReplyCode.Ok) {
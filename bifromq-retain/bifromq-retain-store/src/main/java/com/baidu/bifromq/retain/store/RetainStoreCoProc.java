@@ -151,18 +151,14 @@ class RetainStoreCoProc implements IKVRangeCoProc {
         List<String> matchLevels = TopicUtil.parse(request.getTopicFilter(), false);
         MatchCoProcReply.Builder replyBuilder = MatchCoProcReply.newBuilder()
             .setReqId(request.getReqId()).setResult(MatchCoProcReply.Result.OK);
-        itr.seek(KeyUtil.retainKeyPrefix(tenantNS, matchLevels));
-        while (itr.isValid() &&
-            compare(itr.key(), range.getEndKey()) < 0 &&
-            replyBuilder.getMessagesCount() < request.getLimit()) {
-            List<String> topicLevels = KeyUtil.parseTopic(itr.key());
-            if (TopicUtil.match(topicLevels, matchLevels)) {
-                TopicMessage message = TopicMessage.parseFrom(itr.value());
-                if (message.getMessage().getExpireTimestamp() > clock.millis()) {
-                    replyBuilder.addMessages(message);
-                }
+        RetainTopicFilterIterator matchItr = new RetainTopicFilterIterator(tenantNS, matchLevels, itr);
+        for (matchItr.seekToFirst();
+             matchItr.isValid() && replyBuilder.getMessagesCount() < request.getLimit();
+             matchItr.next()) {
+            TopicMessage message = TopicMessage.parseFrom(matchItr.value());
+            if (message.getMessage().getExpireTimestamp() > clock.millis()) {
+                replyBuilder.addMessages(message);
             }
-            itr.next();
         }
         return CompletableFuture.completedFuture(replyBuilder.build());
     }
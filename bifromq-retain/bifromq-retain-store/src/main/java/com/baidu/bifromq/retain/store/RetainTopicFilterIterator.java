@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.retain.store;
+
+import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.compare;
+import static com.google.protobuf.UnsafeByteOperations.unsafeWrap;
+
+import com.baidu.bifromq.basekv.localengine.RangeUtil;
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.google.protobuf.ByteString;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Iterate the retain keys of a tenant matching a wildcard topic filter.
+ * <br>
+ * Retain key is formatted as [tenantNS][level count][level0 NUL level1 NUL ...], so retained topics are clustered by
+ * level count first and then sorted level by level, which makes the key space an index of level count plus per-level
+ * segments. Instead of scanning every key after the literal prefix of the topic filter, the iterator seeks directly to
+ * the next candidate whenever a key mismatches: to the filter level if the mismatched level is smaller, to the next
+ * sibling of the nearest preceding '+' level if it's bigger, or to the next level count if no '+' level precedes.
+ */
+class RetainTopicFilterIterator {
+    private static final ByteString NUL = unsafeWrap(new byte[] {0});
+    private static final ByteString NEXT_SIBLING = unsafeWrap(new byte[] {1});
+    private static final int MAX_LEVELS = 0xFF;
+    private final ByteString tenantNS;
+    private final ByteString tenantUpperBound;
+    // null for '+'
+    private final List<ByteString> filterLevels = new ArrayList<>();
+    private final boolean multiLevel;
+    private final int literalPrefixLevels;
+    private final int minLevels;
+    private final int maxLevels;
+    private final IKVIterator itr;
+    private boolean valid;
+
+    RetainTopicFilterIterator(ByteString tenantNS, List<String> topicFilterLevels, IKVIterator itr) {
+        this.tenantNS = tenantNS;
+        this.tenantUpperBound = RangeUtil.upperBound(tenantNS);
+        this.itr = itr;
+        multiLevel = "#".equals(topicFilterLevels.get(topicFilterLevels.size() - 1));
+        int literalLevels = -1;
+        int filterSize = multiLevel ? topicFilterLevels.size() - 1 : topicFilterLevels.size();
+        for (int i = 0; i < filterSize; i++) {
+            String level = topicFilterLevels.get(i);
+            if ("+".equals(level)) {
+                filterLevels.add(null);
+                if (literalLevels < 0) {
+                    literalLevels = i;
+                }
+            } else {
+                filterLevels.add(ByteString.copyFromUtf8(level));
+            }
+        }
+        literalPrefixLevels = literalLevels < 0 ? filterSize : literalLevels;
+        // 'a/#' matches 'a' as well
+        minLevels = Math.max(1, filterSize);
+        maxLevels = multiLevel ? MAX_LEVELS : filterSize;
+    }
+
+    void seekToFirst() {
+        itr.seek(seekKey(minLevels, filterLevels.subList(0, literalPrefixLevels)));
+        findMatch();
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    ByteString key() {
+        return itr.key();
+    }
+
+    ByteString value() {
+        return itr.value();
+    }
+
+    void next() {
+        itr.next();
+        findMatch();
+    }
+
+    private void findMatch() {
+        valid = false;
+        while (itr.isValid()) {
+            ByteString key = itr.key();
+            if (compare(key, tenantUpperBound) >= 0 || key.size() <= tenantNS.size()) {
+                return;
+            }
+            int levelCount = key.byteAt(tenantNS.size()) & 0xFF;
+            if (levelCount > maxLevels) {
+                return;
+            }
+            if (levelCount < minLevels) {
+                itr.seek(seekKey(minLevels, filterLevels.subList(0, literalPrefixLevels)));
+                continue;
+            }
+            List<ByteString> topicLevels = split(key.substring(tenantNS.size() + 1));
+            int compareLevels = Math.min(topicLevels.size(), filterLevels.size());
+            int mismatch = -1;
+            int lastSingleWildcard = -1;
+            for (int i = 0; i < compareLevels; i++) {
+                ByteString filterLevel = filterLevels.get(i);
+                if (filterLevel == null) {
+                    lastSingleWildcard = i;
+                } else if (!filterLevel.equals(topicLevels.get(i))) {
+                    mismatch = i;
+                    break;
+                }
+            }
+            if (mismatch < 0) {
+                valid = true;
+                return;
+            }
+            ByteString target;
+            if (compare(topicLevels.get(mismatch), filterLevels.get(mismatch)) < 0) {
+                // jump forward to the filter level under the same parent
+                List<ByteString> prefix = new ArrayList<>(topicLevels.subList(0, mismatch));
+                prefix.add(filterLevels.get(mismatch));
+                target = seekKey(levelCount, prefix);
+            } else if (lastSingleWildcard >= 0) {
+                // skip the subtree under current value of the nearest '+' level
+                target = seekKey(levelCount, topicLevels.subList(0, lastSingleWildcard + 1)).concat(NEXT_SIBLING);
+            } else if (levelCount < maxLevels) {
+                // no more candidates of this level count
+                target = seekKey(levelCount + 1, filterLevels.subList(0, literalPrefixLevels));
+            } else {
+                return;
+            }
+            itr.seek(target);
+        }
+    }
+
+    private ByteString seekKey(int levelCount, List<ByteString> levels) {
+        ByteString key = tenantNS.concat(unsafeWrap(new byte[] {(byte) levelCount}));
+        for (int i = 0; i < levels.size(); i++) {
+            if (i > 0) {
+                key = key.concat(NUL);
+            }
+            key = key.concat(levels.get(i));
+        }
+        return key;
+    }
+
+    private static List<ByteString> split(ByteString escapedTopic) {
+        List<ByteString> levels = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < escapedTopic.size(); i++) {
+            if (escapedTopic.byteAt(i) == 0) {
+                levels.add(escapedTopic.substring(start, i));
+                start = i + 1;
+            }
+        }
+        levels.add(escapedTopic.substring(start));
+        return levels;
+    }
+}
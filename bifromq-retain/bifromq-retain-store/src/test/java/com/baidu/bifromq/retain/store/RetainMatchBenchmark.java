@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.retain.store;
+
+import static com.baidu.bifromq.basekv.utils.KeyRangeUtil.compare;
+
+import com.baidu.bifromq.basekv.localengine.RangeUtil;
+import com.baidu.bifromq.retain.utils.KeyUtil;
+import com.baidu.bifromq.retain.utils.TopicUtil;
+import com.google.protobuf.ByteString;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import lombok.SneakyThrows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the latency of wildcard retain matching by scanning from the literal prefix and by seeking past
+ * non-matching subtrees, against the size of the retained set. Retained topics are like 'dev/{i}/sensor/{j}' and
+ * 'dev/{i}/status', so both '+' and '#' filters hit only a small portion of the set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RetainMatchBenchmark {
+    private static final int SENSORS_PER_DEVICE = 10;
+
+    @Param({"1000", "10000", "100000"})
+    private int retainedSetSize;
+
+    @Param({"dev/+/status", "dev/7/#", "+/+/sensor/3"})
+    private String topicFilter;
+
+    private final ByteString tenantNS = KeyUtil.tenantNS("tenantA");
+    private final NavigableMap<ByteString, ByteString> data =
+        new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+    private List<String> filterLevels;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data.put(tenantNS, ByteString.EMPTY);
+        int devices = retainedSetSize / (SENSORS_PER_DEVICE + 1);
+        for (int i = 0; i < devices; i++) {
+            String status = "dev/" + i + "/status";
+            data.put(KeyUtil.retainKey(tenantNS, status), ByteString.copyFromUtf8(status));
+            for (int j = 0; j < SENSORS_PER_DEVICE; j++) {
+                String sensor = "dev/" + i + "/sensor/" + j;
+                data.put(KeyUtil.retainKey(tenantNS, sensor), ByteString.copyFromUtf8(sensor));
+            }
+        }
+        filterLevels = TopicUtil.parse(topicFilter, false);
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        // the matching approach before the key layout is leveraged for seeking
+        TestKVIterator itr = new TestKVIterator(data);
+        ByteString endKey = RangeUtil.upperBound(tenantNS);
+        itr.seek(KeyUtil.retainKeyPrefix(tenantNS, filterLevels));
+        while (itr.isValid() && compare(itr.key(), endKey) < 0) {
+            if (TopicUtil.match(KeyUtil.parseTopic(itr.key()), filterLevels)) {
+                blackhole.consume(itr.value());
+            }
+            itr.next();
+        }
+    }
+
+    @Benchmark
+    public void seek(Blackhole blackhole) {
+        RetainTopicFilterIterator itr = new RetainTopicFilterIterator(tenantNS, filterLevels, new TestKVIterator(data));
+        for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+            blackhole.consume(itr.value());
+        }
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        Options opt = new OptionsBuilder()
+            .include(RetainMatchBenchmark.class.getSimpleName())
+            .build();
+        new Runner(opt).run();
+    }
+}
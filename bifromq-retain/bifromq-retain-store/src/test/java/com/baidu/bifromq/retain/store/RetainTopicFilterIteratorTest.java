@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.retain.store;
+
+import static com.baidu.bifromq.retain.utils.TopicUtil.parse;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.retain.utils.KeyUtil;
+import com.google.protobuf.ByteString;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RetainTopicFilterIteratorTest {
+    private final ByteString tenantNS = KeyUtil.tenantNS("tenantA");
+    private TestKVIterator kvItr;
+
+    @BeforeMethod
+    public void setup() {
+        kvItr = new TestKVIterator();
+        // metadata key and neighbour tenants
+        kvItr.put(tenantNS, ByteString.EMPTY);
+        put(KeyUtil.tenantNS("tenant"), "a/b");
+        put(KeyUtil.tenantNS("tenantB"), "a/b");
+        for (String topic : List.of("a", "a/b", "a/b/c", "a/bb/c", "a/c/c", "ab/b/c", "b/b/c", "/a/b/", "/c/",
+            "a/b/c/d", "a//c", "$sys/b/c", "中文/b/c", "ä/b/c")) {
+            put(tenantNS, topic);
+        }
+    }
+
+    @Test
+    public void singleLevelWildcard() {
+        assertEquals(match("a/+/c"), Set.of("a/b/c", "a/bb/c", "a/c/c", "a//c"));
+        assertEquals(match("+/b/c"), Set.of("a/b/c", "ab/b/c", "b/b/c", "$sys/b/c", "中文/b/c", "ä/b/c"));
+        assertEquals(match("+/+/c"), Set.of("a/b/c", "a/bb/c", "a/c/c", "ab/b/c", "b/b/c", "a//c", "$sys/b/c",
+            "中文/b/c", "ä/b/c"));
+        assertEquals(match("a/b/+"), Set.of("a/b/c"));
+        assertEquals(match("+"), Set.of("a"));
+        assertEquals(match("/+/b/"), Set.of("/a/b/"));
+        assertEquals(match("/a/+"), Set.of());
+        assertEquals(match("+/+/+/+/+"), Set.of());
+    }
+
+    @Test
+    public void multiLevelWildcard() {
+        assertEquals(match("#"), Set.of("a", "a/b", "a/b/c", "a/bb/c", "a/c/c", "ab/b/c", "b/b/c", "/a/b/", "/c/",
+            "a/b/c/d", "a//c", "$sys/b/c", "中文/b/c", "ä/b/c"));
+        assertEquals(match("a/#"), Set.of("a", "a/b", "a/b/c", "a/bb/c", "a/c/c", "a/b/c/d", "a//c"));
+        assertEquals(match("a/b/#"), Set.of("a/b", "a/b/c", "a/b/c/d"));
+        assertEquals(match("+/b/#"), Set.of("a/b", "a/b/c", "ab/b/c", "b/b/c", "a/b/c/d", "$sys/b/c", "中文/b/c",
+            "ä/b/c"));
+        assertEquals(match("/+/b/#"), Set.of("/a/b/"));
+        assertEquals(match("+/+/c/#"), Set.of("a/b/c", "a/bb/c", "a/c/c", "ab/b/c", "b/b/c", "a/b/c/d", "a//c",
+            "$sys/b/c", "中文/b/c", "ä/b/c"));
+        assertEquals(match("x/#"), Set.of());
+    }
+
+    @Test
+    public void skipNonMatchingSubtrees() {
+        for (int i = 0; i < 1000; i++) {
+            put(tenantNS, "a/" + i + "/x");
+            put(tenantNS, "z/" + i + "/x");
+        }
+        int seeks = kvItr.seekCount();
+        RetainTopicFilterIterator itr = new RetainTopicFilterIterator(tenantNS, parse("b/+/c", false), kvItr);
+        itr.seekToFirst();
+        assertTrue(itr.isValid());
+        itr.next();
+        assertTrue(!itr.isValid());
+        // all 'a/#' and 'z/#' keys are skipped within a few seeks
+        assertTrue(kvItr.seekCount() - seeks < 5);
+    }
+
+    private void put(ByteString tenantNS, String topic) {
+        kvItr.put(KeyUtil.retainKey(tenantNS, topic), ByteString.copyFromUtf8(topic));
+    }
+
+    private Set<String> match(String topicFilter) {
+        Set<String> matched = new HashSet<>();
+        RetainTopicFilterIterator itr = new RetainTopicFilterIterator(tenantNS, parse(topicFilter, false), kvItr);
+        for (itr.seekToFirst(); itr.isValid(); itr.next()) {
+            assertTrue(matched.add(itr.value().toStringUtf8()));
+        }
+        return matched;
+    }
+}
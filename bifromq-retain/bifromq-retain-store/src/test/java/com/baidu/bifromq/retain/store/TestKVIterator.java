@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.retain.store;
+
+import com.baidu.bifromq.basekv.store.api.IKVIterator;
+import com.google.protobuf.ByteString;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * IKVIterator over a sorted map, used for testing key layout related logic without a kv engine.
+ */
+class TestKVIterator implements IKVIterator {
+    private final NavigableMap<ByteString, ByteString> data;
+    private Map.Entry<ByteString, ByteString> current;
+    private int seekCount;
+
+    TestKVIterator() {
+        this(new TreeMap<>(ByteString.unsignedLexicographicalComparator()));
+    }
+
+    TestKVIterator(NavigableMap<ByteString, ByteString> data) {
+        this.data = data;
+    }
+
+    void put(ByteString key, ByteString value) {
+        data.put(key, value);
+    }
+
+    int seekCount() {
+        return seekCount;
+    }
+
+    @Override
+    public ByteString key() {
+        return current.getKey();
+    }
+
+    @Override
+    public ByteString value() {
+        return current.getValue();
+    }
+
+    @Override
+    public boolean isValid() {
+        return current != null;
+    }
+
+    @Override
+    public void next() {
+        current = data.higherEntry(current.getKey());
+    }
+
+    @Override
+    public void prev() {
+        current = data.lowerEntry(current.getKey());
+    }
+
+    @Override
+    public void seekToFirst() {
+        seekCount++;
+        current = data.firstEntry();
+    }
+
+    @Override
+    public void seekToLast() {
+        seekCount++;
+        current = data.lastEntry();
+    }
+
+    @Override
+    public void seek(ByteString key) {
+        seekCount++;
+        current = data.ceilingEntry(key);
+    }
+
+    @Override
+    public void seekForPrev(ByteString key) {
+        seekCount++;
+        current = data.floorEntry(key);
+    }
+}
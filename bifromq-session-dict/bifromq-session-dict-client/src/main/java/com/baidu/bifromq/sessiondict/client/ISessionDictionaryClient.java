@@ -15,11 +15,10 @@ package com.baidu.bifromq.sessiondict.client;
 
 import com.baidu.bifromq.baserpc.IRPCClient;
 import com.baidu.bifromq.sessiondict.rpc.proto.KillReply;
-import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
 import com.baidu.bifromq.type.ClientInfo;
 import io.reactivex.rxjava3.core.Observable;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface ISessionDictionaryClient {
     static SessionDictionaryClientBuilder.InProcClientBuilder inProcBuilder() {
@@ -37,12 +36,19 @@ public interface ISessionDictionaryClient {
     Observable<IRPCClient.ConnState> connState();
 
     /**
-     * Register an IMessagePipeline for one session
+     * Register a session, the registration is multiplexed with other sessions sharing the same register slot
      *
-     * @param clientInfo
-     * @return
+     * @param owner  the owner of the session
+     * @param onKick the callback accepting the killer when the session is kicked
      */
-    IRPCClient.IMessageStream<Quit, Ping> reg(ClientInfo clientInfo);
+    void reg(ClientInfo owner, Consumer<ClientInfo> onKick);
+
+    /**
+     * Unregister a session
+     *
+     * @param owner the owner of the session
+     */
+    void unreg(ClientInfo owner);
 
     CompletableFuture<KillReply> kill(long reqId, String tenantId, String userId, String clientId, ClientInfo killer);
 
@@ -17,24 +17,24 @@ import static com.baidu.bifromq.sessiondict.WCHKeyUtil.toWCHKey;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
 
 import com.baidu.bifromq.baserpc.IRPCClient;
-import com.baidu.bifromq.sessiondict.PipelineUtil;
 import com.baidu.bifromq.sessiondict.rpc.proto.KillReply;
 import com.baidu.bifromq.sessiondict.rpc.proto.KillRequest;
-import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
-import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
 import com.baidu.bifromq.sessiondict.rpc.proto.SessionDictionaryServiceGrpc;
 import com.baidu.bifromq.type.ClientInfo;
 import io.reactivex.rxjava3.core.Observable;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 class SessionDictionaryClient implements ISessionDictionaryClient {
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final IRPCClient rpcClient;
+    // the register key -> the register shared by the sessions of all tenants
+    private final Map<String, SessionRegister> sessionRegisters = new ConcurrentHashMap<>();
 
     SessionDictionaryClient(IRPCClient rpcClient) {
         this.rpcClient = rpcClient;
@@ -46,15 +46,27 @@ class SessionDictionaryClient implements ISessionDictionaryClient {
     }
 
     @Override
-    public IRPCClient.IMessageStream<Quit, Ping> reg(ClientInfo clientInfo) {
-        assert MQTT_TYPE_VALUE.equalsIgnoreCase(clientInfo.getType());
-        Map<String, String> metadata = new HashMap<>();
-        metadata.put(PipelineUtil.CLIENT_INFO, PipelineUtil.encode(clientInfo));
-        return rpcClient.createMessageStream(clientInfo.getTenantId(),
-            null,
-            toWCHKey(clientInfo),
-            metadata,
-            SessionDictionaryServiceGrpc.getJoinMethod());
+    public void reg(ClientInfo owner, Consumer<ClientInfo> onKick) {
+        assert MQTT_TYPE_VALUE.equalsIgnoreCase(owner.getType());
+        sessionRegisters.compute(toWCHKey(owner), (k, v) -> {
+            if (v == null) {
+                v = new SessionRegister(k, rpcClient);
+            }
+            v.reg(owner, onKick);
+            return v;
+        });
+    }
+
+    @Override
+    public void unreg(ClientInfo owner) {
+        sessionRegisters.computeIfPresent(toWCHKey(owner), (k, v) -> {
+            v.unreg(owner);
+            if (v.isEmpty()) {
+                v.close();
+                return null;
+            }
+            return v;
+        });
     }
 
     @Override
@@ -63,8 +75,10 @@ class SessionDictionaryClient implements ISessionDictionaryClient {
                                              String userId,
                                              String clientId,
                                              ClientInfo killer) {
-        return rpcClient.invoke(tenantId, null, KillRequest.newBuilder()
+        // routed in the same way as the register streams, which are not tenant scoped
+        return rpcClient.invoke("", null, KillRequest.newBuilder()
                 .setReqId(reqId)
+                .setTenantId(tenantId)
                 .setUserId(userId)
                 .setClientId(clientId)
                 .setKiller(killer)
@@ -79,6 +93,8 @@ class SessionDictionaryClient implements ISessionDictionaryClient {
     public void stop() {
         if (closed.compareAndSet(false, true)) {
             log.info("Stopping session dict client");
+            sessionRegisters.values().forEach(SessionRegister::close);
+            sessionRegisters.clear();
             log.debug("Stopping rpc client");
             rpcClient.stop();
             log.info("Session dict client stopped");
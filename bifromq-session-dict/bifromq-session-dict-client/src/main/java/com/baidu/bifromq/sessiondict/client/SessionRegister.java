@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.sessiondict.client;
+
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.REGISTER_SLOTS;
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.registerSlots;
+
+import com.baidu.bifromq.baserpc.IRPCClient;
+import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.sessiondict.rpc.proto.Registration;
+import com.baidu.bifromq.sessiondict.rpc.proto.Session;
+import com.baidu.bifromq.sessiondict.rpc.proto.SessionDictionaryServiceGrpc;
+import com.baidu.bifromq.type.ClientInfo;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Register sessions sharing the same register key via one multiplexed stream, no matter which tenant they belong to.
+ * The stream is not tenant scoped, so the number of streams from one broker is bounded by the register slots.
+ * Registering and unregistering events queued while a batch is being sent are coalesced into the next one, and all
+ * alive sessions are registered again once the stream is retargeted.
+ */
+@Slf4j
+class SessionRegister {
+    private static final int MAX_BATCH_SIZE = 1000;
+    private final IRPCClient.IMessageStream<Quit, Registration> regStream;
+    private final Map<ClientInfo, Consumer<ClientInfo>> sessions = new ConcurrentHashMap<>();
+    private final Queue<Session> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    SessionRegister(String registerKey, IRPCClient rpcClient) {
+        // the server rejects the stream if it's using different number of slots
+        regStream = rpcClient.createMessageStream("", null, registerKey,
+            Map.of(REGISTER_SLOTS, Integer.toString(registerSlots())), SessionDictionaryServiceGrpc.getDictMethod());
+        regStream.msg().subscribe(this::onQuit);
+        regStream.retarget().subscribe(ts -> {
+            sessions.keySet().forEach(owner -> pending.add(toSession(owner, true)));
+            flush();
+        });
+    }
+
+    void reg(ClientInfo owner, Consumer<ClientInfo> onKick) {
+        sessions.put(owner, onKick);
+        pending.add(toSession(owner, true));
+        flush();
+    }
+
+    void unreg(ClientInfo owner) {
+        if (sessions.remove(owner) != null) {
+            pending.add(toSession(owner, false));
+            flush();
+        }
+    }
+
+    boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+
+    void close() {
+        regStream.close();
+    }
+
+    private void onQuit(Quit quit) {
+        if (log.isTraceEnabled()) {
+            log.trace("Received quit request:reqId={},owner={},killer={}",
+                quit.getReqId(), quit.getOwner(), quit.getKiller());
+        }
+        Consumer<ClientInfo> onKick = sessions.get(quit.getOwner());
+        if (onKick != null) {
+            onKick.accept(quit.getKiller());
+        }
+    }
+
+    private void flush() {
+        if (flushing.compareAndSet(false, true)) {
+            Session session = pending.poll();
+            while (session != null) {
+                Registration.Builder batch = Registration.newBuilder().setReqId(System.nanoTime());
+                while (session != null && batch.getSessionCount() < MAX_BATCH_SIZE) {
+                    batch.addSession(session);
+                    session = pending.poll();
+                }
+                try {
+                    regStream.ack(batch.build());
+                } catch (Throwable e) {
+                    // alive sessions will be registered again when the stream is retargeted
+                    log.debug("Failed to send session registration", e);
+                }
+            }
+            flushing.set(false);
+            if (!pending.isEmpty()) {
+                flush();
+            }
+        }
+    }
+
+    private Session toSession(ClientInfo owner, boolean keep) {
+        return Session.newBuilder().setOwner(owner).setKeep(keep).build();
+    }
+}
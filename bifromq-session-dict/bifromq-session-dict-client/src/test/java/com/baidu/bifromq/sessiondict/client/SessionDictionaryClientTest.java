@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.sessiondict.client;
+
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ADDRESS_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+import com.baidu.bifromq.baserpc.IRPCClient;
+import com.baidu.bifromq.sessiondict.WCHKeyUtil;
+import com.baidu.bifromq.sessiondict.rpc.proto.KillReply;
+import com.baidu.bifromq.sessiondict.rpc.proto.KillRequest;
+import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.sessiondict.rpc.proto.Registration;
+import com.baidu.bifromq.type.ClientInfo;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionDictionaryClientTest {
+    private final String tenantId = "tenantA";
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private IRPCClient.IMessageStream<Quit, Registration> regStream;
+    private AutoCloseable closeable;
+    private SessionDictionaryClient client;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        when(regStream.msg()).thenReturn(PublishSubject.create());
+        when(regStream.retarget()).thenReturn(PublishSubject.create());
+        when(rpcClient.<Quit, Registration>createMessageStream(eq(""), isNull(), anyString(), anyMap(), any()))
+            .thenReturn(regStream);
+        client = new SessionDictionaryClient(rpcClient);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        client.stop();
+        closeable.close();
+    }
+
+    @Test
+    public void shareRegisterByWCHKey() {
+        ClientInfo owner = owner("client1");
+        client.reg(owner, k -> {
+        });
+        client.reg(owner("client1", "127.0.0.1:1884"), k -> {
+        });
+        verify(rpcClient, times(1)).createMessageStream(eq(""), isNull(), eq(WCHKeyUtil.toWCHKey(owner)),
+            anyMap(), any());
+    }
+
+    @Test
+    public void shareRegisterAcrossTenants() {
+        ClientInfo owner = owner("client1");
+        client.reg(owner, k -> {
+        });
+        client.reg(owner.toBuilder().setTenantId("tenantB").build(), k -> {
+        });
+        verify(rpcClient, times(1)).createMessageStream(eq(""), isNull(), eq(WCHKeyUtil.toWCHKey(owner)),
+            eq(Map.of(WCHKeyUtil.REGISTER_SLOTS, Integer.toString(WCHKeyUtil.registerSlots()))), any());
+    }
+
+    @Test
+    public void closeRegisterWhenEmpty() {
+        ClientInfo owner = owner("client1");
+        client.reg(owner, k -> {
+        });
+        client.unreg(owner);
+        verify(regStream).close();
+
+        // reconnect
+        client.reg(owner, k -> {
+        });
+        verify(rpcClient, times(2)).createMessageStream(eq(""), isNull(), anyString(), anyMap(), any());
+    }
+
+    @Test
+    public void keepRegisterWhenNotEmpty() {
+        ClientInfo owner1 = owner("client1");
+        ClientInfo owner2 = owner("client1", "127.0.0.1:1884");
+        client.reg(owner1, k -> {
+        });
+        client.reg(owner2, k -> {
+        });
+        client.unreg(owner1);
+        verify(regStream, never()).close();
+    }
+
+    @Test
+    public void killCarryingTenant() {
+        when(rpcClient.<KillRequest, KillReply>invoke(eq(""), isNull(), any(KillRequest.class), any()))
+            .thenReturn(CompletableFuture.completedFuture(KillReply.newBuilder()
+                .setReqId(1)
+                .setResult(KillReply.Result.OK)
+                .build()));
+        client.kill(1, tenantId, "user", "client1", owner("killer")).join();
+        ArgumentCaptor<KillRequest> captor = ArgumentCaptor.forClass(KillRequest.class);
+        verify(rpcClient).invoke(eq(""), isNull(), captor.capture(), any());
+        assertEquals(captor.getValue().getTenantId(), tenantId);
+        assertEquals(captor.getValue().getClientId(), "client1");
+    }
+
+    @Test
+    public void killError() {
+        when(rpcClient.<KillRequest, KillReply>invoke(eq(""), isNull(), any(KillRequest.class), any()))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Mock exception")));
+        KillReply reply = client.kill(1, tenantId, "user", "client1", owner("killer")).join();
+        assertEquals(reply.getReqId(), 1);
+        assertEquals(reply.getResult(), KillReply.Result.ERROR);
+    }
+
+    private ClientInfo owner(String clientId) {
+        return owner(clientId, "127.0.0.1:1883");
+    }
+
+    private ClientInfo owner(String clientId, String address) {
+        return ClientInfo.newBuilder()
+            .setTenantId(tenantId)
+            .setType(MQTT_TYPE_VALUE)
+            .putMetadata(MQTT_USER_ID_KEY, "user")
+            .putMetadata(MQTT_CLIENT_ID_KEY, clientId)
+            .putMetadata(MQTT_CLIENT_ADDRESS_KEY, address)
+            .build();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.sessiondict.client;
+
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ADDRESS_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import com.baidu.bifromq.baserpc.IRPCClient;
+import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.sessiondict.rpc.proto.Registration;
+import com.baidu.bifromq.sessiondict.rpc.proto.Session;
+import com.baidu.bifromq.type.ClientInfo;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import java.util.List;
+import java.util.function.Consumer;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionRegisterTest {
+    private final String tenantId = "tenantA";
+    private final ClientInfo killer = ClientInfo.newBuilder().setTenantId(tenantId).setType("killer").build();
+    @Mock
+    private IRPCClient rpcClient;
+    @Mock
+    private IRPCClient.IMessageStream<Quit, Registration> regStream;
+    private PublishSubject<Quit> quitSubject;
+    private PublishSubject<Long> retargetSubject;
+    private AutoCloseable closeable;
+
+    @BeforeMethod
+    public void setup() {
+        closeable = MockitoAnnotations.openMocks(this);
+        quitSubject = PublishSubject.create();
+        retargetSubject = PublishSubject.create();
+        when(regStream.msg()).thenReturn(quitSubject);
+        when(regStream.retarget()).thenReturn(retargetSubject);
+        when(rpcClient.<Quit, Registration>createMessageStream(eq(""), isNull(), anyString(), anyMap(), any()))
+            .thenReturn(regStream);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        closeable.close();
+    }
+
+    @Test
+    public void regAndUnreg() {
+        SessionRegister register = new SessionRegister("0", rpcClient);
+        ClientInfo owner = owner("client1");
+        register.reg(owner, k -> {
+        });
+        assertFalse(register.isEmpty());
+        register.unreg(owner);
+        assertTrue(register.isEmpty());
+        // unregistering an unknown session sends nothing
+        register.unreg(owner);
+
+        List<Registration> registrations = sentRegistrations(2);
+        assertEquals(registrations.get(0).getSessionList(),
+            List.of(Session.newBuilder().setOwner(owner).setKeep(true).build()));
+        assertEquals(registrations.get(1).getSessionList(),
+            List.of(Session.newBuilder().setOwner(owner).setKeep(false).build()));
+    }
+
+    @Test
+    public void kick() {
+        SessionRegister register = new SessionRegister("0", rpcClient);
+        ClientInfo owner1 = owner("client1");
+        ClientInfo owner2 = owner("client2");
+        Consumer<ClientInfo> onKick1 = mock(Consumer.class);
+        Consumer<ClientInfo> onKick2 = mock(Consumer.class);
+        register.reg(owner1, onKick1);
+        register.reg(owner2, onKick2);
+
+        quitSubject.onNext(Quit.newBuilder().setReqId(1).setOwner(owner2).setKiller(killer).build());
+        verify(onKick2).accept(killer);
+        verify(onKick1, never()).accept(any());
+
+        // quit for unregistered session is ignored
+        register.unreg(owner1);
+        quitSubject.onNext(Quit.newBuilder().setReqId(2).setOwner(owner1).setKiller(killer).build());
+        verify(onKick1, never()).accept(any());
+    }
+
+    @Test
+    public void reRegisterOnRetarget() {
+        SessionRegister register = new SessionRegister("0", rpcClient);
+        ClientInfo owner1 = owner("client1");
+        ClientInfo owner2 = owner("client2");
+        register.reg(owner1, k -> {
+        });
+        register.reg(owner2, k -> {
+        });
+        register.unreg(owner1);
+
+        retargetSubject.onNext(System.nanoTime());
+        List<Registration> registrations = sentRegistrations(4);
+        assertEquals(registrations.get(3).getSessionList(),
+            List.of(Session.newBuilder().setOwner(owner2).setKeep(true).build()));
+    }
+
+    @Test
+    public void reRegisterAfterSendFailure() {
+        SessionRegister register = new SessionRegister("0", rpcClient);
+        ClientInfo owner = owner("client1");
+        doThrow(new IllegalStateException("Mock exception")).doNothing().when(regStream).ack(any());
+        register.reg(owner, k -> {
+        });
+
+        retargetSubject.onNext(System.nanoTime());
+        List<Registration> registrations = sentRegistrations(2);
+        assertEquals(registrations.get(1).getSessionList(),
+            List.of(Session.newBuilder().setOwner(owner).setKeep(true).build()));
+    }
+
+    @Test
+    public void close() {
+        SessionRegister register = new SessionRegister("0", rpcClient);
+        register.close();
+        verify(regStream).close();
+    }
+
+    private List<Registration> sentRegistrations(int count) {
+        ArgumentCaptor<Registration> captor = ArgumentCaptor.forClass(Registration.class);
+        verify(regStream, times(count)).ack(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private ClientInfo owner(String clientId) {
+        return ClientInfo.newBuilder()
+            .setTenantId(tenantId)
+            .setType(MQTT_TYPE_VALUE)
+            .putMetadata(MQTT_USER_ID_KEY, "user")
+            .putMetadata(MQTT_CLIENT_ID_KEY, clientId)
+            .putMetadata(MQTT_CLIENT_ADDRESS_KEY, "127.0.0.1:1883")
+            .build();
+    }
+}
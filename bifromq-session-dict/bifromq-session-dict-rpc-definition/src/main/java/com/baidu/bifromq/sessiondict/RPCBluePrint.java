@@ -21,6 +21,7 @@ public class RPCBluePrint {
     public static final BluePrint INSTANCE = BluePrint.builder()
         .serviceDescriptor(SessionDictionaryServiceGrpc.getServiceDescriptor())
         .methodSemantic(SessionDictionaryServiceGrpc.getJoinMethod(), BluePrint.WCHStreamingMethod.getInstance())
+        .methodSemantic(SessionDictionaryServiceGrpc.getDictMethod(), BluePrint.WCHStreamingMethod.getInstance())
         .methodSemantic(SessionDictionaryServiceGrpc.getKillMethod(),
             BluePrint.WCHUnaryMethod.<KillRequest>builder()
                 .keyHashFunc(r -> WCHKeyUtil.toWCHKey(r.getUserId(), r.getClientId()))
@@ -13,18 +13,33 @@
 
 package com.baidu.bifromq.sessiondict;
 
+import static com.baidu.bifromq.sysprops.BifroMQSysProp.SESSION_DICT_REGISTER_SLOTS;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
 
 import com.baidu.bifromq.type.ClientInfo;
 
 public class WCHKeyUtil {
+    /**
+     * The metadata key of the register stream carrying the number of slots used by the broker.
+     */
+    public static final String REGISTER_SLOTS = "slots";
+    /**
+     * The number of registration streams the sessions of all tenants are spread over from one broker.
+     */
+    private static final int SESSION_REGISTER_SLOTS = SESSION_DICT_REGISTER_SLOTS.get();
+
+    public static int registerSlots() {
+        return SESSION_REGISTER_SLOTS;
+    }
+
     public static String toWCHKey(ClientInfo clientInfo) {
         return toWCHKey(clientInfo.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
             clientInfo.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""));
     }
 
     public static String toWCHKey(String userId, String clientId) {
-        return userId + clientId;
+        // sessions sharing the same slot are registered via the same stream, kill request must be routed by the slot
+        return Integer.toString(Math.floorMod((userId + "/" + clientId).hashCode(), SESSION_REGISTER_SLOTS));
     }
 }
@@ -17,6 +17,8 @@ import static com.baidu.bifromq.baserpc.UnaryResponse.response;
 import static com.baidu.bifromq.metrics.TenantMeter.gauging;
 import static com.baidu.bifromq.metrics.TenantMeter.stopGauging;
 import static com.baidu.bifromq.metrics.TenantMetric.MqttConnectionGauge;
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.REGISTER_SLOTS;
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.registerSlots;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ADDRESS_KEY;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
 import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
@@ -30,6 +32,8 @@ import com.baidu.bifromq.sessiondict.rpc.proto.KillReply;
 import com.baidu.bifromq.sessiondict.rpc.proto.KillRequest;
 import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
 import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.sessiondict.rpc.proto.Registration;
+import com.baidu.bifromq.sessiondict.rpc.proto.Session;
 import com.baidu.bifromq.sessiondict.rpc.proto.SessionDictionaryServiceGrpc;
 import com.baidu.bifromq.type.ClientInfo;
 import com.github.benmanes.caffeine.cache.Cache;
@@ -37,8 +41,8 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import io.grpc.stub.StreamObserver;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -46,34 +50,47 @@ import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class SessionDictionaryService extends SessionDictionaryServiceGrpc.SessionDictionaryServiceImplBase {
+    private record KickedSession(Registrant registrant, ClientInfo owner) {
+    }
+
+    private record SessionKey(String tenantId, String regKey) {
+    }
 
-    private final Cache<AckStream<Ping, Quit>, ClientInfo> kickedPipelines = Caffeine.newBuilder()
+    // kicked sessions which are not unregistered in time will be asked to quit again
+    private final Cache<KickedSession, ClientInfo> kickedSessions = Caffeine.newBuilder()
         .expireAfterWrite(5, TimeUnit.SECONDS)
         .maximumSize(1000_000)
-        .removalListener((RemovalListener<AckStream<Ping, Quit>, ClientInfo>) (key, value, cause) -> {
+        .removalListener((RemovalListener<KickedSession, ClientInfo>) (key, value, cause) -> {
             if (cause == EXPIRED || cause == SIZE) {
                 if (key != null) {
-                    key.send(Quit.newBuilder().setKiller(value).build());
-                    key.onCompleted();
+                    key.registrant.forceQuit(key.owner, value);
                 }
             }
         })
         .build();
-    // tenantId -> userId/clientId -> AckPipeline<Ping, Quit>
-    private final Map<String, Map<String, Registration>> registry = new ConcurrentHashMap<>();
+    // tenantId -> userId/clientId -> the registrant where the session is registered
+    private final Map<String, Map<String, Registrant>> registry = new ConcurrentHashMap<>();
+    private final Set<Registrant> registrants = ConcurrentHashMap.newKeySet();
 
     @Override
     public StreamObserver<Ping> join(StreamObserver<Quit> responseObserver) {
-        return new Registration(responseObserver);
+        return new SessionJoiner(responseObserver);
+    }
+
+    @Override
+    public StreamObserver<Registration> dict(StreamObserver<Quit> responseObserver) {
+        return new SessionRegister(responseObserver);
     }
 
     @Override
     public void kill(KillRequest request, StreamObserver<KillReply> responseObserver) {
         response(tenantId -> {
-            Registration reg = registry.getOrDefault(tenantId, Collections.emptyMap())
-                .get(toRegKey(request.getUserId(), request.getClientId()));
+            // the request from brokers of older version is tenant scoped
+            String sessionTenantId = request.getTenantId().isEmpty() ? tenantId : request.getTenantId();
+            String regKey = toRegKey(request.getUserId(), request.getClientId());
+            Registrant reg = registry.getOrDefault(sessionTenantId, Collections.emptyMap()).get(regKey);
             if (reg != null) {
-                reg.quit(request.getKiller());
+                reg.quit(sessionTenantId, regKey, request.getKiller());
             }
             return CompletableFuture.completedFuture(KillReply.newBuilder()
                 .setReqId(request.getReqId())
@@ -83,71 +100,213 @@ public class SessionDictionaryService extends SessionDictionaryServiceGrpc.Sessi
     }
 
     void close() {
-        registry.forEach((tenantId, sessions) ->
-            sessions.forEach((sessionId, ackPipeline) -> ackPipeline.onCompleted()));
+        registrants.forEach(Registrant::close);
     }
 
-    private class Registration extends AckStream<Ping, Quit> {
-        private final String regKey;
-        private final ClientInfo clientInfo;
+    /**
+     * The stream via which sessions are registered, no matter in batch or one per stream.
+     */
+    private interface Registrant {
+        void quit(String tenantId, String regKey, ClientInfo killer);
+
+        // called when a kicked session is not unregistered in time
+        void forceQuit(ClientInfo owner, ClientInfo killer);
+
+        void kick(String tenantId, String regKey, ClientInfo killer);
 
-        protected Registration(StreamObserver<Quit> responseObserver) {
+        void close();
+    }
+
+    /**
+     * The stream from one broker carrying the registrations of the sessions sharing the same register slot. The stream
+     * is not tenant scoped, the tenant of each session is told by its owner.
+     */
+    private class SessionRegister extends AckStream<Registration, Quit> implements Registrant {
+        // tenantId + userId/clientId -> the owner of the session registered via this stream
+        private final Map<SessionKey, ClientInfo> sessions = new ConcurrentHashMap<>();
+
+        protected SessionRegister(StreamObserver<Quit> responseObserver) {
             super(responseObserver);
-            clientInfo = PipelineUtil.decode(metadata.get(PipelineUtil.CLIENT_INFO));
-            assert MQTT_TYPE_VALUE.equals(clientInfo.getType());
-            log.trace("Receive session registering, tenantId={}, userId={}, clientId={}, addr={}",
-                tenantId, clientInfo.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
-                clientInfo.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""),
-                clientInfo.getMetadataOrDefault(MQTT_CLIENT_ADDRESS_KEY, ""));
-            regKey =
-                toRegKey(clientInfo.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
-                    clientInfo.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""));
-            registry.compute(tenantId, (t, m) -> {
-                if (m == null) {
-                    m = new HashMap<>();
-                    gauging(tenantId, MqttConnectionGauge,
-                        () -> registry.getOrDefault(tenantId, Collections.emptyMap()).size());
+            String slots = metadata(REGISTER_SLOTS);
+            if (!Integer.toString(registerSlots()).equals(slots)) {
+                // the sessions with same userId/clientId will be routed to different servers, so kicks never meet
+                log.warn("Reject session register using different number of slots: expected={}, actual={}",
+                    registerSlots(), slots);
+                close();
+                return;
+            }
+            registrants.add(this);
+            this.ack().doOnComplete(this::leave).subscribe(this::handle);
+        }
+
+        @Override
+        public void quit(String tenantId, String regKey, ClientInfo killer) {
+            ClientInfo owner = sessions.get(new SessionKey(tenantId, regKey));
+            if (owner != null) {
+                quit(owner, killer);
+            }
+        }
+
+        @Override
+        public void forceQuit(ClientInfo owner, ClientInfo killer) {
+            quit(owner, killer);
+        }
+
+        @Override
+        public void kick(String tenantId, String regKey, ClientInfo killer) {
+            ClientInfo owner = sessions.remove(new SessionKey(tenantId, regKey));
+            if (owner != null) {
+                quit(owner, killer);
+                kickedSessions.put(new KickedSession(this, owner), killer);
+            }
+        }
+
+        private void quit(ClientInfo owner, ClientInfo killer) {
+            long reqId = System.nanoTime();
+            if (log.isTraceEnabled()) {
+                log.trace("Quit session: reqId={}, tenantId={}, userId={}, clientId={}, addr={}",
+                    reqId, owner.getTenantId(), owner.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
+                    owner.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""),
+                    owner.getMetadataOrDefault(MQTT_CLIENT_ADDRESS_KEY, ""));
+            }
+            synchronized (this) {
+                send(Quit.newBuilder().setReqId(reqId).setOwner(owner).setKiller(killer).build());
+            }
+        }
+
+        private void handle(Registration registration) {
+            for (Session session : registration.getSessionList()) {
+                if (session.getKeep()) {
+                    reg(session.getOwner());
+                } else {
+                    unreg(session.getOwner());
                 }
-                m.compute(regKey, (r, oldPipeline) -> {
-                    if (oldPipeline != null) {
-                        oldPipeline.quit(clientInfo);
-                        kickedPipelines.put(oldPipeline, clientInfo);
-                    }
-                    return this;
-                });
-                return m;
-            });
+            }
+        }
+
+        private void reg(ClientInfo owner) {
+            String regKey = toRegKey(owner);
+            registry(owner.getTenantId(), regKey, owner, this);
+            ClientInfo oldOwner = sessions.put(new SessionKey(owner.getTenantId(), regKey), owner);
+            if (oldOwner != null && !oldOwner.equals(owner)) {
+                // another session with the same key connected to the same broker
+                quit(oldOwner, owner);
+                kickedSessions.put(new KickedSession(this, oldOwner), owner);
+            }
+        }
+
+        private void unreg(ClientInfo owner) {
+            kickedSessions.invalidate(new KickedSession(this, owner));
+            String regKey = toRegKey(owner);
+            if (sessions.remove(new SessionKey(owner.getTenantId(), regKey), owner)) {
+                unregistry(owner.getTenantId(), regKey, this);
+            }
+        }
+
+        private void leave() {
+            registrants.remove(this);
+            sessions.keySet().forEach(key -> unregistry(key.tenantId(), key.regKey(), this));
+            sessions.clear();
+            kickedSessions.asMap().keySet().removeIf(kickedSession -> kickedSession.registrant == this);
+        }
+    }
 
+    /**
+     * The stream carrying the registration of a single session, which is used by brokers of older version.
+     */
+    private class SessionJoiner extends AckStream<Ping, Quit> implements Registrant {
+        private final String regKey;
+        private final ClientInfo owner;
+
+        protected SessionJoiner(StreamObserver<Quit> responseObserver) {
+            super(responseObserver);
+            owner = PipelineUtil.decode(metadata.get(PipelineUtil.CLIENT_INFO));
+            regKey = toRegKey(owner);
+            registrants.add(this);
+            registry(tenantId, regKey, owner, this);
             this.ack().doOnComplete(this::leave).subscribe();
         }
 
-        public void quit(ClientInfo killer) {
+        @Override
+        public void quit(String tenantId, String regKey, ClientInfo killer) {
+            if (this.tenantId.equals(tenantId) && this.regKey.equals(regKey)) {
+                quit(killer);
+            }
+        }
+
+        @Override
+        public void forceQuit(ClientInfo owner, ClientInfo killer) {
+            quit(killer);
+            close();
+        }
+
+        @Override
+        public void kick(String tenantId, String regKey, ClientInfo killer) {
+            quit(tenantId, regKey, killer);
+            kickedSessions.put(new KickedSession(this, owner), killer);
+        }
+
+        private void quit(ClientInfo killer) {
             long reqId = System.nanoTime();
             if (log.isTraceEnabled()) {
                 log.trace("Quit pipeline: reqId={}, tenantId={}, userId={}, clientId={}, addr={}",
-                    reqId, tenantId, clientInfo.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
-                    clientInfo.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""),
-                    clientInfo.getMetadataOrDefault(MQTT_CLIENT_ADDRESS_KEY, ""));
+                    reqId, tenantId, owner.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
+                    owner.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""),
+                    owner.getMetadataOrDefault(MQTT_CLIENT_ADDRESS_KEY, ""));
+            }
+            synchronized (this) {
+                send(Quit.newBuilder().setReqId(reqId).setKiller(killer).build());
             }
-            send(Quit.newBuilder().setKiller(killer).build());
         }
 
         private void leave() {
-            registry.compute(tenantId, (t, m) -> {
-                if (m == null) {
+            registrants.remove(this);
+            unregistry(tenantId, regKey, this);
+            kickedSessions.invalidate(new KickedSession(this, owner));
+        }
+    }
+
+    private void registry(String tenantId, String regKey, ClientInfo owner, Registrant registrant) {
+        assert MQTT_TYPE_VALUE.equals(owner.getType());
+        log.trace("Receive session registering, tenantId={}, userId={}, clientId={}, addr={}",
+            tenantId, owner.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
+            owner.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""),
+            owner.getMetadataOrDefault(MQTT_CLIENT_ADDRESS_KEY, ""));
+        registry.compute(tenantId, (t, m) -> {
+            if (m == null) {
+                m = new ConcurrentHashMap<>();
+                gauging(tenantId, MqttConnectionGauge,
+                    () -> registry.getOrDefault(tenantId, Collections.emptyMap()).size());
+            }
+            m.compute(regKey, (r, oldRegistrant) -> {
+                if (oldRegistrant != null && oldRegistrant != registrant) {
+                    oldRegistrant.kick(tenantId, regKey, owner);
+                }
+                return registrant;
+            });
+            return m;
+        });
+    }
+
+    private void unregistry(String tenantId, String regKey, Registrant registrant) {
+        registry.compute(tenantId, (t, m) -> {
+            if (m == null) {
+                stopGauging(tenantId, MqttConnectionGauge);
+                return null;
+            } else {
+                m.remove(regKey, registrant);
+                if (m.size() == 0) {
                     stopGauging(tenantId, MqttConnectionGauge);
                     return null;
-                } else {
-                    m.remove(regKey, this);
-                    if (m.size() == 0) {
-                        stopGauging(tenantId, MqttConnectionGauge);
-                        return null;
-                    }
-                    return m;
                 }
-            });
-            kickedPipelines.invalidate(this);
-        }
+                return m;
+            }
+        });
+    }
+
+    private String toRegKey(ClientInfo owner) {
+        return toRegKey(owner.getMetadataOrDefault(MQTT_USER_ID_KEY, ""),
+            owner.getMetadataOrDefault(MQTT_CLIENT_ID_KEY, ""));
     }
 
     private String toRegKey(String userId, String clientId) {
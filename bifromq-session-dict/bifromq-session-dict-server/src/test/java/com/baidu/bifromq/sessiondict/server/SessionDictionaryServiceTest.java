@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+
+package com.baidu.bifromq.sessiondict.server;
+
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.REGISTER_SLOTS;
+import static com.baidu.bifromq.sessiondict.WCHKeyUtil.registerSlots;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ADDRESS_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_CLIENT_ID_KEY;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_TYPE_VALUE;
+import static com.baidu.bifromq.type.MQTTClientInfoConstants.MQTT_USER_ID_KEY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import com.baidu.bifromq.baserpc.RPCContext;
+import com.baidu.bifromq.baserpc.metrics.RPCMeters;
+import com.baidu.bifromq.sessiondict.PipelineUtil;
+import com.baidu.bifromq.sessiondict.rpc.proto.KillReply;
+import com.baidu.bifromq.sessiondict.rpc.proto.KillRequest;
+import com.baidu.bifromq.sessiondict.rpc.proto.Ping;
+import com.baidu.bifromq.sessiondict.rpc.proto.Quit;
+import com.baidu.bifromq.sessiondict.rpc.proto.Registration;
+import com.baidu.bifromq.sessiondict.rpc.proto.Session;
+import com.baidu.bifromq.type.ClientInfo;
+import io.grpc.Context;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionDictionaryServiceTest {
+    private final String tenantId = "tenantA";
+    private final ClientInfo killer = ClientInfo.newBuilder().setTenantId(tenantId).setType("killer").build();
+    private SessionDictionaryService service;
+
+    @BeforeMethod
+    public void setup() {
+        service = new SessionDictionaryService();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        service.close();
+    }
+
+    @Test
+    public void registerAndKill() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = dict(responseObserver);
+        ClientInfo owner = owner("127.0.0.1:1883");
+        dict.onNext(registration(owner, true));
+
+        assertEquals(kill(), KillReply.Result.OK);
+        List<Quit> quits = quits(responseObserver, 1);
+        assertEquals(quits.get(0).getOwner(), owner);
+        assertEquals(quits.get(0).getKiller(), killer);
+    }
+
+    @Test
+    public void killUnregistered() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = dict(responseObserver);
+        ClientInfo owner = owner("127.0.0.1:1883");
+        dict.onNext(registration(owner, true));
+        dict.onNext(registration(owner, false));
+
+        assertEquals(kill(), KillReply.Result.OK);
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    @Test
+    public void kickFromOtherRegister() {
+        ServerCallStreamObserver<Quit> responseObserver1 = responseObserver();
+        ServerCallStreamObserver<Quit> responseObserver2 = responseObserver();
+        StreamObserver<Registration> dict1 = dict(responseObserver1);
+        StreamObserver<Registration> dict2 = dict(responseObserver2);
+        ClientInfo owner1 = owner("127.0.0.1:1883");
+        ClientInfo owner2 = owner("127.0.0.2:1883");
+        dict1.onNext(registration(owner1, true));
+        dict2.onNext(registration(owner2, true));
+
+        List<Quit> quits = quits(responseObserver1, 1);
+        assertEquals(quits.get(0).getOwner(), owner1);
+        assertEquals(quits.get(0).getKiller(), owner2);
+        verify(responseObserver2, never()).onNext(any());
+
+        // the kicked session is no longer owned by the first register
+        kill();
+        quits(responseObserver1, 1);
+        assertEquals(quits(responseObserver2, 1).get(0).getOwner(), owner2);
+    }
+
+    @Test
+    public void kickInSameRegister() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = dict(responseObserver);
+        ClientInfo owner1 = owner("127.0.0.1:1883");
+        ClientInfo owner2 = owner("127.0.0.2:1883");
+        dict.onNext(registration(owner1, true));
+        dict.onNext(registration(owner2, true));
+
+        List<Quit> quits = quits(responseObserver, 1);
+        assertEquals(quits.get(0).getOwner(), owner1);
+        assertEquals(quits.get(0).getKiller(), owner2);
+    }
+
+    @Test
+    public void reconnect() {
+        ServerCallStreamObserver<Quit> responseObserver1 = responseObserver();
+        StreamObserver<Registration> dict1 = dict(responseObserver1);
+        ClientInfo owner = owner("127.0.0.1:1883");
+        dict1.onNext(registration(owner, true));
+        // the stream is broken, and the sessions are registered again via a new one
+        dict1.onError(new RuntimeException("Mock exception"));
+        verify(responseObserver1).onCompleted();
+
+        ServerCallStreamObserver<Quit> responseObserver2 = responseObserver();
+        StreamObserver<Registration> dict2 = dict(responseObserver2);
+        dict2.onNext(registration(owner, true));
+        verify(responseObserver1, never()).onNext(any());
+
+        kill();
+        verify(responseObserver1, never()).onNext(any());
+        assertEquals(quits(responseObserver2, 1).get(0).getOwner(), owner);
+    }
+
+    @Test
+    public void unregisterOnLeave() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = dict(responseObserver);
+        dict.onNext(registration(owner("127.0.0.1:1883"), true));
+        dict.onCompleted();
+
+        kill();
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    @Test
+    public void registerSessionsOfTenants() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = dict(responseObserver);
+        ClientInfo owner1 = owner("127.0.0.1:1883");
+        ClientInfo owner2 = owner("127.0.0.2:1883").toBuilder().setTenantId("tenantB").build();
+        dict.onNext(registration(owner1, true));
+        dict.onNext(registration(owner2, true));
+        // sessions of different tenants don't kick each other
+        verify(responseObserver, never()).onNext(any());
+
+        kill("tenantB");
+        assertEquals(quits(responseObserver, 1).get(0).getOwner(), owner2);
+        kill();
+        assertEquals(quits(responseObserver, 2).get(1).getOwner(), owner1);
+    }
+
+    @Test
+    public void rejectMismatchedSlots() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Registration> dict = withContext(tenantId,
+            Map.of(REGISTER_SLOTS, Integer.toString(registerSlots() + 1)), "dict",
+            () -> service.dict(responseObserver));
+        verify(responseObserver).onCompleted();
+        dict.onNext(registration(owner("127.0.0.1:1883"), true));
+
+        kill();
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    @Test
+    public void legacyKill() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        dict(responseObserver).onNext(registration(owner("127.0.0.1:1883"), true));
+
+        // the request from brokers of older version is tenant scoped
+        StreamObserver<KillReply> killObserver = mock(StreamObserver.class);
+        withContext(tenantId, Collections.emptyMap(), "kill", () -> {
+            service.kill(KillRequest.newBuilder()
+                .setReqId(System.nanoTime())
+                .setUserId("user")
+                .setClientId("client")
+                .setKiller(killer)
+                .build(), killObserver);
+            return null;
+        });
+        verify(killObserver).onCompleted();
+        assertEquals(quits(responseObserver, 1).get(0).getKiller(), killer);
+    }
+
+    @Test
+    public void legacyJoinAndKill() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        join(owner("127.0.0.1:1883"), responseObserver);
+
+        assertEquals(kill(), KillReply.Result.OK);
+        List<Quit> quits = quits(responseObserver, 1);
+        assertFalse(quits.get(0).hasOwner());
+        assertEquals(quits.get(0).getKiller(), killer);
+    }
+
+    @Test
+    public void legacyJoinKickedByRegister() {
+        ServerCallStreamObserver<Quit> joinObserver = responseObserver();
+        ServerCallStreamObserver<Quit> dictObserver = responseObserver();
+        join(owner("127.0.0.1:1883"), joinObserver);
+        ClientInfo owner = owner("127.0.0.2:1883");
+        dict(dictObserver).onNext(registration(owner, true));
+
+        assertEquals(quits(joinObserver, 1).get(0).getKiller(), owner);
+        verify(dictObserver, never()).onNext(any());
+    }
+
+    @Test
+    public void registerKickedByLegacyJoin() {
+        ServerCallStreamObserver<Quit> dictObserver = responseObserver();
+        ServerCallStreamObserver<Quit> joinObserver = responseObserver();
+        ClientInfo owner1 = owner("127.0.0.1:1883");
+        ClientInfo owner2 = owner("127.0.0.2:1883");
+        dict(dictObserver).onNext(registration(owner1, true));
+        join(owner2, joinObserver);
+
+        List<Quit> quits = quits(dictObserver, 1);
+        assertEquals(quits.get(0).getOwner(), owner1);
+        assertEquals(quits.get(0).getKiller(), owner2);
+        verify(joinObserver, never()).onNext(any());
+    }
+
+    @Test
+    public void legacyJoinLeave() {
+        ServerCallStreamObserver<Quit> responseObserver = responseObserver();
+        StreamObserver<Ping> join = join(owner("127.0.0.1:1883"), responseObserver);
+        join.onCompleted();
+        verify(responseObserver).onCompleted();
+
+        kill();
+        verify(responseObserver, never()).onNext(any());
+    }
+
+    private StreamObserver<Registration> dict(ServerCallStreamObserver<Quit> responseObserver) {
+        // register streams are not tenant scoped
+        return withContext("", Map.of(REGISTER_SLOTS, Integer.toString(registerSlots())), "dict",
+            () -> service.dict(responseObserver));
+    }
+
+    private StreamObserver<Ping> join(ClientInfo owner, ServerCallStreamObserver<Quit> responseObserver) {
+        return withContext(tenantId, Map.of(PipelineUtil.CLIENT_INFO, PipelineUtil.encode(owner)), "join",
+            () -> service.join(responseObserver));
+    }
+
+    private KillReply.Result kill() {
+        return kill(tenantId);
+    }
+
+    private KillReply.Result kill(String sessionTenantId) {
+        StreamObserver<KillReply> responseObserver = mock(StreamObserver.class);
+        withContext("", Collections.emptyMap(), "kill", () -> {
+            service.kill(KillRequest.newBuilder()
+                .setReqId(System.nanoTime())
+                .setTenantId(sessionTenantId)
+                .setUserId("user")
+                .setClientId("client")
+                .setKiller(killer)
+                .build(), responseObserver);
+            return null;
+        });
+        ArgumentCaptor<KillReply> captor = ArgumentCaptor.forClass(KillReply.class);
+        verify(responseObserver).onNext(captor.capture());
+        verify(responseObserver).onCompleted();
+        return captor.getValue().getResult();
+    }
+
+    private <T> T withContext(String ctxTenantId, Map<String, String> metadata, String method,
+                              Supplier<T> supplier) {
+        Context ctx = Context.current()
+            .withValue(RPCContext.TENANT_ID_CTX_KEY, ctxTenantId)
+            .withValue(RPCContext.CUSTOM_METADATA_CTX_KEY, metadata)
+            .withValue(RPCContext.METER_KEY_CTX_KEY, RPCMeters.MeterKey.builder()
+                .service("SessionDictionaryService")
+                .method(method)
+                .tenantId(ctxTenantId)
+                .build());
+        Context prev = ctx.attach();
+        try {
+            return supplier.get();
+        } finally {
+            ctx.detach(prev);
+        }
+    }
+
+    private ServerCallStreamObserver<Quit> responseObserver() {
+        ServerCallStreamObserver<Quit> responseObserver = mock(ServerCallStreamObserver.class);
+        when(responseObserver.isReady()).thenReturn(true);
+        return responseObserver;
+    }
+
+    private List<Quit> quits(ServerCallStreamObserver<Quit> responseObserver, int count) {
+        ArgumentCaptor<Quit> captor = ArgumentCaptor.forClass(Quit.class);
+        verify(responseObserver, times(count)).onNext(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private Registration registration(ClientInfo owner, boolean keep) {
+        return Registration.newBuilder()
+            .setReqId(System.nanoTime())
+            .addSession(Session.newBuilder().setOwner(owner).setKeep(keep).build())
+            .build();
+    }
+
+    private ClientInfo owner(String address) {
+        return ClientInfo.newBuilder()
+            .setTenantId(tenantId)
+            .setType(MQTT_TYPE_VALUE)
+            .putMetadata(MQTT_USER_ID_KEY, "user")
+            .putMetadata(MQTT_CLIENT_ID_KEY, "client")
+            .putMetadata(MQTT_CLIENT_ADDRESS_KEY, address)
+            .build();
+    }
+}
@@ -19,6 +19,7 @@ import com.baidu.bifromq.sysprops.parser.DoubleParser;
 import com.baidu.bifromq.sysprops.parser.IntegerParser;
 import com.baidu.bifromq.sysprops.parser.LongParser;
 import com.baidu.bifromq.sysprops.parser.PropParser;
+import com.baidu.bifromq.sysprops.parser.StringParser;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -28,6 +29,19 @@ public enum BifroMQSysProp {
     MAX_CLIENT_ID_LENGTH("max_client_id_length", 65535, IntegerParser.from(23, 65536)),
     MAX_SHARE_GROUP_MEMBERS("max_shared_group_members", 200, IntegerParser.POSITIVE),
     MAX_TOPIC_FILTERS_PER_INBOX("max_topic_filters_per_inbox", 100, IntegerParser.POSITIVE),
+    // the permission check results are cached for a while, zero means no caching
+    AUTH_CHECK_CACHE_EXPIRY_SECONDS("auth_check_cache_expiry_seconds", 0, IntegerParser.NON_NEGATIVE),
+    AUTH_CHECK_CACHE_MAX_SIZE("auth_check_cache_max_size", 100_000L, LongParser.POSITIVE),
+    // report events to the collector plugins in a background thread instead of the calling thread
+    EVENT_COLLECTOR_ASYNC("event_collector_async", false, BooleanParser.INSTANCE),
+    EVENT_COLLECTOR_QUEUE_CAPACITY("event_collector_queue_capacity", 8192, IntegerParser.POSITIVE),
+    EVENT_COLLECTOR_BATCH_SIZE("event_collector_batch_size", 256, IntegerParser.POSITIVE),
+    // the policy when the queue is full: drop_newest, drop_oldest or sample
+    EVENT_COLLECTOR_OVERFLOW_POLICY("event_collector_overflow_policy", "drop_newest",
+        StringParser.from("drop_newest", "drop_oldest", "sample")),
+    SETTING_CACHE_MAX_SIZE("setting_cache_max_size", 100_000L, LongParser.POSITIVE),
+    SETTING_REFRESH_THREADS("setting_refresh_threads",
+        Math.max(2, EnvProvider.INSTANCE.availableProcessors() / 4), IntegerParser.POSITIVE),
     DIST_CLIENT_MAX_INFLIGHT_CALLS_PER_QUEUE("dist_client_max_calls_per_queue", 1, IntegerParser.POSITIVE),
     DIST_SERVER_MAX_INFLIGHT_CALLS_PER_QUEUE("dist_server_max_calls_per_queue", 1, IntegerParser.POSITIVE),
     DIST_MAX_TOPICS_IN_BATCH("dist_server_max_topics_in_batch", 200, IntegerParser.POSITIVE),
@@ -38,6 +52,7 @@ public enum BifroMQSysProp {
     DIST_WORKER_MAX_INFLIGHT_CALLS_PER_QUEUE("dist_worker_max_inflight_send", 1, IntegerParser.POSITIVE),
     DIST_MAX_BATCH_SEND_MESSAGES("dist_worker_max_batch_send_messages", 100, IntegerParser.POSITIVE),
     DIST_MAX_CACHED_SUBS_PER_TENANT("dist_worker_max_cached_subs_per_tenant", 100_000L, LongParser.POSITIVE),
+    DIST_MAX_CACHED_TOPICS_TO_SCAN("dist_worker_max_cached_topics_to_scan", 10_000, IntegerParser.POSITIVE),
     DIST_TOPIC_MATCH_EXPIRY("dist_worker_topic_match_expiry_seconds", 5, IntegerParser.POSITIVE),
     DIST_MATCH_PARALLELISM("dist_worker_match_parallelism",
         Math.max(2, EnvProvider.INSTANCE.availableProcessors() / 2), IntegerParser.POSITIVE),
@@ -47,6 +62,9 @@ public enum BifroMQSysProp {
     DIST_WORKER_VOTER_COUNT("dist_worker_replica_voter_count", 3, IntegerParser.POSITIVE),
     DIST_WORKER_LEARNER_COUNT("dist_worker_replica_learner_count", 3, IntegerParser.POSITIVE),
     DIST_WORKER_RECOVERY_TIMEOUT_MILLIS("dist_worker_recovery_timeout_millis", 10000L, LongParser.NON_NEGATIVE),
+    DIST_WORKER_SPLIT_LOAD_THRESHOLD("dist_worker_split_load_threshold", 0.8D, DoubleParser.from(0.0, 1.0, true)),
+    DIST_WORKER_MERGE_LOAD_THRESHOLD("dist_worker_merge_load_threshold", 0.05D, DoubleParser.from(0.0, 1.0, false)),
+    DIST_WORKER_LOAD_STABLE_MILLIS("dist_worker_load_stable_millis", 60000L, LongParser.NON_NEGATIVE),
     INBOX_DELIVERERS("inbox_deliverers", 100, IntegerParser.POSITIVE),
     INBOX_FETCH_PIPELINE_CREATION_RATE_LIMIT("inbox_fetch_pipeline_creation_rate_limit", 5000.0,
         DoubleParser.from(0.0, Double.MAX_VALUE, true)),
@@ -61,7 +79,28 @@ public enum BifroMQSysProp {
     INBOX_FETCH_QUEUES_PER_RANGE("inbox_fetch_queues_per_range",
         Math.max(1, EnvProvider.INSTANCE.availableProcessors() / 4), IntegerParser.POSITIVE),
     INBOX_CHECK_QUEUES_PER_RANGE("inbox_check_queues_per_range", 1, IntegerParser.POSITIVE),
-    MQTT_DELIVERERS_PER_SERVER("mqtt_deliverers_per_server", 4, IntegerParser.POSITIVE);
+    // the budget of each inbox store for the qos0 messages kept in memory only. The messages still go through raft and
+    // are queued by every replica, since fetching may be served by any of them, so each store pays for all the replicas
+    // it hosts, and the cluster wide usage is the replica count times the queued bytes. Overflow is reported by every
+    // replica as well
+    INBOX_STORE_QOS0_IN_MEMORY_MAX_BYTES("inbox_store_qos0_in_memory_max_bytes", 256 * 1024 * 1024L,
+        LongParser.POSITIVE),
+    INBOX_STORE_MAX_MESSAGE_LIST_BYTES("inbox_store_max_message_list_bytes", 64 * 1024, IntegerParser.POSITIVE),
+    // 1.0 or above disables load based splitting
+    INBOX_STORE_SPLIT_LOAD_THRESHOLD("inbox_store_split_load_threshold", 1.0D,
+        DoubleParser.from(0.0, Double.MAX_VALUE, true)),
+    // 0.0 disables load based merging
+    INBOX_STORE_MERGE_LOAD_THRESHOLD("inbox_store_merge_load_threshold", 0.0D, DoubleParser.from(0.0, 1.0, false)),
+    INBOX_STORE_LOAD_STABLE_MILLIS("inbox_store_load_stable_millis", 60000L, LongParser.NON_NEGATIVE),
+    // 1.0 or above disables load based splitting
+    RETAIN_STORE_SPLIT_LOAD_THRESHOLD("retain_store_split_load_threshold", 1.0D,
+        DoubleParser.from(0.0, Double.MAX_VALUE, true)),
+    // 0.0 disables load based merging
+    RETAIN_STORE_MERGE_LOAD_THRESHOLD("retain_store_merge_load_threshold", 0.0D, DoubleParser.from(0.0, 1.0, false)),
+    RETAIN_STORE_LOAD_STABLE_MILLIS("retain_store_load_stable_millis", 60000L, LongParser.NON_NEGATIVE),
+    MQTT_DELIVERERS_PER_SERVER("mqtt_deliverers_per_server", 4, IntegerParser.POSITIVE),
+    // the sessions are registered via this many streams from one broker, streams with different value are rejected
+    SESSION_DICT_REGISTER_SLOTS("session_dict_register_slots", 128, IntegerParser.POSITIVE);
 
     public final String propKey;
     private final Object propDefValue;
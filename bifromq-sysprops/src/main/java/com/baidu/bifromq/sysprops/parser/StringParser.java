@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.sysprops.parser;
+
+import java.util.Set;
+
+public class StringParser implements PropParser<String> {
+    private final Set<String> candidates;
+
+    private StringParser(Set<String> candidates) {
+        this.candidates = candidates;
+    }
+
+    @Override
+    public String parse(String value) {
+        if (candidates.contains(value)) {
+            return value;
+        }
+        throw new SysPropParseException(String.format("%s is not one of %s", value, candidates));
+    }
+
+    public static StringParser from(String... candidates) {
+        assert candidates.length > 0;
+        return new StringParser(Set.of(candidates));
+    }
+}
@@ -16,9 +16,11 @@ package com.baidu.bifromq.starter;
 import com.baidu.bifromq.basekv.localengine.InMemoryKVEngineConfigurator;
 import com.baidu.bifromq.basekv.localengine.KVEngineConfigurator;
 import com.baidu.bifromq.basekv.localengine.RocksDBKVEngineConfigurator;
+import com.baidu.bifromq.basekv.store.wal.SegmentedWALEngineConfigurator;
 import com.baidu.bifromq.starter.config.StarterConfig;
 import com.baidu.bifromq.starter.config.model.InMemEngineConfig;
 import com.baidu.bifromq.starter.config.model.RocksDBEngineConfig;
+import com.baidu.bifromq.starter.config.model.SegmentedWALEngineConfig;
 import com.baidu.bifromq.starter.config.model.StorageEngineConfig;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -29,11 +31,24 @@ public abstract class BaseEngineStarter<T extends StarterConfig> extends BaseSta
     public static final String USER_DIR_PROP = "user.dir";
     public static final String DATA_DIR_PROP = "DATA_DIR";
 
+    protected KVEngineConfigurator buildWALEngineConf(StorageEngineConfig config, String name) {
+        if (config instanceof SegmentedWALEngineConfig) {
+            SegmentedWALEngineConfig walConfig = (SegmentedWALEngineConfig) config;
+            return SegmentedWALEngineConfigurator.builder()
+                .dbRootDir(resolveDataPath(walConfig.getDataPathRoot(), name).toString())
+                .segmentSize(walConfig.getSegmentSize())
+                .build();
+        }
+        return buildEngineConf(config, name);
+    }
+
     protected KVEngineConfigurator buildEngineConf(StorageEngineConfig config, String name) {
         if (config instanceof InMemEngineConfig) {
             return InMemoryKVEngineConfigurator.builder()
                 .gcInterval(config.getGcIntervalInSec())
                 .build();
+        } else if (config instanceof SegmentedWALEngineConfig) {
+            throw new IllegalArgumentException("Segmented engine is only applicable to wal: " + name);
         } else {
             Path dataRootDir;
             Path dataCheckpointRootDir;
@@ -59,4 +74,13 @@ public abstract class BaseEngineStarter<T extends StarterConfig> extends BaseSta
         }
     }
 
+    private Path resolveDataPath(String dataPathRoot, String name) {
+        if (Paths.get(dataPathRoot).isAbsolute()) {
+            return Paths.get(dataPathRoot, name);
+        }
+        String userDir = System.getProperty(USER_DIR_PROP);
+        String dataDir = System.getProperty(DATA_DIR_PROP, userDir);
+        return Paths.get(dataDir, dataPathRoot, name);
+    }
+
 }
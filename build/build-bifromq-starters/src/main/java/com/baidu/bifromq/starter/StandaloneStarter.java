@@ -173,7 +173,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                 .setDataEngineConfigurator(
                     buildEngineConf(config.getInboxStoreConfig().getDataEngineConfig(), "inbox_data"))
                 .setWalEngineConfigurator(
-                    buildEngineConf(config.getInboxStoreConfig().getWalEngineConfig(), "inbox_wal")))
+                    buildWALEngineConf(config.getInboxStoreConfig().getWalEngineConfig(), "inbox_wal")))
             .build();
         inboxServer = IInboxServer.inProcBuilder()
             .settingProvider(settingProviderMgr)
@@ -208,7 +208,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                 .setDataEngineConfigurator(
                     buildEngineConf(config.getRetainStoreConfig().getDataEngineConfig(), "retain_data"))
                 .setWalEngineConfigurator(
-                    buildEngineConf(config.getRetainStoreConfig().getWalEngineConfig(), "retain_wal")))
+                    buildWALEngineConf(config.getRetainStoreConfig().getWalEngineConfig(), "retain_wal")))
             .build();
         retainServer = IRetainServer
             .inProcBuilder()
@@ -253,7 +253,7 @@ public class StandaloneStarter extends BaseEngineStarter<StandaloneConfig> {
                 .setDataEngineConfigurator(
                     buildEngineConf(config.getDistWorkerConfig().getDataEngineConfig(), "dist_data"))
                 .setWalEngineConfigurator(
-                    buildEngineConf(config.getDistWorkerConfig().getWalEngineConfig(), "dist_wal")))
+                    buildWALEngineConf(config.getDistWorkerConfig().getWalEngineConfig(), "dist_wal")))
             .balanceControllerOptions(new KVRangeBalanceControllerOptions())
             .subBrokerManager(inboxBrokerMgr)
             .build();
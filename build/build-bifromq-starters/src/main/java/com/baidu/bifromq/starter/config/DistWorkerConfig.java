@@ -17,9 +17,11 @@ import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.basekv.balance.option.KVRangeBalanceControllerOptions;
 import com.baidu.bifromq.starter.config.model.AgentHostConfig;
 import com.baidu.bifromq.starter.config.model.RPCClientConfig;
+import com.baidu.bifromq.starter.config.model.SegmentedWALEngineConfig;
 import com.baidu.bifromq.starter.config.model.ServerSSLContextConfig;
 import com.baidu.bifromq.starter.config.model.StorageEngineConfig;
 import com.baidu.bifromq.starter.config.model.StoreClientConfig;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -46,6 +48,7 @@ public class DistWorkerConfig implements StarterConfig {
 
     private StorageEngineConfig dataEngineConfig;
 
+    @JsonSubTypes(@JsonSubTypes.Type(value = SegmentedWALEngineConfig.class, name = "segmented"))
     private StorageEngineConfig walEngineConfig;
 
     private KVRangeBalanceControllerOptions balanceConfig;
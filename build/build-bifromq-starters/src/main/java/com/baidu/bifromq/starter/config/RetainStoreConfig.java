@@ -15,9 +15,11 @@ package com.baidu.bifromq.starter.config;
 
 import com.baidu.bifromq.baseenv.EnvProvider;
 import com.baidu.bifromq.starter.config.model.AgentHostConfig;
+import com.baidu.bifromq.starter.config.model.SegmentedWALEngineConfig;
 import com.baidu.bifromq.starter.config.model.ServerSSLContextConfig;
 import com.baidu.bifromq.starter.config.model.StorageEngineConfig;
 import com.baidu.bifromq.starter.config.model.StoreClientConfig;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -38,6 +40,7 @@ public class RetainStoreConfig implements StarterConfig {
 
     private StorageEngineConfig dataEngineConfig;
 
+    @JsonSubTypes(@JsonSubTypes.Type(value = SegmentedWALEngineConfig.class, name = "segmented"))
     private StorageEngineConfig walEngineConfig;
 
     private ServerSSLContextConfig serverSSLCtxConfig;
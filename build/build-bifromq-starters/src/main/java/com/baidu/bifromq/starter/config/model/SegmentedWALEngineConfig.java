@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2023. Baidu, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.baidu.bifromq.starter.config.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Segmented append-only log files, only applicable to wal engine, so it's only registered as a subtype on the wal
+ * engine config properties.
+ */
+@Getter
+@Setter
+public class SegmentedWALEngineConfig extends StorageEngineConfig {
+    private String dataPathRoot = "";
+    private long segmentSize = 64 * 1024 * 1024; // in bytes
+}